@@ -0,0 +1,75 @@
+package org.code.exercise.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.BatchRunner;
+import org.code.exercise.PipelineBatchRunner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the batch modes on the same lines: sequential, chunks on a thread pool of 3 workers, and
+ * the staged pipeline, whose 3 stage threads are as many as the workers of the pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+  private static final int THREADS = 3;
+
+  @Param({"100000"})
+  public int lines;
+
+  @Param({"8", "64"})
+  public int terms;
+
+  private String input;
+
+  @Setup
+  public void setUp() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      // Lines of slightly different lengths, so that they are not all the same
+      builder
+          .append(
+              ExpressionGenerator.generate(terms + i % 8, 1, ExpressionGenerator.OperatorMix.MIXED))
+          .append('\n');
+    }
+    input = builder.toString();
+  }
+
+  @Benchmark
+  public long sequential() throws IOException {
+    return BatchRunner.run(reader(), Writer.nullWriter());
+  }
+
+  @Benchmark
+  public long threadPool() throws IOException {
+    return BatchRunner.run(reader(), Writer.nullWriter(), THREADS);
+  }
+
+  @Benchmark
+  public long pipeline() throws IOException {
+    return PipelineBatchRunner.run(reader(), Writer.nullWriter());
+  }
+
+  private BufferedReader reader() {
+    return new BufferedReader(new StringReader(input));
+  }
+}
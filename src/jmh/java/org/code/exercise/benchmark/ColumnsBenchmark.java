@@ -0,0 +1,87 @@
+package org.code.exercise.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.service.BytecodeCompiler;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.CompiledExpression;
+import org.code.exercise.service.ExpressionFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the evaluation of one formula over many rows of variables, row-at-a-time against
+ * column-at-a-time, and row-at-a-time on the bytecode compiled formula.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnsBenchmark {
+
+  @Param({"1000", "100000"})
+  public int rows;
+
+  @Param({"a * x + b", "(a * x + b) * (a - x) / 7 + b * b"})
+  public String formula;
+
+  private CompiledExpression compiled;
+  private ExpressionFunction bytecode;
+  private int[][] columns;
+  private int[] results;
+
+  @Setup
+  public void setUp() {
+    compiled = CalculatorService.compile(formula, "a", "x", "b");
+    bytecode = BytecodeCompiler.compile(compiled);
+    Random random = new Random(42);
+    columns = new int[3][rows];
+    for (int[] column : columns) {
+      for (int i = 0; i < rows; i++) {
+        column[i] = random.nextInt(1000);
+      }
+    }
+    results = new int[rows];
+  }
+
+  @Benchmark
+  public int[] rowAtATime() {
+    int[] values = new int[3];
+    for (int i = 0; i < rows; i++) {
+      values[0] = columns[0][i];
+      values[1] = columns[1][i];
+      values[2] = columns[2][i];
+      results[i] = compiled.evaluate(values);
+    }
+    return results;
+  }
+
+  @Benchmark
+  public int[] bytecodeRowAtATime() {
+    int[] values = new int[3];
+    for (int i = 0; i < rows; i++) {
+      values[0] = columns[0][i];
+      values[1] = columns[1][i];
+      values[2] = columns[2][i];
+      results[i] = bytecode.applyAsInt(values);
+    }
+    return results;
+  }
+
+  @Benchmark
+  public int[] columnAtATime() {
+    compiled.evaluate(columns, results);
+    return results;
+  }
+}
@@ -0,0 +1,91 @@
+package org.code.exercise.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.BatchRunner;
+import org.code.exercise.DagBatchRunner;
+import org.code.exercise.service.ExpressionDag;
+import org.code.exercise.service.helper.OperatorRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the sequential batch mode with the shared one, on lines repeating the same
+ * subexpressions: built-in arithmetic only, where evaluating a node costs less than interning it,
+ * and calls of a registered function costlier than the interning of its node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DagBatchBenchmark {
+
+  // Number of steps of the Collatz sequence from the operand down to 1, about 100 for the operands
+  // of the lines
+  private static final int COLLATZ =
+      OperatorRegistry.registerFunction(
+          "collatz",
+          n -> {
+            int steps = 0;
+            long value = n;
+            while (value > 1) {
+              value = (value & 1) == 0 ? value >> 1 : value * 3 + 1;
+              steps++;
+            }
+            return steps;
+          });
+
+  @Param({"100000"})
+  public int lines;
+
+  @Param({"arithmetic", "function"})
+  public String workload;
+
+  private String input;
+
+  @Setup
+  public void setUp() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      // 50 distinct repeated subexpressions, each line combining two of them
+      String shared =
+          workload.equals("function")
+              ? "collatz(" + (1000 + i % 50) + ")"
+              : "(1200 * 37 - 5) * " + (i % 50);
+      String other =
+          workload.equals("function")
+              ? "collatz(" + (2000 + i % 47) + ")"
+              : "(" + (i % 47) + " + 12) / 3";
+      builder.append(shared).append(" + ").append(other).append(" - ").append(i % 10).append('\n');
+    }
+    input = builder.toString();
+  }
+
+  @Benchmark
+  public long sequential() throws IOException {
+    return BatchRunner.run(reader(), Writer.nullWriter());
+  }
+
+  @Benchmark
+  public long shared() throws IOException {
+    return DagBatchRunner.run(reader(), Writer.nullWriter(), new ExpressionDag());
+  }
+
+  private BufferedReader reader() {
+    return new BufferedReader(new StringReader(input));
+  }
+}
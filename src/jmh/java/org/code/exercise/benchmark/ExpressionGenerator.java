@@ -0,0 +1,82 @@
+package org.code.exercise.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates deterministic arithmetic expressions for the benchmarks.
+ *
+ * <p>The same parameters always give the same expression, so that results stay comparable from one
+ * run to another. Divisions only use a non-zero literal as right operand, so that the generated
+ * expressions never fail.
+ */
+public final class ExpressionGenerator {
+
+  /** Operators drawn between two operands. */
+  public enum OperatorMix {
+    ADDITIVE("+-"),
+    MULTIPLICATIVE("*/"),
+    MIXED("+-*/");
+
+    private final String operators;
+
+    OperatorMix(String operators) {
+      this.operators = operators;
+    }
+  }
+
+  private static final long SEED = 42;
+  private static final int MAX_OPERAND = 1000;
+  private static final int MAX_DIVISOR = 9;
+
+  private ExpressionGenerator() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Generates an expression.
+   *
+   * @param terms number of operands
+   * @param depth nesting depth of the parentheses: the operands are split in two parenthesized
+   *     halves, recursively, {@code depth} times
+   * @param mix operators drawn between the operands
+   * @return the expression (ex: "(12 + 7) * (3 - 4 / 2)")
+   */
+  public static String generate(int terms, int depth, OperatorMix mix) {
+    StringBuilder builder = new StringBuilder(terms * 8);
+    append(builder, Math.max(terms, 1), depth, mix, new Random(SEED));
+    return builder.toString();
+  }
+
+  private static void append(
+      StringBuilder builder, int terms, int depth, OperatorMix mix, Random random) {
+    if (depth == 0 || terms < 2) {
+      appendFlat(builder, terms, mix, random);
+      return;
+    }
+    int left = terms / 2;
+    builder.append('(');
+    append(builder, left, depth - 1, mix, random);
+    // A parenthesized group may be zero, so it is never used as a divisor
+    builder.append(") ").append(nonDivisionOperator(mix, random)).append(" (");
+    append(builder, terms - left, depth - 1, mix, random);
+    builder.append(')');
+  }
+
+  private static void appendFlat(StringBuilder builder, int terms, OperatorMix mix, Random random) {
+    builder.append(random.nextInt(MAX_OPERAND));
+    for (int i = 1; i < terms; i++) {
+      char operator = mix.operators.charAt(random.nextInt(mix.operators.length()));
+      builder.append(' ').append(operator).append(' ');
+      if (operator == '/') {
+        builder.append(1 + random.nextInt(MAX_DIVISOR));
+      } else {
+        builder.append(random.nextInt(MAX_OPERAND));
+      }
+    }
+  }
+
+  private static char nonDivisionOperator(OperatorMix mix, Random random) {
+    char operator = mix.operators.charAt(random.nextInt(mix.operators.length()));
+    return operator == '/' ? '*' : operator;
+  }
+}
@@ -0,0 +1,68 @@
+package org.code.exercise.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.CompiledExpression;
+import org.code.exercise.service.WideExpression;
+import org.code.exercise.service.helper.enums.OverflowMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the 64-bit engine in each overflow mode against the int engine, on expressions of small
+ * numbers that never overflow a long: the checked modes should cost no more than the wrapping one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverflowModeBenchmark {
+
+  @Param({"10", "1000"})
+  public int terms;
+
+  @Param({"WRAP", "FAIL", "PROMOTE"})
+  public OverflowMode mode;
+
+  private String expression;
+  private CompiledExpression compiled;
+  private WideExpression wide;
+
+  @Setup
+  public void setUp() {
+    expression = ExpressionGenerator.generate(terms, 4, ExpressionGenerator.OperatorMix.ADDITIVE);
+    compiled = CalculatorService.compile(expression);
+    wide = CalculatorService.compileWide(expression);
+  }
+
+  @Benchmark
+  public int evaluateInt() {
+    return compiled.evaluate();
+  }
+
+  @Benchmark
+  public Number evaluateWide() {
+    return wide.evaluate(mode);
+  }
+
+  @Benchmark
+  public int calculateInt() {
+    return CalculatorService.calculate(expression);
+  }
+
+  @Benchmark
+  public Number calculateWide() {
+    return CalculatorService.calculate(expression, mode);
+  }
+}
@@ -0,0 +1,70 @@
+package org.code.exercise.benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.CompiledExpression;
+import org.code.exercise.service.ParallelEvaluatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the sequential evaluation of a single huge expression against the fork-join one, for
+ * each number of threads (ex: -p threads=1,2,4,8).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBenchmark {
+
+  private static final int[] NO_VALUES = {};
+
+  @Param({"1000000"})
+  public int terms;
+
+  @Param({"0", "4"})
+  public int depth;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private CompiledExpression compiled;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setUp() {
+    compiled =
+        CalculatorService.compile(
+            ExpressionGenerator.generate(terms, depth, ExpressionGenerator.OperatorMix.MIXED));
+    pool = new ForkJoinPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Benchmark
+  public int sequential() {
+    return compiled.evaluate();
+  }
+
+  @Benchmark
+  public int parallel() {
+    return ParallelEvaluatorService.evaluate(
+        compiled, NO_VALUES, pool, ParallelEvaluatorService.DEFAULT_THRESHOLD);
+  }
+}
@@ -0,0 +1,124 @@
+package org.code.exercise.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.service.BytecodeCompiler;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.CompiledExpression;
+import org.code.exercise.service.EvaluatorService;
+import org.code.exercise.service.ExpressionConverterService;
+import org.code.exercise.service.ExpressionFunction;
+import org.code.exercise.service.ParserService;
+import org.code.exercise.service.model.TokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks every stage of the calculation pipeline, and the whole pipeline end to end.
+ *
+ * <p>Each stage is fed with the output of the previous one, prepared once in the setup, so that a
+ * benchmark only measures its own stage. Run with "make benchmark", which adds the GC profiler to
+ * report the allocation rate of each stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+  private static final int[] NO_VALUES = {};
+
+  @Param({"10", "100", "1000"})
+  public int terms;
+
+  @Param({"0", "4"})
+  public int depth;
+
+  @Param({"ADDITIVE", "MULTIPLICATIVE", "MIXED"})
+  public ExpressionGenerator.OperatorMix mix;
+
+  private String expression;
+  private byte[] expressionBytes;
+  private ByteBuffer directExpression;
+  private List<String> infixTokens;
+  private List<String> postfixTokens;
+  private TokenStream tokenStream;
+  private CompiledExpression compiled;
+  private ExpressionFunction bytecode;
+
+  @Setup
+  public void setUp() {
+    expression = ExpressionGenerator.generate(terms, depth, mix);
+    expressionBytes = expression.getBytes(StandardCharsets.US_ASCII);
+    directExpression =
+        ByteBuffer.allocateDirect(expressionBytes.length).put(expressionBytes).flip();
+    infixTokens = ParserService.tokenize(expression);
+    postfixTokens = ExpressionConverterService.infixToPostfix(infixTokens);
+    tokenStream = ParserService.lex(expression);
+    compiled = CalculatorService.compile(expression);
+    bytecode = BytecodeCompiler.compile(compiled);
+  }
+
+  @Benchmark
+  public List<String> tokenize() {
+    return ParserService.tokenize(expression);
+  }
+
+  @Benchmark
+  public TokenStream lex() {
+    return ParserService.lex(expression);
+  }
+
+  @Benchmark
+  public List<String> infixToPostfix() {
+    return ExpressionConverterService.infixToPostfix(infixTokens);
+  }
+
+  @Benchmark
+  public CompiledExpression infixToPostfixProgram() {
+    return ExpressionConverterService.infixToPostfix(tokenStream);
+  }
+
+  @Benchmark
+  public int evaluatePostfixExpression() {
+    return EvaluatorService.evaluatePostfixExpression(postfixTokens);
+  }
+
+  @Benchmark
+  public int evaluateCompiled() {
+    return compiled.evaluate();
+  }
+
+  @Benchmark
+  public int evaluateBytecode() {
+    return bytecode.applyAsInt(NO_VALUES);
+  }
+
+  @Benchmark
+  public int calculate() {
+    return CalculatorService.calculate(expression);
+  }
+
+  @Benchmark
+  public int calculateDecodedBytes() {
+    return CalculatorService.calculate(new String(expressionBytes, StandardCharsets.US_ASCII));
+  }
+
+  @Benchmark
+  public int calculateBytes() {
+    return CalculatorService.calculate(directExpression);
+  }
+}
@@ -0,0 +1,88 @@
+package org.code.exercise.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.CompiledExpression;
+import org.code.exercise.service.ProgramStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares compiling a set of formulas with taking their programs from a warm {@link ProgramStore},
+ * as a restarted process does, and measures the opening of the store itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramStoreBenchmark {
+
+  private static final int FORMULA_COUNT = 10000;
+
+  @Param({"10", "100"})
+  public int terms;
+
+  private Path file;
+  private String[] formulas;
+  private ProgramStore store;
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = Files.createTempFile("programs", ".bin");
+    String base = ExpressionGenerator.generate(terms, 2, ExpressionGenerator.OperatorMix.MIXED);
+    formulas = new String[FORMULA_COUNT];
+    try (ProgramStore writer = ProgramStore.open(file)) {
+      for (int i = 0; i < FORMULA_COUNT; i++) {
+        formulas[i] = base + " + " + i;
+        writer.compile(formulas[i]);
+      }
+    }
+    store = ProgramStore.open(file);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    store.close();
+    Files.delete(file);
+  }
+
+  @Benchmark
+  public CompiledExpression compile() {
+    return CalculatorService.compile(nextFormula());
+  }
+
+  @Benchmark
+  public CompiledExpression storeLookup() {
+    return store.compile(nextFormula());
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int openStore() throws IOException {
+    try (ProgramStore opened = ProgramStore.open(file)) {
+      return opened.size();
+    }
+  }
+
+  // Cycles through the formulas, so that the lookups are not all served from the same cache lines
+  private String nextFormula() {
+    next = next + 1 == FORMULA_COUNT ? 0 : next + 1;
+    return formulas[next];
+  }
+}
@@ -0,0 +1,192 @@
+package org.code.exercise;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.model.CalculationResult;
+
+/**
+ * Streams newline-delimited expressions through the calculator within a single JVM.
+ *
+ * <p>Each input line produces exactly one output line: the result of the expression, or the error
+ * prefixed with the line number. A bad line never stops the batch, and memory use does not depend
+ * on the size of the input.
+ *
+ * <p>The parallel mode splits the input into chunks of lines evaluated on a thread pool. Results
+ * are written back in input order through a bounded window of chunks in flight: when the window is
+ * full, the reader waits for the oldest chunk to be written before reading more lines.
+ */
+public class BatchRunner {
+
+  public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+  // Number of chunks in flight per worker thread, enough to keep the workers busy while the oldest
+  // chunk is written
+  private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 4;
+
+  private static final char LINE_SEPARATOR = '\n';
+
+  private BatchRunner() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Evaluates every line of the reader and writes one result or error per line.
+   *
+   * @param reader newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(BufferedReader reader, Writer writer) throws IOException {
+    long lineNumber = 0;
+    long errorCount = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (!evaluateLine(++lineNumber, line, writer)) {
+        errorCount++;
+      }
+    }
+    writer.flush();
+    return errorCount;
+  }
+
+  /**
+   * Evaluates every line of the reader on {@code parallelism} threads, and writes one result or
+   * error per line in input order.
+   *
+   * @param reader newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @param parallelism number of worker threads, the sequential mode is used below 2
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(BufferedReader reader, Writer writer, int parallelism) throws IOException {
+    if (parallelism < 2) {
+      return run(reader, writer);
+    }
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      return run(
+          reader, writer, pool, parallelism * CHUNKS_IN_FLIGHT_PER_THREAD, DEFAULT_CHUNK_SIZE);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Evaluates every line of the reader on the given executor, and writes one result or error per
+   * line in input order.
+   *
+   * @param reader newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @param executor pool evaluating the chunks
+   * @param maxChunksInFlight bound of the reorder window, at most {@code maxChunksInFlight *
+   *     chunkSize} lines are held in memory
+   * @param chunkSize number of lines evaluated by a single task
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(
+      BufferedReader reader,
+      Writer writer,
+      ExecutorService executor,
+      int maxChunksInFlight,
+      int chunkSize)
+      throws IOException {
+    Deque<Future<ChunkResult>> inFlight = new ArrayDeque<>(maxChunksInFlight);
+    long errorCount = 0;
+    long nextLineNumber = 1;
+    List<String> lines;
+    while (!(lines = readChunk(reader, chunkSize)).isEmpty()) {
+      if (inFlight.size() >= maxChunksInFlight) {
+        errorCount += writeChunk(inFlight.poll(), writer);
+      }
+      long firstLineNumber = nextLineNumber;
+      nextLineNumber += lines.size();
+      List<String> chunk = lines;
+      inFlight.add(executor.submit(() -> evaluateChunk(firstLineNumber, chunk)));
+    }
+    while (!inFlight.isEmpty()) {
+      errorCount += writeChunk(inFlight.poll(), writer);
+    }
+    writer.flush();
+    return errorCount;
+  }
+
+  /*
+   * Evaluates a single line and appends its result or error, followed by a line separator. Returns false if the line failed.
+   * */
+  static boolean evaluateLine(long lineNumber, String line, Appendable output) throws IOException {
+    CalculationResult result = CalculatorService.tryCalculate(line.trim());
+    if (result.isSuccess()) {
+      output.append(Integer.toString(result.getValue()));
+    } else {
+      output.append(formatLineError(lineNumber, result));
+    }
+    output.append(LINE_SEPARATOR);
+    return result.isSuccess();
+  }
+
+  /*
+   * Errors are keyed by line number, using the same categories as the single expression mode (ex: "Line 3: Arithmetic error: Division by zero").
+   * */
+  static String formatLineError(long lineNumber, Exception e) {
+    return "Line " + lineNumber + ": " + Main.formatError(e);
+  }
+
+  static String formatLineError(long lineNumber, CalculationResult result) {
+    return "Line " + lineNumber + ": " + Main.formatError(result);
+  }
+
+  // Output of a chunk, built by a worker thread and written by the reader thread
+  private record ChunkResult(String output, long errorCount) {}
+
+  private static ChunkResult evaluateChunk(long firstLineNumber, List<String> lines)
+      throws IOException {
+    StringBuilder output = new StringBuilder(lines.size() * 8);
+    long errorCount = 0;
+    for (int i = 0; i < lines.size(); i++) {
+      if (!evaluateLine(firstLineNumber + i, lines.get(i), output)) {
+        errorCount++;
+      }
+    }
+    return new ChunkResult(output.toString(), errorCount);
+  }
+
+  private static List<String> readChunk(BufferedReader reader, int chunkSize) throws IOException {
+    List<String> lines = new ArrayList<>(chunkSize);
+    String line;
+    while (lines.size() < chunkSize && (line = reader.readLine()) != null) {
+      lines.add(line);
+    }
+    return lines;
+  }
+
+  private static long writeChunk(Future<ChunkResult> future, Writer writer) throws IOException {
+    ChunkResult result;
+    try {
+      result = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a batch chunk");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) throw ioException;
+      if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+      if (e.getCause() instanceof Error error) throw error;
+      throw new IOException(e.getCause());
+    }
+    writer.write(result.output());
+    return result.errorCount();
+  }
+}
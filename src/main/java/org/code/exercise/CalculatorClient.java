@@ -0,0 +1,199 @@
+package org.code.exercise;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.model.CalculationResult;
+
+/**
+ * Client of {@link CalculatorDaemon}, speaking the {@link DaemonProtocol} over a Unix domain
+ * socket.
+ *
+ * <p>A client holds a single connection and is not thread-safe. Lists of expressions are pipelined:
+ * they are sent by windows of {@value #PIPELINE_DEPTH} requests, before their responses are read.
+ */
+public class CalculatorClient implements AutoCloseable {
+
+  /**
+   * Result of an expression, or its error formatted like the command line does (ex: "Arithmetic
+   * error: Division by zero").
+   */
+  public record Response(int result, String error) {
+
+    public static Response success(int result) {
+      return new Response(result, null);
+    }
+
+    public static Response failure(String error) {
+      return new Response(0, error);
+    }
+
+    public boolean isSuccess() {
+      return error == null;
+    }
+  }
+
+  // Bound of the requests sent before reading their responses, so that neither side blocks on a
+  // full socket buffer
+  static final int PIPELINE_DEPTH = 256;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final SocketChannel channel;
+  private ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+  private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+  private CalculatorClient(SocketChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Connects to a daemon.
+   *
+   * @param socketPath path of the socket file of the daemon
+   * @return the connected client
+   * @throws IOException if no daemon listens on the socket
+   */
+  public static CalculatorClient connect(Path socketPath) throws IOException {
+    SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      channel.connect(UnixDomainSocketAddress.of(socketPath));
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return new CalculatorClient(channel);
+  }
+
+  /**
+   * Evaluates an expression on the daemon listening on the socket, or in this JVM if no daemon
+   * accepts the connection. The response is the same either way.
+   *
+   * <p>Once connected, the request may have reached the daemon: a later failure is thrown rather
+   * than falling back, so that an expression is never evaluated twice.
+   *
+   * @param socketPath path of the socket file of the daemon
+   * @param expression arithmetic expression (ex: "2 + 3 * -1")
+   * @return the result or the error of the expression
+   * @throws IOException if the connection to the daemon fails after being established
+   */
+  public static Response calculateOrFallback(Path socketPath, String expression)
+      throws IOException {
+    CalculatorClient client;
+    try {
+      client = connect(socketPath);
+    } catch (IOException e) {
+      return calculateInProcess(expression);
+    }
+    try (client) {
+      return client.calculate(expression);
+    }
+  }
+
+  static Response calculateInProcess(String expression) {
+    CalculationResult result = CalculatorService.tryCalculate(expression.trim());
+    return result.isSuccess()
+        ? Response.success(result.getValue())
+        : Response.failure(Main.formatError(result));
+  }
+
+  /**
+   * Evaluates an expression on the daemon.
+   *
+   * @param expression arithmetic expression (ex: "2 + 3 * -1")
+   * @return the result or the error of the expression
+   * @throws IOException if the daemon cannot be reached
+   */
+  public Response calculate(String expression) throws IOException {
+    return calculateAll(List.of(expression)).get(0);
+  }
+
+  /**
+   * Evaluates expressions on the daemon, pipelined.
+   *
+   * @param expressions arithmetic expressions
+   * @return the result or the error of each expression, in the same order
+   * @throws IOException if the daemon cannot be reached
+   */
+  public List<Response> calculateAll(List<String> expressions) throws IOException {
+    List<Response> responses = new ArrayList<>(expressions.size());
+    for (int from = 0; from < expressions.size(); from += PIPELINE_DEPTH) {
+      int to = Math.min(from + PIPELINE_DEPTH, expressions.size());
+      for (int i = from; i < to; i++) {
+        writeRequest(expressions.get(i));
+      }
+      flush();
+      for (int i = from; i < to; i++) {
+        responses.add(readResponse());
+      }
+    }
+    return responses;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void writeRequest(String expression) throws IOException {
+    byte[] bytes = expression.getBytes(StandardCharsets.UTF_8);
+    int size = DaemonProtocol.LENGTH_SIZE + bytes.length;
+    if (output.remaining() < size) {
+      flush();
+      if (output.capacity() < size) {
+        output = ByteBuffer.allocate(size);
+      }
+    }
+    output.putInt(bytes.length).put(bytes);
+  }
+
+  private void flush() throws IOException {
+    output.flip();
+    while (output.hasRemaining()) {
+      channel.write(output);
+    }
+    output.clear();
+  }
+
+  private Response readResponse() throws IOException {
+    fill(1);
+    byte status = input.get();
+    if (status == DaemonProtocol.STATUS_OK) {
+      fill(Integer.BYTES);
+      return Response.success(input.getInt());
+    }
+    fill(DaemonProtocol.LENGTH_SIZE);
+    int length = input.getInt();
+    fill(length);
+    byte[] bytes = new byte[length];
+    input.get(bytes);
+    return Response.failure(new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  /*
+   * Reads until the input buffer holds at least the given number of bytes.
+   * */
+  private void fill(int size) throws IOException {
+    if (input.remaining() >= size) {
+      return;
+    }
+    if (input.capacity() < size) {
+      input = ByteBuffer.allocate(size).put(input).flip();
+    }
+    input.compact();
+    while (input.position() < size) {
+      if (channel.read(input) < 0) {
+        throw new EOFException("Connection closed by the daemon");
+      }
+    }
+    input.flip();
+  }
+}
@@ -0,0 +1,233 @@
+package org.code.exercise;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.ProgramStore;
+import org.code.exercise.service.model.AsciiCharSequence;
+import org.code.exercise.service.model.CalculationResult;
+
+/**
+ * Calculation daemon listening on a Unix domain socket, for local callers that would otherwise
+ * start a JVM per expression. The JIT-compiled calculator stays warm across calls.
+ *
+ * <p>Speaks the length-prefixed {@link DaemonProtocol}. Each connection is served by its own
+ * virtual thread, which evaluates the requests in order and writes the responses of all the
+ * requests read at once in a single write, so that pipelined requests cost one round trip.
+ *
+ * <p>Given a {@link ProgramStore}, the daemon takes the programs of the expressions from it, so
+ * that after a restart the expressions it already compiled are not parsed again.
+ */
+public class CalculatorDaemon implements AutoCloseable {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  // Bytes removed by String.trim
+  private static final byte MAX_TRIMMED_BYTE = ' ';
+
+  private final Path socketPath;
+  private final ServerSocketChannel serverChannel;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final Thread acceptor;
+  private final ProgramStore programStore;
+
+  private CalculatorDaemon(
+      Path socketPath, ServerSocketChannel serverChannel, ProgramStore programStore) {
+    this.socketPath = socketPath;
+    this.serverChannel = serverChannel;
+    this.programStore = programStore;
+    this.acceptor = new Thread(this::acceptConnections, "calculator-daemon");
+  }
+
+  /**
+   * Starts a daemon. A socket file left by a daemon that did not stop cleanly is replaced.
+   *
+   * @param socketPath path of the socket file
+   * @return the started daemon
+   * @throws IOException if the socket cannot be bound, or another daemon listens on it
+   */
+  public static CalculatorDaemon start(Path socketPath) throws IOException {
+    return start(socketPath, null);
+  }
+
+  /**
+   * Starts a daemon taking the programs of the expressions from a store. A socket file left by a
+   * daemon that did not stop cleanly is replaced.
+   *
+   * @param socketPath path of the socket file
+   * @param programStore store of the compiled programs, or null to compile every expression; left
+   *     open when the daemon is closed
+   * @return the started daemon
+   * @throws IOException if the socket cannot be bound, or another daemon listens on it
+   */
+  public static CalculatorDaemon start(Path socketPath, ProgramStore programStore)
+      throws IOException {
+    if (Files.exists(socketPath)) {
+      if (isListening(socketPath)) {
+        throw new IOException("A daemon is already listening on " + socketPath);
+      }
+      Files.delete(socketPath);
+    }
+    ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+    } catch (IOException e) {
+      serverChannel.close();
+      throw e;
+    }
+    CalculatorDaemon daemon = new CalculatorDaemon(socketPath, serverChannel, programStore);
+    daemon.acceptor.start();
+    return daemon;
+  }
+
+  /** Path of the socket file. */
+  public Path getSocketPath() {
+    return socketPath;
+  }
+
+  /** Stops accepting connections, closes the open ones and removes the socket file. */
+  @Override
+  public void close() throws IOException {
+    serverChannel.close();
+    executor.shutdownNow();
+    Files.deleteIfExists(socketPath);
+  }
+
+  private static boolean isListening(Path socketPath) {
+    try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+      return channel.isConnected();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private void acceptConnections() {
+    while (serverChannel.isOpen()) {
+      try {
+        SocketChannel channel = serverChannel.accept();
+        executor.execute(() -> serve(channel));
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        System.err.println("Daemon error: " + e.getMessage());
+      }
+    }
+  }
+
+  /*
+   * A connection failing only closes itself: the client sees the end of the stream.
+   * */
+  private void serve(SocketChannel channel) {
+    try (channel) {
+      serveRequests(channel);
+    } catch (IOException e) {
+      // The client went away, or the daemon is stopping
+    }
+  }
+
+  /*
+   * Evaluates every complete request of the input buffer, then writes all their responses at once.
+   * A request larger than the input buffer grows it, up to the maximum request size.
+   * */
+  private void serveRequests(SocketChannel channel) throws IOException {
+    ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+    AsciiCharSequence view = new AsciiCharSequence();
+    while (channel.read(input) >= 0) {
+      input.flip();
+      while (input.remaining() >= DaemonProtocol.LENGTH_SIZE) {
+        int length = input.getInt(input.position());
+        if (length < 0 || length > DaemonProtocol.MAX_REQUEST_SIZE) {
+          output = writeError(channel, output, "Invalid input: request size " + length);
+          flush(channel, output);
+          return;
+        }
+        int frameSize = DaemonProtocol.LENGTH_SIZE + length;
+        if (input.remaining() < frameSize) {
+          if (input.capacity() < frameSize) {
+            input = ByteBuffer.allocate(frameSize).put(input).flip();
+          }
+          break;
+        }
+        int start = input.position() + DaemonProtocol.LENGTH_SIZE;
+        input.position(start + length);
+        output = evaluate(channel, input, start, start + length, view, output);
+      }
+      input.compact();
+      flush(channel, output);
+    }
+  }
+
+  private ByteBuffer evaluate(
+      SocketChannel channel,
+      ByteBuffer input,
+      int start,
+      int end,
+      AsciiCharSequence view,
+      ByteBuffer output)
+      throws IOException {
+    CharSequence expression = expression(input, start, end, view);
+    CalculationResult result =
+        programStore == null
+            ? CalculatorService.tryCalculate(expression)
+            : programStore.tryCalculate(expression);
+    if (!result.isSuccess()) {
+      return writeError(channel, output, Main.formatError(result));
+    }
+    output = reserve(channel, output, DaemonProtocol.OK_RESPONSE_SIZE);
+    return output.put(DaemonProtocol.STATUS_OK).putInt(result.getValue());
+  }
+
+  /*
+   * ASCII expressions are lexed in place, trimmed the same way as String.trim does.
+   * */
+  private static CharSequence expression(
+      ByteBuffer input, int start, int end, AsciiCharSequence view) {
+    for (int i = start; i < end; i++) {
+      if (input.get(i) < 0) {
+        byte[] bytes = new byte[end - start];
+        input.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8).trim();
+      }
+    }
+    while (start < end && input.get(start) <= MAX_TRIMMED_BYTE) start++;
+    while (end > start && input.get(end - 1) <= MAX_TRIMMED_BYTE) end--;
+    return view.reset(input, start, end - start);
+  }
+
+  private static ByteBuffer writeError(SocketChannel channel, ByteBuffer output, String message)
+      throws IOException {
+    byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+    output = reserve(channel, output, 1 + DaemonProtocol.LENGTH_SIZE + bytes.length);
+    return output.put(DaemonProtocol.STATUS_ERROR).putInt(bytes.length).put(bytes);
+  }
+
+  /*
+   * Flushes the pending responses when they leave no room for the next one, and grows the buffer for a single larger response.
+   * */
+  private static ByteBuffer reserve(SocketChannel channel, ByteBuffer output, int size)
+      throws IOException {
+    if (output.remaining() >= size) {
+      return output;
+    }
+    flush(channel, output);
+    return output.capacity() >= size ? output : ByteBuffer.allocate(size);
+  }
+
+  private static void flush(SocketChannel channel, ByteBuffer output) throws IOException {
+    output.flip();
+    while (output.hasRemaining()) {
+      channel.write(output);
+    }
+    output.clear();
+  }
+}
@@ -0,0 +1,308 @@
+package org.code.exercise;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.model.CalculationResult;
+
+/**
+ * HTTP calculation service, so that clients do not pay a JVM start per expression.
+ *
+ * <p>Built on the JDK HTTP server, with one virtual thread per request. Endpoints:
+ *
+ * <ul>
+ *   <li>{@code POST /calculate}: the body is a single expression, answered with {@code
+ *       {"result":20}}, or with a 400 status and {@code {"error":{"type":"Syntax error","message":
+ *       "Invalid token: a","position":4}}}.
+ *   <li>{@code POST /calculate/batch}: the body holds newline-delimited expressions, answered with
+ *       one result or error per line, in input order: {@code {"results":[{"line":1,"result":5},
+ *       {"line":2,"error":{...}}],"errorCount":1}}. A bad line never fails the request, and the
+ *       results are streamed as the lines are read.
+ * </ul>
+ *
+ * <p>Error types are the ones of the command-line modes. Requests beyond the concurrency limit are
+ * rejected right away with a 503 status, instead of queuing up.
+ */
+public class CalculatorServer implements AutoCloseable {
+
+  public static final int DEFAULT_PORT = 8080;
+  public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 1024;
+  public static final Duration DEFAULT_SHUTDOWN_GRACE_PERIOD = Duration.ofSeconds(10);
+
+  private static final String CALCULATE_PATH = "/calculate";
+  private static final String BATCH_PATH = "/calculate/batch";
+  private static final String POST_METHOD = "POST";
+  private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+  // A single expression is read at once, larger bodies belong to the batch endpoint
+  private static final int MAX_EXPRESSION_BODY_SIZE = 1 << 20;
+  private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+  private static final int STATUS_OK = 200;
+  private static final int STATUS_BAD_REQUEST = 400;
+  private static final int STATUS_NOT_FOUND = 404;
+  private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+  private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+  private static final int STATUS_INTERNAL_ERROR = 500;
+  private static final int STATUS_UNAVAILABLE = 503;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Semaphore permits;
+
+  private CalculatorServer(HttpServer server, int maxConcurrentRequests, ExecutorService executor) {
+    this.server = server;
+    this.executor = executor;
+    this.permits = new Semaphore(maxConcurrentRequests);
+    server.setExecutor(executor);
+    server.createContext(CALCULATE_PATH, exchange -> handle(exchange, false));
+    server.createContext(BATCH_PATH, exchange -> handle(exchange, true));
+  }
+
+  /**
+   * Starts a server running each request on its own virtual thread.
+   *
+   * @param address address to listen on, port 0 picks a free port
+   * @param maxConcurrentRequests number of requests processed at once, the next ones are rejected
+   * @return the started server
+   * @throws IOException if the address cannot be bound
+   */
+  public static CalculatorServer start(InetSocketAddress address, int maxConcurrentRequests)
+      throws IOException {
+    return start(address, maxConcurrentRequests, Executors.newVirtualThreadPerTaskExecutor());
+  }
+
+  /**
+   * Starts a server running the requests on the given executor.
+   *
+   * <p>On JDK 21, the request bodies of the JDK HTTP server are read under a lock, which pins the
+   * carrier thread of a virtual thread while it waits for a slow client. With few CPUs, a platform
+   * thread pool avoids stalling the other requests behind a slow batch upload.
+   *
+   * @param address address to listen on, port 0 picks a free port
+   * @param maxConcurrentRequests number of requests processed at once, the next ones are rejected
+   * @param executor runs the requests, shut down when the server stops
+   * @return the started server
+   * @throws IOException if the address cannot be bound
+   */
+  public static CalculatorServer start(
+      InetSocketAddress address, int maxConcurrentRequests, ExecutorService executor)
+      throws IOException {
+    if (maxConcurrentRequests < 1) {
+      throw new IllegalArgumentException("Concurrency limit must be a positive integer");
+    }
+    CalculatorServer calculatorServer =
+        new CalculatorServer(HttpServer.create(address, 0), maxConcurrentRequests, executor);
+    calculatorServer.server.start();
+    return calculatorServer;
+  }
+
+  /** Port the server listens on. */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Stops accepting connections, and waits for the requests in progress to complete before closing
+   * them.
+   *
+   * @param gracePeriod maximum time given to the requests in progress, rounded up to the second
+   */
+  public void stop(Duration gracePeriod) {
+    long seconds = (gracePeriod.toMillis() + 999) / 1000;
+    server.stop((int) Math.min(seconds, Integer.MAX_VALUE));
+    executor.shutdownNow();
+  }
+
+  /** Stops the server with the default grace period. */
+  @Override
+  public void close() {
+    stop(DEFAULT_SHUTDOWN_GRACE_PERIOD);
+  }
+
+  private void handle(HttpExchange exchange, boolean batch) throws IOException {
+    try (exchange) {
+      String path = exchange.getRequestURI().getPath();
+      if (!path.equals(batch ? BATCH_PATH : CALCULATE_PATH)) {
+        sendError(exchange, STATUS_NOT_FOUND, "Not found", "No endpoint at " + path);
+        return;
+      }
+      if (!POST_METHOD.equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", POST_METHOD);
+        sendError(exchange, STATUS_METHOD_NOT_ALLOWED, "Method not allowed", "Use " + POST_METHOD);
+        return;
+      }
+      if (!permits.tryAcquire()) {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendError(exchange, STATUS_UNAVAILABLE, "Server busy", "Too many concurrent requests");
+        return;
+      }
+      try {
+        if (batch) {
+          calculateBatch(exchange);
+        } else {
+          calculate(exchange);
+        }
+      } finally {
+        permits.release();
+      }
+    }
+  }
+
+  private static void calculate(HttpExchange exchange) throws IOException {
+    byte[] body;
+    try (InputStream input = exchange.getRequestBody()) {
+      body = input.readNBytes(MAX_EXPRESSION_BODY_SIZE + 1);
+    }
+    if (body.length > MAX_EXPRESSION_BODY_SIZE) {
+      sendError(
+          exchange,
+          STATUS_PAYLOAD_TOO_LARGE,
+          "Invalid input",
+          "Expression is larger than " + MAX_EXPRESSION_BODY_SIZE + " bytes, use " + BATCH_PATH);
+      return;
+    }
+    StringBuilder json = new StringBuilder();
+    int status;
+    try {
+      CalculationResult result =
+          CalculatorService.tryCalculate(new String(body, StandardCharsets.UTF_8).trim());
+      json.append('{');
+      if (result.isSuccess()) {
+        json.append("\"result\":").append(result.getValue());
+        status = STATUS_OK;
+      } else {
+        appendError(json, result);
+        status = STATUS_BAD_REQUEST;
+      }
+      json.append('}');
+    } catch (RuntimeException e) {
+      json.append('{');
+      appendError(json, e);
+      json.append('}');
+      status = Main.isUnexpectedError(e) ? STATUS_INTERNAL_ERROR : STATUS_BAD_REQUEST;
+    }
+    send(exchange, status, json.toString());
+  }
+
+  /*
+   * The response is streamed while the request body is read, so that memory use does not depend on the size of the batch.
+   * */
+  private static void calculateBatch(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+    exchange.sendResponseHeaders(STATUS_OK, 0);
+    try (BufferedReader reader =
+            new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        Writer writer =
+            new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                OUTPUT_BUFFER_SIZE)) {
+      writer.write("{\"results\":[");
+      StringBuilder json = new StringBuilder();
+      long lineNumber = 0;
+      long errorCount = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        json.setLength(0);
+        if (lineNumber > 0) {
+          json.append(',');
+        }
+        json.append("{\"line\":").append(++lineNumber).append(',');
+        try {
+          CalculationResult result = CalculatorService.tryCalculate(line.trim());
+          if (result.isSuccess()) {
+            json.append("\"result\":").append(result.getValue());
+          } else {
+            errorCount++;
+            appendError(json, result);
+          }
+        } catch (RuntimeException e) {
+          errorCount++;
+          appendError(json, e);
+        }
+        json.append('}');
+        writer.append(json);
+      }
+      writer.write("],\"errorCount\":" + errorCount + "}");
+    }
+  }
+
+  private static void sendError(HttpExchange exchange, int status, String type, String message)
+      throws IOException {
+    StringBuilder json = new StringBuilder("{\"error\":{\"type\":");
+    appendString(json, type).append(",\"message\":");
+    appendString(json, message).append("}}");
+    send(exchange, status, json.toString());
+  }
+
+  private static void send(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  /*
+   * Appends "error":{"type":...,"message":...} with the same types as the command-line modes, and the position of syntax errors when known.
+   * */
+  private static void appendError(StringBuilder json, Exception e) {
+    json.append("\"error\":{\"type\":");
+    appendString(json, Main.getErrorType(e)).append(",\"message\":");
+    appendString(json, String.valueOf(e.getMessage()));
+    if (e instanceof ExpressionConverterInvalidTokenException syntaxError
+        && syntaxError.getPosition() != ExpressionConverterInvalidTokenException.UNKNOWN_POSITION) {
+      json.append(",\"position\":").append(syntaxError.getPosition());
+    }
+    json.append('}');
+  }
+
+  private static void appendError(StringBuilder json, CalculationResult result) {
+    json.append("\"error\":{\"type\":");
+    appendString(json, Main.getErrorType(result)).append(",\"message\":");
+    appendString(json, result.getMessage());
+    if (result.getPosition() != CalculationResult.UNKNOWN_POSITION) {
+      json.append(",\"position\":").append(result.getPosition());
+    }
+    json.append('}');
+  }
+
+  private static StringBuilder appendString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> json.append("\\\"");
+        case '\\' -> json.append("\\\\");
+        case '\n' -> json.append("\\n");
+        case '\r' -> json.append("\\r");
+        case '\t' -> json.append("\\t");
+        default -> {
+          if (c < ' ') {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+        }
+      }
+    }
+    return json.append('"');
+  }
+}
@@ -0,0 +1,31 @@
+package org.code.exercise;
+
+/**
+ * Binary protocol between {@link CalculatorDaemon} and {@link CalculatorClient}, over a Unix domain
+ * socket. All integers are big-endian.
+ *
+ * <ul>
+ *   <li>Request: the length of the expression on 4 bytes, followed by the expression in UTF-8.
+ *   <li>Response: a status byte. {@link #STATUS_OK} is followed by the result on 4 bytes, {@link
+ *       #STATUS_ERROR} by the length of the error message on 4 bytes and the message in UTF-8 (ex:
+ *       "Arithmetic error: Division by zero").
+ * </ul>
+ *
+ * <p>Requests can be pipelined: a client may send many requests without waiting, the responses come
+ * back in the same order.
+ */
+final class DaemonProtocol {
+
+  static final byte STATUS_OK = 0;
+  static final byte STATUS_ERROR = 1;
+
+  // Requests above this size are answered with an error, and the connection is closed
+  static final int MAX_REQUEST_SIZE = 1 << 24;
+
+  static final int LENGTH_SIZE = Integer.BYTES;
+  static final int OK_RESPONSE_SIZE = 1 + Integer.BYTES;
+
+  private DaemonProtocol() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+}
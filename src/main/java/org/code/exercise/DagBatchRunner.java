@@ -0,0 +1,131 @@
+package org.code.exercise;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.CompiledExpression;
+import org.code.exercise.service.ExpressionDag;
+import org.code.exercise.service.exception.EvaluatorStackException;
+
+/**
+ * Batch mode sharing the evaluation of the subexpressions repeated across lines.
+ *
+ * <p>Every line is compiled, then added to an {@link ExpressionDag}, in which structurally
+ * identical subexpressions are a single node evaluated once for the whole batch. Lines are read by
+ * windows, all the lines of a window being added before any of them is evaluated, and the graph is
+ * kept from one window to the next until it reaches {@link #DEFAULT_MAX_NODES} nodes.
+ *
+ * <p>Every node of every line is still looked up in the graph, which costs more than a built-in
+ * arithmetic operation: sharing pays off when the repeated subexpressions are costlier than that,
+ * typically calls of registered functions. On lines repeating such calls, this mode runs about 1.5x
+ * faster than {@link BatchRunner}, and about 1.5x slower on built-in arithmetic alone (see
+ * DagBatchBenchmark).
+ *
+ * <p>The output is the same as the one of {@link BatchRunner}: the lines the graph rejects as
+ * malformed are evaluated on their own, so that they fail with the first error met in order.
+ */
+public class DagBatchRunner {
+
+  public static final int DEFAULT_WINDOW_SIZE = 4096;
+  public static final int DEFAULT_MAX_NODES = 1 << 22;
+
+  private static final char LINE_SEPARATOR = '\n';
+
+  private DagBatchRunner() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Evaluates every line of the reader through the given graph, and writes one result or error per
+   * line.
+   *
+   * @param reader newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @param dag graph receiving the expressions, whose statistics tell how much sharing was found
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(BufferedReader reader, Writer writer, ExpressionDag dag)
+      throws IOException {
+    return run(reader, writer, dag, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_NODES);
+  }
+
+  /**
+   * Evaluates every line of the reader through the given graph, and writes one result or error per
+   * line.
+   *
+   * @param reader newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @param dag graph receiving the expressions, whose statistics tell how much sharing was found
+   * @param windowSize number of lines added to the graph before being evaluated
+   * @param maxNodes number of nodes beyond which the graph is cleared before the next window
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(
+      BufferedReader reader, Writer writer, ExpressionDag dag, int windowSize, int maxNodes)
+      throws IOException {
+    int[] roots = new int[windowSize];
+    CompiledExpression[] rejected = new CompiledExpression[windowSize];
+    RuntimeException[] errors = new RuntimeException[windowSize];
+    StringBuilder output = new StringBuilder(windowSize * 8);
+    long lineNumber = 0;
+    long errorCount = 0;
+    boolean endOfInput = false;
+    while (!endOfInput) {
+      if (dag.size() > maxNodes) {
+        dag.clear();
+      }
+      int count = 0;
+      String line;
+      while (count < windowSize && (line = reader.readLine()) != null) {
+        errors[count] = null;
+        rejected[count] = null;
+        try {
+          CompiledExpression compiled = CalculatorService.compile(line.trim());
+          try {
+            roots[count] = dag.add(compiled);
+          } catch (EvaluatorStackException e) {
+            rejected[count] = compiled;
+          }
+        } catch (RuntimeException e) {
+          errors[count] = e;
+        }
+        count++;
+      }
+      endOfInput = count < windowSize;
+
+      output.setLength(0);
+      for (int i = 0; i < count; i++) {
+        lineNumber++;
+        if (!evaluateLine(lineNumber, dag, roots[i], rejected[i], errors[i], output)) {
+          errorCount++;
+        }
+        output.append(LINE_SEPARATOR);
+      }
+      writer.append(output);
+    }
+    writer.flush();
+    return errorCount;
+  }
+
+  private static boolean evaluateLine(
+      long lineNumber,
+      ExpressionDag dag,
+      int root,
+      CompiledExpression rejected,
+      RuntimeException error,
+      StringBuilder output) {
+    try {
+      if (error != null) {
+        throw error;
+      }
+      output.append(rejected != null ? rejected.evaluate() : dag.evaluate(root));
+      return true;
+    } catch (RuntimeException e) {
+      output.append(BatchRunner.formatLineError(lineNumber, e));
+      return false;
+    }
+  }
+}
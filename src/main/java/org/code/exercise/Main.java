@@ -1,18 +1,88 @@
 package org.code.exercise;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.code.exercise.service.CalculatorPipeline;
 import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.ExpressionDag;
+import org.code.exercise.service.ParallelEvaluatorService;
+import org.code.exercise.service.ProgramStore;
+import org.code.exercise.service.StreamingCalculatorService;
 import org.code.exercise.service.exception.EvaluatorStackException;
 import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.enums.OverflowMode;
+import org.code.exercise.service.model.CalculationResult;
 
 /**
  * Entry point of the calculator application.
  *
  * <p>Parses the command-line argument, calls CalculatorService to convert and evaluate the
  * expression, and handles exception thrown with user-friendly messages.
+ *
+ * <p>With {@code --batch [file|-] [--threads N] [--mmap|--dag|--pipeline]}, evaluates
+ * newline-delimited expressions read from a file or from the standard input, one result or error
+ * per line, optionally on N threads. With {@code --mmap}, the input file is memory-mapped instead
+ * of being read line by line. With {@code --dag}, the subexpressions repeated across lines are
+ * evaluated once, and the sharing found is reported on the standard error. With {@code --pipeline},
+ * the stages of the calculation run on dedicated threads, and the activity of each stage is
+ * reported on the standard error.
+ *
+ * <p>With {@code --serve [--port N] [--max-concurrent N]}, runs the HTTP calculation service, see
+ * {@link CalculatorServer}. With {@code --daemon [--socket path] [--program-cache file]}, runs the
+ * Unix domain socket daemon, see {@link CalculatorDaemon}, keeping the compiled programs in the
+ * given file across restarts, see {@link ProgramStore}, and with {@code --client [--socket path]
+ * "<expression>"}, evaluates an expression on that daemon, or in process if no daemon is running.
+ *
+ * <p>With {@code --overflow wrap|fail|promote "<expression>"}, evaluates the expression on 64-bit
+ * integers, wrapping, failing or switching to arbitrary precision when a value does not fit.
+ *
+ * <p>With {@code --stream [file|-]}, evaluates a single expression read from a file or from the
+ * standard input in constant memory, however large it is. With {@code --parallel [file|-]
+ * [--threads N]}, evaluates a single huge expression on N threads, see {@link
+ * ParallelEvaluatorService}.
  */
 public class Main {
 
+  private static final String BATCH_OPTION = "--batch";
+  private static final String THREADS_OPTION = "--threads";
+  private static final String MMAP_OPTION = "--mmap";
+  private static final String DAG_OPTION = "--dag";
+  private static final String PIPELINE_OPTION = "--pipeline";
+  private static final String SERVE_OPTION = "--serve";
+  private static final String PORT_OPTION = "--port";
+  private static final String MAX_CONCURRENT_OPTION = "--max-concurrent";
+  private static final String DAEMON_OPTION = "--daemon";
+  private static final String CLIENT_OPTION = "--client";
+  private static final String SOCKET_OPTION = "--socket";
+  private static final String PROGRAM_CACHE_OPTION = "--program-cache";
+  private static final String OVERFLOW_OPTION = "--overflow";
+  private static final String STREAM_OPTION = "--stream";
+  private static final String PARALLEL_OPTION = "--parallel";
+  private static final String STDIN_ARGUMENT = "-";
+  private static final String UNEXPECTED_ERROR = "Unexpected error";
+  private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+  private static final Path DEFAULT_SOCKET_PATH =
+      Path.of(System.getProperty("java.io.tmpdir"), "calculate.sock");
+
   private static final Map<Class<? extends Exception>, String> ERROR_PREFIXES =
       Map.of(
           ExpressionConverterInvalidTokenException.class, "Syntax error",
@@ -21,6 +91,34 @@ public class Main {
           ArithmeticException.class, "Arithmetic error");
 
   public static void main(String[] args) {
+    if (args.length >= 1 && BATCH_OPTION.equals(args[0])) {
+      executeBatch(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length >= 1 && SERVE_OPTION.equals(args[0])) {
+      executeServer(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length >= 1 && DAEMON_OPTION.equals(args[0])) {
+      executeDaemon(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length >= 1 && CLIENT_OPTION.equals(args[0])) {
+      executeClient(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length >= 1 && args.length <= 2 && STREAM_OPTION.equals(args[0])) {
+      executeStream(args.length == 2 ? args[1] : STDIN_ARGUMENT);
+      return;
+    }
+    if (args.length >= 1 && PARALLEL_OPTION.equals(args[0])) {
+      executeParallel(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length == 3 && OVERFLOW_OPTION.equals(args[0])) {
+      executeWideCalculation(parseOverflowMode(args[1]), args[2].trim());
+      return;
+    }
     if (args.length != 1) {
       printUsage();
       return;
@@ -29,18 +127,413 @@ public class Main {
     executeCalculation(expression);
   }
 
+  private static void executeBatch(String[] options) {
+    String input = STDIN_ARGUMENT;
+    int threads = 1;
+    boolean mapped = false;
+    boolean shared = false;
+    boolean pipelined = false;
+    for (int i = 0; i < options.length; i++) {
+      if (THREADS_OPTION.equals(options[i])) {
+        // Without a value, the option must not be taken for the input file
+        if (i + 1 == options.length) {
+          printUsage();
+          return;
+        }
+        threads = parseThreads(options[++i]);
+      } else if (MMAP_OPTION.equals(options[i])) {
+        mapped = true;
+      } else if (DAG_OPTION.equals(options[i])) {
+        shared = true;
+      } else if (PIPELINE_OPTION.equals(options[i])) {
+        pipelined = true;
+      } else if (i == 0) {
+        input = options[i];
+      } else {
+        printUsage();
+        return;
+      }
+    }
+
+    if (mapped && STDIN_ARGUMENT.equals(input)) {
+      printErrorAndExit("Invalid input: " + MMAP_OPTION + " requires an input file");
+    }
+    if (shared && (mapped || threads > 1)) {
+      printErrorAndExit(
+          "Invalid input: "
+              + DAG_OPTION
+              + " cannot be combined with "
+              + MMAP_OPTION
+              + " or threads");
+    }
+    if (pipelined && (mapped || shared || threads > 1)) {
+      printErrorAndExit(
+          "Invalid input: "
+              + PIPELINE_OPTION
+              + " cannot be combined with "
+              + MMAP_OPTION
+              + ", "
+              + DAG_OPTION
+              + " or threads");
+    }
+
+    long errorCount;
+    Writer writer =
+        new BufferedWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+    try {
+      if (shared) {
+        errorCount = runSharedBatch(input, writer);
+      } else if (pipelined) {
+        errorCount = runPipelinedBatch(input, writer);
+      } else {
+        errorCount =
+            mapped
+                ? MappedBatchRunner.run(Path.of(input), writer, threads)
+                : runBatch(input, writer, threads);
+      }
+    } catch (IOException e) {
+      printErrorAndExit("Input error: " + e.getMessage());
+      return;
+    }
+    // Bad lines are reported inline; the exit status only tells whether the whole batch succeeded
+    if (errorCount > 0) {
+      System.exit(1);
+    }
+  }
+
+  private static long runBatch(String input, Writer writer, int threads) throws IOException {
+    try (BufferedReader reader = openBatchInput(input)) {
+      return BatchRunner.run(reader, writer, threads);
+    }
+  }
+
+  private static long runSharedBatch(String input, Writer writer) throws IOException {
+    ExpressionDag dag = new ExpressionDag();
+    long errorCount;
+    try (BufferedReader reader = openBatchInput(input)) {
+      errorCount = DagBatchRunner.run(reader, writer, dag);
+    }
+    long added = dag.getAddedNodeCount();
+    long shared = dag.getSharedNodeCount();
+    System.err.printf(
+        Locale.ROOT,
+        "Shared subexpressions: %d of %d nodes (%.1f%%)%n",
+        shared,
+        added,
+        added == 0 ? 0.0 : 100.0 * shared / added);
+    return errorCount;
+  }
+
+  private static long runPipelinedBatch(String input, Writer writer) throws IOException {
+    List<CalculatorPipeline.StageStats> stageStats = new ArrayList<>();
+    long errorCount;
+    try (BufferedReader reader = openBatchInput(input)) {
+      errorCount =
+          PipelineBatchRunner.run(
+              reader,
+              writer,
+              CalculatorPipeline.DEFAULT_CAPACITY,
+              CalculatorPipeline.DEFAULT_BATCH_SIZE,
+              stageStats);
+    }
+    for (CalculatorPipeline.StageStats stats : stageStats) {
+      System.err.printf(
+          Locale.ROOT,
+          "Stage %s: %d processed, %d of %d queued, idle %.1f ms, backpressure %.1f ms%n",
+          stats.stage(),
+          stats.processed(),
+          stats.queued(),
+          stats.capacity(),
+          stats.idleNanos() / 1e6,
+          stats.backpressureNanos() / 1e6);
+    }
+    return errorCount;
+  }
+
+  private static int parseThreads(String value) {
+    return parseInteger(value, 1, "number of threads must be a positive integer");
+  }
+
+  /*
+   * The server keeps the JVM alive once started, and is stopped gracefully on SIGTERM or Ctrl+C.
+   * */
+  private static void executeServer(String[] options) {
+    int port = CalculatorServer.DEFAULT_PORT;
+    int maxConcurrentRequests = CalculatorServer.DEFAULT_MAX_CONCURRENT_REQUESTS;
+    for (int i = 0; i < options.length; i++) {
+      if (PORT_OPTION.equals(options[i]) && i + 1 < options.length) {
+        port = parseInteger(options[++i], 0, "port must be a non-negative integer");
+      } else if (MAX_CONCURRENT_OPTION.equals(options[i]) && i + 1 < options.length) {
+        maxConcurrentRequests =
+            parseInteger(options[++i], 1, "concurrency limit must be a positive integer");
+      } else {
+        printUsage();
+        return;
+      }
+    }
+
+    CalculatorServer server;
+    try {
+      server = CalculatorServer.start(new InetSocketAddress(port), maxConcurrentRequests);
+    } catch (IOException e) {
+      printErrorAndExit("Server error: " + e.getMessage());
+      return;
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    System.out.println("Listening on http://localhost:" + server.getPort());
+  }
+
+  private static void executeDaemon(String[] options) {
+    Path socketPath = DEFAULT_SOCKET_PATH;
+    Path programCache = null;
+    for (int i = 0; i < options.length; i++) {
+      if (SOCKET_OPTION.equals(options[i]) && i + 1 < options.length) {
+        socketPath = Path.of(options[++i]);
+      } else if (PROGRAM_CACHE_OPTION.equals(options[i]) && i + 1 < options.length) {
+        programCache = Path.of(options[++i]);
+      } else {
+        printUsage();
+        return;
+      }
+    }
+
+    ProgramStore programStore = null;
+    CalculatorDaemon daemon;
+    try {
+      programStore = programCache == null ? null : ProgramStore.open(programCache);
+      daemon = CalculatorDaemon.start(socketPath, programStore);
+    } catch (IOException e) {
+      closeProgramStore(programStore);
+      printErrorAndExit("Daemon error: " + e.getMessage());
+      return;
+    }
+    ProgramStore store = programStore;
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  closeDaemon(daemon);
+                  closeProgramStore(store);
+                }));
+    System.out.println("Listening on " + daemon.getSocketPath());
+    if (programStore != null) {
+      System.out.println(
+          "Program cache: "
+              + programStore.size()
+              + " programs loaded, "
+              + programStore.getDiscardedCount()
+              + " corrupt entries skipped");
+    }
+  }
+
+  private static void closeDaemon(CalculatorDaemon daemon) {
+    try {
+      daemon.close();
+    } catch (IOException e) {
+      System.err.println("Daemon error: " + e.getMessage());
+    }
+  }
+
+  private static void closeProgramStore(ProgramStore programStore) {
+    if (programStore == null) {
+      return;
+    }
+    try {
+      programStore.close();
+    } catch (IOException e) {
+      System.err.println("Program cache error: " + e.getMessage());
+    }
+  }
+
+  /*
+   * Same output as the single expression mode, whether a daemon answered or not.
+   * */
+  private static void executeClient(String[] options) {
+    Path socketPath = DEFAULT_SOCKET_PATH;
+    String expression;
+    if (options.length == 3 && SOCKET_OPTION.equals(options[0])) {
+      socketPath = Path.of(options[1]);
+      expression = options[2];
+    } else if (options.length == 1) {
+      expression = options[0];
+    } else {
+      printUsage();
+      return;
+    }
+
+    CalculatorClient.Response response;
+    try {
+      response = CalculatorClient.calculateOrFallback(socketPath, expression);
+    } catch (IOException e) {
+      printErrorAndExit("Daemon error: " + e.getMessage());
+      return;
+    }
+    if (response.isSuccess()) {
+      System.out.println("Result: " + response.result());
+    } else {
+      printErrorAndExit(response.error());
+    }
+  }
+
+  private static int parseInteger(String value, int min, String errorMessage) {
+    try {
+      int number = Integer.parseInt(value);
+      if (number >= min) {
+        return number;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    printErrorAndExit("Invalid input: " + errorMessage);
+    return min;
+  }
+
+  private static BufferedReader openBatchInput(String input) throws IOException {
+    if (STDIN_ARGUMENT.equals(input)) {
+      return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    }
+    return Files.newBufferedReader(Path.of(input), StandardCharsets.UTF_8);
+  }
+
   private static void executeCalculation(String expression) {
     try {
       int result = CalculatorService.calculate(expression);
       System.out.println("Result: " + result);
     } catch (Exception e) {
-      String prefix = ERROR_PREFIXES.getOrDefault(e.getClass(), "Unexpected error");
-      printErrorAndExit(prefix + ": " + e.getMessage());
+      printErrorAndExit(formatError(e));
+    }
+  }
+
+  private static void executeStream(String input) {
+    try (ReadableByteChannel channel =
+        STDIN_ARGUMENT.equals(input)
+            ? Channels.newChannel(System.in)
+            : FileChannel.open(Path.of(input), StandardOpenOption.READ)) {
+      int result = StreamingCalculatorService.calculate(channel);
+      System.out.println("Result: " + result);
+    } catch (IOException e) {
+      printErrorAndExit("Input error: " + e.getMessage());
+    } catch (Exception e) {
+      printErrorAndExit(formatError(e));
+    }
+  }
+
+  private static void executeParallel(String[] options) {
+    String input = STDIN_ARGUMENT;
+    int threads = Runtime.getRuntime().availableProcessors();
+    for (int i = 0; i < options.length; i++) {
+      if (THREADS_OPTION.equals(options[i])) {
+        // Without a value, the option must not be taken for the input file
+        if (i + 1 == options.length) {
+          printUsage();
+          return;
+        }
+        threads = parseThreads(options[++i]);
+      } else if (i == 0) {
+        input = options[i];
+      } else {
+        printUsage();
+        return;
+      }
+    }
+
+    String expression;
+    try (BufferedReader reader = openBatchInput(input)) {
+      StringBuilder builder = new StringBuilder();
+      char[] buffer = new char[OUTPUT_BUFFER_SIZE];
+      int count;
+      while ((count = reader.read(buffer)) >= 0) {
+        builder.append(buffer, 0, count);
+      }
+      expression = builder.toString().trim();
+    } catch (IOException e) {
+      printErrorAndExit("Input error: " + e.getMessage());
+      return;
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      int result =
+          ParallelEvaluatorService.evaluate(
+              CalculatorService.compile(expression),
+              new int[0],
+              pool,
+              ParallelEvaluatorService.DEFAULT_THRESHOLD);
+      System.out.println("Result: " + result);
+    } catch (Exception e) {
+      printErrorAndExit(formatError(e));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static void executeWideCalculation(OverflowMode mode, String expression) {
+    try {
+      Number result = CalculatorService.calculate(expression, mode);
+      System.out.println("Result: " + result);
+    } catch (Exception e) {
+      printErrorAndExit(formatError(e));
     }
   }
 
+  private static OverflowMode parseOverflowMode(String value) {
+    try {
+      return OverflowMode.valueOf(value.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      printErrorAndExit("Invalid input: overflow mode must be one of wrap, fail or promote");
+      return OverflowMode.WRAP;
+    }
+  }
+
+  static String formatError(Exception e) {
+    String message = getErrorType(e) + ": " + e.getMessage();
+    if (e instanceof ExpressionConverterInvalidTokenException syntaxError
+        && syntaxError.getPosition() != ExpressionConverterInvalidTokenException.UNKNOWN_POSITION) {
+      message += " (at position " + syntaxError.getPosition() + ")";
+    }
+    return message;
+  }
+
+  /*
+   * Same format as for the exception the failed result stands for.
+   * */
+  static String formatError(CalculationResult result) {
+    String message = getErrorType(result) + ": " + result.getMessage();
+    if (result.getPosition() != CalculationResult.UNKNOWN_POSITION) {
+      message += " (at position " + result.getPosition() + ")";
+    }
+    return message;
+  }
+
+  /*
+   * Category of an error (ex: "Syntax error"), shared by all the modes.
+   * */
+  static String getErrorType(Exception e) {
+    return ERROR_PREFIXES.getOrDefault(e.getClass(), UNEXPECTED_ERROR);
+  }
+
+  static String getErrorType(CalculationResult result) {
+    return ERROR_PREFIXES.getOrDefault(result.getError().getExceptionType(), UNEXPECTED_ERROR);
+  }
+
+  static boolean isUnexpectedError(Exception e) {
+    return !ERROR_PREFIXES.containsKey(e.getClass());
+  }
+
   private static void printUsage() {
     System.out.println("Usage: java -jar calculate.jar \"<expression>\"");
+    System.out.println(
+        "       java -jar calculate.jar --overflow wrap|fail|promote \"<expression>\"");
+    System.out.println(
+        "       java -jar calculate.jar --batch [file|-] [--threads N]"
+            + " [--mmap|--dag|--pipeline]");
+    System.out.println("       java -jar calculate.jar --stream [file|-]");
+    System.out.println("       java -jar calculate.jar --parallel [file|-] [--threads N]");
+    System.out.println("       java -jar calculate.jar --serve [--port N] [--max-concurrent N]");
+    System.out.println(
+        "       java -jar calculate.jar --daemon [--socket path] [--program-cache file]");
+    System.out.println("       java -jar calculate.jar --client [--socket path] \"<expression>\"");
     System.out.println("Example: java -jar calculate.jar \"3 * -2 + 6\"");
   }
 
@@ -0,0 +1,238 @@
+package org.code.exercise;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.model.AsciiCharSequence;
+import org.code.exercise.service.model.CalculationResult;
+
+/**
+ * Batch mode reading its input file through memory mapping instead of String lines.
+ *
+ * <p>The file is mapped region by region with {@link FileChannel#map}, each region ending on a line
+ * separator, and each region is evaluated by a worker thread. Expressions are lexed straight from
+ * the mapped bytes: no String is built for a line, except for lines holding non-ASCII bytes, which
+ * are decoded as UTF-8 like the line-based batch mode does.
+ *
+ * <p>The output is the same as the one of {@link BatchRunner}. As line numbers are only known once
+ * all the previous regions are counted, workers record where the errors are, and the "Line N: "
+ * prefix is inserted when the region is written.
+ */
+public class MappedBatchRunner {
+
+  public static final int DEFAULT_REGION_SIZE = 4 << 20;
+
+  // Number of regions in flight per worker thread, enough to keep the workers busy while the
+  // oldest region is written
+  private static final int REGIONS_IN_FLIGHT_PER_THREAD = 2;
+
+  private static final byte LINE_FEED = '\n';
+  private static final byte CARRIAGE_RETURN = '\r';
+  // Bytes removed by String.trim
+  private static final byte MAX_TRIMMED_BYTE = ' ';
+
+  private MappedBatchRunner() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Evaluates every line of a file on {@code parallelism} threads, and writes one result or error
+   * per line in input order.
+   *
+   * @param file newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @param parallelism number of worker threads
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(Path file, Writer writer, int parallelism) throws IOException {
+    int threads = Math.max(parallelism, 1);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return run(
+          channel, writer, pool, threads * REGIONS_IN_FLIGHT_PER_THREAD, DEFAULT_REGION_SIZE);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Evaluates every line of a file channel on the given executor, and writes one result or error
+   * per line in input order.
+   *
+   * @param channel newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @param executor pool evaluating the regions
+   * @param maxRegionsInFlight bound of the reorder window
+   * @param regionSize target number of bytes of a region, extended when a single line is longer
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(
+      FileChannel channel,
+      Writer writer,
+      ExecutorService executor,
+      int maxRegionsInFlight,
+      int regionSize)
+      throws IOException {
+    Deque<Future<RegionResult>> inFlight = new ArrayDeque<>(maxRegionsInFlight);
+    long[] lineOffset = {0};
+    long errorCount = 0;
+    long position = 0;
+    long size = channel.size();
+    while (position < size) {
+      ByteBuffer region = mapRegion(channel, position, regionSize);
+      position += region.limit();
+      if (inFlight.size() >= maxRegionsInFlight) {
+        errorCount += writeRegion(inFlight.poll(), writer, lineOffset);
+      }
+      inFlight.add(executor.submit(() -> evaluateRegion(region)));
+    }
+    while (!inFlight.isEmpty()) {
+      errorCount += writeRegion(inFlight.poll(), writer, lineOffset);
+    }
+    writer.flush();
+    return errorCount;
+  }
+
+  /*
+   * Maps the bytes from the given position up to the last line feed within the region size.
+   * If a single line is longer than the region, the region is doubled until it holds the whole line.
+   * */
+  private static ByteBuffer mapRegion(FileChannel channel, long position, int regionSize)
+      throws IOException {
+    long remaining = channel.size() - position;
+    long length = Math.min(regionSize, remaining);
+    while (true) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      if (length == remaining) {
+        return buffer;
+      }
+      for (int i = buffer.limit() - 1; i >= 0; i--) {
+        if (buffer.get(i) == LINE_FEED) {
+          return buffer.slice(0, i + 1);
+        }
+      }
+      if (length >= Integer.MAX_VALUE) {
+        throw new IOException("Line starting at byte " + position + " is longer than 2GB");
+      }
+      length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), remaining);
+    }
+  }
+
+  // Output of a region, with the offsets in the output where a "Line N: " prefix must be inserted
+  private record RegionResult(
+      String output, int lineCount, int errorCount, int[] errorOffsets, int[] errorLines) {}
+
+  /*
+   * Lines end with "\n", "\r\n" or "\r", like for BufferedReader.readLine.
+   * */
+  private static RegionResult evaluateRegion(ByteBuffer region) {
+    StringBuilder output = new StringBuilder(region.limit() / 2 + 16);
+    AsciiCharSequence view = new AsciiCharSequence();
+    int[] errorOffsets = new int[16];
+    int[] errorLines = new int[16];
+    int errorCount = 0;
+    int lineCount = 0;
+    int limit = region.limit();
+    int i = 0;
+    while (i < limit) {
+      int start = i;
+      boolean ascii = true;
+      byte b;
+      while (i < limit && (b = region.get(i)) != LINE_FEED && b != CARRIAGE_RETURN) {
+        ascii &= b >= 0;
+        i++;
+      }
+      int end = i;
+      if (i < limit) {
+        boolean crlf =
+            region.get(i) == CARRIAGE_RETURN && i + 1 < limit && region.get(i + 1) == LINE_FEED;
+        i += crlf ? 2 : 1;
+      }
+      lineCount++;
+
+      int errorOffset = output.length();
+      if (!evaluateLine(region, start, end, ascii, view, output)) {
+        if (errorCount == errorOffsets.length) {
+          errorOffsets = Arrays.copyOf(errorOffsets, errorCount * 2);
+          errorLines = Arrays.copyOf(errorLines, errorCount * 2);
+        }
+        errorOffsets[errorCount] = errorOffset;
+        errorLines[errorCount] = lineCount;
+        errorCount++;
+      }
+      output.append((char) LINE_FEED);
+    }
+    return new RegionResult(output.toString(), lineCount, errorCount, errorOffsets, errorLines);
+  }
+
+  /*
+   * Appends the result of a line, or its error without the line number. Returns false if the line failed.
+   * The line is trimmed the same way as String.trim does in the line-based mode.
+   * */
+  private static boolean evaluateLine(
+      ByteBuffer region,
+      int start,
+      int end,
+      boolean ascii,
+      AsciiCharSequence view,
+      StringBuilder output) {
+    CalculationResult result;
+    if (ascii) {
+      while (start < end && region.get(start) <= MAX_TRIMMED_BYTE) start++;
+      while (end > start && region.get(end - 1) <= MAX_TRIMMED_BYTE) end--;
+      result = CalculatorService.tryCalculate(view.reset(region, start, end - start));
+    } else {
+      byte[] bytes = new byte[end - start];
+      region.get(start, bytes);
+      result = CalculatorService.tryCalculate(new String(bytes, StandardCharsets.UTF_8).trim());
+    }
+    if (result.isSuccess()) {
+      output.append(result.getValue());
+    } else {
+      output.append(Main.formatError(result));
+    }
+    return result.isSuccess();
+  }
+
+  private static long writeRegion(Future<RegionResult> future, Writer writer, long[] lineOffset)
+      throws IOException {
+    RegionResult result;
+    try {
+      result = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a batch region");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+      if (e.getCause() instanceof Error error) throw error;
+      throw new IOException(e.getCause());
+    }
+
+    String output = result.output();
+    int written = 0;
+    for (int i = 0; i < result.errorCount(); i++) {
+      int offset = result.errorOffsets()[i];
+      writer.write(output, written, offset - written);
+      writer.write("Line " + (lineOffset[0] + result.errorLines()[i]) + ": ");
+      written = offset;
+    }
+    writer.write(output, written, output.length() - written);
+    lineOffset[0] += result.lineCount();
+    return result.errorCount();
+  }
+}
@@ -0,0 +1,96 @@
+package org.code.exercise;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import org.code.exercise.service.CalculatorPipeline;
+
+/**
+ * Batch mode running the lexer, the conversion and the evaluation of the lines on three dedicated
+ * threads, see {@link CalculatorPipeline}.
+ *
+ * <p>The calling thread reads the lines and the evaluation thread writes the results, so that
+ * reading, writing and every stage overlap. Unlike the parallel mode of {@link BatchRunner}, lines
+ * are not grouped into chunks: each line goes through the stages as soon as it is read, and is
+ * written as soon as it is evaluated, in input order without any reordering.
+ *
+ * <p>The output is the same as the one of {@link BatchRunner}.
+ */
+public class PipelineBatchRunner {
+
+  private static final char LINE_SEPARATOR = '\n';
+
+  private PipelineBatchRunner() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Evaluates every line of the reader through a pipeline with the default capacity, and writes one
+   * result or error per line.
+   *
+   * @param reader newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(BufferedReader reader, Writer writer) throws IOException {
+    return run(
+        reader,
+        writer,
+        CalculatorPipeline.DEFAULT_CAPACITY,
+        CalculatorPipeline.DEFAULT_BATCH_SIZE,
+        null);
+  }
+
+  /**
+   * Evaluates every line of the reader through a pipeline, and writes one result or error per line.
+   *
+   * @param reader newline-delimited expressions
+   * @param writer destination of the results, flushed once the input is exhausted
+   * @param capacity number of lines each queue of the pipeline holds
+   * @param batchSize number of lines handed over at once between two stages
+   * @param stats receives the activity of each stage once the input is exhausted, or null
+   * @return the number of lines that failed
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static long run(
+      BufferedReader reader,
+      Writer writer,
+      int capacity,
+      int batchSize,
+      List<CalculatorPipeline.StageStats> stats)
+      throws IOException {
+    long[] errorCount = new long[1];
+    CalculatorPipeline pipeline =
+        CalculatorPipeline.start(
+            (sequence, result) -> {
+              if (result.isSuccess()) {
+                writer.write(Integer.toString(result.getValue()));
+              } else {
+                writer.write(BatchRunner.formatLineError(sequence + 1, result));
+                errorCount[0]++;
+              }
+              writer.write(LINE_SEPARATOR);
+            },
+            capacity,
+            batchSize);
+    // A failure of the handler raised on close is suppressed by a failure of the input
+    try (pipeline) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        pipeline.submit(line.trim());
+        // Lines read so far are handed over when the next ones are not there yet
+        if (!reader.ready()) {
+          pipeline.flush();
+        }
+      }
+    }
+    if (stats != null) {
+      stats.addAll(pipeline.getStageStats());
+    }
+    // The evaluation thread has ended, so its writes and error count are visible here
+    writer.flush();
+    return errorCount[0];
+  }
+}
@@ -0,0 +1,365 @@
+package org.code.exercise.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.helper.CalculatorUtils;
+
+/**
+ * Compiles postfix programs into JVM bytecode, for formulas evaluated so often that the dispatch of
+ * the interpreter matters.
+ *
+ * <p>Each program becomes a hidden class implementing {@link ExpressionFunction}, whose method is
+ * the straight-line translation of the program: one bytecode instruction per push or operator, so
+ * that the JIT compiler can inline and constant-fold the whole formula. Hidden classes are not
+ * strongly linked to their class loader: a compiled formula is unloaded once the function is no
+ * longer referenced.
+ *
+ * <p>Results and errors are the same as the ones of {@link CompiledExpression#evaluate(int[])}.
+ */
+public final class BytecodeCompiler {
+
+  private static final String CLASS_NAME = "org/code/exercise/service/GeneratedExpression";
+  private static final String COMPILER_NAME = "org/code/exercise/service/BytecodeCompiler";
+  private static final String FUNCTION_NAME = "org/code/exercise/service/ExpressionFunction";
+
+  // The JVM limits the bytecode of a method to 64KB
+  private static final int MAX_CODE_LENGTH = 65535;
+  // Largest bytecode emitted for a single instruction of the program (aload_1, sipush, iaload, or
+  // bipush and invokestatic)
+  private static final int MAX_INSTRUCTION_LENGTH = 5;
+  // Bytecode emitted around the program: the check of the number of values and the return
+  private static final int PROLOGUE_LENGTH = 9;
+
+  private BytecodeCompiler() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Compiles a program into a function running its bytecode translation.
+   *
+   * <p>Programs that cannot be translated, because they are invalid (ex: missing operand) or larger
+   * than the JVM allows for a method, are not compiled: the returned function runs them on the
+   * interpreter, and raises its errors.
+   *
+   * @param expression compiled postfix program
+   * @return function computing the program
+   */
+  public static ExpressionFunction compile(CompiledExpression expression) {
+    if (!isTranslatable(expression)) {
+      return expression::evaluate;
+    }
+    byte[] classFile = new ClassFileWriter(expression).write();
+    try {
+      Class<?> generated = MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+      return (ExpressionFunction) generated.getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot load the compiled expression", e);
+    }
+  }
+
+  /*
+   * Called by the generated code, with the same message as the interpreter.
+   * */
+  static void checkValueCount(int count, int expected) {
+    if (count != expected) {
+      throw new IllegalArgumentException("Expected " + expected + " variable values, got " + count);
+    }
+  }
+
+  /*
+   * Called by the generated code instead of idiv, to keep the message of the interpreter.
+   * */
+  static int divide(int a, int b) {
+    return CalculatorUtils.applyOperator(a, b, CalculatorUtils.OPCODE_DIV);
+  }
+
+  /*
+   * Called by the generated code for the binary operators without a matching instruction, the opcode being pushed
+   * as a third argument.
+   * */
+  static int apply(int a, int b, int opcode) {
+    return CalculatorUtils.applyOperator(a, b, opcode);
+  }
+
+  /*
+   * Called by the generated code for the unary operators without a matching instruction.
+   * */
+  static int applyUnary(int a, int opcode) {
+    return CalculatorUtils.applyUnaryOperator(a, opcode);
+  }
+
+  /*
+   * Bytecode that would fail the verifier is never generated: an invalid stack is left to the interpreter to report.
+   * */
+  private static boolean isTranslatable(CompiledExpression expression) {
+    if ((long) expression.opcodes.length * MAX_INSTRUCTION_LENGTH + PROLOGUE_LENGTH
+        > MAX_CODE_LENGTH) {
+      return false;
+    }
+    try {
+      EvaluatorService.validateProgramStack(expression);
+      return true;
+    } catch (EvaluatorStackException e) {
+      return false;
+    }
+  }
+
+  /*
+   * Writes the class file of a final class with a no-argument constructor and the applyAsInt method.
+   * The method has no branch, so no stack map frame is needed.
+   * */
+  private static final class ClassFileWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int JAVA_21_VERSION = 65;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int IALOAD = 0x2e;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int INEG = 0x74;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int ARRAYLENGTH = 0xbe;
+
+    private final CompiledExpression expression;
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1;
+
+    ClassFileWriter(CompiledExpression expression) {
+      this.expression = expression;
+    }
+
+    byte[] write() {
+      try {
+        byte[] constructorCode = constructorCode();
+        byte[] functionCode = functionCode();
+        int thisClass = classConstant(CLASS_NAME);
+        int superClass = classConstant("java/lang/Object");
+        int functionInterface = classConstant(FUNCTION_NAME);
+        int codeName = utf8Constant("Code");
+        int constructorName = utf8Constant("<init>");
+        int constructorType = utf8Constant("()V");
+        int functionName = utf8Constant("applyAsInt");
+        int functionType = utf8Constant("([I)I");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + functionCode.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(0);
+        out.writeShort(JAVA_21_VERSION);
+        out.writeShort(constantCount);
+        constantPoolBytes.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(functionInterface);
+        out.writeShort(0);
+        out.writeShort(2);
+        writeMethod(out, constructorName, constructorType, codeName, 1, 1, constructorCode);
+        writeMethod(
+            out,
+            functionName,
+            functionType,
+            codeName,
+            // Loading a variable pushes the array and the index above the current operands
+            Math.max(expression.maxStackDepth, 1) + 2,
+            2,
+            functionCode);
+        out.writeShort(0);
+        return bytes.toByteArray();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private byte[] constructorCode() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream code = new DataOutputStream(bytes);
+      code.writeByte(ALOAD_0);
+      code.writeByte(INVOKESPECIAL);
+      code.writeShort(methodConstant("java/lang/Object", "<init>", "()V"));
+      code.writeByte(RETURN);
+      return bytes.toByteArray();
+    }
+
+    private byte[] functionCode() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(expression.opcodes.length * 3);
+      DataOutputStream code = new DataOutputStream(bytes);
+      code.writeByte(ALOAD_1);
+      code.writeByte(ARRAYLENGTH);
+      writeInt(code, expression.variables.length);
+      code.writeByte(INVOKESTATIC);
+      code.writeShort(methodConstant(COMPILER_NAME, "checkValueCount", "(II)V"));
+
+      int constantIndex = 0;
+      for (byte opcode : expression.opcodes) {
+        switch (opcode) {
+          case CalculatorUtils.OPCODE_PUSH -> writeInt(code, expression.constants[constantIndex++]);
+          case CalculatorUtils.OPCODE_LOAD -> {
+            code.writeByte(ALOAD_1);
+            writeInt(code, expression.constants[constantIndex++]);
+            code.writeByte(IALOAD);
+          }
+          case CalculatorUtils.OPCODE_ADD -> code.writeByte(IADD);
+          case CalculatorUtils.OPCODE_SUB -> code.writeByte(ISUB);
+          case CalculatorUtils.OPCODE_MUL -> code.writeByte(IMUL);
+          case CalculatorUtils.OPCODE_DIV -> {
+            code.writeByte(INVOKESTATIC);
+            code.writeShort(methodConstant(COMPILER_NAME, "divide", "(II)I"));
+          }
+          case CalculatorUtils.OPCODE_NEG -> code.writeByte(INEG);
+          case CalculatorUtils.OPCODE_MIN -> {
+            code.writeByte(INVOKESTATIC);
+            code.writeShort(methodConstant("java/lang/Math", "min", "(II)I"));
+          }
+          case CalculatorUtils.OPCODE_MAX -> {
+            code.writeByte(INVOKESTATIC);
+            code.writeShort(methodConstant("java/lang/Math", "max", "(II)I"));
+          }
+          default -> {
+            writeInt(code, opcode);
+            code.writeByte(INVOKESTATIC);
+            code.writeShort(
+                CalculatorUtils.getOperatorArity(opcode) == 1
+                    ? methodConstant(COMPILER_NAME, "applyUnary", "(II)I")
+                    : methodConstant(COMPILER_NAME, "apply", "(III)I"));
+          }
+        }
+      }
+      code.writeByte(IRETURN);
+      return bytes.toByteArray();
+    }
+
+    /*
+     * Uses the shortest instruction pushing the value: iconst, bipush, sipush, or ldc from the constant pool.
+     * */
+    private void writeInt(DataOutputStream code, int value) throws IOException {
+      if (value >= -1 && value <= 5) {
+        code.writeByte(ICONST_0 + value);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        code.writeByte(BIPUSH);
+        code.writeByte(value);
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        code.writeByte(SIPUSH);
+        code.writeShort(value);
+      } else {
+        int index = integerConstant(value);
+        if (index <= 0xff) {
+          code.writeByte(LDC);
+          code.writeByte(index);
+        } else {
+          code.writeByte(LDC_W);
+          code.writeShort(index);
+        }
+      }
+    }
+
+    private static void writeMethod(
+        DataOutputStream out,
+        int name,
+        int type,
+        int codeName,
+        int maxStack,
+        int maxLocals,
+        byte[] code)
+        throws IOException {
+      out.writeShort(ACC_PUBLIC);
+      out.writeShort(name);
+      out.writeShort(type);
+      out.writeShort(1);
+      out.writeShort(codeName);
+      // Code attribute: max_stack, max_locals, code, no exception table and no attribute
+      out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+      out.writeShort(maxStack);
+      out.writeShort(maxLocals);
+      out.writeInt(code.length);
+      out.write(code);
+      out.writeShort(0);
+      out.writeShort(0);
+    }
+
+    private int utf8Constant(String value) throws IOException {
+      Integer index = constantIndexes.get("U" + value);
+      if (index != null) {
+        return index;
+      }
+      constantPool.writeByte(CONSTANT_UTF8);
+      constantPool.writeUTF(value);
+      return register("U" + value);
+    }
+
+    private int integerConstant(int value) throws IOException {
+      Integer index = constantIndexes.get("I" + value);
+      if (index != null) {
+        return index;
+      }
+      constantPool.writeByte(CONSTANT_INTEGER);
+      constantPool.writeInt(value);
+      return register("I" + value);
+    }
+
+    private int classConstant(String name) throws IOException {
+      Integer index = constantIndexes.get("C" + name);
+      if (index != null) {
+        return index;
+      }
+      int nameIndex = utf8Constant(name);
+      constantPool.writeByte(CONSTANT_CLASS);
+      constantPool.writeShort(nameIndex);
+      return register("C" + name);
+    }
+
+    private int methodConstant(String owner, String name, String type) throws IOException {
+      String key = "M" + owner + '.' + name + type;
+      Integer index = constantIndexes.get(key);
+      if (index != null) {
+        return index;
+      }
+      int ownerIndex = classConstant(owner);
+      int nameIndex = utf8Constant(name);
+      int typeIndex = utf8Constant(type);
+      constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+      constantPool.writeShort(nameIndex);
+      constantPool.writeShort(typeIndex);
+      int nameAndType = register("N" + name + type);
+      constantPool.writeByte(CONSTANT_METHODREF);
+      constantPool.writeShort(ownerIndex);
+      constantPool.writeShort(nameAndType);
+      return register(key);
+    }
+
+    private int register(String key) {
+      int index = constantCount++;
+      constantIndexes.put(key, index);
+      return index;
+    }
+  }
+}
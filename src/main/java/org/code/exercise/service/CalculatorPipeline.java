@@ -0,0 +1,326 @@
+package org.code.exercise.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.code.exercise.service.helper.enums.CalculationError;
+import org.code.exercise.service.model.CalculationResult;
+import org.code.exercise.service.model.TokenStream;
+import org.code.exercise.service.monitoring.CalculatorMetrics;
+import org.code.exercise.service.monitoring.Stage;
+
+/**
+ * Calculates a stream of expressions with each stage of {@link CalculatorService#tryCalculate} on
+ * its own thread: the lexer, the conversion and the evaluation run at the same time on successive
+ * expressions.
+ *
+ * <p>Stages are connected by {@link SpscRingBuffer} queues of preallocated slots: an expression
+ * crosses them as its source text, then as its {@link TokenStream}, then as its {@link
+ * CompiledExpression}, and never as a list of strings. Each queue is bounded, so a slow stage holds
+ * back the ones before it down to {@link #submit}, and memory use does not depend on the length of
+ * the stream. Slots are handed over in batches, and a stage that runs out of input publishes what
+ * it has done right away, so that batching does not delay results when the stream slows down.
+ *
+ * <p>Results are delivered in submission order to a single handler, on the evaluation thread. They
+ * are the same as the ones of {@link CalculatorService#tryCalculate}, and are recorded in {@link
+ * CalculatorMetrics} the same way.
+ *
+ * <p>{@link #getStageStats()} tells which stage is the bottleneck: the one whose queue is full,
+ * that makes the stage before it wait, and that itself rarely waits for input.
+ */
+public final class CalculatorPipeline implements AutoCloseable {
+
+  public static final int DEFAULT_CAPACITY = 1024;
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  private static final String[] NO_VARIABLES = {};
+
+  /** Receives the results of the pipeline, on the evaluation thread. */
+  @FunctionalInterface
+  public interface ResultHandler {
+
+    /**
+     * Handles the result of an expression. An exception thrown here stops the pipeline, and is
+     * rethrown by the next call to {@link #submit} or by {@link #close()}.
+     *
+     * @param sequence rank of the expression in submission order, starting from 0
+     * @param result result of the expression, or its error
+     */
+    void accept(long sequence, CalculationResult result) throws IOException;
+  }
+
+  /**
+   * Snapshot of the activity of a stage, taken without stopping the pipeline.
+   *
+   * @param stage the stage
+   * @param processed number of expressions taken from its queue so far
+   * @param queued number of expressions waiting in its queue
+   * @param capacity size of its queue
+   * @param idleNanos time the stage waited for its queue to fill
+   * @param backpressureNanos time the previous stage, or the submitter, waited for its queue to
+   *     have room
+   */
+  public record StageStats(
+      Stage stage,
+      long processed,
+      int queued,
+      int capacity,
+      long idleNanos,
+      long backpressureNanos) {}
+
+  /*
+   * Slot of the queues. Each stage fills the field it computes, or the result directly when the expression failed;
+   * the consumer of a slot clears it before releasing it, so that no expression is kept alive by the queue.
+   * */
+  private static final class Slot {
+    CharSequence expression;
+    TokenStream tokens;
+    CompiledExpression program;
+    CalculationResult result;
+
+    void moveTo(Slot other) {
+      other.expression = expression;
+      other.tokens = tokens;
+      other.program = program;
+      other.result = result;
+      clear();
+    }
+
+    void clear() {
+      expression = null;
+      tokens = null;
+      program = null;
+      result = null;
+    }
+  }
+
+  private final SpscRingBuffer<Slot> expressions;
+  private final SpscRingBuffer<Slot> tokenStreams;
+  private final SpscRingBuffer<Slot> programs;
+  private final ResultHandler handler;
+  private final Thread[] threads;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private boolean closed;
+
+  private CalculatorPipeline(int capacity, int batchSize, ResultHandler handler) {
+    this.expressions = new SpscRingBuffer<>(capacity, batchSize, Slot::new);
+    this.tokenStreams = new SpscRingBuffer<>(capacity, batchSize, Slot::new);
+    this.programs = new SpscRingBuffer<>(capacity, batchSize, Slot::new);
+    this.handler = handler;
+    this.threads =
+        new Thread[] {
+          stageThread(Stage.TOKENIZE, this::runTokenizer),
+          stageThread(Stage.CONVERSION, this::runConverter),
+          stageThread(Stage.EVALUATION, this::runEvaluator)
+        };
+  }
+
+  /**
+   * Starts a pipeline with the default queue capacity and batch size.
+   *
+   * @param handler receives the results, in submission order
+   * @return the running pipeline, to be closed once every expression is submitted
+   */
+  public static CalculatorPipeline start(ResultHandler handler) {
+    return start(handler, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Starts a pipeline.
+   *
+   * @param handler receives the results, in submission order
+   * @param capacity number of expressions each queue holds, rounded up to a power of two
+   * @param batchSize number of expressions handed over at once between two stages
+   * @return the running pipeline, to be closed once every expression is submitted
+   * @throws IllegalArgumentException if the capacity or the batch size is not positive
+   */
+  public static CalculatorPipeline start(ResultHandler handler, int capacity, int batchSize) {
+    CalculatorPipeline pipeline = new CalculatorPipeline(capacity, batchSize, handler);
+    for (Thread thread : pipeline.threads) {
+      thread.start();
+    }
+    return pipeline;
+  }
+
+  /**
+   * Submits an expression, waiting while the first queue is full. Must always be called from the
+   * same thread, as must {@link #flush()} and {@link #close()}.
+   *
+   * <p>Submitted expressions are handed to the lexer in batches: call {@link #flush()} when no
+   * other expression is coming soon, so that the pending ones are not delayed.
+   *
+   * @param expression arithmetic expression (ex: "2 + 3 * -1"), not modified until its result is
+   *     delivered
+   * @throws IOException the exception of the handler, if the pipeline stopped because of it
+   * @throws IllegalStateException if the pipeline is closed
+   */
+  public void submit(CharSequence expression) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Pipeline closed");
+    }
+    if (failure.get() != null) {
+      throw rethrowFailure();
+    }
+    try {
+      expressions.claim().expression = expression;
+    } catch (CancellationException e) {
+      throw rethrowFailure();
+    }
+    expressions.commit();
+  }
+
+  /** Hands the expressions submitted since the last batch over to the lexer. */
+  public void flush() {
+    expressions.flush();
+  }
+
+  /**
+   * Waits for the results of every submitted expression to be delivered, then stops the threads.
+   *
+   * @throws IOException the exception of the handler, if the pipeline stopped because of it, or if
+   *     interrupted while waiting
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    expressions.close();
+    try {
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      cancel(e);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the pipeline");
+    }
+    if (failure.get() != null) {
+      throw rethrowFailure();
+    }
+  }
+
+  /** Activity of each stage, in pipeline order. */
+  public List<StageStats> getStageStats() {
+    return List.of(
+        stageStats(Stage.TOKENIZE, expressions),
+        stageStats(Stage.CONVERSION, tokenStreams),
+        stageStats(Stage.EVALUATION, programs));
+  }
+
+  private static StageStats stageStats(Stage stage, SpscRingBuffer<Slot> queue) {
+    return new StageStats(
+        stage,
+        queue.consumedCount(),
+        queue.size(),
+        queue.capacity(),
+        queue.consumerWaitNanos(),
+        queue.producerWaitNanos());
+  }
+
+  // Empty expressions are reported like tryCalculate does, without being lexed
+  private void runTokenizer() {
+    Slot slot;
+    while ((slot = nextSlot(expressions, tokenStreams)) != null) {
+      Slot next = tokenStreams.claim();
+      slot.moveTo(next);
+      if (next.expression == null || next.expression.length() == 0) {
+        next.result = CalculationResult.failure(CalculationError.EMPTY_EXPRESSION);
+      } else {
+        next.tokens = ParserService.lex(next.expression);
+      }
+      expressions.release();
+      tokenStreams.commit();
+    }
+    tokenStreams.close();
+  }
+
+  private void runConverter() {
+    ExpressionConverterService.SyntaxError error = new ExpressionConverterService.SyntaxError();
+    Slot slot;
+    while ((slot = nextSlot(tokenStreams, programs)) != null) {
+      Slot next = programs.claim();
+      slot.moveTo(next);
+      if (next.result == null) {
+        next.program =
+            ExpressionConverterService.tryInfixToPostfix(next.tokens, NO_VARIABLES, error);
+        next.result = next.program == null ? error.result : null;
+        error.result = null;
+      }
+      next.tokens = null;
+      tokenStreams.release();
+      programs.commit();
+    }
+    programs.close();
+  }
+
+  private void runEvaluator() {
+    long sequence = 0;
+    Slot slot;
+    while ((slot = programs.take()) != null) {
+      CalculationResult result =
+          slot.result != null ? slot.result : EvaluatorService.tryEvaluate(slot.program);
+      slot.clear();
+      CalculatorMetrics.recordResult(result);
+      try {
+        handler.accept(sequence++, result);
+      } catch (IOException e) {
+        cancel(e);
+        return;
+      }
+      programs.release();
+    }
+  }
+
+  /*
+   * Takes the next slot of the input queue, publishing first the batch of the output queue if it has to wait.
+   * */
+  private static Slot nextSlot(SpscRingBuffer<Slot> input, SpscRingBuffer<Slot> output) {
+    Slot slot = input.poll();
+    if (slot == null) {
+      output.flush();
+      slot = input.take();
+    }
+    return slot;
+  }
+
+  /*
+   * A failing stage cancels the whole pipeline, so that no stage, nor the submitter, waits forever for it. Stages
+   * cancelled because of the failure of another one just stop.
+   * */
+  private Thread stageThread(Stage stage, Runnable body) {
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                body.run();
+              } catch (CancellationException e) {
+                // Stopped because of another stage
+              } catch (RuntimeException | Error e) {
+                cancel(e);
+              }
+            },
+            "calculator-pipeline-" + stage.name().toLowerCase(Locale.ROOT));
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  private void cancel(Throwable cause) {
+    failure.compareAndSet(null, cause);
+    expressions.cancel();
+    tokenStreams.cancel();
+    programs.cancel();
+  }
+
+  private IOException rethrowFailure() {
+    Throwable cause = failure.get();
+    if (cause instanceof IOException ioException) return ioException;
+    if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+    if (cause instanceof Error error) throw error;
+    return new IOException(cause);
+  }
+}
@@ -0,0 +1,330 @@
+package org.code.exercise.service;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.code.exercise.service.model.CalculationResult;
+
+/**
+ * {@link Flow.Processor} calculating a stream of expressions, for reactive pipelines.
+ *
+ * <p>Each expression gives one {@link CalculationResult}, the one of {@link
+ * CalculatorService#tryCalculate}: an invalid expression gives a failed result, and never stops the
+ * stream. Results are published in the order of the expressions, although up to {@code parallelism}
+ * expressions are calculated at once on the executor.
+ *
+ * <p>Backpressure is driven by the demand of the subscriber: at most {@code bufferSize} expressions
+ * are requested from the upstream publisher beyond the results already delivered, so a slow
+ * subscriber slows down the publisher instead of making results pile up. More expressions are
+ * requested in batches, once half of the buffer is free.
+ *
+ * <p>The processor has a single subscriber, and is subscribed to a single publisher. An error of
+ * the publisher is passed on to the subscriber as soon as possible, dropping the results not
+ * delivered yet; its completion once every result is delivered.
+ */
+public final class CalculatorProcessor implements Flow.Processor<CharSequence, CalculationResult> {
+
+  public static final int DEFAULT_BUFFER_SIZE = 256;
+
+  private final Executor executor;
+  private final int parallelism;
+  private final int mask;
+  private final int replenishThreshold;
+
+  // Slots of the expressions received and not delivered yet, indexed by sequence. An expression is
+  // written by onNext and cleared by the worker calculating it, which then sets the result, cleared
+  // once delivered.
+  private final CharSequence[] expressions;
+  private final AtomicReferenceArray<CalculationResult> results;
+
+  // Number of expressions received, written by onNext only
+  private volatile long received;
+  // Next sequence to calculate, claimed by the workers
+  private final AtomicLong nextToCalculate = new AtomicLong();
+  private final AtomicInteger activeWorkers = new AtomicInteger();
+
+  // Demand of the subscriber not fulfilled yet
+  private final AtomicLong demand = new AtomicLong();
+  // Serializes the delivery: only the thread that raised it from 0 delivers
+  private final AtomicInteger drainRequests = new AtomicInteger();
+  // Written by the delivering thread only
+  private long delivered;
+  private long requested;
+
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+  private volatile Flow.Subscription upstream;
+  private volatile Flow.Subscriber<? super CalculationResult> downstream;
+  private volatile boolean completed;
+  private volatile Throwable error;
+  private volatile boolean cancelled;
+  private boolean terminated;
+
+  /**
+   * Processor calculating on the common pool, as many expressions at once as there are processors,
+   * with a buffer of {@value #DEFAULT_BUFFER_SIZE} expressions.
+   */
+  public CalculatorProcessor() {
+    this(
+        ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors(), DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param executor runs the calculations
+   * @param parallelism maximum number of expressions calculated at once
+   * @param bufferSize maximum number of expressions requested from the publisher and not delivered
+   *     to the subscriber yet, rounded up to a power of two
+   * @throws IllegalArgumentException if the parallelism or the buffer size is not positive
+   */
+  public CalculatorProcessor(Executor executor, int parallelism, int bufferSize) {
+    if (parallelism < 1 || bufferSize < 1) {
+      throw new IllegalArgumentException("Parallelism and buffer size must be positive");
+    }
+    int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) * 2 - 1);
+    this.executor = Objects.requireNonNull(executor);
+    this.parallelism = parallelism;
+    this.mask = capacity - 1;
+    this.replenishThreshold = capacity / 2;
+    this.expressions = new CharSequence[capacity];
+    this.results = new AtomicReferenceArray<>(capacity);
+  }
+
+  /**
+   * Subscribes to the publisher of the expressions. Expressions are requested right away, up to the
+   * buffer size, even before a subscriber subscribes to the results.
+   */
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription);
+    if (upstream != null) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    drain();
+  }
+
+  /** Receives an expression, and starts calculating it if fewer than parallelism are running. */
+  @Override
+  public void onNext(CharSequence expression) {
+    Objects.requireNonNull(expression);
+    long sequence = received;
+    expressions[(int) sequence & mask] = expression;
+    received = sequence + 1;
+    startWorker();
+  }
+
+  /** Passes the error on to the subscriber, dropping the results not delivered yet. */
+  @Override
+  public void onError(Throwable throwable) {
+    error = Objects.requireNonNull(throwable);
+    drain();
+  }
+
+  /** Completes the subscriber once every result is delivered. */
+  @Override
+  public void onComplete() {
+    completed = true;
+    drain();
+  }
+
+  /**
+   * Subscribes to the results. Only one subscriber is accepted: the other ones get an {@link
+   * IllegalStateException} error.
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super CalculationResult> subscriber) {
+    Objects.requireNonNull(subscriber);
+    // The subscriber is only seen by the delivery once onSubscribe returned, so that it is never
+    // signaled concurrently with onSubscribe; results requested meanwhile are delivered right after
+    if (subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Subscription());
+      downstream = subscriber;
+      drain();
+      return;
+    }
+    subscriber.onSubscribe(
+        new Flow.Subscription() {
+          @Override
+          public void request(long n) {
+            // Nothing to deliver
+          }
+
+          @Override
+          public void cancel() {
+            // Nothing to stop
+          }
+        });
+    subscriber.onError(new IllegalStateException("The processor already has a subscriber"));
+  }
+
+  /*
+   * Subscription of the subscriber of the results.
+   * */
+  private final class Subscription implements Flow.Subscription {
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("Requested " + n + " results, must be positive");
+        cancelUpstream();
+      } else {
+        demand.getAndAccumulate(
+            n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      cancelUpstream();
+    }
+  }
+
+  /*
+   * Starts a worker unless parallelism of them are running already.
+   * */
+  private void startWorker() {
+    int active;
+    while ((active = activeWorkers.get()) < parallelism) {
+      if (activeWorkers.compareAndSet(active, active + 1)) {
+        try {
+          executor.execute(this::calculate);
+        } catch (RejectedExecutionException e) {
+          activeWorkers.decrementAndGet();
+          error = e;
+          cancelUpstream();
+          drain();
+        }
+        return;
+      }
+    }
+  }
+
+  /*
+   * Calculates the received expressions one by one, in sequence order, until none is left. A worker stopping checks
+   * again for an expression received meanwhile, for which no other worker might have been started.
+   * */
+  private void calculate() {
+    do {
+      long sequence;
+      while ((sequence = claim()) >= 0) {
+        int slot = (int) sequence & mask;
+        CharSequence expression = expressions[slot];
+        expressions[slot] = null;
+        try {
+          results.set(slot, CalculatorService.tryCalculate(expression));
+        } catch (RuntimeException e) {
+          // Not an error of the expression, which is a result, but a failure of the calculator
+          error = e;
+          cancelUpstream();
+        }
+        drain();
+      }
+      activeWorkers.decrementAndGet();
+    } while (nextToCalculate.get() < received && reactivate());
+  }
+
+  private long claim() {
+    long sequence;
+    while ((sequence = nextToCalculate.get()) < received) {
+      if (nextToCalculate.compareAndSet(sequence, sequence + 1)) {
+        return sequence;
+      }
+    }
+    return -1;
+  }
+
+  private boolean reactivate() {
+    int active;
+    while ((active = activeWorkers.get()) < parallelism) {
+      if (activeWorkers.compareAndSet(active, active + 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Delivers the calculated results in sequence order, as far as the demand allows, then requests more expressions
+   * from the publisher. Called from any thread after anything that may let it progress; the calls made while a
+   * thread is delivering make it loop once more instead of delivering concurrently.
+   * */
+  private void drain() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      if (!terminated) {
+        deliver();
+      }
+      missed = drainRequests.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void deliver() {
+    Flow.Subscriber<? super CalculationResult> subscriber = downstream;
+    if (cancelled) {
+      terminated = true;
+      return;
+    }
+    if (subscriber == null) {
+      requestUpstream();
+      return;
+    }
+    Throwable failure = error;
+    if (failure != null) {
+      terminated = true;
+      subscriber.onError(failure);
+      return;
+    }
+    long count = 0;
+    long limit = demand.get();
+    CalculationResult result;
+    while (count < limit && (result = results.get((int) delivered & mask)) != null) {
+      results.set((int) delivered & mask, null);
+      delivered++;
+      count++;
+      subscriber.onNext(result);
+      if (cancelled) {
+        terminated = true;
+        return;
+      }
+    }
+    if (count > 0) {
+      demand.addAndGet(-count);
+    }
+    if (completed && delivered == received) {
+      terminated = true;
+      subscriber.onComplete();
+      return;
+    }
+    requestUpstream();
+  }
+
+  /*
+   * Requests expressions up to the buffer size beyond the delivered results, once half of the buffer is free.
+   * */
+  private void requestUpstream() {
+    Flow.Subscription subscription = upstream;
+    long free = delivered + mask + 1 - requested;
+    if (subscription != null && !completed && free >= replenishThreshold) {
+      requested += free;
+      subscription.request(free);
+    }
+  }
+
+  private void cancelUpstream() {
+    Flow.Subscription subscription = upstream;
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+}
@@ -1,10 +1,20 @@
 package org.code.exercise.service;
 
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.enums.CalculationError;
+import org.code.exercise.service.helper.enums.OverflowMode;
+import org.code.exercise.service.model.AsciiCharSequence;
+import org.code.exercise.service.model.CalculationResult;
+import org.code.exercise.service.model.TokenStream;
+import org.code.exercise.service.monitoring.CalculatorMetrics;
 
 public class CalculatorService {
 
+  private static final String[] NO_VARIABLES = {};
+
   private CalculatorService() {
     throw new UnsupportedOperationException("Utility class");
   }
@@ -19,13 +29,227 @@ public class CalculatorService {
    * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
    *     parentheses
    */
-  public static int calculate(String expression) {
-    if (expression == null || expression.isEmpty()) {
+  public static int calculate(CharSequence expression) {
+    try {
+      int result = compile(expression).evaluate();
+      CalculatorMetrics.recordCalculation(null);
+      return result;
+    } catch (RuntimeException e) {
+      CalculatorMetrics.recordCalculation(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Parse and calculate the result of a simple arithmetic expression read from the remaining bytes
+   * of a buffer, such as a network payload, with the result or exception of {@link
+   * #calculate(CharSequence)} for the same text decoded as UTF-8.
+   *
+   * <p>An ASCII expression, the common case, is lexed in place: no String is built, and numbers are
+   * parsed straight from the bytes. Any other one is decoded first.
+   *
+   * @param expression UTF-8 bytes of the expression, from the position to the limit of the buffer,
+   *     which are left unchanged
+   * @return result of the calculation
+   * @throws IllegalArgumentException if the expression is null or empty, or an operator is invalid
+   * @throws ArithmeticException in case of division by zero
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses
+   */
+  public static int calculate(ByteBuffer expression) {
+    return calculate(expression == null ? null : decode(expression));
+  }
+
+  /**
+   * Parse and calculate the result of a simple arithmetic expression read from a range of bytes,
+   * like {@link #calculate(ByteBuffer)} does.
+   *
+   * @param expression UTF-8 bytes of the expression, left unchanged
+   * @param offset index of the first byte of the expression
+   * @param length number of bytes of the expression
+   * @return result of the calculation
+   * @throws IndexOutOfBoundsException if the range is out of the array
+   * @throws IllegalArgumentException if the expression is null or empty, or an operator is invalid
+   * @throws ArithmeticException in case of division by zero
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses
+   */
+  public static int calculate(byte[] expression, int offset, int length) {
+    return calculate(expression == null ? null : decode(expression, offset, length));
+  }
+
+  /**
+   * Parse and calculate the result of a simple arithmetic expression, without throwing on invalid
+   * input. Meant for callers expecting many invalid expressions (ex: batches of user input), for
+   * which building an exception and its stack trace would cost more than the calculation itself.
+   *
+   * <p>The error, its message and its position are the same as the exception {@link
+   * #calculate(CharSequence)} throws, which {@link CalculationResult#toException()} gives back.
+   *
+   * @param expression arithmetic expression (ex: "2 + 3 * -1")
+   * @return result of the calculation, or its error
+   */
+  public static CalculationResult tryCalculate(CharSequence expression) {
+    CalculationResult result;
+    if (expression == null || expression.length() == 0) {
+      result = CalculationResult.failure(CalculationError.EMPTY_EXPRESSION);
+    } else {
+      ExpressionConverterService.SyntaxError error = new ExpressionConverterService.SyntaxError();
+      CompiledExpression program =
+          ExpressionConverterService.tryInfixToPostfix(
+              ParserService.lex(expression), NO_VARIABLES, error);
+      result = program == null ? error.result : EvaluatorService.tryEvaluate(program);
+    }
+    CalculatorMetrics.recordResult(result);
+    return result;
+  }
+
+  /**
+   * Parse and calculate the result of a simple arithmetic expression read from the remaining bytes
+   * of a buffer, without throwing on invalid input, with the result of {@link
+   * #tryCalculate(CharSequence)} for the same text decoded as UTF-8. An ASCII expression is lexed
+   * in place, like for {@link #calculate(ByteBuffer)}.
+   *
+   * @param expression UTF-8 bytes of the expression, from the position to the limit of the buffer,
+   *     which are left unchanged
+   * @return result of the calculation, or its error
+   */
+  public static CalculationResult tryCalculate(ByteBuffer expression) {
+    return tryCalculate(expression == null ? null : decode(expression));
+  }
+
+  /**
+   * Parse and calculate the result of a simple arithmetic expression read from a range of bytes,
+   * without throwing on invalid input, like {@link #tryCalculate(ByteBuffer)} does.
+   *
+   * @param expression UTF-8 bytes of the expression, left unchanged
+   * @param offset index of the first byte of the expression
+   * @param length number of bytes of the expression
+   * @return result of the calculation, or its error
+   * @throws IndexOutOfBoundsException if the range is out of the array
+   */
+  public static CalculationResult tryCalculate(byte[] expression, int offset, int length) {
+    return tryCalculate(expression == null ? null : decode(expression, offset, length));
+  }
+
+  /*
+   * ASCII bytes are viewed as characters in place. Other bytes are decoded as UTF-8, so that a multi-byte character
+   * is a single invalid token, with the same message and position as in the String.
+   * */
+  private static CharSequence decode(ByteBuffer buffer) {
+    int start = buffer.position();
+    int end = buffer.limit();
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) < 0) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+      }
+    }
+    return new AsciiCharSequence(buffer, start, end - start);
+  }
+
+  private static CharSequence decode(byte[] bytes, int offset, int length) {
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    return decode(ByteBuffer.wrap(bytes, offset, length));
+  }
+
+  /**
+   * Parse and calculate the result of a simple arithmetic expression on 64-bit integers. Unlike
+   * {@link #calculate(CharSequence)}, literals and results are not limited to the int range.
+   *
+   * @param expression arithmetic expression (ex: "9223372036854775807 * 2")
+   * @param mode what to do when a value does not fit in a long
+   * @return result of the calculation, a Long, or a BigInteger if it does not fit in a long
+   * @throws IllegalArgumentException if the expression is null or empty
+   * @throws ArithmeticException in case of division by zero, or of overflow in {@link
+   *     OverflowMode#FAIL} mode
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses
+   */
+  public static Number calculate(CharSequence expression, OverflowMode mode) {
+    try {
+      Number result = compileWide(expression).evaluate(mode);
+      CalculatorMetrics.recordCalculation(null);
+      return result;
+    } catch (RuntimeException e) {
+      CalculatorMetrics.recordCalculation(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Parse and convert a simple arithmetic expression once into a reusable program for the 64-bit
+   * engine.
+   *
+   * @param expression arithmetic expression (ex: "9223372036854775807 * 2")
+   * @return the wide compiled expression
+   * @throws IllegalArgumentException if the expression is null or empty
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses
+   */
+  public static WideExpression compileWide(CharSequence expression) {
+    if (expression == null || expression.length() == 0) {
+      throw new IllegalArgumentException("Expression must not be null or empty");
+    }
+
+    TokenStream infixTokens = ParserService.lex(expression);
+    return ExpressionConverterService.infixToPostfixWide(infixTokens);
+  }
+
+  /**
+   * Parse and convert a simple arithmetic expression once into a reusable postfix program. The
+   * returned program is immutable and can be evaluated many times, from any thread, without being
+   * parsed again.
+   *
+   * <p>The expression characters are read in place, so any CharSequence (ex: a view over a byte
+   * buffer) can be compiled without being copied into a String first.
+   *
+   * @param expression arithmetic expression (ex: "2 + 3 * -1")
+   * @return the compiled expression
+   * @throws IllegalArgumentException if the expression is null or empty
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses
+   */
+  public static CompiledExpression compile(CharSequence expression) {
+    return compile(expression, NO_VARIABLES);
+  }
+
+  /**
+   * Parse and convert an arithmetic expression holding variables once into a reusable postfix
+   * program. The values of the variables are given on each evaluation, either for a single row or
+   * for whole columns of rows.
+   *
+   * @param expression arithmetic expression (ex: "a * x + b")
+   * @param variables names of the variables, in the order their values are given on evaluation
+   * @return the compiled expression
+   * @throws IllegalArgumentException if the expression is null or empty, or a variable name is
+   *     invalid
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error, mismatched
+   *     parentheses or unknown variable
+   */
+  public static CompiledExpression compile(CharSequence expression, String... variables) {
+    if (expression == null || expression.length() == 0) {
       throw new IllegalArgumentException("Expression must not be null or empty");
     }
 
-    List<String> infixTokens = ParserService.tokenize(expression);
-    List<String> postfixTokens = ExpressionConverterService.infixToPostfix(infixTokens);
-    return EvaluatorService.evaluatePostfixExpression(postfixTokens);
+    TokenStream infixTokens = ParserService.lex(expression);
+    return ExpressionConverterService.infixToPostfix(infixTokens, variables);
+  }
+
+  /**
+   * Compiles an expression like {@link #compile(CharSequence, String...)} does, and optimizes the
+   * program with {@link ExpressionOptimizer}. Worth it for expressions evaluated many times.
+   *
+   * @param expression arithmetic expression (ex: "a * x * 1 + 2 * 3")
+   * @param variables names of the variables, in the order their values are given on evaluation
+   * @return the optimized compiled expression (ex: "a x * 6 +")
+   * @throws IllegalArgumentException if the expression is null or empty, or a variable name is
+   *     invalid
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error, mismatched
+   *     parentheses or unknown variable
+   */
+  public static CompiledExpression compileOptimized(CharSequence expression, String... variables) {
+    return ExpressionOptimizer.optimize(compile(expression, variables)).expression();
   }
 }
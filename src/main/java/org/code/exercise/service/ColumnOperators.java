@@ -0,0 +1,35 @@
+package org.code.exercise.service;
+
+import java.util.BitSet;
+
+/**
+ * Engine applying binary operators to the columns of a block, for the columnar evaluation of {@link
+ * EvaluatorService}. Implemented by the Vector API engine, only compiled with the {@code vector}
+ * Maven profile, so that the default build does not depend on an incubator module.
+ */
+interface ColumnOperators {
+
+  /** Whether the engine is faster than the scalar loops on this CPU. */
+  boolean isSupported();
+
+  /**
+   * Applies the operator to the rows [0, length) of the block.
+   *
+   * @param opcode opcode of a binary operator
+   * @param a column of the left operands, read from {@code aOffset}
+   * @param b column of the right operands, read from {@code bOffset}
+   * @param out block receiving the results
+   * @param firstRow number of the first row of the block, to report the rows dividing by zero
+   * @param failedRows receives the rows dividing by zero, or null to throw on the first one instead
+   */
+  void applyOperatorToColumns(
+      int opcode,
+      int[] a,
+      int aOffset,
+      int[] b,
+      int bOffset,
+      int[] out,
+      int length,
+      int firstRow,
+      BitSet failedRows);
+}
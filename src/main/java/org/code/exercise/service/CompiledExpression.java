@@ -0,0 +1,182 @@
+package org.code.exercise.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.enums.TokenType;
+
+/**
+ * Arithmetic expression compiled once into a flat postfix program, that can be evaluated many times
+ * without being parsed again.
+ *
+ * <p>The program is an array of opcodes: each {@link CalculatorUtils#OPCODE_PUSH} pushes the next
+ * value of the constant pool on the stack, each {@link CalculatorUtils#OPCODE_LOAD} pushes the
+ * variable whose index is the next value of the constant pool, and any other opcode applies the
+ * matching operator to the one or two values on top of the stack, see {@link
+ * org.code.exercise.service.helper.OperatorRegistry}.
+ *
+ * <p>Instances are immutable, and can be shared and evaluated concurrently by several threads.
+ */
+public final class CompiledExpression {
+
+  final byte[] opcodes;
+  final int[] constants;
+  final String[] variables;
+  final int maxStackDepth;
+
+  CompiledExpression(byte[] opcodes, int[] constants, String[] variables) {
+    this.opcodes = opcodes;
+    this.constants = constants;
+    this.variables = variables;
+    this.maxStackDepth = computeMaxStackDepth(opcodes);
+  }
+
+  /*
+   * We simulate the stack height along the program, so that the evaluator can pre-size its stack.
+   * Evaluation fails on the first missing operand, so the simulation can stop there too.
+   * */
+  private static int computeMaxStackDepth(byte[] opcodes) {
+    int depth = 0;
+    int maxDepth = 0;
+    for (byte opcode : opcodes) {
+      if (isOperand(opcode)) {
+        maxDepth = Math.max(maxDepth, ++depth);
+      } else if (depth < CalculatorUtils.getOperatorArity(opcode)) {
+        break;
+      } else {
+        depth -= CalculatorUtils.getOperatorArity(opcode) - 1;
+      }
+    }
+    return maxDepth;
+  }
+
+  /*
+   * Same simulation over postfix tokens, for the events of the token-based evaluation.
+   * */
+  static int maxStackDepth(List<String> tokens) {
+    int depth = 0;
+    int maxDepth = 0;
+    for (String token : tokens) {
+      if (CalculatorUtils.getTokenType(token) == TokenType.NUMBER) {
+        maxDepth = Math.max(maxDepth, ++depth);
+      } else if (depth < 2) {
+        break;
+      } else {
+        depth--;
+      }
+    }
+    return maxDepth;
+  }
+
+  static boolean isOperand(byte opcode) {
+    return opcode == CalculatorUtils.OPCODE_PUSH || opcode == CalculatorUtils.OPCODE_LOAD;
+  }
+
+  /**
+   * Runs the postfix program on the stack machine.
+   *
+   * @return result of the calculation
+   * @throws ArithmeticException in case of division by zero
+   * @throws org.code.exercise.service.exception.EvaluatorStackException in case of wrong state of
+   *     the stack (ex: missing operand)
+   * @throws IllegalArgumentException if the program has variables
+   */
+  public int evaluate() {
+    return EvaluatorService.evaluate(this);
+  }
+
+  /**
+   * Runs the postfix program on the stack machine, with the given variable values.
+   *
+   * @param values value of each variable, in the order of {@link #getVariables()}
+   * @return result of the calculation
+   * @throws ArithmeticException in case of division by zero
+   * @throws org.code.exercise.service.exception.EvaluatorStackException in case of wrong state of
+   *     the stack (ex: missing operand)
+   * @throws IllegalArgumentException if the number of values does not match the variables
+   */
+  public int evaluate(int[] values) {
+    return EvaluatorService.evaluateOnThreadStack(this, values);
+  }
+
+  /**
+   * Runs the postfix program over whole columns of variable values, one row per result.
+   *
+   * @param columns one column of values per variable, in the order of {@link #getVariables()}
+   * @param results column receiving the result of each row, its length gives the number of rows
+   * @throws ArithmeticException in case of division by zero in any row
+   * @throws org.code.exercise.service.exception.EvaluatorStackException in case of wrong state of
+   *     the stack (ex: missing operand)
+   * @throws IllegalArgumentException if the columns do not match the variables or the rows
+   */
+  public void evaluate(int[][] columns, int[] results) {
+    EvaluatorService.evaluateColumns(this, columns, results);
+  }
+
+  /**
+   * Runs the postfix program over whole columns of variable values, without failing on the rows
+   * dividing by zero: their bit is set in {@code failedRows} and their result is left to 0.
+   *
+   * @param columns one column of values per variable, in the order of {@link #getVariables()}
+   * @param results column receiving the result of each row, its length gives the number of rows
+   * @param failedRows receives the rows dividing by zero
+   * @throws org.code.exercise.service.exception.EvaluatorStackException in case of wrong state of
+   *     the stack (ex: missing operand)
+   * @throws IllegalArgumentException if the columns do not match the variables or the rows
+   */
+  public void evaluate(int[][] columns, int[] results, BitSet failedRows) {
+    EvaluatorService.evaluateColumns(this, columns, results, Objects.requireNonNull(failedRows));
+  }
+
+  /** Names of the variables of the program, in the order their values are expected. */
+  public List<String> getVariables() {
+    return List.of(variables);
+  }
+
+  /** Maximum number of values held on the stack while evaluating the program. */
+  public int getMaxStackDepth() {
+    return maxStackDepth;
+  }
+
+  /** Number of instructions of the program. */
+  public int size() {
+    return opcodes.length;
+  }
+
+  /** Returns the program in postfix notation (ex: "3 x 2 * +"). */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    int constantIndex = 0;
+    for (byte opcode : opcodes) {
+      if (!builder.isEmpty()) {
+        builder.append(' ');
+      }
+      if (opcode == CalculatorUtils.OPCODE_PUSH) {
+        builder.append(constants[constantIndex++]);
+      } else if (opcode == CalculatorUtils.OPCODE_LOAD) {
+        builder.append(variables[constants[constantIndex++]]);
+      } else {
+        builder.append(CalculatorUtils.getOperatorSymbol(opcode));
+      }
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof CompiledExpression other)) return false;
+    return Arrays.equals(opcodes, other.opcodes)
+        && Arrays.equals(constants, other.constants)
+        && Arrays.equals(variables, other.variables);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * Arrays.hashCode(opcodes) + Arrays.hashCode(constants))
+        + Arrays.hashCode(variables);
+  }
+}
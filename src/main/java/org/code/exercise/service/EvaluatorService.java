@@ -1,12 +1,37 @@
 package org.code.exercise.service;
 
 import java.util.*;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 import org.code.exercise.service.exception.EvaluatorStackException;
 import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.enums.CalculationError;
 import org.code.exercise.service.helper.enums.TokenType;
+import org.code.exercise.service.model.CalculationResult;
+import org.code.exercise.service.monitoring.CalculatorMetrics;
+import org.code.exercise.service.monitoring.EvaluationEvent;
+import org.code.exercise.service.monitoring.Stage;
 
 public class EvaluatorService {
 
+  private static final int INITIAL_STACK_SIZE = 16;
+
+  // Per-thread stack reused across evaluations of compiled programs, grown on demand. It is null
+  // while an evaluation runs on it
+  private static final ThreadLocal<int[]> STACK =
+      ThreadLocal.withInitial(() -> new int[INITIAL_STACK_SIZE]);
+
+  // Number of rows evaluated at once by each instruction of a columnar evaluation
+  private static final int COLUMN_BLOCK_SIZE = 1024;
+
+  private static final int[] NO_VALUES = {};
+
+  private static final String VECTOR_MODULE = "jdk.incubator.vector";
+  private static final String VECTOR_PROPERTY = "calculator.vector";
+  private static final String VECTOR_ENGINE = "org.code.exercise.service.VectorEvaluatorService";
+  // Vector API engine of the columnar evaluation, or null to run the scalar loops
+  static final ColumnOperators VECTOR_OPERATORS = loadVectorOperators();
+
   private EvaluatorService() {
     throw new UnsupportedOperationException("Utility class");
   }
@@ -19,44 +44,485 @@ public class EvaluatorService {
    * @throws EvaluatorStackException in case of wrong state of operator stack
    */
   public static int evaluatePostfixExpression(List<String> tokens) {
-    Deque<Integer> stack = new ArrayDeque<>();
+    return evaluationStage(
+        () -> evaluateTokens(tokens),
+        tokens.size(),
+        () -> CompiledExpression.maxStackDepth(tokens));
+  }
+
+  private static int evaluateTokens(List<String> tokens) {
+    // The stack can never hold more values than there are tokens
+    int[] stack = new int[tokens.size()];
+    int top = 0;
 
     // We simply evaluate the postfix expression from left to right
     for (String token : tokens) {
-      if (CalculatorUtils.getTokenType(token) == TokenType.NUMBER) {
-        stack.push(Integer.parseInt(token));
-      } else if (CalculatorUtils.getTokenType(token) == TokenType.OPERATOR) {
-        applyOperatorToStack(token, stack);
+      TokenType type = CalculatorUtils.getTokenType(token);
+      if (type == TokenType.NUMBER) {
+        stack[top++] = Integer.parseInt(token);
+      } else if (type == TokenType.OPERATOR) {
+        top = applyOperatorToStack(CalculatorUtils.getOperatorOpcode(token), stack, top);
       } else {
         throw new EvaluatorStackException("Invalid token in postfix expression: " + token);
       }
     }
 
-    validateStackAfterEvaluation(stack);
-    return stack.pop();
+    validateStackAfterEvaluation(top);
+    return stack[0];
+  }
+
+  /**
+   * Runs a compiled postfix program on the stack machine. No parsing happens here: numbers are read
+   * from the constant pool and operators are dispatched by opcode.
+   *
+   * <p>The stack is a per-thread int array sized from the maximum depth of the program, so that a
+   * steady-state evaluation allocates nothing.
+   *
+   * @param expression compiled postfix program
+   * @return the result of evaluating the expression
+   * @throws EvaluatorStackException in case of wrong state of operator stack
+   * @throws IllegalArgumentException if the program has variables
+   */
+  public static int evaluate(CompiledExpression expression) {
+    return evaluateOnThreadStack(expression, NO_VALUES);
+  }
+
+  static int evaluateOnThreadStack(CompiledExpression expression, int[] values) {
+    return evaluationStage(
+        () -> runOnThreadStack(expression, values),
+        expression.size(),
+        () -> expression.maxStackDepth);
+  }
+
+  /*
+   * Same as evaluateOnThreadStack, without recording an evaluation stage.
+   * */
+  static int runOnThreadStack(CompiledExpression expression, int[] values) {
+    int[] stack = borrowStack(expression.maxStackDepth);
+    try {
+      return run(expression, values, stack);
+    } finally {
+      releaseStack(stack);
+    }
+  }
+
+  /**
+   * Runs a compiled postfix program using a stack provided by the caller.
+   *
+   * @param expression compiled postfix program
+   * @param stack working stack, of at least {@link CompiledExpression#getMaxStackDepth()} values
+   * @return the result of evaluating the expression
+   * @throws EvaluatorStackException in case of wrong state of operator stack
+   * @throws IllegalArgumentException if the program has variables
+   */
+  public static int evaluate(CompiledExpression expression, int[] stack) {
+    return evaluate(expression, NO_VALUES, stack);
+  }
+
+  /**
+   * Runs a compiled postfix program with the given variable values, using a stack provided by the
+   * caller.
+   *
+   * @param expression compiled postfix program
+   * @param values value of each variable of the program
+   * @param stack working stack, of at least {@link CompiledExpression#getMaxStackDepth()} values
+   * @return the result of evaluating the expression
+   * @throws EvaluatorStackException in case of wrong state of operator stack
+   * @throws IllegalArgumentException if the number of values does not match the variables
+   */
+  public static int evaluate(CompiledExpression expression, int[] values, int[] stack) {
+    return evaluationStage(
+        () -> run(expression, values, stack), expression.size(), () -> expression.maxStackDepth);
+  }
+
+  private static int run(CompiledExpression expression, int[] values, int[] stack) {
+    validateValueCount(expression, values.length);
+    byte[] opcodes = expression.opcodes;
+    int[] constants = expression.constants;
+    int constantIndex = 0;
+    int top = 0;
+
+    for (byte opcode : opcodes) {
+      switch (opcode) {
+        case CalculatorUtils.OPCODE_PUSH -> stack[top++] = constants[constantIndex++];
+        case CalculatorUtils.OPCODE_LOAD -> stack[top++] = values[constants[constantIndex++]];
+        default -> top = applyOperatorToStack(opcode, stack, top);
+      }
+    }
+
+    validateStackAfterEvaluation(top);
+    return stack[0];
+  }
+
+  /**
+   * Runs a compiled postfix program like {@link #evaluate(CompiledExpression)}, but reports
+   * evaluation errors as a result instead of throwing, so that invalid input costs no exception.
+   *
+   * @param expression compiled postfix program
+   * @return the result of evaluating the expression, or its error
+   * @throws IllegalArgumentException if the program has variables
+   */
+  public static CalculationResult tryEvaluate(CompiledExpression expression) {
+    return evaluationStage(
+        () -> {
+          int[] stack = borrowStack(expression.maxStackDepth);
+          try {
+            return tryRun(expression, stack);
+          } finally {
+            releaseStack(stack);
+          }
+        },
+        expression.size(),
+        () -> expression.maxStackDepth);
+  }
+
+  /*
+   * Same loop as run, with the stack and divisor checks done inline rather than by throwing. Errors raised by the
+   * operation of a registered operator are still thrown.
+   * */
+  private static CalculationResult tryRun(CompiledExpression expression, int[] stack) {
+    validateValueCount(expression, 0);
+    byte[] opcodes = expression.opcodes;
+    int[] constants = expression.constants;
+    int constantIndex = 0;
+    int top = 0;
+
+    for (byte opcode : opcodes) {
+      if (opcode == CalculatorUtils.OPCODE_PUSH) {
+        stack[top++] = constants[constantIndex++];
+      } else if (top < CalculatorUtils.getOperatorArity(opcode)) {
+        return CalculationResult.failure(CalculationError.MISSING_OPERAND);
+      } else if (CalculatorUtils.getOperatorArity(opcode) == 1) {
+        stack[top - 1] = CalculatorUtils.applyUnaryOperator(stack[top - 1], opcode);
+      } else if (CalculatorUtils.dividesByZero(stack[top - 2], stack[top - 1], opcode)) {
+        return CalculationResult.failure(CalculationError.DIVISION_BY_ZERO);
+      } else {
+        stack[top - 2] = CalculatorUtils.applyOperator(stack[top - 2], stack[top - 1], opcode);
+        top--;
+      }
+    }
+
+    if (top > 1) {
+      return CalculationResult.failure(CalculationError.TOO_MANY_OPERANDS);
+    } else if (top == 0) {
+      return CalculationResult.failure(CalculationError.EMPTY_STACK);
+    }
+    return CalculationResult.success(stack[0]);
+  }
+
+  /**
+   * Runs a compiled postfix program over whole columns of variable values.
+   *
+   * <p>The program is run column-at-a-time rather than row-at-a-time: each instruction is applied
+   * to a block of rows in a tight loop over int arrays, that the JIT can unroll and vectorize.
+   * Blocks are small enough for the working columns to stay in the CPU cache.
+   *
+   * @param expression compiled postfix program
+   * @param columns one column of values per variable of the program
+   * @param results column receiving the result of each row, its length gives the number of rows
+   * @throws ArithmeticException in case of division by zero in any row
+   * @throws EvaluatorStackException in case of wrong state of operator stack
+   * @throws IllegalArgumentException if the columns do not match the variables or the rows
+   */
+  public static void evaluateColumns(
+      CompiledExpression expression, int[][] columns, int[] results) {
+    evaluateColumns(expression, columns, results, null);
+  }
+
+  /**
+   * Runs a compiled postfix program over whole columns of variable values, without failing on the
+   * rows dividing by zero.
+   *
+   * <p>Such rows are masked out: their bit is set in {@code failedRows} and their result is left to
+   * 0, while all the other rows are computed. When the Vector API is available (build made with the
+   * {@code vector} Maven profile, and JVM started with {@code --add-modules jdk.incubator.vector}),
+   * additions, subtractions and multiplications run across full vector lanes, with a scalar loop
+   * for the rows left over at the end of each block.
+   *
+   * @param expression compiled postfix program
+   * @param columns one column of values per variable of the program
+   * @param results column receiving the result of each row, its length gives the number of rows
+   * @param failedRows receives the rows dividing by zero, or null to throw on the first one instead
+   * @throws ArithmeticException in case of division by zero, only if {@code failedRows} is null
+   * @throws EvaluatorStackException in case of wrong state of operator stack
+   * @throws IllegalArgumentException if the columns do not match the variables or the rows
+   */
+  public static void evaluateColumns(
+      CompiledExpression expression, int[][] columns, int[] results, BitSet failedRows) {
+    validateValueCount(expression, columns.length);
+    int rows = results.length;
+    for (int[] column : columns) {
+      if (column.length < rows) {
+        throw new IllegalArgumentException(
+            "Variable columns must hold at least " + rows + " values, got " + column.length);
+      }
+    }
+    // Without data-dependent branches, the stack state is the same for every row, so it is only
+    // checked once
+    validateProgramStack(expression);
+
+    int depth = expression.maxStackDepth;
+    int[][] blocks = new int[depth][Math.min(COLUMN_BLOCK_SIZE, rows)];
+    int[][] stackColumns = new int[depth][];
+    int[] stackOffsets = new int[depth];
+    for (int firstRow = 0; firstRow < rows; firstRow += COLUMN_BLOCK_SIZE) {
+      int length = Math.min(COLUMN_BLOCK_SIZE, rows - firstRow);
+      evaluateBlock(
+          expression, columns, firstRow, length, blocks, stackColumns, stackOffsets, failedRows);
+      System.arraycopy(stackColumns[0], stackOffsets[0], results, firstRow, length);
+      if (failedRows != null) {
+        clearFailedRows(results, firstRow, firstRow + length, failedRows);
+      }
+    }
+  }
+
+  /*
+   * The operators after a division by zero keep computing on the masked row, so its result is only reset once the
+   * whole block is done.
+   * */
+  private static void clearFailedRows(int[] results, int from, int to, BitSet failedRows) {
+    for (int row = failedRows.nextSetBit(from);
+        row >= 0 && row < to;
+        row = failedRows.nextSetBit(row + 1)) {
+      results[row] = 0;
+    }
+  }
+
+  /*
+   * Each stack slot refers either to a variable column, read in place from the first row of the block, or to the block owned by the slot.
+   * Operators write their result into the block of their left (or only) operand slot, so a column is never written while it is read.
+   * */
+  private static void evaluateBlock(
+      CompiledExpression expression,
+      int[][] columns,
+      int firstRow,
+      int length,
+      int[][] blocks,
+      int[][] stackColumns,
+      int[] stackOffsets,
+      BitSet failedRows) {
+    int[] constants = expression.constants;
+    int constantIndex = 0;
+    int top = 0;
+    for (byte opcode : expression.opcodes) {
+      switch (opcode) {
+        case CalculatorUtils.OPCODE_PUSH -> {
+          Arrays.fill(blocks[top], 0, length, constants[constantIndex++]);
+          stackColumns[top] = blocks[top];
+          stackOffsets[top++] = 0;
+        }
+        case CalculatorUtils.OPCODE_LOAD -> {
+          stackColumns[top] = columns[constants[constantIndex++]];
+          stackOffsets[top++] = firstRow;
+        }
+        default -> {
+          if (CalculatorUtils.getOperatorArity(opcode) == 1) {
+            applyUnaryOperatorToColumns(
+                opcode, stackColumns[top - 1], stackOffsets[top - 1], blocks[top - 1], length);
+            stackColumns[top - 1] = blocks[top - 1];
+            stackOffsets[top - 1] = 0;
+            continue;
+          }
+          top--;
+          int[] a = stackColumns[top - 1];
+          int[] b = stackColumns[top];
+          int aOffset = stackOffsets[top - 1];
+          int bOffset = stackOffsets[top];
+          int[] out = blocks[top - 1];
+          if (VECTOR_OPERATORS != null) {
+            VECTOR_OPERATORS.applyOperatorToColumns(
+                opcode, a, aOffset, b, bOffset, out, length, firstRow, failedRows);
+          } else {
+            applyOperatorToColumns(
+                opcode, a, aOffset, b, bOffset, out, 0, length, firstRow, failedRows);
+          }
+          stackColumns[top - 1] = blocks[top - 1];
+          stackOffsets[top - 1] = 0;
+        }
+      }
+    }
+  }
+
+  /*
+   * One loop per operator over the rows [from, to) of the block, so that the loop bodies are free of any dispatch.
+   * */
+  static void applyOperatorToColumns(
+      int opcode,
+      int[] a,
+      int aOffset,
+      int[] b,
+      int bOffset,
+      int[] out,
+      int from,
+      int to,
+      int firstRow,
+      BitSet failedRows) {
+    switch (opcode) {
+      case CalculatorUtils.OPCODE_ADD -> {
+        for (int i = from; i < to; i++) out[i] = a[aOffset + i] + b[bOffset + i];
+      }
+      case CalculatorUtils.OPCODE_SUB -> {
+        for (int i = from; i < to; i++) out[i] = a[aOffset + i] - b[bOffset + i];
+      }
+      case CalculatorUtils.OPCODE_MUL -> {
+        for (int i = from; i < to; i++) out[i] = a[aOffset + i] * b[bOffset + i];
+      }
+      case CalculatorUtils.OPCODE_DIV -> {
+        for (int i = from; i < to; i++) {
+          int divisor = b[bOffset + i];
+          if (divisor == 0) {
+            reportDivisionByZero(firstRow + i, failedRows);
+            out[i] = 0;
+          } else {
+            out[i] = a[aOffset + i] / divisor;
+          }
+        }
+      }
+      case CalculatorUtils.OPCODE_MIN -> {
+        for (int i = from; i < to; i++) out[i] = Math.min(a[aOffset + i], b[bOffset + i]);
+      }
+      case CalculatorUtils.OPCODE_MAX -> {
+        for (int i = from; i < to; i++) out[i] = Math.max(a[aOffset + i], b[bOffset + i]);
+      }
+      default -> {
+        for (int i = from; i < to; i++) {
+          int x = a[aOffset + i];
+          int y = b[bOffset + i];
+          if (CalculatorUtils.dividesByZero(x, y, opcode)) {
+            reportDivisionByZero(firstRow + i, failedRows);
+            out[i] = 0;
+          } else {
+            out[i] = CalculatorUtils.applyOperator(x, y, opcode);
+          }
+        }
+      }
+    }
+  }
+
+  private static void applyUnaryOperatorToColumns(
+      int opcode, int[] a, int aOffset, int[] out, int length) {
+    if (opcode == CalculatorUtils.OPCODE_NEG) {
+      for (int i = 0; i < length; i++) out[i] = -a[aOffset + i];
+    } else {
+      for (int i = 0; i < length; i++) {
+        out[i] = CalculatorUtils.applyUnaryOperator(a[aOffset + i], opcode);
+      }
+    }
+  }
+
+  static void reportDivisionByZero(int row, BitSet failedRows) {
+    if (failedRows == null) {
+      throw new ArithmeticException("Division by zero at row " + row);
+    }
+    failedRows.set(row);
+  }
+
+  /*
+   * The vector engine is only loaded if its incubator module is part of the JVM, otherwise loading it would fail,
+   * and if it was compiled, with the vector profile. It can be disabled with -Dcalculator.vector=false.
+   * */
+  /*
+   * Runs an evaluation as the evaluation stage: its latency and its JFR event are recorded whether it succeeds or
+   * throws. The stack depth is only computed when the event is committed.
+   * */
+  static <T> T evaluationStage(Supplier<T> evaluation, int tokenCount, IntSupplier stackDepth) {
+    EvaluationEvent event = new EvaluationEvent();
+    event.begin();
+    long startTime = CalculatorMetrics.startStage();
+    try {
+      return evaluation.get();
+    } finally {
+      CalculatorMetrics.recordStage(Stage.EVALUATION, startTime);
+      if (event.shouldCommit()) {
+        event.tokenCount = tokenCount;
+        event.stackDepth = stackDepth.getAsInt();
+        event.commit();
+      }
+    }
+  }
+
+  private static ColumnOperators loadVectorOperators() {
+    if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))
+        || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+      return null;
+    }
+    try {
+      ColumnOperators engine =
+          (ColumnOperators) Class.forName(VECTOR_ENGINE).getDeclaredConstructor().newInstance();
+      return engine.isSupported() ? engine : null;
+    } catch (ReflectiveOperationException e) {
+      // Built without the vector profile
+      return null;
+    }
+  }
+
+  /*
+   * Takes the per-thread stack until releaseStack gives it back. A registered operator may call the calculator: the
+   * nested evaluation then finds no stack and allocates its own, rather than overwriting the operands of the outer one.
+   * */
+  static int[] borrowStack(int depth) {
+    int[] stack = STACK.get();
+    if (stack == null) {
+      return new int[Math.max(depth, INITIAL_STACK_SIZE)];
+    }
+    STACK.set(null);
+    return stack.length < depth ? new int[Math.max(depth, stack.length * 2)] : stack;
+  }
+
+  static void releaseStack(int[] stack) {
+    STACK.set(stack);
+  }
+
+  private static void validateValueCount(CompiledExpression expression, int count) {
+    if (count != expression.variables.length) {
+      throw new IllegalArgumentException(
+          "Expected " + expression.variables.length + " variable values, got " + count);
+    }
+  }
+
+  /*
+   * Replays the stack height along the program and raises the same errors as a scalar evaluation would.
+   * */
+  static void validateProgramStack(CompiledExpression expression) {
+    int top = 0;
+    for (byte opcode : expression.opcodes) {
+      if (CompiledExpression.isOperand(opcode)) {
+        top++;
+      } else if (top < CalculatorUtils.getOperatorArity(opcode)) {
+        throw new EvaluatorStackException(
+            "Operation cannot be solved due to missing operands on the stack");
+      } else {
+        top -= CalculatorUtils.getOperatorArity(opcode) - 1;
+      }
+    }
+    validateStackAfterEvaluation(top);
   }
 
   /*
    * We apply the operator to the last two numbers on the stack (the one on top of the stack being the last operand), and push the result.
+   * A unary operator replaces the number on top of the stack instead. Returns the new height of the stack.
    * */
-  private static void applyOperatorToStack(String operator, Deque<Integer> stack) {
-    if (stack.size() < 2) {
+  private static int applyOperatorToStack(int opcode, int[] stack, int top) {
+    int arity = CalculatorUtils.getOperatorArity(opcode);
+    if (top < arity) {
       throw new EvaluatorStackException(
           "Operation cannot be solved due to missing operands on the stack");
     }
-    int b = stack.pop();
-    int a = stack.pop();
-    int result = CalculatorUtils.applyOperator(a, b, operator);
-    stack.push(result);
+    if (arity == 1) {
+      stack[top - 1] = CalculatorUtils.applyUnaryOperator(stack[top - 1], opcode);
+      return top;
+    }
+    stack[top - 2] = CalculatorUtils.applyOperator(stack[top - 2], stack[top - 1], opcode);
+    return top - 1;
   }
 
   /*
    * After processing all the tokens, there should be exactly one element left: the final result.
    * */
-  private static void validateStackAfterEvaluation(Deque<Integer> stack) {
-    if (stack.size() > 1) {
+  static void validateStackAfterEvaluation(int top) {
+    if (top > 1) {
       throw new EvaluatorStackException("More than one element left on the stack");
-    } else if (stack.size() == 0) {
+    } else if (top == 0) {
       throw new EvaluatorStackException("Stack is empty");
     }
   }
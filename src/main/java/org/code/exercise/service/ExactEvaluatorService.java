@@ -0,0 +1,271 @@
+package org.code.exercise.service;
+
+import java.math.BigInteger;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.OperatorRegistry;
+import org.code.exercise.service.helper.enums.OverflowMode;
+
+/**
+ * Evaluates wide programs on 64-bit integers, with a choice of semantics on overflow.
+ *
+ * <p>Values live on a primitive long stack. Each operation is computed with plain long arithmetic
+ * and checked for overflow the same way as {@link Math#addExact} and {@link Math#multiplyExact} do,
+ * without throwing. In {@link OverflowMode#PROMOTE} mode, only the overflowing subexpression is
+ * moved to a BigInteger side stack, allocated on the first overflow, and moved back to the long
+ * stack as soon as a result fits again. Expressions of small numbers never leave the long stack. A
+ * power that may take more than {@value #MAX_POWER_BITS} bits is an overflow even in this mode, so
+ * that a small expression (ex: "2 ^ 1000000000") cannot exhaust the memory or the CPU.
+ *
+ * <p>All the built-in operators are supported; registered ones only work on ints and are rejected.
+ */
+public class ExactEvaluatorService {
+
+  public static final int MAX_POWER_BITS = 1 << 20;
+
+  private static final ThreadLocal<long[]> STACK = ThreadLocal.withInitial(() -> new long[16]);
+
+  private ExactEvaluatorService() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Runs a wide postfix program.
+   *
+   * @param expression wide postfix program
+   * @param mode what to do when a value does not fit in a long
+   * @return the result of evaluating the expression, a Long, or a BigInteger if it does not fit in
+   *     a long
+   * @throws ArithmeticException in case of division by zero, of overflow in {@link
+   *     OverflowMode#FAIL} mode, or of a power larger than {@value #MAX_POWER_BITS} bits in {@link
+   *     OverflowMode#PROMOTE} mode
+   * @throws EvaluatorStackException in case of wrong state of operator stack
+   */
+  public static Number evaluate(WideExpression expression, OverflowMode mode) {
+    return EvaluatorService.evaluationStage(
+        () -> run(expression, mode), expression.size(), expression::getMaxStackDepth);
+  }
+
+  /*
+   * A slot of the long stack is only meaningful when the same slot of the BigInteger side stack is null.
+   * */
+  private static Number run(WideExpression expression, OverflowMode mode) {
+    byte[] opcodes = expression.program.opcodes;
+    long[] constants = expression.constants;
+    BigInteger[] bigConstants = expression.bigConstants;
+    long[] stack = stackFor(expression);
+    BigInteger[] bigStack = null;
+    boolean wrap = mode == OverflowMode.WRAP;
+    int constantIndex = 0;
+    int top = 0;
+
+    for (byte opcode : opcodes) {
+      if (opcode == CalculatorUtils.OPCODE_PUSH) {
+        BigInteger big = bigConstants == null ? null : bigConstants[constantIndex];
+        if (big != null && mode == OverflowMode.FAIL) {
+          throw overflow();
+        }
+        if (big != null && mode == OverflowMode.PROMOTE) {
+          bigStack = bigStack == null ? new BigInteger[stack.length] : bigStack;
+          bigStack[top] = big;
+        } else if (bigStack != null) {
+          bigStack[top] = null;
+        }
+        // Out of range literals are already truncated to their low 64 bits for the wrap mode
+        stack[top++] = constants[constantIndex++];
+        continue;
+      }
+
+      if (!OperatorRegistry.isBuiltIn(opcode)) {
+        throw new IllegalArgumentException(
+            "Operator not supported on 64-bit integers: "
+                + CalculatorUtils.getOperatorSymbol(opcode));
+      }
+      if (top < CalculatorUtils.getOperatorArity(opcode)) {
+        throw new EvaluatorStackException(
+            "Operation cannot be solved due to missing operands on the stack");
+      }
+      if (opcode == CalculatorUtils.OPCODE_NEG) {
+        bigStack = negate(stack, bigStack, top - 1, mode);
+        continue;
+      }
+      top--;
+      long a = stack[top - 1];
+      long b = stack[top];
+      if (bigStack != null && (bigStack[top - 1] != null || bigStack[top] != null)) {
+        BigInteger result =
+            applyOperator(
+                bigStack[top - 1] != null ? bigStack[top - 1] : BigInteger.valueOf(a),
+                bigStack[top] != null ? bigStack[top] : BigInteger.valueOf(b),
+                opcode);
+        if (result.bitLength() < Long.SIZE) {
+          stack[top - 1] = result.longValue();
+          bigStack[top - 1] = null;
+        } else {
+          bigStack[top - 1] = result;
+        }
+        continue;
+      }
+
+      long result = applyOperator(a, b, opcode);
+      if (!wrap && overflows(a, b, result, opcode)) {
+        if (mode == OverflowMode.FAIL) {
+          throw overflow();
+        }
+        bigStack = bigStack == null ? new BigInteger[stack.length] : bigStack;
+        bigStack[top - 1] = applyOperator(BigInteger.valueOf(a), BigInteger.valueOf(b), opcode);
+      }
+      stack[top - 1] = result;
+    }
+
+    EvaluatorService.validateStackAfterEvaluation(top);
+    if (bigStack != null && bigStack[0] != null) {
+      return bigStack[0];
+    }
+    return stack[0];
+  }
+
+  /*
+   * The only negation that overflows is the one of Long.MIN_VALUE, whose opposite is promoted.
+   * Returns the big stack, allocated on the first promotion.
+   * */
+  private static BigInteger[] negate(
+      long[] stack, BigInteger[] bigStack, int index, OverflowMode mode) {
+    if (bigStack != null && bigStack[index] != null) {
+      BigInteger result = bigStack[index].negate();
+      if (result.bitLength() < Long.SIZE) {
+        stack[index] = result.longValue();
+        bigStack[index] = null;
+      } else {
+        bigStack[index] = result;
+      }
+      return bigStack;
+    }
+    if (stack[index] == Long.MIN_VALUE && mode == OverflowMode.FAIL) {
+      throw overflow();
+    }
+    if (stack[index] == Long.MIN_VALUE && mode == OverflowMode.PROMOTE) {
+      bigStack = bigStack == null ? new BigInteger[stack.length] : bigStack;
+      bigStack[index] = BigInteger.valueOf(Long.MIN_VALUE).negate();
+    }
+    stack[index] = -stack[index];
+    return bigStack;
+  }
+
+  private static long applyOperator(long a, long b, int opcode) {
+    return switch (opcode) {
+      case CalculatorUtils.OPCODE_ADD -> a + b;
+      case CalculatorUtils.OPCODE_SUB -> a - b;
+      case CalculatorUtils.OPCODE_MUL -> a * b;
+      case CalculatorUtils.OPCODE_DIV -> {
+        if (b == 0) throw new ArithmeticException("Division by zero");
+        yield a / b;
+      }
+      case CalculatorUtils.OPCODE_MOD -> {
+        if (b == 0) throw new ArithmeticException("Division by zero");
+        yield a % b;
+      }
+      case CalculatorUtils.OPCODE_POW -> power(a, b);
+      case CalculatorUtils.OPCODE_MIN -> Math.min(a, b);
+      case CalculatorUtils.OPCODE_MAX -> Math.max(a, b);
+      default -> throw new IllegalArgumentException("Unknown operator opcode: " + opcode);
+    };
+  }
+
+  private static BigInteger applyOperator(BigInteger a, BigInteger b, int opcode) {
+    return switch (opcode) {
+      case CalculatorUtils.OPCODE_ADD -> a.add(b);
+      case CalculatorUtils.OPCODE_SUB -> a.subtract(b);
+      case CalculatorUtils.OPCODE_MUL -> a.multiply(b);
+      case CalculatorUtils.OPCODE_DIV -> {
+        if (b.signum() == 0) throw new ArithmeticException("Division by zero");
+        yield a.divide(b);
+      }
+      case CalculatorUtils.OPCODE_MOD -> {
+        if (b.signum() == 0) throw new ArithmeticException("Division by zero");
+        yield a.remainder(b);
+      }
+      case CalculatorUtils.OPCODE_POW -> power(a, b);
+      case CalculatorUtils.OPCODE_MIN -> a.min(b);
+      case CalculatorUtils.OPCODE_MAX -> a.max(b);
+      default -> throw new IllegalArgumentException("Unknown operator opcode: " + opcode);
+    };
+  }
+
+  /*
+   * Same rules as CalculatorUtils.power: wrapping around on overflow, and the integer part of the inverse for a
+   * negative exponent.
+   * */
+  private static long power(long a, long b) {
+    if (b < 0) {
+      if (a == 0) throw new ArithmeticException("Division by zero");
+      return a == 1 || (a == -1 && (b & 1) == 0) ? 1 : a == -1 ? -1 : 0;
+    }
+    long result = 1;
+    while (b > 0) {
+      if ((b & 1) != 0) result *= a;
+      a *= a;
+      b >>= 1;
+    }
+    return result;
+  }
+
+  /*
+   * The result of a base other than -1, 0 or 1 has at most bitLength(|a|) * b bits, so its size is bounded before
+   * computing it. A negative exponent gives 0 for such a base.
+   * */
+  private static BigInteger power(BigInteger a, BigInteger b) {
+    if (b.signum() == 0) {
+      return BigInteger.ONE;
+    }
+    if (a.abs().compareTo(BigInteger.ONE) > 0) {
+      if (b.signum() < 0) return BigInteger.ZERO;
+      if (b.bitLength() >= Integer.SIZE
+          || (long) a.abs().bitLength() * b.intValue() > MAX_POWER_BITS) {
+        throw overflow();
+      }
+      return a.pow(b.intValue());
+    }
+    if (a.signum() == 0) {
+      if (b.signum() < 0) throw new ArithmeticException("Division by zero");
+      return BigInteger.ZERO;
+    }
+    return a.signum() > 0 || !b.testBit(0) ? BigInteger.ONE : BigInteger.ONE.negate();
+  }
+
+  /*
+   * Same checks as the Math.xxxExact methods, on the already computed wrapped result.
+   * Long.MIN_VALUE / -1 is the only division that overflows, a remainder, a minimum or a maximum never does.
+   * */
+  private static boolean overflows(long a, long b, long result, int opcode) {
+    return switch (opcode) {
+      case CalculatorUtils.OPCODE_ADD -> ((a ^ result) & (b ^ result)) < 0;
+      case CalculatorUtils.OPCODE_SUB -> ((a ^ b) & (a ^ result)) < 0;
+      case CalculatorUtils.OPCODE_MUL -> Math.multiplyHigh(a, b) != (result >> (Long.SIZE - 1));
+      case CalculatorUtils.OPCODE_DIV -> a == Long.MIN_VALUE && b == -1;
+      case CalculatorUtils.OPCODE_POW -> powerOverflows(a, b);
+      default -> false;
+    };
+  }
+
+  // Any base other than -1, 0 or 1 overflows a long from the exponent 64 on
+  private static boolean powerOverflows(long a, long b) {
+    if (b < 2 || (a >= -1 && a <= 1)) {
+      return false;
+    }
+    return b >= Long.SIZE || BigInteger.valueOf(a).pow((int) b).bitLength() >= Long.SIZE;
+  }
+
+  private static ArithmeticException overflow() {
+    return new ArithmeticException("Integer overflow");
+  }
+
+  private static long[] stackFor(WideExpression expression) {
+    long[] stack = STACK.get();
+    if (stack.length < expression.program.maxStackDepth) {
+      stack = new long[Math.max(expression.program.maxStackDepth, stack.length * 2)];
+      STACK.set(stack);
+    }
+    return stack;
+  }
+}
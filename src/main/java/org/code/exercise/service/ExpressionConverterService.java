@@ -1,12 +1,23 @@
 package org.code.exercise.service;
 
 import java.util.*;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
 import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.OperatorRegistry;
+import org.code.exercise.service.helper.enums.CalculationError;
 import org.code.exercise.service.helper.enums.TokenType;
+import org.code.exercise.service.model.CalculationResult;
+import org.code.exercise.service.model.TokenStream;
+import org.code.exercise.service.monitoring.CalculatorMetrics;
+import org.code.exercise.service.monitoring.ConversionEvent;
+import org.code.exercise.service.monitoring.Stage;
 
 public class ExpressionConverterService {
 
+  private static final String[] NO_VARIABLES = {};
+
   private ExpressionConverterService() {
     throw new UnsupportedOperationException("Utility class");
   }
@@ -23,6 +34,10 @@ public class ExpressionConverterService {
    *     parentheses
    */
   public static List<String> infixToPostfix(List<String> tokens) {
+    return conversionStage(() -> convert(tokens), tokens.size(), () -> nestingDepth(tokens));
+  }
+
+  private static List<String> convert(List<String> tokens) {
     List<String> output = new ArrayList<>();
     Deque<String> operatorStack = new ArrayDeque<>();
 
@@ -32,7 +47,8 @@ public class ExpressionConverterService {
         case OPERATOR -> handleOperator(token, operatorStack, output);
         case LEFT_PAREN -> operatorStack.push(token);
         case RIGHT_PAREN -> handleClosingParenthesis(operatorStack, output);
-        case INVALID ->
+        // Variables are only supported by the typed token stream
+        case INVALID, IDENTIFIER, BIG_NUMBER, FUNCTION, COMMA ->
             throw new ExpressionConverterInvalidTokenException("Invalid token: " + token);
       }
     }
@@ -40,6 +56,299 @@ public class ExpressionConverterService {
     return output;
   }
 
+  /**
+   * Converts a typed token stream from infix to postfix notation using Shunting-yard algorithm, and
+   * emits the result directly as a compiled program: numbers become pushes of the constant pool and
+   * operators their opcode.
+   *
+   * @param tokens typed tokens in infix order, as produced by {@link ParserService#lex}
+   * @return the compiled postfix program
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses, with the position of the faulty token
+   */
+  public static CompiledExpression infixToPostfix(TokenStream tokens) {
+    return infixToPostfix(tokens, NO_VARIABLES);
+  }
+
+  /**
+   * Converts a typed token stream holding variables into a compiled program. Each identifier is
+   * resolved to the index of its name in {@code variables}, and becomes a load of that variable.
+   *
+   * @param tokens typed tokens in infix order, as produced by {@link ParserService#lex}
+   * @param variables names of the variables, in the order their values are given on evaluation
+   * @return the compiled postfix program
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error, mismatched
+   *     parentheses or unknown variable, with the position of the faulty token
+   * @throws IllegalArgumentException if a variable name is not an identifier or is duplicated
+   */
+  public static CompiledExpression infixToPostfix(TokenStream tokens, String... variables) {
+    return conversionStage(
+        () -> convertOrThrow(tokens, variables, false), tokens.size(), tokens::nestingDepth);
+  }
+
+  /**
+   * Converts a typed token stream into a program for the 64-bit engine, see {@link
+   * ExactEvaluatorService}. Unlike {@link #infixToPostfix(TokenStream)}, integer literals out of
+   * the int range are accepted.
+   *
+   * @param tokens typed tokens in infix order, as produced by {@link ParserService#lex}
+   * @return the wide postfix program
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses, with the position of the faulty token
+   */
+  public static WideExpression infixToPostfixWide(TokenStream tokens) {
+    return conversionStage(
+        () -> WideExpression.of(convertOrThrow(tokens, NO_VARIABLES, true), tokens),
+        tokens.size(),
+        tokens::nestingDepth);
+  }
+
+  /**
+   * Converts a typed token stream into a compiled program like {@link #infixToPostfix(TokenStream,
+   * String...)}, but reports syntax errors without throwing.
+   *
+   * @param error receives the syntax error, if any
+   * @return the compiled postfix program, or null in case of syntax error
+   * @throws IllegalArgumentException if a variable name is not an identifier or is duplicated
+   */
+  static CompiledExpression tryInfixToPostfix(
+      TokenStream tokens, String[] variables, SyntaxError error) {
+    return conversionStage(
+        () -> convert(tokens, variables, false, error), tokens.size(), tokens::nestingDepth);
+  }
+
+  /*
+   * Runs a conversion as the conversion stage: its latency and its JFR event are recorded whether it succeeds or
+   * throws. The nesting depth is only computed when the event is committed.
+   * */
+  private static <T> T conversionStage(
+      Supplier<T> conversion, int tokenCount, IntSupplier nestingDepth) {
+    ConversionEvent event = new ConversionEvent();
+    event.begin();
+    long startTime = CalculatorMetrics.startStage();
+    try {
+      return conversion.get();
+    } finally {
+      CalculatorMetrics.recordStage(Stage.CONVERSION, startTime);
+      if (event.shouldCommit()) {
+        event.tokenCount = tokenCount;
+        event.nestingDepth = nestingDepth.getAsInt();
+        event.commit();
+      }
+    }
+  }
+
+  /** Holder of the syntax error of a conversion that does not throw. */
+  static final class SyntaxError {
+    CalculationResult result;
+  }
+
+  private static CompiledExpression convertOrThrow(
+      TokenStream tokens, String[] variables, boolean wide) {
+    SyntaxError error = new SyntaxError();
+    CompiledExpression expression = convert(tokens, variables, wide, error);
+    if (expression == null) {
+      throw error.result.toException();
+    }
+    return expression;
+  }
+
+  /*
+   * In wide mode, the constant pool of the program holds the index of each number token instead of its value,
+   * so that literals out of the int range can be read back from the source. Syntax errors are put in the holder
+   * and null is returned, so that no exception is built for invalid input.
+   * A function stays on the operator stack below the left parenthesis of its arguments, and is emitted when that
+   * parenthesis is closed. Prefix operators are pushed without popping anything, as no operand precedes them.
+   * */
+  private static CompiledExpression convert(
+      TokenStream tokens, String[] variables, boolean wide, SyntaxError error) {
+    validateVariables(variables);
+    int size = tokens.size();
+    byte[] opcodes = new byte[size];
+    int[] constants = new int[size];
+    int opcodeCount = 0;
+    int constantCount = 0;
+    // The operator stack holds the indices of the operator, function and left parenthesis tokens
+    int[] operatorStack = new int[size];
+    int top = 0;
+    // Number of commas met within each left parenthesis of the stack, once there is a function
+    int[] commaCounts = null;
+
+    for (int i = 0; i < size; i++) {
+      switch (tokens.type(i)) {
+        case NUMBER -> {
+          opcodes[opcodeCount++] = CalculatorUtils.OPCODE_PUSH;
+          constants[constantCount++] = wide ? i : tokens.value(i);
+        }
+        case BIG_NUMBER -> {
+          if (!wide) {
+            error.result = invalidToken(tokens, i);
+            return null;
+          }
+          opcodes[opcodeCount++] = CalculatorUtils.OPCODE_PUSH;
+          constants[constantCount++] = i;
+        }
+        case IDENTIFIER -> {
+          int variable = resolveVariable(tokens, i, variables);
+          if (variable < 0) {
+            error.result = invalidToken(tokens, i);
+            return null;
+          }
+          opcodes[opcodeCount++] = CalculatorUtils.OPCODE_LOAD;
+          constants[constantCount++] = variable;
+        }
+        case OPERATOR -> {
+          int opcode = tokens.value(i);
+          if (CalculatorUtils.getOperatorArity(opcode) == 2) {
+            int priority = CalculatorUtils.getOperatorPriority(opcode);
+            // A right-associative operator leaves the ones of the same priority on the stack
+            int lowest = OperatorRegistry.isRightAssociative(opcode) ? priority + 1 : priority;
+            while (top > 0
+                && tokens.type(operatorStack[top - 1]) == TokenType.OPERATOR
+                && lowest
+                    <= CalculatorUtils.getOperatorPriority(tokens.value(operatorStack[top - 1]))) {
+              opcodes[opcodeCount++] = (byte) tokens.value(operatorStack[--top]);
+            }
+          }
+          operatorStack[top++] = i;
+        }
+        case FUNCTION -> {
+          if (commaCounts == null) {
+            commaCounts = new int[size];
+          }
+          operatorStack[top++] = i;
+        }
+        case LEFT_PAREN -> {
+          if (commaCounts != null) {
+            commaCounts[top] = 0;
+          }
+          operatorStack[top++] = i;
+        }
+        case COMMA -> {
+          while (top > 0 && tokens.type(operatorStack[top - 1]) != TokenType.LEFT_PAREN) {
+            opcodes[opcodeCount++] = (byte) tokens.value(operatorStack[--top]);
+          }
+          if (top < 2 || tokens.type(operatorStack[top - 2]) != TokenType.FUNCTION) {
+            error.result = invalidToken(tokens, i);
+            return null;
+          }
+          commaCounts[top - 1]++;
+        }
+        case RIGHT_PAREN -> {
+          while (top > 0 && tokens.type(operatorStack[top - 1]) != TokenType.LEFT_PAREN) {
+            opcodes[opcodeCount++] = (byte) tokens.value(operatorStack[--top]);
+          }
+          if (top == 0) {
+            error.result =
+                CalculationResult.failure(
+                    CalculationError.MISSING_LEFT_PARENTHESIS, tokens.position(i));
+            return null;
+          }
+          top--;
+          if (top > 0 && tokens.type(operatorStack[top - 1]) == TokenType.FUNCTION) {
+            int function = operatorStack[--top];
+            int arguments =
+                tokens.type(i - 1) == TokenType.LEFT_PAREN ? 0 : commaCounts[top + 1] + 1;
+            if (arguments != CalculatorUtils.getOperatorArity(tokens.value(function))) {
+              error.result =
+                  CalculationResult.failure(
+                      CalculationError.WRONG_ARGUMENT_COUNT,
+                      tokens.position(function),
+                      tokens.text(function));
+              return null;
+            }
+            opcodes[opcodeCount++] = (byte) tokens.value(function);
+          }
+        }
+        case INVALID -> {
+          error.result = invalidToken(tokens, i);
+          return null;
+        }
+      }
+    }
+
+    while (top > 0) {
+      int index = operatorStack[--top];
+      if (tokens.type(index) == TokenType.LEFT_PAREN) {
+        error.result =
+            CalculationResult.failure(
+                CalculationError.MISSING_RIGHT_PARENTHESIS, tokens.position(index));
+        return null;
+      }
+      opcodes[opcodeCount++] = (byte) tokens.value(index);
+    }
+
+    return new CompiledExpression(
+        Arrays.copyOf(opcodes, opcodeCount),
+        Arrays.copyOf(constants, constantCount),
+        variables.clone());
+  }
+
+  private static int nestingDepth(List<String> tokens) {
+    int depth = 0;
+    int maxDepth = 0;
+    for (String token : tokens) {
+      if (CalculatorUtils.LEFT_PARENTHESIS.equals(token)) {
+        maxDepth = Math.max(maxDepth, ++depth);
+      } else if (CalculatorUtils.RIGHT_PARENTHESIS.equals(token)) {
+        depth--;
+      }
+    }
+    return maxDepth;
+  }
+
+  /*
+   * The identifier is compared in place with the variable names, without extracting its text. An unknown identifier is an invalid token,
+   * for which -1 is returned.
+   * */
+  private static int resolveVariable(TokenStream tokens, int index, String[] variables) {
+    CharSequence source = tokens.source();
+    int position = tokens.position(index);
+    int length = tokens.length(index);
+    for (int v = 0; v < variables.length; v++) {
+      String variable = variables[v];
+      if (variable.length() == length && regionMatches(source, position, variable)) {
+        return v;
+      }
+    }
+    return -1;
+  }
+
+  // The text is extracted right away, as the source may be a view that is reused afterwards
+  private static CalculationResult invalidToken(TokenStream tokens, int index) {
+    return CalculationResult.failure(
+        CalculationError.INVALID_TOKEN, tokens.position(index), tokens.text(index));
+  }
+
+  private static boolean regionMatches(CharSequence source, int position, String name) {
+    for (int i = 0; i < name.length(); i++) {
+      if (source.charAt(position + i) != name.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private static void validateVariables(String[] variables) {
+    Set<String> names = new HashSet<>();
+    for (String variable : variables) {
+      if (!isIdentifier(variable)) {
+        throw new IllegalArgumentException("Invalid variable name: " + variable);
+      }
+      if (!names.add(variable)) {
+        throw new IllegalArgumentException("Duplicated variable name: " + variable);
+      }
+    }
+  }
+
+  private static boolean isIdentifier(String name) {
+    if (name == null || name.isEmpty() || !CalculatorUtils.isIdentifierStart(name.charAt(0))) {
+      return false;
+    }
+    for (int i = 1; i < name.length(); i++) {
+      if (!CalculatorUtils.isIdentifierPart(name.charAt(i))) return false;
+    }
+    return true;
+  }
+
   /*
    * We pop and append to output all the operators present in the stack until we reach the left parenthesis in the stack, then we eliminate it.
    * */
@@ -58,14 +367,17 @@ public class ExpressionConverterService {
   }
 
   /*
-   * We pop operators from the stack while they have higher or equal priority than the given one. Those operators are appended to the output in the unstacking order.
+   * We pop operators from the stack while they have higher or equal priority than the given one (only higher for a
+   * right-associative one). Those operators are appended to the output in the unstacking order.
    * */
   private static void handleOperator(
       String operator, Deque<String> operatorStack, List<String> output) {
+    int opcode = CalculatorUtils.getOperatorOpcode(operator);
+    int priority = CalculatorUtils.getOperatorPriority(opcode);
+    int lowest = OperatorRegistry.isRightAssociative(opcode) ? priority + 1 : priority;
     while (!operatorStack.isEmpty()
         && CalculatorUtils.getTokenType(operatorStack.peekFirst()) == TokenType.OPERATOR
-        && CalculatorUtils.getOperatorPriority(operator)
-            <= CalculatorUtils.getOperatorPriority(operatorStack.peekFirst())) {
+        && lowest <= CalculatorUtils.getOperatorPriority(operatorStack.peekFirst())) {
       output.add(operatorStack.pop());
     }
     // Once the unstacking process is finished, we push our current operator on the stack
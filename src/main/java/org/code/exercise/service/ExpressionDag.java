@@ -0,0 +1,225 @@
+package org.code.exercise.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.helper.CalculatorUtils;
+
+/**
+ * Hash-consed graph of the subexpressions of many compiled expressions.
+ *
+ * <p>Each expression added is rebuilt from its postfix program into nodes that are interned: a
+ * constant or an operator applied to the same child nodes is always the same node. Structurally
+ * identical subexpressions (ex: "(1200 * 37 - 5)" repeated on many lines) are thus stored once and
+ * evaluated once, whatever the number of expressions they appear in.
+ *
+ * <p>Nodes are numbered in creation order, and children are always created before their parent, so
+ * the node order is a topological order: evaluating the nodes by increasing number never meets an
+ * operand that is not computed yet. Only the nodes created since the last evaluation are evaluated.
+ *
+ * <p>Nodes are stored in parallel primitive arrays, and the intern table is an open addressing
+ * table of node numbers, so that no object is allocated per node. Instances are not thread-safe.
+ */
+public final class ExpressionDag {
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int[] NO_NODES = {};
+
+  // Definition of each node: a PUSH of the constant "left", or an operator applied to the nodes
+  // "left" and "right". The operand of a unary operator is both its left and right node
+  private byte[] opcodes = new byte[INITIAL_CAPACITY];
+  private int[] lefts = new int[INITIAL_CAPACITY];
+  private int[] rights = new int[INITIAL_CAPACITY];
+  private int[] values = new int[INITIAL_CAPACITY];
+  // Nodes dividing by zero or whose operator failed, or having such a node as operand
+  private final BitSet failedNodes = new BitSet();
+  // Error of the failed nodes whose failure is not a division by zero, by node
+  private final Map<Integer, RuntimeException> nodeErrors = new HashMap<>();
+  private int size;
+  private int evaluatedSize;
+
+  // Node number + 1 by hash of the node definition, 0 for an empty slot
+  private int[] table = new int[INITIAL_CAPACITY * 2];
+
+  private int[] stack = NO_NODES;
+  private long addedNodeCount;
+  private long sharedNodeCount;
+
+  /**
+   * Adds the nodes of a compiled expression to the graph, reusing the existing nodes for the
+   * subexpressions already seen.
+   *
+   * <p>The stack of the whole program is validated before any node is added, so a malformed program
+   * is rejected even if its sequential evaluation would fail earlier on a division by zero.
+   *
+   * @param expression compiled postfix program, without variables
+   * @return the number of the node computing the whole expression
+   * @throws EvaluatorStackException in case of wrong state of the stack (ex: missing operand)
+   * @throws IllegalArgumentException if the expression has variables
+   */
+  public int add(CompiledExpression expression) {
+    if (!expression.getVariables().isEmpty()) {
+      throw new IllegalArgumentException(
+          "Expected 0 variable values, got " + expression.getVariables().size());
+    }
+    EvaluatorService.validateProgramStack(expression);
+    if (stack.length < expression.maxStackDepth) {
+      stack = new int[Math.max(expression.maxStackDepth, stack.length * 2)];
+    }
+    int constantIndex = 0;
+    int top = 0;
+    for (byte opcode : expression.opcodes) {
+      if (opcode == CalculatorUtils.OPCODE_PUSH) {
+        stack[top++] = intern(opcode, expression.constants[constantIndex++], 0);
+      } else if (CalculatorUtils.getOperatorArity(opcode) == 1) {
+        stack[top - 1] = intern(opcode, stack[top - 1], stack[top - 1]);
+      } else {
+        top--;
+        stack[top - 1] = intern(opcode, stack[top - 1], stack[top]);
+      }
+    }
+    addedNodeCount += expression.opcodes.length;
+    return stack[0];
+  }
+
+  /**
+   * Returns the value of a node, evaluating first all the nodes not evaluated yet.
+   *
+   * @param node number of the node, as returned by {@link #add}
+   * @return the value of the subexpression
+   * @throws ArithmeticException in case of division by zero in the subexpression
+   * @throws RuntimeException the error raised by the operation of a registered operator in the
+   *     subexpression, the leftmost one if several fail
+   */
+  public int evaluate(int node) {
+    if (node < 0 || node >= size) {
+      throw new IllegalArgumentException("Unknown node: " + node);
+    }
+    evaluatePendingNodes();
+    if (failedNodes.get(node)) {
+      RuntimeException error = nodeErrors.get(node);
+      throw error != null ? error : new ArithmeticException("Division by zero");
+    }
+    return values[node];
+  }
+
+  /** Number of distinct nodes of the graph. */
+  public int size() {
+    return size;
+  }
+
+  /** Number of nodes of all the expressions added, as trees, since the graph was created. */
+  public long getAddedNodeCount() {
+    return addedNodeCount;
+  }
+
+  /**
+   * Number of nodes of the expressions added that were already in the graph, since the graph was
+   * created. Each of them is an operation or a constant that is neither stored nor evaluated again.
+   */
+  public long getSharedNodeCount() {
+    return sharedNodeCount;
+  }
+
+  /** Removes all the nodes, to bound memory use. The sharing statistics are kept. */
+  public void clear() {
+    size = 0;
+    evaluatedSize = 0;
+    failedNodes.clear();
+    nodeErrors.clear();
+    Arrays.fill(table, 0);
+  }
+
+  /*
+   * Children always have a lower number than their parent, so a single pass in creation order is enough. A failed
+   * node takes the error of its left operand first, the one a sequential evaluation would meet first.
+   * */
+  private void evaluatePendingNodes() {
+    for (int node = evaluatedSize; node < size; node++) {
+      int opcode = opcodes[node];
+      if (opcode == CalculatorUtils.OPCODE_PUSH) {
+        values[node] = lefts[node];
+        continue;
+      }
+      int left = lefts[node];
+      int right = rights[node];
+      if (failedNodes.get(left) || failedNodes.get(right)) {
+        failedNodes.set(node);
+        RuntimeException error = nodeErrors.get(failedNodes.get(left) ? left : right);
+        if (error != null) {
+          nodeErrors.put(node, error);
+        }
+      } else if (CalculatorUtils.dividesByZero(values[left], values[right], opcode)) {
+        failedNodes.set(node);
+      } else {
+        try {
+          values[node] =
+              CalculatorUtils.getOperatorArity(opcode) == 1
+                  ? CalculatorUtils.applyUnaryOperator(values[left], opcode)
+                  : CalculatorUtils.applyOperator(values[left], values[right], opcode);
+        } catch (RuntimeException e) {
+          // Only fails the expressions using this node, not the rest of the graph
+          failedNodes.set(node);
+          nodeErrors.put(node, e);
+        }
+      }
+    }
+    evaluatedSize = size;
+  }
+
+  private int intern(byte opcode, int left, int right) {
+    int mask = table.length - 1;
+    int slot = hash(opcode, left, right) & mask;
+    int entry;
+    while ((entry = table[slot]) != 0) {
+      int node = entry - 1;
+      if (opcodes[node] == opcode && lefts[node] == left && rights[node] == right) {
+        sharedNodeCount++;
+        return node;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (size == opcodes.length) {
+      grow();
+    }
+    int node = size++;
+    opcodes[node] = opcode;
+    lefts[node] = left;
+    rights[node] = right;
+    table[slot] = node + 1;
+    // The table is kept at most half full, so that probe sequences stay short
+    if (size * 2 > table.length) {
+      rehash(table.length * 2);
+    }
+    return node;
+  }
+
+  private static int hash(byte opcode, int left, int right) {
+    int h = (opcode * 31 + left) * 0x9E3779B9 + right;
+    h *= 0x85EBCA6B;
+    return h ^ (h >>> 16);
+  }
+
+  private void grow() {
+    int capacity = opcodes.length * 2;
+    opcodes = Arrays.copyOf(opcodes, capacity);
+    lefts = Arrays.copyOf(lefts, capacity);
+    rights = Arrays.copyOf(rights, capacity);
+    values = Arrays.copyOf(values, capacity);
+  }
+
+  private void rehash(int capacity) {
+    table = new int[capacity];
+    int mask = capacity - 1;
+    for (int node = 0; node < size; node++) {
+      int slot = hash(opcodes[node], lefts[node], rights[node]) & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = node + 1;
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package org.code.exercise.service;
+
+/**
+ * A compiled expression as a plain function of its variable values, like an {@link
+ * java.util.function.IntUnaryOperator} taking one value per variable.
+ *
+ * @see BytecodeCompiler
+ */
+@FunctionalInterface
+public interface ExpressionFunction {
+
+  /**
+   * Computes the expression.
+   *
+   * @param values value of each variable, in the order of {@link CompiledExpression#getVariables()}
+   * @return result of the calculation
+   * @throws ArithmeticException in case of division by zero
+   * @throws IllegalArgumentException if the number of values does not match the variables
+   */
+  int applyAsInt(int[] values);
+}
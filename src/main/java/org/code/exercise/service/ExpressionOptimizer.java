@@ -0,0 +1,348 @@
+package org.code.exercise.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.OperatorRegistry;
+
+/**
+ * Optimization stage between the conversion to postfix and the evaluation, for programs evaluated
+ * many times.
+ *
+ * <p>The postfix program is turned into an expression tree, simplified bottom-up, and written back
+ * as a smaller postfix program:
+ *
+ * <ul>
+ *   <li>constant subexpressions are folded (ex: "2 * 3" becomes "6"), including constants spread
+ *       along a chain of additions or multiplications (ex: "x + 2 + 3" becomes "x + 5"),
+ *   <li>identities are removed: "x + 0", "x - 0", "x * 1", "x / 1", "x * 0", "x - x", "- -x", "x +
+ *       (0 - y)" and "x - (0 - y)", a unary minus being handled like a subtraction from 0,
+ *   <li>a division by -1 is reduced to a subtraction from 0.
+ * </ul>
+ *
+ * <p>Folding uses the same wrapping {@code int} arithmetic as the evaluation, which keeps the
+ * rewritten chains exact. A division by a zero constant is never folded, and subexpressions that
+ * may divide by zero are never dropped (ex: "(1 / x) * 0" is kept), so that evaluation still raises
+ * the division by zero error. Operators and functions registered in {@link OperatorRegistry} are
+ * kept as they are, as nothing is known about them.
+ */
+public final class ExpressionOptimizer {
+
+  private ExpressionOptimizer() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Optimizes a postfix program.
+   *
+   * <p>Invalid programs (ex: missing operand) are returned unchanged, so that their evaluation
+   * raises the same error.
+   *
+   * @param expression compiled postfix program
+   * @return the optimized program, with the statistics of the optimization
+   */
+  public static OptimizedExpression optimize(CompiledExpression expression) {
+    try {
+      EvaluatorService.validateProgramStack(expression);
+    } catch (EvaluatorStackException e) {
+      return new OptimizedExpression(expression, expression.size(), 0, 0);
+    }
+    Optimizer optimizer = new Optimizer();
+    Node root = optimizer.buildTree(expression);
+    return new OptimizedExpression(
+        toProgram(root, expression.variables),
+        expression.size(),
+        optimizer.foldedConstants,
+        optimizer.simplifiedIdentities);
+  }
+
+  // Node of the expression tree. Operands have no children, unary operators only a left one, and
+  // the value of a variable is its index. Size, hash and whether the subtree may fail are computed
+  // once on creation.
+  private static final class Node {
+    final int opcode;
+    final int value;
+    final Node left;
+    final Node right;
+    final int size;
+    final int hash;
+    final boolean mayFail;
+
+    Node(int opcode, int value, Node left, Node right) {
+      this.opcode = opcode;
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      if (left == null) {
+        this.size = 1;
+        this.hash = Objects.hash(opcode, value);
+        this.mayFail = false;
+      } else if (right == null) {
+        this.size = left.size + 1;
+        this.hash = Objects.hash(opcode, left.hash);
+        this.mayFail = left.mayFail || !OperatorRegistry.isBuiltIn(opcode);
+      } else {
+        this.size = left.size + right.size + 1;
+        this.hash = Objects.hash(opcode, left.hash, right.hash);
+        this.mayFail = left.mayFail || right.mayFail || mayFail(opcode, right);
+      }
+    }
+
+    boolean isConstant() {
+      return opcode == CalculatorUtils.OPCODE_PUSH;
+    }
+
+    boolean isConstant(int constant) {
+      return isConstant() && value == constant;
+    }
+
+    boolean isOperator(int operator) {
+      return opcode == operator && left != null;
+    }
+
+    // A subtraction from 0, or a unary minus
+    boolean isNegation() {
+      return (isOperator(CalculatorUtils.OPCODE_SUB) && left.isConstant(0))
+          || isOperator(CalculatorUtils.OPCODE_NEG);
+    }
+
+    Node negatedOperand() {
+      return right == null ? left : right;
+    }
+
+    private static boolean mayFail(int opcode, Node right) {
+      return switch (opcode) {
+        case CalculatorUtils.OPCODE_DIV, CalculatorUtils.OPCODE_MOD ->
+            !right.isConstant() || right.value == 0;
+        case CalculatorUtils.OPCODE_POW -> !right.isConstant() || right.value < 0;
+        default -> !OperatorRegistry.isBuiltIn(opcode);
+      };
+    }
+  }
+
+  /*
+   * Holds the statistics while the tree is built and simplified.
+   * */
+  private static final class Optimizer {
+    int foldedConstants;
+    int simplifiedIdentities;
+
+    /*
+     * Replays the program on a stack of nodes: every operator node is simplified as soon as it is built,
+     * from children that are already simplified.
+     * */
+    Node buildTree(CompiledExpression expression) {
+      Node[] stack = new Node[expression.maxStackDepth];
+      int top = 0;
+      int constantIndex = 0;
+      for (byte opcode : expression.opcodes) {
+        if (CompiledExpression.isOperand(opcode)) {
+          stack[top++] = new Node(opcode, expression.constants[constantIndex++], null, null);
+        } else if (CalculatorUtils.getOperatorArity(opcode) == 1) {
+          stack[top - 1] = simplifyUnary(opcode, stack[top - 1]);
+        } else {
+          top--;
+          stack[top - 1] = simplify(opcode, stack[top - 1], stack[top]);
+        }
+      }
+      return stack[0];
+    }
+
+    private Node simplify(int opcode, Node left, Node right) {
+      if (left.isConstant() && right.isConstant() && OperatorRegistry.isBuiltIn(opcode)) {
+        if (CalculatorUtils.dividesByZero(left.value, right.value, opcode)) {
+          return operator(opcode, left, right);
+        }
+        foldedConstants++;
+        return constant(CalculatorUtils.applyOperator(left.value, right.value, opcode));
+      }
+      return switch (opcode) {
+        case CalculatorUtils.OPCODE_ADD -> simplifyAddition(left, right);
+        case CalculatorUtils.OPCODE_SUB -> simplifySubtraction(left, right);
+        case CalculatorUtils.OPCODE_MUL -> simplifyMultiplication(left, right);
+        case CalculatorUtils.OPCODE_DIV -> simplifyDivision(left, right);
+        default -> operator(opcode, left, right);
+      };
+    }
+
+    private Node simplifyUnary(int opcode, Node operand) {
+      if (operand.isConstant() && OperatorRegistry.isBuiltIn(opcode)) {
+        foldedConstants++;
+        return constant(CalculatorUtils.applyUnaryOperator(operand.value, opcode));
+      }
+      if (opcode == CalculatorUtils.OPCODE_NEG && operand.isNegation()) {
+        simplifiedIdentities++;
+        return operand.negatedOperand();
+      }
+      return new Node(opcode, 0, operand, null);
+    }
+
+    private Node simplifyAddition(Node left, Node right) {
+      if (left.isConstant()) {
+        // Constants are kept on the right of commutative operators, to be folded along chains
+        return simplifyAddition(right, left);
+      }
+      if (right.isConstant(0)) {
+        simplifiedIdentities++;
+        return left;
+      }
+      if (right.isNegation() || left.isNegation()) {
+        simplifiedIdentities++;
+        return right.isNegation()
+            ? simplify(CalculatorUtils.OPCODE_SUB, left, right.negatedOperand())
+            : simplify(CalculatorUtils.OPCODE_SUB, right, left.negatedOperand());
+      }
+      if (right.isConstant() && isOperatorWithConstant(left, CalculatorUtils.OPCODE_ADD)) {
+        foldedConstants++;
+        return simplify(
+            CalculatorUtils.OPCODE_ADD, left.left, constant(left.right.value + right.value));
+      }
+      if (right.isConstant() && isOperatorWithConstant(left, CalculatorUtils.OPCODE_SUB)) {
+        foldedConstants++;
+        return simplify(
+            CalculatorUtils.OPCODE_ADD, left.left, constant(right.value - left.right.value));
+      }
+      return operator(CalculatorUtils.OPCODE_ADD, left, right);
+    }
+
+    private Node simplifySubtraction(Node left, Node right) {
+      if (right.isConstant(0)) {
+        simplifiedIdentities++;
+        return left;
+      }
+      if (!left.mayFail && isSameTree(left, right)) {
+        simplifiedIdentities++;
+        return constant(0);
+      }
+      if (right.isNegation()) {
+        simplifiedIdentities++;
+        return simplify(CalculatorUtils.OPCODE_ADD, left, right.negatedOperand());
+      }
+      if (right.isConstant() && isOperatorWithConstant(left, CalculatorUtils.OPCODE_ADD)) {
+        foldedConstants++;
+        return simplify(
+            CalculatorUtils.OPCODE_ADD, left.left, constant(left.right.value - right.value));
+      }
+      if (right.isConstant() && isOperatorWithConstant(left, CalculatorUtils.OPCODE_SUB)) {
+        foldedConstants++;
+        return simplify(
+            CalculatorUtils.OPCODE_SUB, left.left, constant(left.right.value + right.value));
+      }
+      return operator(CalculatorUtils.OPCODE_SUB, left, right);
+    }
+
+    private Node simplifyMultiplication(Node left, Node right) {
+      if (left.isConstant()) {
+        return simplifyMultiplication(right, left);
+      }
+      if (right.isConstant(1)) {
+        simplifiedIdentities++;
+        return left;
+      }
+      if (right.isConstant(0) && !left.mayFail) {
+        simplifiedIdentities++;
+        return right;
+      }
+      if (right.isConstant() && isOperatorWithConstant(left, CalculatorUtils.OPCODE_MUL)) {
+        foldedConstants++;
+        return simplify(
+            CalculatorUtils.OPCODE_MUL, left.left, constant(left.right.value * right.value));
+      }
+      return operator(CalculatorUtils.OPCODE_MUL, left, right);
+    }
+
+    private Node simplifyDivision(Node left, Node right) {
+      if (right.isConstant(1)) {
+        simplifiedIdentities++;
+        return left;
+      }
+      if (right.isConstant(-1)) {
+        // Both wrap the same way: Integer.MIN_VALUE / -1 == 0 - Integer.MIN_VALUE
+        simplifiedIdentities++;
+        return simplify(CalculatorUtils.OPCODE_SUB, constant(0), left);
+      }
+      return operator(CalculatorUtils.OPCODE_DIV, left, right);
+    }
+
+    private static boolean isOperatorWithConstant(Node node, int opcode) {
+      return node.isOperator(opcode) && node.right.isConstant();
+    }
+
+    private static Node constant(int value) {
+      return new Node(CalculatorUtils.OPCODE_PUSH, value, null, null);
+    }
+
+    private static Node operator(int opcode, Node left, Node right) {
+      return new Node(opcode, 0, left, right);
+    }
+  }
+
+  /*
+   * Compares the trees without recursion, as deeply nested expressions would overflow the call stack.
+   * */
+  private static boolean isSameTree(Node a, Node b) {
+    if (a.size != b.size || a.hash != b.hash) {
+      return false;
+    }
+    Deque<Node> pending = new ArrayDeque<>();
+    pending.push(a);
+    pending.push(b);
+    while (!pending.isEmpty()) {
+      Node y = pending.pop();
+      Node x = pending.pop();
+      if (x == y) {
+        continue;
+      }
+      if (x.opcode != y.opcode || x.value != y.value || x.hash != y.hash || x.size != y.size) {
+        return false;
+      }
+      if (x.left != null) {
+        pending.push(x.left);
+        pending.push(y.left);
+      }
+      if (x.right != null) {
+        pending.push(x.right);
+        pending.push(y.right);
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Writes the tree in postfix order without recursion: nodes are collected root first, right before left,
+   * and the collected list is read backwards.
+   * */
+  private static CompiledExpression toProgram(Node root, String[] variables) {
+    List<Node> reversed = new ArrayList<>(root.size);
+    Deque<Node> pending = new ArrayDeque<>();
+    pending.push(root);
+    int constantCount = 0;
+    while (!pending.isEmpty()) {
+      Node node = pending.pop();
+      reversed.add(node);
+      if (node.left == null) {
+        constantCount++;
+      } else {
+        pending.push(node.left);
+        if (node.right != null) {
+          pending.push(node.right);
+        }
+      }
+    }
+    byte[] opcodes = new byte[reversed.size()];
+    int[] constants = new int[constantCount];
+    int constantIndex = 0;
+    for (int i = 0; i < opcodes.length; i++) {
+      Node node = reversed.get(opcodes.length - 1 - i);
+      opcodes[i] = (byte) node.opcode;
+      if (node.left == null) {
+        constants[constantIndex++] = node.value;
+      }
+    }
+    return new CompiledExpression(opcodes, constants, variables);
+  }
+}
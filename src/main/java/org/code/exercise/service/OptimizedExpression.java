@@ -0,0 +1,21 @@
+package org.code.exercise.service;
+
+/**
+ * Output of {@link ExpressionOptimizer}: the optimized program and what the optimizer did to it.
+ *
+ * @param expression optimized program, computing the same results and errors as the original one
+ * @param originalSize number of instructions of the original program
+ * @param foldedConstants number of operations computed at compile time
+ * @param simplifiedIdentities number of identities (ex: "x * 1") and strength reductions applied
+ */
+public record OptimizedExpression(
+    CompiledExpression expression,
+    int originalSize,
+    int foldedConstants,
+    int simplifiedIdentities) {
+
+  /** Number of instructions removed from the original program. */
+  public int eliminatedNodes() {
+    return originalSize - expression.size();
+  }
+}
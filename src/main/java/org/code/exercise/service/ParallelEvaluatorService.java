@@ -0,0 +1,578 @@
+package org.code.exercise.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.helper.CalculatorUtils;
+
+/**
+ * Evaluates a single huge compiled expression on several cores.
+ *
+ * <p>The postfix program is seen as a tree without being copied: the right operand of the operator
+ * at index i ends at index i - 1, and its left operand ends where the right one starts. Subtrees
+ * smaller than a threshold are run sequentially on the stack machine; larger ones are split into
+ * {@link RecursiveTask}s on a {@link ForkJoinPool}.
+ *
+ * <p>Long chains of the same kind of operator (ex: a left-deep sum of millions of terms) are cut
+ * into segments of contiguous instructions, each run sequentially, so that the chain becomes a
+ * balanced reduction over a few segments:
+ *
+ * <ul>
+ *   <li>{@code +} and {@code -} chains become a sum of segments, each run from 0. Int arithmetic
+ *       wraps around modulo 2^32, where addition is associative and commutative, so the result is
+ *       exactly the one of the left-to-right evaluation.
+ *   <li>{@code *} chains become a product of segments, each run from 1, for the same reason.
+ *   <li>{@code /} chains are not associative: the dividend and the large divisors are evaluated in
+ *       parallel, then the chain is run from left to right.
+ * </ul>
+ *
+ * <p>Subtrees are evaluated out of order, and the program stack is validated before anything is
+ * evaluated, so the first error raised may not be the one of a sequential evaluation (ex: a
+ * division by zero before a missing operand, or an error of a registered operator). A failed
+ * evaluation is therefore run again sequentially, which raises the same error as {@link
+ * CompiledExpression#evaluate(int[])}.
+ *
+ * <p>Programs with unary operators (ex: unary minus, functions of one argument) are run
+ * sequentially: the operand counts the split relies on only hold for binary operators.
+ */
+public class ParallelEvaluatorService {
+
+  public static final int DEFAULT_THRESHOLD = 1 << 15;
+
+  private static final int[] NO_VALUES = {};
+  // Beyond this nesting of tasks, subtrees are run sequentially, so that the recursion stays
+  // bounded whatever the shape of the expression
+  private static final int MAX_TASK_DEPTH = 64;
+  // Number of instructions indexed at once when looking for where subtrees start
+  private static final int INDEX_CHUNK_SIZE = 4096;
+
+  private ParallelEvaluatorService() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Runs a compiled postfix program on the common pool, with the default threshold.
+   *
+   * @param expression compiled postfix program, without variables
+   * @return the result of evaluating the expression, the same as {@link
+   *     CompiledExpression#evaluate()}
+   * @throws ArithmeticException in case of division by zero
+   * @throws org.code.exercise.service.exception.EvaluatorStackException in case of wrong state of
+   *     the stack (ex: missing operand)
+   * @throws IllegalArgumentException if the program has variables
+   */
+  public static int evaluate(CompiledExpression expression) {
+    return evaluate(expression, NO_VALUES, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Runs a compiled postfix program with the given variable values on a fork-join pool.
+   *
+   * @param expression compiled postfix program
+   * @param values value of each variable of the program
+   * @param pool pool evaluating the subtrees
+   * @param threshold number of instructions below which a subtree is evaluated sequentially
+   * @return the result of evaluating the expression, the same as {@link
+   *     CompiledExpression#evaluate(int[])}
+   * @throws ArithmeticException in case of division by zero
+   * @throws org.code.exercise.service.exception.EvaluatorStackException in case of wrong state of
+   *     the stack (ex: missing operand)
+   * @throws IllegalArgumentException if the number of values does not match the variables, or the
+   *     threshold is not positive
+   */
+  public static int evaluate(
+      CompiledExpression expression, int[] values, ForkJoinPool pool, int threshold) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("Threshold must be positive, got " + threshold);
+    }
+    if (values.length != expression.variables.length) {
+      throw new IllegalArgumentException(
+          "Expected " + expression.variables.length + " variable values, got " + values.length);
+    }
+    return EvaluatorService.evaluationStage(
+        () -> evaluateTree(expression, values, pool, threshold),
+        expression.size(),
+        () -> expression.maxStackDepth);
+  }
+
+  private static int evaluateTree(
+      CompiledExpression expression, int[] values, ForkJoinPool pool, int threshold) {
+    Tree tree = new Tree(expression, values, threshold);
+    try {
+      if (expression.size() <= threshold || hasUnaryOperator(expression)) {
+        EvaluatorService.validateProgramStack(expression);
+        return tree.evaluateRange(0, expression.size() - 1, 0);
+      }
+      return invoke(pool, new RootTask(tree));
+    } catch (RuntimeException e) {
+      // Only the sequential evaluation tells which error comes first
+      return EvaluatorService.runOnThreadStack(expression, values);
+    }
+  }
+
+  private static boolean hasUnaryOperator(CompiledExpression expression) {
+    for (byte opcode : expression.opcodes) {
+      if (!CompiledExpression.isOperand(opcode) && CalculatorUtils.getOperatorArity(opcode) == 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * An exception crossing threads is rethrown by each join as a copy wrapping it, without its message; the original one
+   * is thrown instead.
+   * */
+  private static int invoke(ForkJoinPool pool, RootTask task) {
+    try {
+      return pool.invoke(task);
+    } catch (RuntimeException e) {
+      RuntimeException original = e;
+      while (original.getCause() instanceof RuntimeException cause
+          && cause.getClass() == original.getClass()) {
+        original = cause;
+      }
+      throw original;
+    }
+  }
+
+  /*
+   * Tree view of a postfix program, in which a subtree is the range of its instructions along with the index of its
+   * first operand in the constant pool. Indexing it validates the program stack in the same pass. A subtree of n
+   * instructions has (n + 1) / 2 operands, so the constant index of a child is computed from the one of its parent.
+   * */
+  private static final class Tree {
+    final byte[] opcodes;
+    final int[] constants;
+    final int[] values;
+    final int threshold;
+    final int maxStackDepth;
+    // Once indexed, where the subtree ending at each instruction starts, or the negative height it
+    // looks for in earlier chunks
+    int[] starts;
+    // Where the subtree starts for each height looked for in earlier chunks (-1, -2...), by chunk
+    int[][] outerStarts;
+
+    Tree(CompiledExpression expression, int[] values, int threshold) {
+      this.opcodes = expression.opcodes;
+      this.constants = expression.constants;
+      this.values = values;
+      this.threshold = threshold;
+      this.maxStackDepth = expression.maxStackDepth;
+    }
+
+    /*
+     * Records where the subtree of each instruction starts, in parallel by chunks of the program. The subtree of an
+     * operator starts right after the last instruction leaving the stack one lower than the operator does. Within a
+     * chunk, the last instruction leaving each stack height is tracked as it goes; the start of a subtree beginning in
+     * an earlier chunk is resolved once the stack height at the start of every chunk is known.
+     * */
+    void index() {
+      int chunkCount = (opcodes.length + INDEX_CHUNK_SIZE - 1) / INDEX_CHUNK_SIZE;
+      Chunk[] chunks = new Chunk[chunkCount];
+      starts = new int[opcodes.length];
+      outerStarts = new int[chunkCount][];
+      new IndexTask(this, chunks, 0, chunkCount).compute();
+      link(chunks);
+    }
+
+    // Stack heights are relative to the one at the start of the chunk, which is the height after
+    // instruction from - 1
+    Chunk indexChunk(int chunkIndex, int[] lastAtHeight) {
+      int from = chunkIndex * INDEX_CHUNK_SIZE;
+      int to = Math.min(from + INDEX_CHUNK_SIZE, opcodes.length);
+      int offset = INDEX_CHUNK_SIZE + 1;
+      Chunk chunk = new Chunk();
+      int height = 0;
+      int lowest = 0;
+      int lowestReached = Integer.MAX_VALUE;
+      lastAtHeight[offset] = from - 1;
+      for (int i = from; i < to; i++) {
+        if (CompiledExpression.isOperand(opcodes[i])) {
+          height++;
+          starts[i] = i;
+        } else {
+          height--;
+          // Heights move by one, so every height from the lowest one up was left by some
+          // instruction. Below it, the subtree starts in an earlier chunk, at a place only known
+          // once the chunks are linked and shared by all the operators of this chunk looking for
+          // the same height.
+          starts[i] = height - 1 >= lowest ? lastAtHeight[offset + height - 1] + 1 : height - 1;
+        }
+        lastAtHeight[offset + height] = i;
+        lowest = Math.min(lowest, height);
+        lowestReached = Math.min(lowestReached, height);
+      }
+      chunk.lowest = lowest;
+      chunk.lowestReached = lowestReached;
+      chunk.end = height;
+      chunk.lastAtHeight = Arrays.copyOfRange(lastAtHeight, offset + lowest, offset + height + 1);
+      outerStarts[chunkIndex] = new int[1 - lowest];
+      return chunk;
+    }
+
+    /*
+     * Validates the program stack from the height of each chunk, then resolves each height looked for in earlier chunks
+     * from the latest earlier chunk going as low. Candidate chunks are kept on a stack of strictly increasing
+     * lowest heights: a chunk hides all the earlier ones that go no lower.
+     * */
+    private void link(Chunk[] chunks) {
+      int height = 0;
+      for (Chunk chunk : chunks) {
+        if (height + chunk.lowestReached < 1) {
+          throw new EvaluatorStackException(
+              "Operation cannot be solved due to missing operands on the stack");
+        }
+        height += chunk.end;
+      }
+      EvaluatorService.validateStackAfterEvaluation(height);
+
+      int[] candidates = new int[chunks.length];
+      int[] candidateLowest = new int[chunks.length];
+      int candidateCount = 0;
+      height = 0;
+      for (int chunkIndex = 0; chunkIndex < chunks.length; chunkIndex++) {
+        Chunk chunk = chunks[chunkIndex];
+        int[] chunkOuterStarts = outerStarts[chunkIndex];
+        // Negative heights are never looked for once the program stack is validated
+        for (int i = 0; i < chunkOuterStarts.length && height - 1 - i >= 0; i++) {
+          int target = height - 1 - i;
+          int candidate = findCandidate(candidateLowest, candidateCount, target);
+          chunkOuterStarts[i] =
+              chunks[candidates[candidate]].lastAtHeight[target - candidateLowest[candidate]] + 1;
+        }
+        int lowest = height + chunk.lowest;
+        while (candidateCount > 0 && candidateLowest[candidateCount - 1] >= lowest) {
+          candidateCount--;
+        }
+        candidates[candidateCount] = chunkIndex;
+        candidateLowest[candidateCount] = lowest;
+        candidateCount++;
+        height += chunk.end;
+      }
+    }
+
+    // Latest candidate going as low as the target height, by binary search on their increasing
+    // lowest heights
+    private static int findCandidate(int[] candidateLowest, int candidateCount, int target) {
+      int low = 0;
+      int high = candidateCount - 1;
+      while (low < high) {
+        int middle = (low + high + 1) >>> 1;
+        if (candidateLowest[middle] <= target) {
+          low = middle;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return low;
+    }
+
+    int start(int end) {
+      int start = starts[end];
+      return start >= 0 ? start : outerStarts[end / INDEX_CHUNK_SIZE][-1 - start];
+    }
+
+    int evaluate(int start, int end, int constantIndex, int depth) {
+      if (end - start + 1 <= threshold || depth >= MAX_TASK_DEPTH) {
+        return evaluateRange(start, end, constantIndex);
+      }
+      Segments segments = split(start, end, constantIndex);
+      return switch (opcodes[end]) {
+        case CalculatorUtils.OPCODE_ADD, CalculatorUtils.OPCODE_SUB ->
+            new ReduceTask(this, segments, 0, segments.count, CalculatorUtils.OPCODE_ADD, depth + 1)
+                .compute();
+        case CalculatorUtils.OPCODE_MUL ->
+            new ReduceTask(this, segments, 0, segments.count, CalculatorUtils.OPCODE_MUL, depth + 1)
+                .compute();
+        default -> divide(segments, opcodes[end], depth + 1);
+      };
+    }
+
+    /*
+     * Runs the stack machine on the instructions of a subtree, which are contiguous in the postfix program, on the
+     * per-thread stack of the sequential evaluator.
+     * */
+    int evaluateRange(int from, int to, int constantIndex) {
+      int[] stack = EvaluatorService.borrowStack(maxStackDepth);
+      try {
+        return execute(stack, 0, from, to, constantIndex);
+      } finally {
+        EvaluatorService.releaseStack(stack);
+      }
+    }
+
+    /*
+     * Runs a segment of a chain on top of the value accumulated by the part of the chain below it.
+     * */
+    int evaluateSegment(int from, int to, int constantIndex, int accumulator) {
+      int[] stack = EvaluatorService.borrowStack(maxStackDepth + 1);
+      try {
+        stack[0] = accumulator;
+        return execute(stack, 1, from, to, constantIndex);
+      } finally {
+        EvaluatorService.releaseStack(stack);
+      }
+    }
+
+    private int execute(int[] stack, int top, int from, int to, int constantIndex) {
+      for (int i = from; i <= to; i++) {
+        byte opcode = opcodes[i];
+        if (opcode == CalculatorUtils.OPCODE_PUSH) {
+          stack[top++] = constants[constantIndex++];
+        } else if (opcode == CalculatorUtils.OPCODE_LOAD) {
+          stack[top++] = values[constants[constantIndex++]];
+        } else if (CalculatorUtils.getOperatorArity(opcode) == 1) {
+          stack[top - 1] = CalculatorUtils.applyUnaryOperator(stack[top - 1], opcode);
+        } else {
+          top--;
+          stack[top - 1] = CalculatorUtils.applyOperator(stack[top - 1], stack[top], opcode);
+        }
+      }
+      return stack[0];
+    }
+
+    /*
+     * Walks down the left spine of a chain of operators of the same kind as the root (ADD and SUB are the same kind),
+     * cutting it into segments of about the threshold. The instructions between two nodes of the spine are the right
+     * operands and the operators of the nodes in between, so running them on top of the value of the lower node gives
+     * the value of the upper one. A right operand larger than the threshold is a term of its own, and the bottom of the
+     * spine, which starts where the whole chain starts, is the last term.
+     * */
+    Segments split(int start, int end, int constantIndex) {
+      Segments segments = new Segments();
+      int top = end;
+      int spine = end;
+      while (spine - start + 1 > threshold && isSameKind(opcodes[spine], opcodes[end])) {
+        int rightStart = start(spine - 1);
+        if (spine - rightStart > threshold) {
+          if (top > spine) {
+            segments.add(
+                Segments.RANGE, spine + 1, top, constantIndexAfter(start, spine, constantIndex));
+          }
+          segments.add(
+              opcodes[spine] == CalculatorUtils.OPCODE_SUB ? Segments.NEGATED_TERM : Segments.TERM,
+              rightStart,
+              spine - 1,
+              constantIndexAfter(start, rightStart - 1, constantIndex));
+          spine = rightStart - 1;
+          top = spine;
+        } else {
+          if (top - spine >= threshold) {
+            segments.add(
+                Segments.RANGE, spine + 1, top, constantIndexAfter(start, spine, constantIndex));
+            top = spine;
+          }
+          spine = rightStart - 1;
+        }
+      }
+      if (top > spine) {
+        segments.add(
+            Segments.RANGE, spine + 1, top, constantIndexAfter(start, spine, constantIndex));
+      }
+      segments.add(Segments.TERM, start, spine, constantIndex);
+      return segments;
+    }
+
+    // Constant index following the subtree from start to end, whose first constant index is given
+    private static int constantIndexAfter(int start, int end, int constantIndex) {
+      return constantIndex + (end - start + 2) / 2;
+    }
+
+    private static boolean isSameKind(byte opcode, byte chainOpcode) {
+      return switch (chainOpcode) {
+        case CalculatorUtils.OPCODE_ADD, CalculatorUtils.OPCODE_SUB ->
+            opcode == CalculatorUtils.OPCODE_ADD || opcode == CalculatorUtils.OPCODE_SUB;
+        default -> opcode == chainOpcode;
+      };
+    }
+
+    /*
+     * Division is not associative, nor are the other operators: the terms of the chain (ex: the dividend and the large
+     * divisors) are evaluated in parallel, then the chain is run from the bottom up.
+     * */
+    int divide(Segments segments, int opcode, int depth) {
+      int[] results = new int[segments.count];
+      new EvaluateTermsTask(this, segments, results, 0, segments.count, depth).compute();
+      int last = segments.count - 1;
+      int result = results[last];
+      for (int i = last - 1; i >= 0; i--) {
+        result =
+            segments.kinds[i] == Segments.RANGE
+                ? evaluateSegment(
+                    segments.starts[i], segments.ends[i], segments.constantIndexes[i], result)
+                : CalculatorUtils.applyOperator(result, results[i], opcode);
+      }
+      return result;
+    }
+
+    int evaluateTerm(Segments segments, int index, int depth) {
+      int value =
+          evaluate(
+              segments.starts[index], segments.ends[index], segments.constantIndexes[index], depth);
+      return segments.kinds[index] == Segments.NEGATED_TERM ? -value : value;
+    }
+
+    // Value of a segment on its own: the sum or product of its terms, with the sign of a subtracted
+    // term
+    int evaluateSegment(Segments segments, int index, int opcode, int depth) {
+      if (segments.kinds[index] != Segments.RANGE) {
+        return evaluateTerm(segments, index, depth);
+      }
+      int identity = opcode == CalculatorUtils.OPCODE_MUL ? 1 : 0;
+      return evaluateSegment(
+          segments.starts[index], segments.ends[index], segments.constantIndexes[index], identity);
+    }
+  }
+
+  // Pieces of a chain, from its top down: ranges of instructions, and terms evaluated on their own
+  private static final class Segments {
+    static final byte RANGE = 0;
+    static final byte TERM = 1;
+    static final byte NEGATED_TERM = 2;
+
+    byte[] kinds = new byte[16];
+    int[] starts = new int[16];
+    int[] ends = new int[16];
+    int[] constantIndexes = new int[16];
+    int count;
+
+    void add(byte kind, int start, int end, int constantIndex) {
+      if (count == kinds.length) {
+        kinds = Arrays.copyOf(kinds, count * 2);
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+        constantIndexes = Arrays.copyOf(constantIndexes, count * 2);
+      }
+      kinds[count] = kind;
+      starts[count] = start;
+      ends[count] = end;
+      constantIndexes[count] = constantIndex;
+      count++;
+    }
+  }
+
+  /*
+   * Indexing of a chunk of the program: its lowest and last stack heights relative to its start, and the last
+   * instruction leaving each height from the lowest to the last one.
+   * */
+  private static final class Chunk {
+    int lowest;
+    // Lowest height left by an instruction of the chunk, rather than the one before it
+    int lowestReached;
+    int end;
+    int[] lastAtHeight;
+  }
+
+  private static final class IndexTask extends RecursiveAction {
+    private final Tree tree;
+    private final Chunk[] chunks;
+    private final int from;
+    private final int to;
+
+    IndexTask(Tree tree, Chunk[] chunks, int from, int to) {
+      this.tree = tree;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1 || (long) (to - from) * INDEX_CHUNK_SIZE <= tree.threshold) {
+        int[] lastAtHeight = new int[INDEX_CHUNK_SIZE * 2 + 3];
+        for (int i = from; i < to; i++) {
+          chunks[i] = tree.indexChunk(i, lastAtHeight);
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      IndexTask left = new IndexTask(tree, chunks, from, middle);
+      left.fork();
+      new IndexTask(tree, chunks, middle, to).compute();
+      left.join();
+    }
+  }
+
+  private static final class RootTask extends RecursiveTask<Integer> {
+    private final Tree tree;
+
+    RootTask(Tree tree) {
+      this.tree = tree;
+    }
+
+    @Override
+    protected Integer compute() {
+      tree.index();
+      return tree.evaluate(0, tree.opcodes.length - 1, 0, 0);
+    }
+  }
+
+  /*
+   * Sum or product of a range of segments, split in two halves down to a single segment.
+   * */
+  private static final class ReduceTask extends RecursiveTask<Integer> {
+    private final Tree tree;
+    private final Segments segments;
+    private final int from;
+    private final int to;
+    private final int opcode;
+    private final int depth;
+
+    ReduceTask(Tree tree, Segments segments, int from, int to, int opcode, int depth) {
+      this.tree = tree;
+      this.segments = segments;
+      this.from = from;
+      this.to = to;
+      this.opcode = opcode;
+      this.depth = depth;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (to - from == 1) {
+        return tree.evaluateSegment(segments, from, opcode, depth);
+      }
+      int middle = (from + to) >>> 1;
+      ReduceTask left = new ReduceTask(tree, segments, from, middle, opcode, depth);
+      left.fork();
+      int right = new ReduceTask(tree, segments, middle, to, opcode, depth).compute();
+      return CalculatorUtils.applyOperator(left.join(), right, opcode);
+    }
+  }
+
+  private static final class EvaluateTermsTask extends RecursiveAction {
+    private final Tree tree;
+    private final Segments segments;
+    private final int[] results;
+    private final int from;
+    private final int to;
+    private final int depth;
+
+    EvaluateTermsTask(Tree tree, Segments segments, int[] results, int from, int to, int depth) {
+      this.tree = tree;
+      this.segments = segments;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+      this.depth = depth;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        if (segments.kinds[from] != Segments.RANGE) {
+          results[from] = tree.evaluateTerm(segments, from, depth);
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      EvaluateTermsTask left = new EvaluateTermsTask(tree, segments, results, from, middle, depth);
+      left.fork();
+      new EvaluateTermsTask(tree, segments, results, middle, to, depth).compute();
+      left.join();
+    }
+  }
+}
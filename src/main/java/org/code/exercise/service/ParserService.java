@@ -1,13 +1,22 @@
 package org.code.exercise.service;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.OperatorRegistry;
+import org.code.exercise.service.helper.enums.TokenType;
+import org.code.exercise.service.model.TokenStream;
+import org.code.exercise.service.monitoring.CalculatorMetrics;
+import org.code.exercise.service.monitoring.Stage;
+import org.code.exercise.service.monitoring.TokenizeEvent;
 
 public class ParserService {
 
-  private static String DELIMITER_REGEXP = "\\s+";
+  private static final char LEFT_PARENTHESIS = '(';
+  private static final char RIGHT_PARENTHESIS = ')';
+  private static final char COMMA = ',';
+  private static final char MINUS_SIGN = '-';
 
   private ParserService() {
     throw new UnsupportedOperationException("Utility class");
@@ -24,18 +33,184 @@ public class ParserService {
       return Collections.emptyList();
     }
 
-    // We add spaces around parentheses to make them separate tokens
-    String expressionWithSpacedParenthesis =
-        expression
-            .replace(
-                CalculatorUtils.LEFT_PARENTHESIS,
-                String.format(" %s ", CalculatorUtils.LEFT_PARENTHESIS))
-            .replace(
-                CalculatorUtils.RIGHT_PARENTHESIS,
-                String.format(" %s ", CalculatorUtils.RIGHT_PARENTHESIS));
+    TokenStream tokens = lex(expression);
+    List<String> parts = new ArrayList<>(tokens.size());
+    for (int i = 0; i < tokens.size(); i++) {
+      parts.add(tokens.text(i));
+    }
+    return parts;
+  }
+
+  /**
+   * Lexes the input characters in a single pass into a typed token stream.
+   *
+   * <p>Spaces between tokens are optional (ex: "3*(2+1)"). A '-' directly followed by a digit is
+   * the sign of a number, unless it follows an operand, in which case it is the subtraction
+   * operator. Elsewhere, an operator symbol that does not follow an operand is a prefix operator
+   * (ex: the unary minus of "-(2 + 3)") if there is one with that symbol. Identifiers (ex: "x",
+   * "rate_2") are variable names, resolved by the converter, except the name of a function followed
+   * by a parenthesis (ex: "max(a, 0)"). Characters that cannot start a token are reported as
+   * INVALID tokens along with their position, so that the converter can raise a syntax error
+   * pointing to them.
+   *
+   * @param expression arithmetic expression (ex: "2 + 3 * -1")
+   * @return typed tokens in the infix order
+   */
+  public static TokenStream lex(CharSequence expression) {
+    TokenizeEvent event = new TokenizeEvent();
+    event.begin();
+    long startTime = CalculatorMetrics.startStage();
+    TokenStream tokens = lexTokens(expression);
+    CalculatorMetrics.recordStage(Stage.TOKENIZE, startTime);
+    if (event.shouldCommit()) {
+      event.tokenCount = tokens.size();
+      event.nestingDepth = tokens.nestingDepth();
+      event.commit();
+    }
+    return tokens;
+  }
+
+  private static TokenStream lexTokens(CharSequence expression) {
+    int length = expression.length();
+    TokenStream tokens = new TokenStream(expression, length / 2 + 1);
+    int i = 0;
+    while (i < length) {
+      char c = expression.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == LEFT_PARENTHESIS) {
+        tokens.add(TokenType.LEFT_PAREN, 0, i++, 1);
+      } else if (c == RIGHT_PARENTHESIS) {
+        tokens.add(TokenType.RIGHT_PAREN, 0, i++, 1);
+      } else if (c == COMMA) {
+        tokens.add(TokenType.COMMA, 0, i++, 1);
+      } else if (CalculatorUtils.isDigit(c) || isSignOfNumber(expression, i, tokens)) {
+        i = lexNumber(expression, i, tokens);
+      } else if (CalculatorUtils.isIdentifierStart(c)) {
+        i = lexIdentifier(expression, i, tokens);
+      } else if (OperatorRegistry.isOperatorSymbol(c)) {
+        tokens.add(TokenType.OPERATOR, operatorOpcode(c, isAfterOperand(tokens)), i++, 1);
+      } else {
+        i = lexInvalid(expression, i, i, tokens);
+      }
+    }
+    return tokens;
+  }
+
+  /*
+   * A minus sign belongs to the number only when it is glued to a digit and there is no operand before it to subtract from.
+   * */
+  private static boolean isSignOfNumber(CharSequence expression, int index, TokenStream tokens) {
+    if (expression.charAt(index) != MINUS_SIGN
+        || index + 1 >= expression.length()
+        || !CalculatorUtils.isDigit(expression.charAt(index + 1))) {
+      return false;
+    }
+    return !isAfterOperand(tokens);
+  }
+
+  private static boolean isAfterOperand(TokenStream tokens) {
+    if (tokens.isEmpty()) {
+      return false;
+    }
+    TokenType previous = tokens.type(tokens.size() - 1);
+    return previous == TokenType.NUMBER
+        || previous == TokenType.BIG_NUMBER
+        || previous == TokenType.IDENTIFIER
+        || previous == TokenType.RIGHT_PAREN;
+  }
+
+  /*
+   * After an operand, a symbol is preferably a binary operator, elsewhere a prefix one. A symbol that only has the
+   * other kind is kept as is, and left for the evaluation to report the misplaced operator.
+   * */
+  static int operatorOpcode(char symbol, boolean afterOperand) {
+    int binary = OperatorRegistry.getBinaryOpcode(symbol);
+    int prefix = OperatorRegistry.getPrefixOpcode(symbol);
+    if (afterOperand) {
+      return binary >= 0 ? binary : prefix;
+    }
+    return prefix >= 0 ? prefix : binary;
+  }
+
+  /*
+   * The value is accumulated as a negative number so that Integer.MIN_VALUE can be parsed without overflowing.
+   * A number glued to other characters (ex: "3a") is reported as an invalid token.
+   * A number out of the int range is reported as a BIG_NUMBER token, only accepted by the wide conversion.
+   * */
+  private static int lexNumber(CharSequence expression, int start, TokenStream tokens) {
+    boolean negative = expression.charAt(start) == MINUS_SIGN;
+    int i = negative ? start + 1 : start;
+    int value = 0;
+    boolean overflow = false;
+    while (i < expression.length() && CalculatorUtils.isDigit(expression.charAt(i))) {
+      int digit = expression.charAt(i) - '0';
+      if (value < (Integer.MIN_VALUE + digit) / 10) {
+        overflow = true;
+      } else {
+        value = value * 10 - digit;
+      }
+      i++;
+    }
+    if (!overflow && !negative && value == Integer.MIN_VALUE) {
+      overflow = true;
+    }
+    if (i < expression.length() && !isDelimiter(expression.charAt(i))) {
+      return lexInvalid(expression, start, i, tokens);
+    }
+    if (overflow) {
+      tokens.add(TokenType.BIG_NUMBER, 0, start, i - start);
+      return i;
+    }
+    tokens.add(TokenType.NUMBER, negative ? value : -value, start, i - start);
+    return i;
+  }
+
+  /*
+   * An identifier glued to other characters (ex: "a$b") is reported as an invalid token.
+   * The name of a function is only a call when a parenthesis follows, so that a variable can have the same name.
+   * */
+  private static int lexIdentifier(CharSequence expression, int start, TokenStream tokens) {
+    int i = start + 1;
+    while (i < expression.length() && CalculatorUtils.isIdentifierPart(expression.charAt(i))) {
+      i++;
+    }
+    if (i < expression.length() && !isDelimiter(expression.charAt(i))) {
+      return lexInvalid(expression, start, i, tokens);
+    }
+    int next = i;
+    while (next < expression.length() && Character.isWhitespace(expression.charAt(next))) {
+      next++;
+    }
+    int function =
+        next < expression.length() && expression.charAt(next) == LEFT_PARENTHESIS
+            ? OperatorRegistry.getFunctionOpcode(expression, start, i - start)
+            : -1;
+    if (function >= 0) {
+      tokens.add(TokenType.FUNCTION, function, start, i - start);
+    } else {
+      tokens.add(TokenType.IDENTIFIER, 0, start, i - start);
+    }
+    return i;
+  }
+
+  /*
+   * An invalid token extends up to the next delimiter, so that the error message shows the whole faulty word.
+   * */
+  private static int lexInvalid(CharSequence expression, int start, int from, TokenStream tokens) {
+    int i = from;
+    while (i < expression.length() && !isDelimiter(expression.charAt(i))) {
+      i++;
+    }
+    tokens.add(TokenType.INVALID, 0, start, i - start);
+    return i;
+  }
 
-    // We split the expression using as delimiters any characters matching a blank space
-    String[] parts = expressionWithSpacedParenthesis.trim().split(DELIMITER_REGEXP);
-    return Arrays.asList(parts);
+  static boolean isDelimiter(char c) {
+    return Character.isWhitespace(c)
+        || c == LEFT_PARENTHESIS
+        || c == RIGHT_PARENTHESIS
+        || c == COMMA
+        || OperatorRegistry.isOperatorSymbol(c);
   }
 }
@@ -0,0 +1,711 @@
+package org.code.exercise.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+import org.code.exercise.service.helper.OperatorRegistry;
+import org.code.exercise.service.helper.enums.CalculationError;
+import org.code.exercise.service.model.CalculationResult;
+import org.code.exercise.service.monitoring.CalculatorMetrics;
+
+/**
+ * Persistent cache of compiled programs, so that a restarted process does not parse again the
+ * expressions it already compiled.
+ *
+ * <p>Programs are appended to a file, keyed by a hash of their normalized source: runs of
+ * whitespace count as a single space, and leading and trailing whitespace is ignored. An entry
+ * holds the source and the variable names, to tell apart the sources of the same hash, the opcodes
+ * and the constant pool of the program, and the definition of the registered operators it uses.
+ *
+ * <p>On opening, the file is memory-mapped and scanned once to index its entries; a program found
+ * there is decoded straight from the mapped bytes, without being lexed or converted. The file
+ * starts with a format version, and each entry with a checksum: a file of another version is
+ * cleared, and a corrupt or truncated entry is dropped, so that its program is compiled and
+ * appended again on its next use. So is a program using a registered operator that is not defined
+ * the same way any more.
+ *
+ * <p>Appended entries are buffered, and written at most {@value #FLUSH_DELAY_MILLIS} ms after being
+ * added, so that a crash of the process only loses the last ones, as well as on {@link #flush()}
+ * and {@link #close()}. The store can be used by several threads at once.
+ *
+ * <p>The file is limited to a maximum size, {@value #DEFAULT_MAX_SIZE} bytes by default and at most
+ * 2 GB, the size of a mapping. Once it is reached, the store is full: the programs not stored yet
+ * are compiled on each use, and neither written nor kept in memory. A file larger than the maximum
+ * size on opening is cleared.
+ */
+public final class ProgramStore implements AutoCloseable {
+
+  public static final long DEFAULT_MAX_SIZE = 1L << 26;
+  public static final long FLUSH_DELAY_MILLIS = 1000;
+
+  // "CPRG"
+  private static final int MAGIC = 0x43505247;
+  // To be increased on any change of the file format or of the semantics of the built-in opcodes
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  // Length and checksum of an entry, followed by its payload
+  private static final int ENTRY_HEADER_SIZE = 8;
+  private static final int WRITE_BUFFER_SIZE = 1 << 16;
+  private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private static final String[] NO_VARIABLES = {};
+
+  // Runs the delayed writes of the buffered entries, on the common pool
+  private static final Executor FLUSHER =
+      CompletableFuture.delayedExecutor(FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
+  /*
+   * Source of a program compiled since the store was opened.
+   * */
+  private record Key(String expression, List<String> variables) {}
+
+  /*
+   * Open-addressing table from the hash of a source to the offset of its entry in the mapped file. A later entry
+   * replaces an earlier one of the same hash: the source is compared on lookup anyway.
+   * */
+  private static final class Index {
+    long[] hashes = new long[INITIAL_INDEX_CAPACITY];
+    int[] offsets = new int[INITIAL_INDEX_CAPACITY];
+    int size;
+
+    void put(long hash, int offset) {
+      if (size * 4 >= hashes.length * 3) {
+        grow();
+      }
+      int mask = hashes.length - 1;
+      int i = (int) mix(hash) & mask;
+      while (offsets[i] != 0 && hashes[i] != hash) {
+        i = (i + 1) & mask;
+      }
+      if (offsets[i] == 0) {
+        size++;
+      }
+      hashes[i] = hash;
+      offsets[i] = offset;
+    }
+
+    // Offsets are never 0, the file header being there
+    int get(long hash) {
+      int mask = hashes.length - 1;
+      int i = (int) mix(hash) & mask;
+      while (offsets[i] != 0) {
+        if (hashes[i] == hash) {
+          return offsets[i];
+        }
+        i = (i + 1) & mask;
+      }
+      return 0;
+    }
+
+    private void grow() {
+      long[] oldHashes = hashes;
+      int[] oldOffsets = offsets;
+      hashes = new long[oldHashes.length * 2];
+      offsets = new int[oldOffsets.length * 2];
+      size = 0;
+      for (int i = 0; i < oldHashes.length; i++) {
+        if (oldOffsets[i] != 0) {
+          put(oldHashes[i], oldOffsets[i]);
+        }
+      }
+    }
+
+    private static long mix(long hash) {
+      return hash ^ (hash >>> 32);
+    }
+  }
+
+  private final FileChannel channel;
+  private final ByteBuffer mapped;
+  private final Index index;
+  private final int discardedCount;
+  private final Map<Key, CompiledExpression> added = new ConcurrentHashMap<>();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+  private final long maxSize;
+  private long writePosition;
+  private IOException writeFailure;
+  private boolean closed;
+  // Set once an entry would not fit in the maximum size, read without the lock to skip encoding
+  private volatile boolean full;
+
+  private ProgramStore(
+      FileChannel channel,
+      ByteBuffer mapped,
+      Index index,
+      int discardedCount,
+      long size,
+      long maxSize) {
+    this.channel = channel;
+    this.mapped = mapped;
+    this.index = index;
+    this.discardedCount = discardedCount;
+    this.writePosition = size;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Opens a store of at most {@value #DEFAULT_MAX_SIZE} bytes, creating its file if needed, and
+   * indexes the programs it holds.
+   *
+   * @param file file of the store
+   * @return the opened store, to be closed so that the last programs are written
+   * @throws IOException if the file cannot be read or written
+   */
+  public static ProgramStore open(Path file) throws IOException {
+    return open(file, DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Opens a store, creating its file if needed, and indexes the programs it holds.
+   *
+   * @param file file of the store
+   * @param maxSize size of the file beyond which no program is added, in bytes
+   * @return the opened store, to be closed so that the last programs are written
+   * @throws IOException if the file cannot be read or written
+   * @throws IllegalArgumentException if the maximum size is smaller than the file header, or larger
+   *     than 2 GB
+   */
+  public static ProgramStore open(Path file, long maxSize) throws IOException {
+    if (maxSize < HEADER_SIZE || maxSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "Maximum size must be between " + HEADER_SIZE + " and 2 GB, got " + maxSize);
+    }
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    try {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > maxSize || !hasCurrentHeader(channel)) {
+        channel.truncate(0);
+        channel.write(
+            ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+        return new ProgramStore(channel, null, new Index(), 0, HEADER_SIZE, maxSize);
+      }
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      Index index = new Index();
+      int[] discarded = {0};
+      int end = scan(mapped, index, discarded);
+      if (end < size) {
+        channel.truncate(end);
+      }
+      return new ProgramStore(channel, mapped, index, discarded[0], end, maxSize);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static boolean hasCurrentHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+      // Read until the header is complete
+    }
+    return header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION;
+  }
+
+  /*
+   * Indexes the entries whose checksum matches, and counts the other ones. Returns the end of the last complete
+   * entry: what follows is the part of an entry whose write was interrupted, or garbage.
+   * */
+  private static int scan(ByteBuffer mapped, Index index, int[] discarded) {
+    CRC32C crc = new CRC32C();
+    int limit = mapped.limit();
+    int offset = HEADER_SIZE;
+    while (limit - offset >= ENTRY_HEADER_SIZE) {
+      int length = mapped.getInt(offset);
+      if (length < Long.BYTES || length > limit - offset - ENTRY_HEADER_SIZE) {
+        break;
+      }
+      int payload = offset + ENTRY_HEADER_SIZE;
+      crc.reset();
+      crc.update(mapped.slice(payload, length));
+      if ((int) crc.getValue() == mapped.getInt(offset + Integer.BYTES)) {
+        index.put(mapped.getLong(payload), offset);
+      } else {
+        discarded[0]++;
+      }
+      offset = payload + length;
+    }
+    if (offset < limit) {
+      discarded[0]++;
+    }
+    return offset;
+  }
+
+  /**
+   * Returns the program of an expression, from the store if it holds it, or else compiled like
+   * {@link CalculatorService#compile(CharSequence, String...)} does and added to the store. Syntax
+   * errors are not stored: the expression is compiled again on each call.
+   *
+   * @param expression arithmetic expression (ex: "a * x + b")
+   * @param variables names of the variables, in the order their values are given on evaluation
+   * @return the compiled expression
+   * @throws IllegalArgumentException if the expression is null or empty, or a variable name is
+   *     invalid
+   * @throws org.code.exercise.service.exception.ExpressionConverterInvalidTokenException in case of
+   *     syntax error, mismatched parentheses or unknown variable
+   */
+  public CompiledExpression compile(CharSequence expression, String... variables) {
+    if (expression == null || expression.length() == 0) {
+      throw new IllegalArgumentException("Expression must not be null or empty");
+    }
+    CompiledExpression program = find(expression, variables);
+    if (program == null) {
+      program = CalculatorService.compile(expression, variables);
+      add(expression, program);
+    }
+    return program;
+  }
+
+  /**
+   * Calculates an expression like {@link CalculatorService#tryCalculate(CharSequence)} does, with
+   * its program taken from the store if it holds it, or else added to it.
+   *
+   * @param expression arithmetic expression (ex: "2 + 3 * -1")
+   * @return result of the calculation, or its error
+   */
+  public CalculationResult tryCalculate(CharSequence expression) {
+    CalculationResult result;
+    if (expression == null || expression.length() == 0) {
+      result = CalculationResult.failure(CalculationError.EMPTY_EXPRESSION);
+    } else {
+      CompiledExpression program = find(expression, NO_VARIABLES);
+      if (program == null) {
+        ExpressionConverterService.SyntaxError error = new ExpressionConverterService.SyntaxError();
+        program =
+            ExpressionConverterService.tryInfixToPostfix(
+                ParserService.lex(expression), NO_VARIABLES, error);
+        if (program != null) {
+          add(expression, program);
+        }
+        result = program == null ? error.result : EvaluatorService.tryEvaluate(program);
+      } else {
+        result = EvaluatorService.tryEvaluate(program);
+      }
+    }
+    CalculatorMetrics.recordResult(result);
+    return result;
+  }
+
+  /** Number of programs indexed when the store was opened, plus the ones added since. */
+  public int size() {
+    return index.size + added.size();
+  }
+
+  /** Whether the file reached its maximum size, so that no more programs are added. */
+  public boolean isFull() {
+    return full;
+  }
+
+  /** Number of programs found in the store. */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /** Number of programs compiled because they were not in the store, or were stale. */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Number of entries skipped on opening because they were corrupt or truncated. A truncated entry
+   * is removed from the file, a corrupt one is left in place and skipped again on the next opening.
+   */
+  public int getDiscardedCount() {
+    return discardedCount;
+  }
+
+  /**
+   * Writes the programs added since the last flush to the file.
+   *
+   * @throws IOException if writing the file fails, now or on an earlier addition
+   */
+  public synchronized void flush() throws IOException {
+    if (writeFailure != null) {
+      throw writeFailure;
+    }
+    if (!closed) {
+      write();
+    }
+  }
+
+  /**
+   * Writes the last programs added to the file, and closes it. Programs compiled afterwards are
+   * still returned, but not stored.
+   *
+   * @throws IOException if writing the file fails, now or on an earlier addition
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      flush();
+    } finally {
+      closed = true;
+      channel.close();
+    }
+  }
+
+  /*
+   * The mapped entries are looked up without normalizing the expression into a new string: it is hashed and
+   * compared in place. The programs added since the opening are only looked up when the mapped entries miss.
+   * */
+  private CompiledExpression find(CharSequence expression, String[] variables) {
+    CompiledExpression program = null;
+    if (mapped != null) {
+      int offset = index.get(hash(expression, variables));
+      if (offset != 0) {
+        program = decode(offset + ENTRY_HEADER_SIZE, expression, variables);
+      }
+    }
+    if (program == null && !added.isEmpty()) {
+      program = added.get(new Key(normalize(expression), List.of(variables)));
+    }
+    if (program == null) {
+      missCount.increment();
+    } else {
+      hitCount.increment();
+    }
+    return program;
+  }
+
+  /*
+   * Only the write is done under the lock, the entry is encoded before. A program is only kept in memory along with
+   * its entry, so that both are bounded by the maximum size of the file. A write failure is kept for the next flush,
+   * the program is still returned: the store is only a cache.
+   * */
+  private void add(CharSequence expression, CompiledExpression program) {
+    String source = normalize(expression);
+    Key key = new Key(source, List.of(program.variables));
+    if (full || added.containsKey(key)) {
+      return;
+    }
+    byte[] entry = encode(source, program);
+    synchronized (this) {
+      if (closed || writeFailure != null || full) {
+        return;
+      }
+      if (writePosition + writeBuffer.position() + entry.length > maxSize) {
+        full = true;
+        return;
+      }
+      if (added.putIfAbsent(key, program) != null) {
+        return;
+      }
+      try {
+        if (entry.length > writeBuffer.remaining()) {
+          write();
+        }
+        if (entry.length > writeBuffer.remaining()) {
+          writeFully(ByteBuffer.wrap(entry));
+        } else {
+          if (writeBuffer.position() == 0) {
+            FLUSHER.execute(this::flushPending);
+          }
+          writeBuffer.put(entry);
+        }
+      } catch (IOException e) {
+        writeFailure = e;
+      }
+    }
+  }
+
+  /*
+   * Delayed write of the entries buffered since the buffer was last empty. They may have been written already.
+   * */
+  private synchronized void flushPending() {
+    if (closed || writeFailure != null || writeBuffer.position() == 0) {
+      return;
+    }
+    try {
+      write();
+    } catch (IOException e) {
+      writeFailure = e;
+    }
+  }
+
+  private void write() throws IOException {
+    writeBuffer.flip();
+    try {
+      writeFully(writeBuffer);
+    } finally {
+      writeBuffer.clear();
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      writePosition += channel.write(buffer, writePosition);
+    }
+  }
+
+  /*
+   * Layout of an entry, big-endian:
+   * length and CRC-32C of the payload, as ints, then the payload:
+   * - hash of the source, as a long,
+   * - source and variable names: UTF-8 strings prefixed with their byte length, the names with their count,
+   * - registered operators used: their count as a byte, then for each its opcode, arity, priority and
+   *   associativity as bytes, and its symbol as a string,
+   * - opcodes, prefixed with their count,
+   * - constant pool: ints, prefixed with their count.
+   * */
+  private static byte[] encode(String expression, CompiledExpression program) {
+    byte[] source = expression.getBytes(StandardCharsets.UTF_8);
+    byte[][] names = new byte[program.variables.length][];
+    int size = ENTRY_HEADER_SIZE + Long.BYTES + stringSize(source) + Integer.BYTES;
+    for (int i = 0; i < names.length; i++) {
+      names[i] = program.variables[i].getBytes(StandardCharsets.UTF_8);
+      size += stringSize(names[i]);
+    }
+    byte[] registered = registeredOpcodes(program.opcodes);
+    byte[][] symbols = new byte[registered.length][];
+    size += 1;
+    for (int i = 0; i < registered.length; i++) {
+      symbols[i] = OperatorRegistry.getSymbol(registered[i]).getBytes(StandardCharsets.UTF_8);
+      size += 4 + stringSize(symbols[i]);
+    }
+    size += Integer.BYTES + program.opcodes.length;
+    size += Integer.BYTES + program.constants.length * Integer.BYTES;
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.position(ENTRY_HEADER_SIZE);
+    buffer.putLong(hash(expression, program.variables));
+    putString(buffer, source);
+    buffer.putInt(names.length);
+    for (byte[] name : names) {
+      putString(buffer, name);
+    }
+    buffer.put((byte) registered.length);
+    for (int i = 0; i < registered.length; i++) {
+      int opcode = registered[i];
+      buffer.put((byte) opcode);
+      buffer.put((byte) OperatorRegistry.getArity(opcode));
+      buffer.put((byte) OperatorRegistry.getPriority(opcode));
+      buffer.put((byte) (OperatorRegistry.isRightAssociative(opcode) ? 1 : 0));
+      putString(buffer, symbols[i]);
+    }
+    buffer.putInt(program.opcodes.length).put(program.opcodes);
+    buffer.putInt(program.constants.length);
+    for (int constant : program.constants) {
+      buffer.putInt(constant);
+    }
+
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.array(), ENTRY_HEADER_SIZE, size - ENTRY_HEADER_SIZE);
+    buffer.putInt(0, size - ENTRY_HEADER_SIZE).putInt(Integer.BYTES, (int) crc.getValue());
+    return buffer.array();
+  }
+
+  /*
+   * Returns the program of the entry if it is the one of the expression, and still valid, or else null. The mapped
+   * buffer is only read with absolute gets, so that it can be shared by all the threads.
+   * */
+  private CompiledExpression decode(int offset, CharSequence expression, String[] names) {
+    int position = offset + Long.BYTES;
+    int sourceLength = mapped.getInt(position);
+    position += Integer.BYTES;
+    if (!sourceMatches(position, sourceLength, expression)) {
+      return null;
+    }
+    position += sourceLength;
+
+    String[] variables = new String[mapped.getInt(position)];
+    position += Integer.BYTES;
+    for (int i = 0; i < variables.length; i++) {
+      variables[i] = getString(position);
+      position += stringSize(mapped.getInt(position));
+    }
+    if (!Arrays.equals(variables, names)) {
+      return null;
+    }
+
+    int registeredCount = Byte.toUnsignedInt(mapped.get(position++));
+    for (int i = 0; i < registeredCount; i++) {
+      if (!isDefined(
+          mapped.get(position),
+          mapped.get(position + 1),
+          mapped.get(position + 2),
+          mapped.get(position + 3) != 0,
+          getString(position + 4))) {
+        return null;
+      }
+      position += 4 + stringSize(mapped.getInt(position + 4));
+    }
+
+    byte[] opcodes = new byte[mapped.getInt(position)];
+    position += Integer.BYTES;
+    mapped.get(position, opcodes);
+    position += opcodes.length;
+    int[] constants = new int[mapped.getInt(position)];
+    position += Integer.BYTES;
+    for (int i = 0; i < constants.length; i++) {
+      constants[i] = mapped.getInt(position);
+      position += Integer.BYTES;
+    }
+    return new CompiledExpression(opcodes, constants, variables);
+  }
+
+  /*
+   * Opcodes of registered operators depend on the order of registration, so an entry records how its operators
+   * were defined, and is only valid if they are defined the same way now.
+   * */
+  private static boolean isDefined(
+      int opcode, int arity, int priority, boolean rightAssociative, String symbol) {
+    try {
+      return OperatorRegistry.getSymbol(opcode).equals(symbol)
+          && OperatorRegistry.getArity(opcode) == arity
+          && OperatorRegistry.getPriority(opcode) == priority
+          && OperatorRegistry.isRightAssociative(opcode) == rightAssociative;
+    } catch (IllegalArgumentException e) {
+      // Not registered in this process
+      return false;
+    }
+  }
+
+  private static byte[] registeredOpcodes(byte[] opcodes) {
+    boolean[] used = new boolean[Byte.MAX_VALUE + 1];
+    int count = 0;
+    for (byte opcode : opcodes) {
+      if (!OperatorRegistry.isBuiltIn(opcode) && !used[opcode]) {
+        used[opcode] = true;
+        count++;
+      }
+    }
+    byte[] registered = new byte[count];
+    int i = 0;
+    for (int opcode = 0; opcode < used.length; opcode++) {
+      if (used[opcode]) {
+        registered[i++] = (byte) opcode;
+      }
+    }
+    return registered;
+  }
+
+  private String getString(int position) {
+    byte[] bytes = new byte[mapped.getInt(position)];
+    mapped.get(position + Integer.BYTES, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] bytes) {
+    buffer.putInt(bytes.length).put(bytes);
+  }
+
+  private static int stringSize(byte[] bytes) {
+    return stringSize(bytes.length);
+  }
+
+  private static int stringSize(int length) {
+    return Integer.BYTES + length;
+  }
+
+  /*
+   * Whitespace only separates tokens, so the runs of it are collapsed to a single space rather than removed:
+   * "1 2" is not "12".
+   * */
+  static String normalize(CharSequence expression) {
+    StringBuilder builder = new StringBuilder(expression.length());
+    boolean space = false;
+    for (int i = 0; i < expression.length(); i++) {
+      char c = expression.charAt(i);
+      if (isWhitespace(c)) {
+        space = !builder.isEmpty();
+      } else {
+        if (space) {
+          builder.append(' ');
+          space = false;
+        }
+        builder.append(c);
+      }
+    }
+    return builder.toString();
+  }
+
+  /*
+   * Compares the stored source with the normalized expression, without building it when both are ASCII.
+   * */
+  private boolean sourceMatches(int position, int length, CharSequence expression) {
+    int end = position + length;
+    boolean space = false;
+    boolean started = false;
+    for (int i = 0; i < expression.length(); i++) {
+      char c = expression.charAt(i);
+      if (isWhitespace(c)) {
+        space = started;
+        continue;
+      }
+      if (c > Byte.MAX_VALUE) {
+        byte[] source = normalize(expression).getBytes(StandardCharsets.UTF_8);
+        return length == source.length
+            && mapped.slice(end - length, length).mismatch(ByteBuffer.wrap(source)) == -1;
+      }
+      if (space) {
+        if (position == end || mapped.get(position++) != ' ') {
+          return false;
+        }
+        space = false;
+      }
+      if (position == end || mapped.get(position++) != c) {
+        return false;
+      }
+      started = true;
+    }
+    return position == end;
+  }
+
+  // Most characters are printable ASCII, which are told apart from whitespace without a table
+  // lookup
+  private static boolean isWhitespace(char c) {
+    return (c <= ' ' || c > Byte.MAX_VALUE) && Character.isWhitespace(c);
+  }
+
+  /*
+   * 64-bit FNV-1a over the characters of the normalized expression and of the variable names, each followed by a 0.
+   * The expression is normalized on the fly.
+   * */
+  private static long hash(CharSequence expression, String[] variables) {
+    long hash = FNV_OFFSET_BASIS;
+    boolean space = false;
+    boolean started = false;
+    for (int i = 0; i < expression.length(); i++) {
+      char c = expression.charAt(i);
+      if (isWhitespace(c)) {
+        space = started;
+        continue;
+      }
+      if (space) {
+        hash = (hash ^ ' ') * FNV_PRIME;
+        space = false;
+      }
+      hash = (hash ^ c) * FNV_PRIME;
+      started = true;
+    }
+    hash *= FNV_PRIME;
+    for (String variable : variables) {
+      for (int i = 0; i < variable.length(); i++) {
+        hash = (hash ^ variable.charAt(i)) * FNV_PRIME;
+      }
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+}
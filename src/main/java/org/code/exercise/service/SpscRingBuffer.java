@@ -0,0 +1,223 @@
+package org.code.exercise.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Bounded queue between exactly one producer thread and one consumer thread, made of preallocated
+ * slots that are filled in place and reused.
+ *
+ * <p>The producer claims the next free slot, fills it and commits it; the consumer polls the next
+ * filled slot, reads it and releases it. Neither side takes a lock: each only publishes its own
+ * sequence number, with release semantics, and reads the one of the other side. Both sides publish
+ * in batches, so that the other side is only notified once per batch rather than once per slot. The
+ * producer also flushes its batch before waiting on a full queue, and the consumer before waiting
+ * on an empty one, so a partial batch never stays hidden from a side that needs it.
+ *
+ * <p>Waiting spins, then yields, then parks for short periods. The time spent waiting is recorded
+ * on each side: on the producer side it is the backpressure of the consumer, on the consumer side
+ * the time it was starved.
+ */
+final class SpscRingBuffer<T> {
+
+  // Fields of each side in the cursor array, 128 bytes apart, so that the producer and the
+  // consumer never write to the same cache line
+  private static final int PRODUCER = 16;
+  private static final int CONSUMER = 32;
+  private static final int CURSOR_COUNT = 48;
+  // Offsets of the fields of a side: its sequence as seen by the other side, its own sequence,
+  // ahead by the current batch, the last sequence read from the other side, and its waiting time
+  private static final int PUBLISHED = 0;
+  private static final int SEQUENCE = 1;
+  private static final int CACHED = 2;
+  private static final int WAIT_NANOS = 3;
+
+  private static final int SPIN_TRIES = 128;
+  private static final int YIELD_TRIES = 16;
+  private static final long PARK_NANOS = 20_000;
+
+  private final Object[] slots;
+  private final int mask;
+  private final int batchSize;
+  private final AtomicLongArray cursors = new AtomicLongArray(CURSOR_COUNT);
+  private volatile boolean closed;
+  private volatile boolean cancelled;
+
+  /**
+   * @param capacity number of slots, rounded up to a power of two
+   * @param batchSize number of slots committed or released before the other side is notified
+   * @param slotFactory creates the slots, once and for all
+   */
+  SpscRingBuffer(int capacity, int batchSize, Supplier<T> slotFactory) {
+    if (capacity < 1 || batchSize < 1) {
+      throw new IllegalArgumentException("Capacity and batch size must be positive");
+    }
+    int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+    this.slots = new Object[size];
+    this.mask = size - 1;
+    this.batchSize = Math.min(batchSize, size);
+    for (int i = 0; i < size; i++) {
+      slots[i] = slotFactory.get();
+    }
+  }
+
+  /*
+   * Producer side: returns the next free slot, waiting while the queue is full.
+   * */
+  @SuppressWarnings("unchecked")
+  T claim() {
+    long sequence = cursors.getPlain(PRODUCER + SEQUENCE);
+    long wrapPoint = sequence - slots.length;
+    if (wrapPoint >= cursors.getPlain(PRODUCER + CACHED)) {
+      long consumed = cursors.getAcquire(CONSUMER + PUBLISHED);
+      if (wrapPoint >= consumed) {
+        flush();
+        consumed = awaitConsumed(wrapPoint);
+      }
+      cursors.setPlain(PRODUCER + CACHED, consumed);
+    }
+    return (T) slots[(int) sequence & mask];
+  }
+
+  /*
+   * Producer side: hands the slot returned by the last claim to the consumer.
+   * */
+  void commit() {
+    long sequence = cursors.getPlain(PRODUCER + SEQUENCE) + 1;
+    cursors.setOpaque(PRODUCER + SEQUENCE, sequence);
+    if (sequence - cursors.getPlain(PRODUCER + PUBLISHED) >= batchSize) {
+      cursors.setRelease(PRODUCER + PUBLISHED, sequence);
+    }
+  }
+
+  /*
+   * Producer side: publishes the slots committed since the last batch.
+   * */
+  void flush() {
+    cursors.setRelease(PRODUCER + PUBLISHED, cursors.getPlain(PRODUCER + SEQUENCE));
+  }
+
+  /*
+   * Producer side: publishes the last slots, after which the consumer sees the end of the queue.
+   * */
+  void close() {
+    flush();
+    closed = true;
+  }
+
+  /*
+   * Consumer side: returns the next filled slot, or null if there is none yet.
+   * */
+  @SuppressWarnings("unchecked")
+  T poll() {
+    long sequence = cursors.getPlain(CONSUMER + SEQUENCE);
+    if (sequence >= cursors.getPlain(CONSUMER + CACHED)) {
+      long published = cursors.getAcquire(PRODUCER + PUBLISHED);
+      if (sequence >= published) {
+        return null;
+      }
+      cursors.setPlain(CONSUMER + CACHED, published);
+    }
+    return (T) slots[(int) sequence & mask];
+  }
+
+  /*
+   * Consumer side: returns the next filled slot, waiting while the queue is empty, or null once the producer closed
+   * the queue and every slot was read.
+   * */
+  T take() {
+    T slot = poll();
+    if (slot != null) {
+      return slot;
+    }
+    cursors.setRelease(CONSUMER + PUBLISHED, cursors.getPlain(CONSUMER + SEQUENCE));
+    long start = System.nanoTime();
+    int tries = 0;
+    while ((slot = poll()) == null) {
+      // The last slots are published before the queue is closed, so they are seen by the poll after
+      // this check
+      if (closed && (slot = poll()) == null) {
+        break;
+      }
+      backOff(tries++);
+    }
+    addWaitNanos(CONSUMER, start);
+    return slot;
+  }
+
+  /*
+   * Consumer side: hands the slot returned by the last poll or take back to the producer.
+   * */
+  void release() {
+    long sequence = cursors.getPlain(CONSUMER + SEQUENCE) + 1;
+    cursors.setOpaque(CONSUMER + SEQUENCE, sequence);
+    if (sequence - cursors.getPlain(CONSUMER + PUBLISHED) >= batchSize) {
+      cursors.setRelease(CONSUMER + PUBLISHED, sequence);
+    }
+  }
+
+  /*
+   * Makes the waiting sides, and the ones about to wait, give up with a CancellationException.
+   * */
+  void cancel() {
+    cancelled = true;
+  }
+
+  int capacity() {
+    return slots.length;
+  }
+
+  // The statistics are read from any thread, without synchronizing with the producer or consumer
+
+  /* Number of slots committed and not yet released. */
+  int size() {
+    long size = cursors.getOpaque(PRODUCER + SEQUENCE) - cursors.getOpaque(CONSUMER + SEQUENCE);
+    return (int) Math.max(0, Math.min(size, slots.length));
+  }
+
+  /* Number of slots released by the consumer. */
+  long consumedCount() {
+    return cursors.getOpaque(CONSUMER + SEQUENCE);
+  }
+
+  /* Time the producer waited on a full queue. */
+  long producerWaitNanos() {
+    return cursors.getOpaque(PRODUCER + WAIT_NANOS);
+  }
+
+  /* Time the consumer waited on an empty queue. */
+  long consumerWaitNanos() {
+    return cursors.getOpaque(CONSUMER + WAIT_NANOS);
+  }
+
+  private long awaitConsumed(long wrapPoint) {
+    long start = System.nanoTime();
+    int tries = 0;
+    long consumed;
+    while (wrapPoint >= (consumed = cursors.getAcquire(CONSUMER + PUBLISHED))) {
+      backOff(tries++);
+    }
+    addWaitNanos(PRODUCER, start);
+    return consumed;
+  }
+
+  private void backOff(int tries) {
+    if (cancelled) {
+      throw new CancellationException("Pipeline cancelled");
+    }
+    if (tries < SPIN_TRIES) {
+      Thread.onSpinWait();
+    } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+  }
+
+  private void addWaitNanos(int side, long start) {
+    cursors.setOpaque(
+        side + WAIT_NANOS, cursors.getPlain(side + WAIT_NANOS) + System.nanoTime() - start);
+  }
+}
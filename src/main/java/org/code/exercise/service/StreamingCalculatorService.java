@@ -0,0 +1,379 @@
+package org.code.exercise.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.OperatorRegistry;
+import org.code.exercise.service.monitoring.CalculatorMetrics;
+
+/**
+ * Calculates a single expression read as a stream of characters, in constant memory.
+ *
+ * <p>The lexer, the Shunting-yard conversion and the evaluation are fused into a single pass: each
+ * token is handled as soon as it is read, and each operator is applied to the operand stack as soon
+ * as the conversion emits it. Neither the expression, nor its tokens, nor its postfix form are ever
+ * held in memory, only the operator and operand stacks, whose size depends on the nesting of the
+ * expression rather than on its length.
+ *
+ * <p>Results and errors are the same as with {@link CalculatorService#calculate(CharSequence)}.
+ * There, the whole expression is converted before being evaluated, so a syntax error anywhere wins
+ * over an evaluation error (ex: a division by zero before a missing parenthesis). Here, the first
+ * evaluation error is kept aside and only thrown once the end of the input is reached without any
+ * syntax error.
+ */
+public class StreamingCalculatorService {
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final int INITIAL_STACK_SIZE = 16;
+  private static final int END_OF_INPUT = -1;
+  private static final char LEFT_PARENTHESIS = '(';
+  private static final char RIGHT_PARENTHESIS = ')';
+  private static final char COMMA = ',';
+  private static final char MINUS_SIGN = '-';
+  // Marker of a left parenthesis on the operator stack, which otherwise holds opcodes
+  private static final int LEFT_PARENTHESIS_MARKER = -1;
+  // Offset of the opcode of a function on the operator stack, to tell it from an operator
+  private static final int FUNCTION_OFFSET = 1 << 8;
+
+  private StreamingCalculatorService() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Calculates the expression read from a character stream, until its end.
+   *
+   * @param reader arithmetic expression (ex: "2 + 3 * -1"), not closed by this method
+   * @return result of the calculation
+   * @throws IOException if reading the input fails
+   * @throws IllegalArgumentException if the input is empty
+   * @throws ArithmeticException in case of division by zero
+   * @throws EvaluatorStackException in case of wrong state of the stack (ex: missing operand)
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses, with the position of the faulty token
+   */
+  public static int calculate(Reader reader) throws IOException {
+    try {
+      int result = new Evaluation(reader).run();
+      CalculatorMetrics.recordCalculation(null);
+      return result;
+    } catch (RuntimeException e) {
+      CalculatorMetrics.recordCalculation(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Calculates the UTF-8 expression read from a byte channel, until its end.
+   *
+   * @param channel arithmetic expression encoded in UTF-8, not closed by this method
+   * @return result of the calculation
+   * @throws IOException if reading the input fails or the input is not valid UTF-8
+   * @throws IllegalArgumentException if the input is empty
+   * @throws ArithmeticException in case of division by zero
+   * @throws EvaluatorStackException in case of wrong state of the stack (ex: missing operand)
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses, with the position of the faulty token
+   */
+  public static int calculate(ReadableByteChannel channel) throws IOException {
+    return calculate(Channels.newReader(channel, StandardCharsets.UTF_8));
+  }
+
+  /*
+   * State of a single calculation: the input buffer, the operator stack of the conversion and the operand stack of the
+   * evaluation. Token and stack rules are the ones of ParserService.lex, ExpressionConverterService and EvaluatorService.
+   * */
+  private static final class Evaluation {
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferIndex;
+    private int bufferLimit;
+    // Offset in the input of the next character to read
+    private long position;
+
+    private int[] operators = new int[INITIAL_STACK_SIZE];
+    private long[] operatorPositions = new long[INITIAL_STACK_SIZE];
+    // Number of commas met within each left parenthesis of the operator stack
+    private int[] commaCounts = new int[INITIAL_STACK_SIZE];
+    private int operatorTop;
+    private int[] operands = new int[INITIAL_STACK_SIZE];
+    private int operandTop;
+    // Whether the last token is an operand, after which a '-' is a subtraction rather than a sign
+    private boolean afterOperand;
+    // Whether the last token is a left parenthesis, before which a call has no arguments
+    private boolean afterLeftParenthesis;
+    // First evaluation error, thrown at the end unless a syntax error comes first
+    private RuntimeException evaluationError;
+
+    Evaluation(Reader reader) {
+      this.reader = reader;
+    }
+
+    int run() throws IOException {
+      if (peek() == END_OF_INPUT) {
+        throw new IllegalArgumentException("Expression must not be null or empty");
+      }
+      int c;
+      while ((c = peek()) != END_OF_INPUT) {
+        long start = position;
+        if (Character.isWhitespace(c)) {
+          next();
+          continue;
+        }
+        boolean leftParenthesis = c == LEFT_PARENTHESIS;
+        if (leftParenthesis) {
+          next();
+          pushOperator(LEFT_PARENTHESIS_MARKER, start);
+          afterOperand = false;
+        } else if (c == RIGHT_PARENTHESIS) {
+          next();
+          closeParenthesis(start);
+          afterOperand = true;
+        } else if (c == COMMA) {
+          next();
+          separateArgument(start);
+          afterOperand = false;
+        } else if (CalculatorUtils.isDigit((char) c) || (c == MINUS_SIGN && !afterOperand)) {
+          readNumberOrOperator(start);
+        } else if (CalculatorUtils.isIdentifierStart((char) c)) {
+          readFunction(start);
+        } else if (OperatorRegistry.isOperatorSymbol((char) c)) {
+          next();
+          handleOperator(ParserService.operatorOpcode((char) c, afterOperand), start);
+        } else {
+          throw invalidToken(new StringBuilder(), start);
+        }
+        afterLeftParenthesis = leftParenthesis;
+      }
+
+      while (operatorTop > 0) {
+        operatorTop--;
+        if (operators[operatorTop] == LEFT_PARENTHESIS_MARKER) {
+          throw new ExpressionConverterInvalidTokenException(
+              "Mismatched parentheses: right parenthesis missing",
+              toPosition(operatorPositions[operatorTop]));
+        }
+        apply(operators[operatorTop]);
+      }
+      if (evaluationError != null) {
+        throw evaluationError;
+      }
+      EvaluatorService.validateStackAfterEvaluation(operandTop);
+      return operands[0];
+    }
+
+    /*
+     * A '-' not following an operand is the sign of a number only when it is glued to a digit, which needs one more
+     * character of lookahead than the buffer gives, so the minus sign is consumed first.
+     * */
+    private void readNumberOrOperator(long start) throws IOException {
+      boolean negative = peek() == MINUS_SIGN;
+      if (negative) {
+        next();
+        if (peek() == END_OF_INPUT || !CalculatorUtils.isDigit((char) peek())) {
+          handleOperator(ParserService.operatorOpcode(MINUS_SIGN, false), start);
+          return;
+        }
+      }
+      StringBuilder text = new StringBuilder(negative ? "-" : "");
+      int value = 0;
+      boolean overflow = false;
+      int c;
+      while ((c = peek()) != END_OF_INPUT && CalculatorUtils.isDigit((char) c)) {
+        next();
+        text.append((char) c);
+        int digit = c - '0';
+        if (value < (Integer.MIN_VALUE + digit) / 10) {
+          overflow = true;
+        } else {
+          value = value * 10 - digit;
+        }
+      }
+      if (overflow || (!negative && value == Integer.MIN_VALUE) || !isAtDelimiter()) {
+        throw invalidToken(text, start);
+      }
+      pushOperand(negative ? value : -value);
+      afterOperand = true;
+    }
+
+    /*
+     * A name is only valid as a function called with a parenthesis, as there are no variables to resolve it to. The
+     * function stays on the operator stack below the parenthesis, and is applied when it is closed.
+     * */
+    private void readFunction(long start) throws IOException {
+      StringBuilder name = new StringBuilder();
+      int c;
+      while ((c = peek()) != END_OF_INPUT && CalculatorUtils.isIdentifierPart((char) c)) {
+        next();
+        name.append((char) c);
+      }
+      if (!isAtDelimiter()) {
+        throw invalidToken(name, start);
+      }
+      while ((c = peek()) != END_OF_INPUT && Character.isWhitespace(c)) {
+        next();
+      }
+      int function =
+          c == LEFT_PARENTHESIS ? OperatorRegistry.getFunctionOpcode(name, 0, name.length()) : -1;
+      if (function < 0) {
+        throw new ExpressionConverterInvalidTokenException(
+            "Invalid token: " + name, toPosition(start));
+      }
+      pushOperator(FUNCTION_OFFSET + function, start);
+      afterOperand = false;
+    }
+
+    /*
+     * Prefix operators are pushed without applying anything, as no operand precedes them. A right-associative operator
+     * leaves the ones of the same priority on the stack.
+     * */
+    private void handleOperator(int opcode, long start) {
+      if (CalculatorUtils.getOperatorArity(opcode) == 2) {
+        int priority = CalculatorUtils.getOperatorPriority(opcode);
+        int lowest = OperatorRegistry.isRightAssociative(opcode) ? priority + 1 : priority;
+        while (operatorTop > 0
+            && operators[operatorTop - 1] != LEFT_PARENTHESIS_MARKER
+            && lowest <= CalculatorUtils.getOperatorPriority(operators[operatorTop - 1])) {
+          apply(operators[--operatorTop]);
+        }
+      }
+      pushOperator(opcode, start);
+      afterOperand = false;
+    }
+
+    private void separateArgument(long start) {
+      popToLeftParenthesis();
+      if (operatorTop < 2 || operators[operatorTop - 2] < FUNCTION_OFFSET) {
+        throw new ExpressionConverterInvalidTokenException(
+            "Invalid token: " + COMMA, toPosition(start));
+      }
+      commaCounts[operatorTop - 1]++;
+    }
+
+    private void closeParenthesis(long start) {
+      popToLeftParenthesis();
+      if (operatorTop == 0) {
+        throw new ExpressionConverterInvalidTokenException(
+            "Mismatched parentheses: left parenthesis missing", toPosition(start));
+      }
+      operatorTop--;
+      if (operatorTop > 0 && operators[operatorTop - 1] >= FUNCTION_OFFSET) {
+        int arguments = afterLeftParenthesis ? 0 : commaCounts[operatorTop] + 1;
+        int function = operators[--operatorTop] - FUNCTION_OFFSET;
+        if (arguments != CalculatorUtils.getOperatorArity(function)) {
+          throw new ExpressionConverterInvalidTokenException(
+              "Wrong number of arguments: " + CalculatorUtils.getOperatorSymbol(function),
+              toPosition(operatorPositions[operatorTop]));
+        }
+        apply(function);
+      }
+    }
+
+    private void popToLeftParenthesis() {
+      while (operatorTop > 0 && operators[operatorTop - 1] != LEFT_PARENTHESIS_MARKER) {
+        apply(operators[--operatorTop]);
+      }
+    }
+
+    /*
+     * Once an evaluation error is kept aside, the conversion goes on without evaluating, to find any syntax error.
+     * */
+    private void apply(int opcode) {
+      if (evaluationError != null) {
+        return;
+      }
+      int arity = CalculatorUtils.getOperatorArity(opcode);
+      if (operandTop < arity) {
+        evaluationError =
+            new EvaluatorStackException(
+                "Operation cannot be solved due to missing operands on the stack");
+        return;
+      }
+      try {
+        if (arity == 1) {
+          operands[operandTop - 1] =
+              CalculatorUtils.applyUnaryOperator(operands[operandTop - 1], opcode);
+        } else {
+          operands[operandTop - 2] =
+              CalculatorUtils.applyOperator(
+                  operands[operandTop - 2], operands[operandTop - 1], opcode);
+          operandTop--;
+        }
+      } catch (ArithmeticException e) {
+        evaluationError = e;
+      }
+    }
+
+    /*
+     * An invalid token extends up to the next delimiter, like in ParserService, so that the error shows the whole word.
+     * */
+    private ExpressionConverterInvalidTokenException invalidToken(StringBuilder text, long start)
+        throws IOException {
+      int c;
+      while ((c = peek()) != END_OF_INPUT
+          && (text.isEmpty() || !ParserService.isDelimiter((char) c))) {
+        next();
+        text.append((char) c);
+      }
+      return new ExpressionConverterInvalidTokenException(
+          "Invalid token: " + text, toPosition(start));
+    }
+
+    private boolean isAtDelimiter() throws IOException {
+      int c = peek();
+      return c == END_OF_INPUT || ParserService.isDelimiter((char) c);
+    }
+
+    private void pushOperator(int operator, long start) {
+      if (operatorTop == operators.length) {
+        operators = Arrays.copyOf(operators, operatorTop * 2);
+        operatorPositions = Arrays.copyOf(operatorPositions, operatorTop * 2);
+        commaCounts = Arrays.copyOf(commaCounts, operatorTop * 2);
+      }
+      operators[operatorTop] = operator;
+      operatorPositions[operatorTop] = start;
+      commaCounts[operatorTop] = 0;
+      operatorTop++;
+    }
+
+    private void pushOperand(int value) {
+      if (evaluationError != null) {
+        return;
+      }
+      if (operandTop == operands.length) {
+        operands = Arrays.copyOf(operands, operandTop * 2);
+      }
+      operands[operandTop++] = value;
+    }
+
+    private int peek() throws IOException {
+      if (bufferIndex == bufferLimit) {
+        int count = reader.read(buffer);
+        while (count == 0) {
+          count = reader.read(buffer);
+        }
+        if (count < 0) {
+          return END_OF_INPUT;
+        }
+        bufferIndex = 0;
+        bufferLimit = count;
+      }
+      return buffer[bufferIndex];
+    }
+
+    private void next() {
+      bufferIndex++;
+      position++;
+    }
+  }
+
+  // Positions beyond 2G characters are reported as the largest int
+  private static int toPosition(long position) {
+    return (int) Math.min(position, Integer.MAX_VALUE);
+  }
+}
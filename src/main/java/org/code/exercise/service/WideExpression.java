@@ -0,0 +1,100 @@
+package org.code.exercise.service;
+
+import java.math.BigInteger;
+import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.enums.OverflowMode;
+import org.code.exercise.service.helper.enums.TokenType;
+import org.code.exercise.service.model.TokenStream;
+
+/**
+ * Arithmetic expression compiled into a postfix program for the 64-bit engine, see {@link
+ * ExactEvaluatorService}.
+ *
+ * <p>The opcodes are the ones of a {@link CompiledExpression}, but the constant pool holds long
+ * values. Literals that do not even fit in a long are also kept as BigInteger, so that they can be
+ * promoted instead of being truncated.
+ *
+ * <p>Instances are immutable, and can be shared and evaluated concurrently by several threads.
+ */
+public final class WideExpression {
+
+  final CompiledExpression program;
+  final long[] constants;
+  // Literals out of the long range by constant index, null if the expression has none
+  final BigInteger[] bigConstants;
+
+  private WideExpression(CompiledExpression program, long[] constants, BigInteger[] bigConstants) {
+    this.program = program;
+    this.constants = constants;
+    this.bigConstants = bigConstants;
+  }
+
+  /*
+   * The constant pool of the program holds token indices, see ExpressionConverterService.infixToPostfixWide.
+   * The text of a literal is only read back when it does not fit in an int.
+   * */
+  static WideExpression of(CompiledExpression program, TokenStream tokens) {
+    long[] constants = new long[program.constants.length];
+    BigInteger[] bigConstants = null;
+    for (int k = 0; k < constants.length; k++) {
+      int index = program.constants[k];
+      if (tokens.type(index) != TokenType.BIG_NUMBER) {
+        constants[k] = tokens.value(index);
+        continue;
+      }
+      BigInteger value = new BigInteger(tokens.text(index));
+      constants[k] = value.longValue();
+      if (value.bitLength() >= Long.SIZE) {
+        if (bigConstants == null) {
+          bigConstants = new BigInteger[constants.length];
+        }
+        bigConstants[k] = value;
+      }
+    }
+    return new WideExpression(program, constants, bigConstants);
+  }
+
+  /**
+   * Runs the program on 64-bit integers.
+   *
+   * @param mode what to do when a value does not fit in a long
+   * @return result of the calculation, a Long, or a BigInteger if it does not fit in a long
+   * @throws ArithmeticException in case of division by zero, or of overflow in {@link
+   *     OverflowMode#FAIL} mode
+   * @throws org.code.exercise.service.exception.EvaluatorStackException in case of wrong state of
+   *     the stack (ex: missing operand)
+   */
+  public Number evaluate(OverflowMode mode) {
+    return ExactEvaluatorService.evaluate(this, mode);
+  }
+
+  /** Maximum number of values held on the stack while evaluating the program. */
+  public int getMaxStackDepth() {
+    return program.maxStackDepth;
+  }
+
+  /** Number of instructions of the program. */
+  public int size() {
+    return program.size();
+  }
+
+  /** Returns the program in postfix notation (ex: "3 9223372036854775807 2 * +"). */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    int constantIndex = 0;
+    for (byte opcode : program.opcodes) {
+      if (!builder.isEmpty()) {
+        builder.append(' ');
+      }
+      if (opcode == CalculatorUtils.OPCODE_PUSH) {
+        BigInteger big = bigConstants == null ? null : bigConstants[constantIndex];
+        builder.append(big != null ? big : constants[constantIndex]);
+        constantIndex++;
+      } else {
+        builder.append(CalculatorUtils.getOperatorSymbol(opcode));
+      }
+    }
+    return builder.toString();
+  }
+}
@@ -7,10 +7,29 @@ package org.code.exercise.service.exception;
  *
  * <ul>
  *   <li>Invalid token that is not an integer neither an operator
+ *   <li>Mismatched parentheses
  * </ul>
+ *
+ * <p>When the expression comes from the lexer, the position of the faulty token in the source
+ * expression is available through {@link #getPosition()}.
  */
 public class ExpressionConverterInvalidTokenException extends IllegalArgumentException {
+
+  public static final int UNKNOWN_POSITION = -1;
+
+  private final int position;
+
   public ExpressionConverterInvalidTokenException(String message) {
+    this(message, UNKNOWN_POSITION);
+  }
+
+  public ExpressionConverterInvalidTokenException(String message, int position) {
     super(message);
+    this.position = position;
+  }
+
+  /** Offset of the faulty token in the source expression, or -1 if unknown. */
+  public int getPosition() {
+    return position;
   }
 }
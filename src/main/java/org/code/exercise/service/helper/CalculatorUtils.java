@@ -1,7 +1,5 @@
 package org.code.exercise.service.helper;
 
-import java.util.Map;
-import java.util.function.IntBinaryOperator;
 import org.code.exercise.service.helper.enums.TokenType;
 
 public class CalculatorUtils {
@@ -9,39 +7,27 @@ public class CalculatorUtils {
   public static final String LEFT_PARENTHESIS = "(";
   public static final String RIGHT_PARENTHESIS = ")";
 
-  // Operator symbols
-  private static final String OP_ADD = "+";
-  private static final String OP_SUB = "-";
-  private static final String OP_MUL = "*";
-  private static final String OP_DIV = "/";
-
-  // Operator priority levels
-  private static final int PRIORITY_HIGH = 2;
-  private static final int PRIORITY_LOW = 1;
-
-  // Regexp to match signed integers
-  private static final String INT_REGEXP = "-?\\d+";
-
-  // Definition of an operator: a priority and the operation itself implemented from a functional
-  // interface
-  private record Operator(int priority, IntBinaryOperator operation) {}
-
-  // Map of operator symbols to their definitions
-  private static final Map<String, Operator> OPERATORS_DEFINITION =
-      Map.of(
-          OP_ADD,
-          new Operator(PRIORITY_LOW, (a, b) -> a + b),
-          OP_SUB,
-          new Operator(PRIORITY_LOW, (a, b) -> a - b),
-          OP_MUL,
-          new Operator(PRIORITY_HIGH, (a, b) -> a * b),
-          OP_DIV,
-          new Operator(
-              PRIORITY_HIGH,
-              (a, b) -> {
-                if (b == 0) throw new ArithmeticException("Division by zero");
-                return a / b;
-              }));
+  // Operator opcodes, used by the typed token stream instead of the operator symbols. The
+  // operators are defined in OperatorRegistry, which gives registered ones the next opcodes
+  public static final int OPCODE_ADD = 0;
+  public static final int OPCODE_SUB = 1;
+  public static final int OPCODE_MUL = 2;
+  public static final int OPCODE_DIV = 3;
+
+  // Sign of a negative integer
+  private static final char MINUS_SIGN = '-';
+
+  // Program instruction pushing the next constant of the constant pool on the stack
+  public static final int OPCODE_PUSH = 4;
+  // Program instruction pushing the variable whose index is the next constant of the constant pool
+  public static final int OPCODE_LOAD = 5;
+
+  public static final int OPCODE_MOD = 6;
+  public static final int OPCODE_POW = 7;
+  // Unary minus
+  public static final int OPCODE_NEG = 8;
+  public static final int OPCODE_MIN = 9;
+  public static final int OPCODE_MAX = 10;
 
   private CalculatorUtils() {
     throw new UnsupportedOperationException("Utility class");
@@ -55,22 +41,138 @@ public class CalculatorUtils {
     return TokenType.INVALID;
   }
 
+  /**
+   * Returns the opcode of a single-character binary operator symbol.
+   *
+   * @param symbol operator character (ex: '+')
+   * @return the operator opcode, or -1 if the character is not a binary operator
+   */
+  public static int getOperatorOpcode(char symbol) {
+    return OperatorRegistry.getBinaryOpcode(symbol);
+  }
+
+  public static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  public static boolean isIdentifierStart(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+  }
+
+  public static boolean isIdentifierPart(char c) {
+    return isIdentifierStart(c) || isDigit(c);
+  }
+
   public static boolean isOperator(String token) {
-    return OPERATORS_DEFINITION.containsKey(token);
+    return token.length() == 1 && getOperatorOpcode(token.charAt(0)) >= 0;
   }
 
   public static int applyOperator(int a, int b, String operator) {
-    return getOperatorOrThrow(operator).operation.applyAsInt(a, b);
+    return applyOperator(a, b, getOperatorOpcode(operator));
   }
 
   public static int getOperatorPriority(String operator) {
-    return getOperatorOrThrow(operator).priority;
+    return getOperatorPriority(getOperatorOpcode(operator));
+  }
+
+  /**
+   * Applies a binary operator to two operands. The switch on the opcode is compiled into a jump
+   * table, so that the hot evaluation loops neither hash the operator symbol nor call through a
+   * lambda. Only registered operators are called through their function.
+   *
+   * @throws ArithmeticException in case of division by zero
+   * @throws IllegalArgumentException if the opcode is not a binary operator
+   */
+  public static int applyOperator(int a, int b, int opcode) {
+    return switch (opcode) {
+      case OPCODE_ADD -> a + b;
+      case OPCODE_SUB -> a - b;
+      case OPCODE_MUL -> a * b;
+      case OPCODE_DIV -> {
+        if (b == 0) throw new ArithmeticException("Division by zero");
+        yield a / b;
+      }
+      case OPCODE_MOD -> {
+        if (b == 0) throw new ArithmeticException("Division by zero");
+        yield a % b;
+      }
+      case OPCODE_POW -> power(a, b);
+      case OPCODE_MIN -> Math.min(a, b);
+      case OPCODE_MAX -> Math.max(a, b);
+      default -> OperatorRegistry.applyRegistered(a, b, opcode);
+    };
+  }
+
+  /**
+   * Applies a unary operator to its operand.
+   *
+   * @throws IllegalArgumentException if the opcode is not a unary operator
+   */
+  public static int applyUnaryOperator(int a, int opcode) {
+    if (opcode == OPCODE_NEG) {
+      return -a;
+    }
+    return OperatorRegistry.applyRegistered(a, opcode);
+  }
+
+  /**
+   * Whether applying a built-in binary operator to these operands divides by zero, so that callers
+   * reporting errors without exceptions can check it beforehand.
+   */
+  public static boolean dividesByZero(int a, int b, int opcode) {
+    return switch (opcode) {
+      case OPCODE_DIV, OPCODE_MOD -> b == 0;
+      case OPCODE_POW -> b < 0 && a == 0;
+      default -> false;
+    };
+  }
+
+  /**
+   * Number of operands of an operator: 1 for unary operators and functions of one argument, 2
+   * otherwise.
+   *
+   * @throws IllegalArgumentException if the opcode is not an operator
+   */
+  public static int getOperatorArity(int opcode) {
+    return opcode <= OPCODE_MAX && opcode != OPCODE_NEG ? 2 : OperatorRegistry.getArity(opcode);
+  }
+
+  /**
+   * Returns the opcode of a binary operator symbol.
+   *
+   * @throws IllegalArgumentException if the symbol is not an operator
+   */
+  public static int getOperatorOpcode(String operator) {
+    if (!isOperator(operator)) {
+      throw new IllegalArgumentException("Unknown operator: " + operator);
+    }
+    return getOperatorOpcode(operator.charAt(0));
+  }
+
+  public static int getOperatorPriority(int opcode) {
+    return OperatorRegistry.getPriority(opcode);
+  }
+
+  public static String getOperatorSymbol(int opcode) {
+    return OperatorRegistry.getSymbol(opcode);
   }
 
-  private static Operator getOperatorOrThrow(String operator) {
-    Operator op = OPERATORS_DEFINITION.get(operator);
-    if (op == null) throw new IllegalArgumentException("Unknown operator: " + operator);
-    return op;
+  /*
+   * Integer power, wrapping around on overflow like the other operators. A negative exponent gives the integer part of
+   * 1 / a^-b, which is only non-zero for a base of 1 or -1, and divides by zero for a base of 0.
+   * */
+  private static int power(int a, int b) {
+    if (b < 0) {
+      if (a == 0) throw new ArithmeticException("Division by zero");
+      return a == 1 || (a == -1 && (b & 1) == 0) ? 1 : a == -1 ? -1 : 0;
+    }
+    int result = 1;
+    while (b > 0) {
+      if ((b & 1) != 0) result *= a;
+      a *= a;
+      b >>= 1;
+    }
+    return result;
   }
 
   private static boolean isLeftParenthesis(String token) {
@@ -81,7 +183,15 @@ public class CalculatorUtils {
     return RIGHT_PARENTHESIS.equals(token);
   }
 
+  /*
+   * Hand-written equivalent of the "-?\\d+" regexp, which would compile a new Pattern on each call.
+   * */
   private static boolean isInteger(String token) {
-    return token.matches(INT_REGEXP);
+    int start = !token.isEmpty() && token.charAt(0) == MINUS_SIGN ? 1 : 0;
+    if (token.length() == start) return false;
+    for (int i = start; i < token.length(); i++) {
+      if (!isDigit(token.charAt(i))) return false;
+    }
+    return true;
   }
 }
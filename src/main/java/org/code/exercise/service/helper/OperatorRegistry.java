@@ -0,0 +1,361 @@
+package org.code.exercise.service.helper;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import org.code.exercise.service.helper.enums.Associativity;
+
+/**
+ * Table of the operators and functions of the calculator, indexed by opcode.
+ *
+ * <p>Each operator gets a dense opcode when it is registered, which is what the lexer puts in the
+ * token stream and the converter in the compiled program. From there on, the engines only index
+ * arrays by opcode: the built-in operators are dispatched by a switch, and the registered ones by
+ * the function stored at their opcode. No operator symbol is ever hashed while calculating.
+ *
+ * <p>Built-in operators, from the loosest to the tightest priority:
+ *
+ * <ul>
+ *   <li>{@code +} and {@code -},
+ *   <li>{@code *}, {@code /} and {@code %} (remainder, with the sign of the dividend),
+ *   <li>unary minus (ex: "-(2 + 3)", "- x"); a '-' glued to a digit is still the sign of the
+ *       number,
+ *   <li>{@code ^} (power), right-associative; a negative exponent gives the integer part of the
+ *       inverse, so it fails only for a zero base,
+ *   <li>functions {@code min(a, b)} and {@code max(a, b)}.
+ * </ul>
+ *
+ * <p>More operators and functions can be registered at startup, before they are used. The table is
+ * copied on each registration and read without locking, so registering while calculating is safe
+ * but only affects the expressions lexed afterwards.
+ */
+public final class OperatorRegistry {
+
+  // Operator priority levels of the built-in operators
+  public static final int PRIORITY_LOW = 1;
+  public static final int PRIORITY_HIGH = 2;
+  public static final int PRIORITY_PREFIX = 3;
+  public static final int PRIORITY_POWER = 4;
+
+  // Opcodes are stored in byte programs
+  private static final int MAX_OPCODE = Byte.MAX_VALUE;
+  // Operator symbols are single ASCII characters
+  private static final int SYMBOL_COUNT = 128;
+
+  /*
+   * Definition of an operator or function. The operation of a registered one is its binary or unary function, the
+   * one of a built-in is dispatched on the opcode, see CalculatorUtils.applyOperator.
+   * */
+  private record Operator(
+      String symbol,
+      int opcode,
+      int priority,
+      int arity,
+      boolean rightAssociative,
+      boolean function,
+      IntBinaryOperator binary,
+      IntUnaryOperator unary) {}
+
+  /*
+   * Immutable snapshot of the registry, replaced as a whole on each registration.
+   * */
+  private static final class Table {
+    final Operator[] byOpcode;
+    // Opcode by symbol character, -1 if none
+    final byte[] binaryBySymbol;
+    final byte[] prefixBySymbol;
+    final Operator[] functions;
+
+    Table(Operator[] byOpcode, byte[] binaryBySymbol, byte[] prefixBySymbol, Operator[] functions) {
+      this.byOpcode = byOpcode;
+      this.binaryBySymbol = binaryBySymbol;
+      this.prefixBySymbol = prefixBySymbol;
+      this.functions = functions;
+    }
+
+    Table with(Operator operator) {
+      Operator[] opcodes = Arrays.copyOf(byOpcode, Math.max(byOpcode.length, operator.opcode + 1));
+      opcodes[operator.opcode] = operator;
+      byte[] binaries = binaryBySymbol.clone();
+      byte[] prefixes = prefixBySymbol.clone();
+      Operator[] names = functions;
+      if (operator.function) {
+        names = Arrays.copyOf(functions, functions.length + 1);
+        names[functions.length] = operator;
+      } else if (operator.arity == 1) {
+        prefixes[operator.symbol.charAt(0)] = (byte) operator.opcode;
+      } else {
+        binaries[operator.symbol.charAt(0)] = (byte) operator.opcode;
+      }
+      return new Table(opcodes, binaries, prefixes, names);
+    }
+  }
+
+  private static volatile Table table = builtInTable();
+
+  private OperatorRegistry() {
+    throw new UnsupportedOperationException("Utility class");
+  }
+
+  /**
+   * Registers a binary operator, written between its operands (ex: "a # b").
+   *
+   * @param symbol ASCII punctuation character of the operator, not used by a binary operator yet
+   * @param priority priority of the operator, see the PRIORITY constants (ex: {@link
+   *     #PRIORITY_HIGH} for a priority of a multiplication)
+   * @param associativity grouping of a chain of operators of the same priority
+   * @param operation the operation, applied to the left and the right operands
+   * @return the opcode of the operator
+   * @throws IllegalArgumentException if the symbol or the priority is invalid, or the symbol is
+   *     already used
+   * @throws IllegalStateException if all the opcodes are used
+   */
+  public static synchronized int registerOperator(
+      char symbol, int priority, Associativity associativity, IntBinaryOperator operation) {
+    validateSymbol(symbol, table.binaryBySymbol);
+    validatePriority(priority);
+    return register(
+        String.valueOf(symbol),
+        priority,
+        2,
+        associativity == Associativity.RIGHT,
+        false,
+        operation,
+        null);
+  }
+
+  /**
+   * Registers a prefix operator, written before its operand (ex: "~a"). A symbol can be both a
+   * binary and a prefix operator, like '-': it is a prefix one where no operand precedes it.
+   *
+   * @param symbol ASCII punctuation character of the operator, not used by a prefix operator yet
+   * @param priority priority of the operator, see the PRIORITY constants
+   * @param operation the operation, applied to the operand
+   * @return the opcode of the operator
+   * @throws IllegalArgumentException if the symbol or the priority is invalid, or the symbol is
+   *     already used
+   * @throws IllegalStateException if all the opcodes are used
+   */
+  public static synchronized int registerPrefixOperator(
+      char symbol, int priority, IntUnaryOperator operation) {
+    validateSymbol(symbol, table.prefixBySymbol);
+    validatePriority(priority);
+    return register(String.valueOf(symbol), priority, 1, false, false, null, operation);
+  }
+
+  /**
+   * Registers a function of one argument (ex: "abs(a)").
+   *
+   * @param name identifier of the function, not used by a function yet
+   * @param operation the operation, applied to the argument
+   * @return the opcode of the function
+   * @throws IllegalArgumentException if the name is invalid or already used
+   * @throws IllegalStateException if all the opcodes are used
+   */
+  public static synchronized int registerFunction(String name, IntUnaryOperator operation) {
+    validateName(name);
+    return register(name, 0, 1, false, true, null, operation);
+  }
+
+  /**
+   * Registers a function of two arguments (ex: "gcd(a, b)").
+   *
+   * @param name identifier of the function, not used by a function yet
+   * @param operation the operation, applied to the first and the second arguments
+   * @return the opcode of the function
+   * @throws IllegalArgumentException if the name is invalid or already used
+   * @throws IllegalStateException if all the opcodes are used
+   */
+  public static synchronized int registerFunction(String name, IntBinaryOperator operation) {
+    validateName(name);
+    return register(name, 0, 2, false, true, operation, null);
+  }
+
+  /** Opcode of the binary operator written with this character, or -1 if none. */
+  public static int getBinaryOpcode(char symbol) {
+    return symbol < SYMBOL_COUNT ? table.binaryBySymbol[symbol] : -1;
+  }
+
+  /** Opcode of the prefix operator written with this character, or -1 if none. */
+  public static int getPrefixOpcode(char symbol) {
+    return symbol < SYMBOL_COUNT ? table.prefixBySymbol[symbol] : -1;
+  }
+
+  /** Whether the character is the symbol of an operator, binary or prefix. */
+  public static boolean isOperatorSymbol(char symbol) {
+    return getBinaryOpcode(symbol) >= 0 || getPrefixOpcode(symbol) >= 0;
+  }
+
+  /**
+   * Opcode of the function whose name is a region of the source, compared in place.
+   *
+   * @return the opcode of the function, or -1 if there is none of that name
+   */
+  public static int getFunctionOpcode(CharSequence source, int start, int length) {
+    for (Operator function : table.functions) {
+      if (function.symbol.length() == length && regionMatches(source, start, function.symbol)) {
+        return function.opcode;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Priority of an operator. Functions have none, their arguments are delimited by parentheses.
+   *
+   * @throws IllegalArgumentException if the opcode is not an operator
+   */
+  public static int getPriority(int opcode) {
+    return getOrThrow(opcode).priority;
+  }
+
+  /**
+   * Number of operands of an operator or function: 1 or 2.
+   *
+   * @throws IllegalArgumentException if the opcode is not an operator
+   */
+  public static int getArity(int opcode) {
+    return getOrThrow(opcode).arity;
+  }
+
+  /**
+   * Whether a chain of this operator is grouped from the right.
+   *
+   * @throws IllegalArgumentException if the opcode is not an operator
+   */
+  public static boolean isRightAssociative(int opcode) {
+    return getOrThrow(opcode).rightAssociative;
+  }
+
+  /**
+   * Symbol of an operator, or name of a function.
+   *
+   * @throws IllegalArgumentException if the opcode is not an operator
+   */
+  public static String getSymbol(int opcode) {
+    return getOrThrow(opcode).symbol;
+  }
+
+  /** Whether the opcode is one of a built-in operator, known to every engine. */
+  public static boolean isBuiltIn(int opcode) {
+    return opcode >= 0 && opcode <= CalculatorUtils.OPCODE_MAX;
+  }
+
+  /*
+   * Operations of the registered operators, reached from the default branch of the switches on built-in opcodes.
+   * */
+  static int applyRegistered(int a, int b, int opcode) {
+    Operator operator = getOrThrow(opcode);
+    if (operator.binary == null) {
+      throw new IllegalArgumentException("Unknown operator opcode: " + opcode);
+    }
+    return operator.binary.applyAsInt(a, b);
+  }
+
+  static int applyRegistered(int a, int opcode) {
+    Operator operator = getOrThrow(opcode);
+    if (operator.unary == null) {
+      throw new IllegalArgumentException("Unknown operator opcode: " + opcode);
+    }
+    return operator.unary.applyAsInt(a);
+  }
+
+  private static Operator getOrThrow(int opcode) {
+    Operator[] operators = table.byOpcode;
+    if (opcode < 0 || opcode >= operators.length || operators[opcode] == null) {
+      throw new IllegalArgumentException("Unknown operator opcode: " + opcode);
+    }
+    return operators[opcode];
+  }
+
+  private static int register(
+      String symbol,
+      int priority,
+      int arity,
+      boolean rightAssociative,
+      boolean function,
+      IntBinaryOperator binary,
+      IntUnaryOperator unary) {
+    int opcode = table.byOpcode.length;
+    if (opcode > MAX_OPCODE) {
+      throw new IllegalStateException("Cannot register more than " + MAX_OPCODE + " operators");
+    }
+    table =
+        table.with(
+            new Operator(
+                symbol, opcode, priority, arity, rightAssociative, function, binary, unary));
+    return opcode;
+  }
+
+  /*
+   * Built-in opcodes are the constants of CalculatorUtils. The opcodes of PUSH and LOAD are instructions, not
+   * operators, and are left empty.
+   * */
+  private static Table builtInTable() {
+    byte[] noSymbols = new byte[SYMBOL_COUNT];
+    Arrays.fill(noSymbols, (byte) -1);
+    Table builtIns =
+        new Table(
+            new Operator[CalculatorUtils.OPCODE_LOAD + 1], noSymbols, noSymbols, new Operator[0]);
+    Operator[] operators = {
+      binary("+", CalculatorUtils.OPCODE_ADD, PRIORITY_LOW, false),
+      binary("-", CalculatorUtils.OPCODE_SUB, PRIORITY_LOW, false),
+      binary("*", CalculatorUtils.OPCODE_MUL, PRIORITY_HIGH, false),
+      binary("/", CalculatorUtils.OPCODE_DIV, PRIORITY_HIGH, false),
+      binary("%", CalculatorUtils.OPCODE_MOD, PRIORITY_HIGH, false),
+      binary("^", CalculatorUtils.OPCODE_POW, PRIORITY_POWER, true),
+      new Operator("-", CalculatorUtils.OPCODE_NEG, PRIORITY_PREFIX, 1, false, false, null, null),
+      new Operator("min", CalculatorUtils.OPCODE_MIN, 0, 2, false, true, null, null),
+      new Operator("max", CalculatorUtils.OPCODE_MAX, 0, 2, false, true, null, null)
+    };
+    for (Operator operator : operators) {
+      builtIns = builtIns.with(operator);
+    }
+    return builtIns;
+  }
+
+  private static Operator binary(String symbol, int opcode, int priority, boolean right) {
+    return new Operator(symbol, opcode, priority, 2, right, false, null, null);
+  }
+
+  private static void validateSymbol(char symbol, byte[] opcodeBySymbol) {
+    if (symbol <= ' '
+        || symbol >= SYMBOL_COUNT - 1
+        || CalculatorUtils.isIdentifierPart(symbol)
+        || symbol == '('
+        || symbol == ')'
+        || symbol == ',') {
+      throw new IllegalArgumentException("Invalid operator symbol: " + symbol);
+    }
+    if (opcodeBySymbol[symbol] >= 0) {
+      throw new IllegalArgumentException("Operator already registered: " + symbol);
+    }
+  }
+
+  private static void validatePriority(int priority) {
+    if (priority < PRIORITY_LOW) {
+      throw new IllegalArgumentException("Operator priority must be positive, got " + priority);
+    }
+  }
+
+  private static void validateName(String name) {
+    if (name == null || name.isEmpty() || !CalculatorUtils.isIdentifierStart(name.charAt(0))) {
+      throw new IllegalArgumentException("Invalid function name: " + name);
+    }
+    for (int i = 1; i < name.length(); i++) {
+      if (!CalculatorUtils.isIdentifierPart(name.charAt(i))) {
+        throw new IllegalArgumentException("Invalid function name: " + name);
+      }
+    }
+    if (getFunctionOpcode(name, 0, name.length()) >= 0) {
+      throw new IllegalArgumentException("Function already registered: " + name);
+    }
+  }
+
+  private static boolean regionMatches(CharSequence source, int start, String name) {
+    for (int i = 0; i < name.length(); i++) {
+      if (source.charAt(start + i) != name.charAt(i)) return false;
+    }
+    return true;
+  }
+}
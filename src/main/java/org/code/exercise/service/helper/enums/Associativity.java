@@ -0,0 +1,9 @@
+package org.code.exercise.service.helper.enums;
+
+/** Grouping of a chain of binary operators of the same priority. */
+public enum Associativity {
+  // "8 - 2 - 1" is "(8 - 2) - 1"
+  LEFT,
+  // "2 ^ 3 ^ 2" is "2 ^ (3 ^ 2)"
+  RIGHT
+}
@@ -0,0 +1,48 @@
+package org.code.exercise.service.helper.enums;
+
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+
+/**
+ * Error of a calculation reported without throwing, see {@link
+ * org.code.exercise.service.model.CalculationResult}. Each error belongs to the category of the
+ * exception the throwing API raises for it, and has the same message.
+ */
+public enum CalculationError {
+  EMPTY_EXPRESSION(IllegalArgumentException.class, "Expression must not be null or empty"),
+  // The message is followed by the text of the token
+  INVALID_TOKEN(ExpressionConverterInvalidTokenException.class, "Invalid token: "),
+  MISSING_LEFT_PARENTHESIS(
+      ExpressionConverterInvalidTokenException.class,
+      "Mismatched parentheses: left parenthesis missing"),
+  MISSING_RIGHT_PARENTHESIS(
+      ExpressionConverterInvalidTokenException.class,
+      "Mismatched parentheses: right parenthesis missing"),
+  // The message is followed by the name of the function
+  WRONG_ARGUMENT_COUNT(
+      ExpressionConverterInvalidTokenException.class, "Wrong number of arguments: "),
+  MISSING_OPERAND(
+      EvaluatorStackException.class,
+      "Operation cannot be solved due to missing operands on the stack"),
+  TOO_MANY_OPERANDS(EvaluatorStackException.class, "More than one element left on the stack"),
+  EMPTY_STACK(EvaluatorStackException.class, "Stack is empty"),
+  DIVISION_BY_ZERO(ArithmeticException.class, "Division by zero");
+
+  private final Class<? extends RuntimeException> exceptionType;
+  private final String message;
+
+  CalculationError(Class<? extends RuntimeException> exceptionType, String message) {
+    this.exceptionType = exceptionType;
+    this.message = message;
+  }
+
+  /** Class of the exception thrown for this error by the throwing API. */
+  public Class<? extends RuntimeException> getExceptionType() {
+    return exceptionType;
+  }
+
+  /** Message of the error, without the token text of {@link #INVALID_TOKEN}, if any. */
+  public String getMessage() {
+    return message;
+  }
+}
@@ -0,0 +1,11 @@
+package org.code.exercise.service.helper.enums;
+
+/** Behavior of the 64-bit engine when a value does not fit in a long. */
+public enum OverflowMode {
+  // Two's complement wrap-around, like Java long arithmetic
+  WRAP,
+  // ArithmeticException on the first overflow
+  FAIL,
+  // The overflowing subexpression goes on as a BigInteger, and back to long once it fits again
+  PROMOTE
+}
@@ -2,8 +2,16 @@ package org.code.exercise.service.helper.enums;
 
 public enum TokenType {
   NUMBER,
+  // Integer literal out of the int range, its value is only kept in the source text
+  BIG_NUMBER,
+  IDENTIFIER,
+  // Binary or prefix operator, its value is the opcode
   OPERATOR,
+  // Name of a function followed by its arguments, its value is the opcode
+  FUNCTION,
   LEFT_PAREN,
   RIGHT_PAREN,
+  // Separator of function arguments
+  COMMA,
   INVALID
 }
@@ -0,0 +1,76 @@
+package org.code.exercise.service.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only CharSequence view over a range of ASCII bytes of a ByteBuffer, so that the lexer can
+ * read an expression straight from a (possibly memory-mapped) buffer without decoding it into a
+ * String.
+ *
+ * <p>The view can be reset to another range, so that a single instance is reused for every line of
+ * a buffer. Each byte is read as a single ISO-8859-1 character: callers must only use it for ASCII
+ * content.
+ */
+public final class AsciiCharSequence implements CharSequence {
+
+  private ByteBuffer buffer;
+  private int offset;
+  private int length;
+
+  public AsciiCharSequence() {
+    this(ByteBuffer.allocate(0), 0, 0);
+  }
+
+  public AsciiCharSequence(ByteBuffer buffer, int offset, int length) {
+    reset(buffer, offset, length);
+  }
+
+  /**
+   * Points the view to another range of bytes.
+   *
+   * @param buffer source bytes, read with absolute gets so that its position is left untouched
+   * @param offset index of the first byte of the range in the buffer
+   * @param length number of bytes of the range
+   * @return this view
+   */
+  public AsciiCharSequence reset(ByteBuffer buffer, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + offset + ", " + (offset + length) + ") out of bounds for " + buffer.limit());
+    }
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + length);
+    }
+    return (char) (buffer.get(offset + index) & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || start > end || end > length) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + start + ", " + end + ") out of bounds for " + length);
+    }
+    return new AsciiCharSequence(buffer, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    byte[] bytes = new byte[length];
+    buffer.get(offset, bytes);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+}
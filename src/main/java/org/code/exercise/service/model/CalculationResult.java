@@ -0,0 +1,114 @@
+package org.code.exercise.service.model;
+
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.enums.CalculationError;
+
+/**
+ * Outcome of a calculation that does not throw: either its value, or its error along with the
+ * position of the faulty token.
+ *
+ * <p>Building a failure costs no more than building a success: no exception is created, so no stack
+ * trace is captured, and the message is only built when asked for. Where the caller needs an
+ * exception after all, {@link #toException()} gives the one the throwing API raises.
+ */
+public final class CalculationResult {
+
+  public static final int UNKNOWN_POSITION =
+      ExpressionConverterInvalidTokenException.UNKNOWN_POSITION;
+
+  private final int value;
+  private final CalculationError error;
+  private final int position;
+  private final String token;
+
+  private CalculationResult(int value, CalculationError error, int position, String token) {
+    this.value = value;
+    this.error = error;
+    this.position = position;
+    this.token = token;
+  }
+
+  /** Successful calculation. */
+  public static CalculationResult success(int value) {
+    return new CalculationResult(value, null, UNKNOWN_POSITION, null);
+  }
+
+  /** Failed calculation, without a position. */
+  public static CalculationResult failure(CalculationError error) {
+    return new CalculationResult(0, error, UNKNOWN_POSITION, null);
+  }
+
+  /** Failed calculation, at the given offset in the source expression. */
+  public static CalculationResult failure(CalculationError error, int position) {
+    return new CalculationResult(0, error, position, null);
+  }
+
+  /**
+   * Failed calculation because of a token, at the given offset in the source expression.
+   *
+   * @param token text of the token, as it appears at the end of the error message
+   */
+  public static CalculationResult failure(CalculationError error, int position, String token) {
+    return new CalculationResult(0, error, position, token);
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  /**
+   * Value of a successful calculation.
+   *
+   * @throws RuntimeException the exception of {@link #toException()} if the calculation failed
+   */
+  public int getValue() {
+    if (error != null) {
+      throw toException();
+    }
+    return value;
+  }
+
+  /** Error of a failed calculation, or null if it succeeded. */
+  public CalculationError getError() {
+    return error;
+  }
+
+  /** Offset of the faulty token in the source expression, or -1 if unknown or successful. */
+  public int getPosition() {
+    return position;
+  }
+
+  /** Message of the error, the same as the one of the exception, or null if successful. */
+  public String getMessage() {
+    if (error == null) {
+      return null;
+    }
+    return token == null ? error.getMessage() : error.getMessage() + token;
+  }
+
+  /**
+   * Exception the throwing API raises for this error.
+   *
+   * @throws IllegalStateException if the calculation succeeded
+   */
+  public RuntimeException toException() {
+    if (error == null) {
+      throw new IllegalStateException("The calculation succeeded");
+    }
+    Class<? extends RuntimeException> type = error.getExceptionType();
+    if (type == ExpressionConverterInvalidTokenException.class) {
+      return new ExpressionConverterInvalidTokenException(getMessage(), position);
+    } else if (type == EvaluatorStackException.class) {
+      return new EvaluatorStackException(getMessage());
+    } else if (type == ArithmeticException.class) {
+      return new ArithmeticException(getMessage());
+    }
+    return new IllegalArgumentException(getMessage());
+  }
+
+  @Override
+  public String toString() {
+    return error == null ? Integer.toString(value) : error + ": " + getMessage();
+  }
+}
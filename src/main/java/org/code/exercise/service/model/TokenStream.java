@@ -0,0 +1,112 @@
+package org.code.exercise.service.model;
+
+import java.util.Arrays;
+import org.code.exercise.service.helper.enums.TokenType;
+
+/**
+ * Compact typed token stream produced by the lexer.
+ *
+ * <p>Each token is stored as a kind, an int value (the integer value of a number, or the opcode of
+ * an operator) and its position and length in the source expression. No String is created per
+ * token: the text is only rebuilt on demand from the source, for error messages.
+ */
+public final class TokenStream {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private final CharSequence source;
+  private TokenType[] types;
+  private int[] values;
+  private int[] positions;
+  private int[] lengths;
+  private int size;
+
+  public TokenStream(CharSequence source) {
+    this(source, DEFAULT_CAPACITY);
+  }
+
+  public TokenStream(CharSequence source, int initialCapacity) {
+    int capacity = Math.max(initialCapacity, 1);
+    this.source = source;
+    this.types = new TokenType[capacity];
+    this.values = new int[capacity];
+    this.positions = new int[capacity];
+    this.lengths = new int[capacity];
+  }
+
+  public void add(TokenType type, int value, int position, int length) {
+    if (size == types.length) {
+      grow();
+    }
+    types[size] = type;
+    values[size] = value;
+    positions[size] = position;
+    lengths[size] = length;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Maximum nesting depth of the parentheses, computed on each call. */
+  public int nestingDepth() {
+    int depth = 0;
+    int maxDepth = 0;
+    for (int i = 0; i < size; i++) {
+      if (types[i] == TokenType.LEFT_PAREN) {
+        maxDepth = Math.max(maxDepth, ++depth);
+      } else if (types[i] == TokenType.RIGHT_PAREN) {
+        depth--;
+      }
+    }
+    return maxDepth;
+  }
+
+  public TokenType type(int index) {
+    return types[checkIndex(index)];
+  }
+
+  /** Integer value for a NUMBER token, opcode for an OPERATOR token, 0 otherwise. */
+  public int value(int index) {
+    return values[checkIndex(index)];
+  }
+
+  /** Offset of the first character of the token in the source expression. */
+  public int position(int index) {
+    return positions[checkIndex(index)];
+  }
+
+  public int length(int index) {
+    return lengths[checkIndex(index)];
+  }
+
+  /** Rebuilds the source text of a token. Meant for error reporting, not for the hot path. */
+  public String text(int index) {
+    int start = position(index);
+    return source.subSequence(start, start + lengths[index]).toString();
+  }
+
+  public CharSequence source() {
+    return source;
+  }
+
+  private int checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Token index " + index + " out of bounds for " + size);
+    }
+    return index;
+  }
+
+  private void grow() {
+    int capacity = types.length * 2;
+    types = Arrays.copyOf(types, capacity);
+    values = Arrays.copyOf(values, capacity);
+    positions = Arrays.copyOf(positions, capacity);
+    lengths = Arrays.copyOf(lengths, capacity);
+  }
+}
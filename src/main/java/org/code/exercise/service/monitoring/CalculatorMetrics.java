@@ -0,0 +1,184 @@
+package org.code.exercise.service.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.code.exercise.service.model.CalculationResult;
+
+/**
+ * Throughput, latency and error metrics of the calculator, exposed as a JMX MBean.
+ *
+ * <p>Only collected when the JVM is started with {@code -Dcalculator.metrics=true}. The flag is a
+ * constant, so that with metrics disabled the JIT compiler removes the timing calls from the stages
+ * altogether. The MBean is registered on the platform MBean server the first time metrics are used.
+ */
+public final class CalculatorMetrics implements CalculatorMetricsMXBean {
+
+  public static final String OBJECT_NAME = "org.code.exercise:type=CalculatorMetrics";
+
+  /** Whether metrics are collected, set once with {@code -Dcalculator.metrics=true}. */
+  public static final boolean ENABLED = Boolean.getBoolean("calculator.metrics");
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+  private static final String[] PERCENTILE_KEYS = {"p50", "p90", "p99", "p99.9"};
+
+  private static final CalculatorMetrics INSTANCE = new CalculatorMetrics();
+
+  static {
+    if (ENABLED) {
+      INSTANCE.register();
+    }
+  }
+
+  private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+  private final LongAdder calculationCount = new LongAdder();
+  private final Map<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+
+  CalculatorMetrics() {
+    for (Stage stage : Stage.values()) {
+      latencies.put(stage, new LatencyHistogram());
+    }
+  }
+
+  /** Metrics of this JVM. */
+  public static CalculatorMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /** Start time of a stage to pass to {@link #recordStage}, or 0 if metrics are disabled. */
+  public static long startStage() {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  /** Records the latency of a stage started at {@code startTime}, if metrics are enabled. */
+  public static void recordStage(Stage stage, long startTime) {
+    if (ENABLED) {
+      INSTANCE.recordLatency(stage, System.nanoTime() - startTime);
+    }
+  }
+
+  /** Records a calculation and its error, if metrics are enabled. */
+  public static void recordCalculation(RuntimeException error) {
+    if (ENABLED) {
+      INSTANCE.recordOutcome(error);
+    }
+  }
+
+  /**
+   * Records a calculation reported as a result, if metrics are enabled. Its error is counted under
+   * the same type as the exception the throwing API raises for it.
+   */
+  public static void recordResult(CalculationResult result) {
+    if (ENABLED) {
+      INSTANCE.recordOutcomeOf(result);
+    }
+  }
+
+  void recordLatency(Stage stage, long nanos) {
+    latencies.get(stage).record(nanos);
+  }
+
+  void recordOutcome(RuntimeException error) {
+    countOutcome(error == null ? null : error.getClass().getSimpleName());
+  }
+
+  void recordOutcomeOf(CalculationResult result) {
+    countOutcome(result.isSuccess() ? null : result.getError().getExceptionType().getSimpleName());
+  }
+
+  private void countOutcome(String errorType) {
+    calculationCount.increment();
+    if (errorType != null) {
+      errorCounts.computeIfAbsent(errorType, type -> new LongAdder()).increment();
+    }
+  }
+
+  /*
+   * Registration failures must not fail the calculation, they are only reported.
+   * */
+  void register() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.registerMBean(this, new ObjectName(OBJECT_NAME));
+    } catch (InstanceAlreadyExistsException e) {
+      // Registered by another class loader
+    } catch (JMException e) {
+      System.err.println("Cannot register the calculator metrics: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public long getCalculationCount() {
+    return calculationCount.sum();
+  }
+
+  @Override
+  public long getErrorCount() {
+    long count = 0;
+    for (LongAdder errorCount : errorCounts.values()) {
+      count += errorCount.sum();
+    }
+    return count;
+  }
+
+  @Override
+  public Map<String, Long> getErrorCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    errorCounts.forEach((type, count) -> counts.put(type, count.sum()));
+    return counts;
+  }
+
+  @Override
+  public long getTokenizeCount() {
+    return latencies.get(Stage.TOKENIZE).count();
+  }
+
+  @Override
+  public long getConversionCount() {
+    return latencies.get(Stage.CONVERSION).count();
+  }
+
+  @Override
+  public long getEvaluationCount() {
+    return latencies.get(Stage.EVALUATION).count();
+  }
+
+  @Override
+  public Map<String, Long> getTokenizeLatencyNanos() {
+    return percentiles(Stage.TOKENIZE);
+  }
+
+  @Override
+  public Map<String, Long> getConversionLatencyNanos() {
+    return percentiles(Stage.CONVERSION);
+  }
+
+  @Override
+  public Map<String, Long> getEvaluationLatencyNanos() {
+    return percentiles(Stage.EVALUATION);
+  }
+
+  @Override
+  public void reset() {
+    latencies.values().forEach(LatencyHistogram::reset);
+    calculationCount.reset();
+    errorCounts.clear();
+  }
+
+  private Map<String, Long> percentiles(Stage stage) {
+    LatencyHistogram histogram = latencies.get(stage);
+    Map<String, Long> values = new LinkedHashMap<>();
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      values.put(PERCENTILE_KEYS[i], histogram.percentile(PERCENTILES[i]));
+    }
+    return values;
+  }
+}
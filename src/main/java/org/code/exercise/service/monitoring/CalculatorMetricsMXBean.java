@@ -0,0 +1,35 @@
+package org.code.exercise.service.monitoring;
+
+import java.util.Map;
+
+/**
+ * Calculator metrics exposed over JMX, under {@value CalculatorMetrics#OBJECT_NAME}.
+ *
+ * <p>Latency percentiles are keyed "p50", "p90", "p99" and "p99.9", in nanoseconds.
+ */
+public interface CalculatorMetricsMXBean {
+
+  /** Number of expressions calculated, successfully or not. */
+  long getCalculationCount();
+
+  /** Number of expressions that failed. */
+  long getErrorCount();
+
+  /** Number of failed expressions, keyed by exception type (ex: "ArithmeticException"). */
+  Map<String, Long> getErrorCounts();
+
+  long getTokenizeCount();
+
+  long getConversionCount();
+
+  long getEvaluationCount();
+
+  Map<String, Long> getTokenizeLatencyNanos();
+
+  Map<String, Long> getConversionLatencyNanos();
+
+  Map<String, Long> getEvaluationLatencyNanos();
+
+  /** Resets all the counters and latencies. */
+  void reset();
+}
@@ -0,0 +1,22 @@
+package org.code.exercise.service.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** JFR event of the conversion stage. */
+@Name("org.code.exercise.Conversion")
+@Label("Conversion")
+@Category("Calculator")
+@Description("Conversion of infix tokens into a postfix program")
+public final class ConversionEvent extends Event {
+
+  @Label("Token Count")
+  public int tokenCount;
+
+  @Label("Nesting Depth")
+  @Description("Maximum nesting depth of the parentheses")
+  public int nestingDepth;
+}
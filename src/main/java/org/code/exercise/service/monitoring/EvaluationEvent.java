@@ -0,0 +1,23 @@
+package org.code.exercise.service.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** JFR event of the evaluation stage. */
+@Name("org.code.exercise.Evaluation")
+@Label("Evaluation")
+@Category("Calculator")
+@Description("Evaluation of a postfix program")
+public final class EvaluationEvent extends Event {
+
+  @Label("Token Count")
+  public int tokenCount;
+
+  @Label("Stack Depth")
+  @Description(
+      "Maximum number of values on the stack, the postfix counterpart of the nesting depth")
+  public int stackDepth;
+}
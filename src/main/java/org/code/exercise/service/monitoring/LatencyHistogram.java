@@ -0,0 +1,90 @@
+package org.code.exercise.service.monitoring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, with a bounded relative error.
+ *
+ * <p>Values are counted in logarithmic buckets: each power of two is split in {@value #SUB_BUCKETS}
+ * linear sub-buckets, so that a percentile is within 12.5% of the actual value, whatever its
+ * magnitude, with a fixed footprint of a few KB.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values below SUB_BUCKETS have an exact bucket each, then every power of two up to 2^62 has
+  // SUB_BUCKETS buckets
+  private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+  /** Counts a latency, negative values are counted as 0. */
+  public void record(long nanos) {
+    counts.incrementAndGet(bucketIndex(Math.max(nanos, 0)));
+  }
+
+  /** Number of recorded latencies. */
+  public long count() {
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Returns a percentile of the recorded latencies.
+   *
+   * @param percentile between 0 and 100 (ex: 99.9)
+   * @return the upper bound of the bucket holding the percentile, or 0 if nothing was recorded
+   */
+  public long percentile(double percentile) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+    long cumulated = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      cumulated += snapshot[i];
+      if (cumulated >= rank) {
+        return bucketUpperBound(i);
+      }
+    }
+    return bucketUpperBound(BUCKET_COUNT - 1);
+  }
+
+  /** Forgets all the recorded latencies. */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+  }
+
+  /*
+   * The bucket of a value is given by the position of its highest bit, and by the SUB_BUCKET_BITS bits below it.
+   * */
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
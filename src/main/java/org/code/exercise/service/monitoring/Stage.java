@@ -0,0 +1,8 @@
+package org.code.exercise.service.monitoring;
+
+/** Stages of the calculation pipeline reported by the instrumentation. */
+public enum Stage {
+  TOKENIZE,
+  CONVERSION,
+  EVALUATION
+}
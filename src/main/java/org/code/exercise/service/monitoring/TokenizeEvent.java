@@ -0,0 +1,22 @@
+package org.code.exercise.service.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** JFR event of the tokenize stage. */
+@Name("org.code.exercise.Tokenize")
+@Label("Tokenize")
+@Category("Calculator")
+@Description("Lexing of an expression into tokens")
+public final class TokenizeEvent extends Event {
+
+  @Label("Token Count")
+  public int tokenCount;
+
+  @Label("Nesting Depth")
+  @Description("Maximum nesting depth of the parentheses")
+  public int nestingDepth;
+}
@@ -0,0 +1,394 @@
+package org.code.exercise.service.sheet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.code.exercise.service.CompiledExpression;
+import org.code.exercise.service.ExpressionConverterService;
+import org.code.exercise.service.ParserService;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.enums.TokenType;
+import org.code.exercise.service.model.TokenStream;
+
+/**
+ * Set of named formulas referencing each other, recomputed incrementally.
+ *
+ * <p>Each cell holds a formula whose identifiers are the names of other cells (ex: {@code total =
+ * "price * quantity + shipping"}). Formulas are compiled once with the calculator pipeline, the
+ * referenced cells becoming the variables of the program. The sheet keeps the dependency graph of
+ * the cells: when a formula changes, only the cell and its transitive dependents are recomputed, in
+ * topological order, so the cost of an update depends on the size of the change rather than on the
+ * size of the sheet. Cells of a same topological level do not depend on each other, and large
+ * levels are recomputed in parallel.
+ *
+ * <p>A formula may reference a cell that is not defined yet: it fails with an "Undefined cell"
+ * error until that cell is set. Errors propagate to the dependents, and an update creating a
+ * circular reference is rejected, leaving the sheet unchanged.
+ *
+ * <p>All the methods are synchronized, so a sheet can be shared by several threads.
+ */
+public class Sheet {
+
+  // Below this number of independent cells, a level is recomputed on the calling thread
+  private static final int PARALLEL_THRESHOLD = 512;
+
+  private final Map<String, Cell> cells = new HashMap<>();
+  private final ForkJoinPool pool;
+  // Incremented on each update, marks the cells to recompute without clearing any flag
+  private long epoch;
+
+  public Sheet() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates an empty sheet recomputing large levels of independent cells on the given pool.
+   *
+   * @param pool pool recomputing the cells in parallel
+   */
+  public Sheet(ForkJoinPool pool) {
+    this.pool = Objects.requireNonNull(pool);
+  }
+
+  /**
+   * Defines or redefines a cell, and recomputes it along with its transitive dependents.
+   *
+   * @param name cell name, an identifier (ex: "total")
+   * @param formula arithmetic expression referencing other cells (ex: "price * quantity")
+   * @return the number of recomputed cells
+   * @throws IllegalArgumentException if the name is null or not an identifier, the formula is null
+   *     or empty, or it creates a circular reference
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses
+   */
+  public synchronized int set(String name, CharSequence formula) {
+    // Unlike Map.of, accepts a null name or formula, rejected by setAll as invalid
+    return setAll(Collections.singletonMap(name, formula));
+  }
+
+  /**
+   * Defines or redefines several cells at once. Every changed cell and dependent is recomputed a
+   * single time, whatever the order of the formulas, which makes it the way to load a sheet.
+   *
+   * <p>The update is atomic: if any formula is invalid or a circular reference is created, no cell
+   * is changed.
+   *
+   * @param formulas formula of each cell, by cell name
+   * @return the number of recomputed cells
+   * @throws IllegalArgumentException if a name is not an identifier, a formula is empty, or a
+   *     circular reference is created
+   * @throws ExpressionConverterInvalidTokenException in case of syntax error or mismatched
+   *     parentheses
+   */
+  public synchronized int setAll(Map<String, ? extends CharSequence> formulas) {
+    // Everything is compiled before the first change, so that a syntax error leaves the sheet as is
+    Map<String, Formula> compiled = new LinkedHashMap<>();
+    formulas.forEach((name, formula) -> compiled.put(validateName(name), Formula.compile(formula)));
+
+    Map<Cell, Formula> previous = new LinkedHashMap<>();
+    for (Map.Entry<String, Formula> entry : compiled.entrySet()) {
+      Cell cell = cellFor(entry.getKey());
+      previous.putIfAbsent(cell, cell.formula);
+      define(cell, entry.getValue());
+    }
+
+    List<List<Cell>> levels;
+    try {
+      levels = sortDirtyCells(previous.keySet());
+    } catch (IllegalArgumentException e) {
+      previous.forEach(this::define);
+      throw e;
+    }
+    return recompute(levels);
+  }
+
+  /**
+   * Removes the formula of a cell. Its dependents are recomputed, and fail with an "Undefined cell"
+   * error until the cell is set again.
+   *
+   * @param name cell name
+   * @return the number of recomputed cells
+   */
+  public synchronized int remove(String name) {
+    Cell cell = cells.get(name);
+    if (cell == null || cell.formula == null) {
+      return 0;
+    }
+    define(cell, null);
+    if (!cells.containsKey(name)) {
+      return 0;
+    }
+    return recompute(sortDirtyCells(List.of(cell)));
+  }
+
+  /**
+   * Returns the current value of a cell.
+   *
+   * @param name cell name
+   * @return the value computed for the cell
+   * @throws IllegalArgumentException if the cell is not defined
+   * @throws RuntimeException the error of the cell, or of the first failed cell it depends on (ex:
+   *     ArithmeticException in case of division by zero)
+   */
+  public synchronized int getValue(String name) {
+    Cell cell = cells.get(name);
+    if (cell == null || cell.formula == null) {
+      throw undefinedCell(name);
+    }
+    if (cell.error != null) {
+      throw cell.error;
+    }
+    return cell.value;
+  }
+
+  /**
+   * Returns the formula of a cell, as it was set.
+   *
+   * @param name cell name
+   * @return the formula, or null if the cell is not defined
+   */
+  public synchronized String getFormula(String name) {
+    Cell cell = cells.get(name);
+    return cell == null || cell.formula == null ? null : cell.formula.text();
+  }
+
+  /** Names of the cells directly referenced by the formula of a cell, empty if it is undefined. */
+  public synchronized List<String> getReferences(String name) {
+    Cell cell = cells.get(name);
+    return cell == null || cell.formula == null
+        ? List.of()
+        : cell.formula.expression().getVariables();
+  }
+
+  /** Number of defined cells. */
+  public synchronized int size() {
+    int size = 0;
+    for (Cell cell : cells.values()) {
+      if (cell.formula != null) size++;
+    }
+    return size;
+  }
+
+  // Formula of a cell, compiled once with the names of the referenced cells as variables
+  private record Formula(String text, CompiledExpression expression) {
+
+    static Formula compile(CharSequence formula) {
+      if (formula == null || formula.length() == 0) {
+        throw new IllegalArgumentException("Formula must not be null or empty");
+      }
+      TokenStream tokens = ParserService.lex(formula);
+      Set<String> references = new LinkedHashSet<>();
+      for (int i = 0; i < tokens.size(); i++) {
+        if (tokens.type(i) == TokenType.IDENTIFIER) {
+          references.add(tokens.text(i));
+        }
+      }
+      CompiledExpression expression =
+          ExpressionConverterService.infixToPostfix(tokens, references.toArray(new String[0]));
+      return new Formula(formula.toString(), expression);
+    }
+  }
+
+  /*
+   * A cell referenced by a formula but never set is kept without formula, so that its dependents are found once it is set.
+   * Such a cell is dropped as soon as nothing references it anymore.
+   * */
+  private static final class Cell {
+    final String name;
+    final Set<Cell> dependents = new HashSet<>();
+    Formula formula;
+    Cell[] dependencies = new Cell[0];
+    int value;
+    RuntimeException error;
+    // State of the topological sort, only meaningful when dirtyEpoch is the current epoch
+    long dirtyEpoch;
+    int pendingDependencies;
+
+    Cell(String name) {
+      this.name = name;
+      this.error = undefinedCell(name);
+    }
+  }
+
+  private Cell cellFor(String name) {
+    return cells.computeIfAbsent(name, Cell::new);
+  }
+
+  /*
+   * Replaces the formula of a cell, and moves its edges from the previous references to the new ones.
+   * */
+  private void define(Cell cell, Formula formula) {
+    for (Cell dependency : cell.dependencies) {
+      dependency.dependents.remove(cell);
+      dropIfUnused(dependency);
+    }
+    cell.formula = formula;
+    if (formula == null) {
+      cell.dependencies = new Cell[0];
+      dropIfUnused(cell);
+      return;
+    }
+    cells.putIfAbsent(cell.name, cell);
+    List<String> references = formula.expression().getVariables();
+    cell.dependencies = new Cell[references.size()];
+    for (int i = 0; i < references.size(); i++) {
+      Cell dependency = cellFor(references.get(i));
+      dependency.dependents.add(cell);
+      cell.dependencies[i] = dependency;
+    }
+  }
+
+  private void dropIfUnused(Cell cell) {
+    if (cell.formula == null && cell.dependents.isEmpty()) {
+      cells.remove(cell.name, cell);
+    }
+  }
+
+  /*
+   * Kahn's algorithm restricted to the changed cells and their transitive dependents: each level only holds cells whose
+   * dirty dependencies are all in the previous levels. As the sheet was acyclic before the update, any cycle goes through
+   * a changed cell, and so is made of dirty cells that never get ready.
+   * */
+  private List<List<Cell>> sortDirtyCells(Collection<Cell> changed) {
+    long currentEpoch = ++epoch;
+    List<Cell> dirty = new ArrayList<>();
+    Deque<Cell> pending = new ArrayDeque<>();
+    for (Cell cell : changed) {
+      if (cell.dirtyEpoch != currentEpoch) {
+        cell.dirtyEpoch = currentEpoch;
+        pending.push(cell);
+      }
+    }
+    while (!pending.isEmpty()) {
+      Cell cell = pending.pop();
+      dirty.add(cell);
+      for (Cell dependent : cell.dependents) {
+        if (dependent.dirtyEpoch != currentEpoch) {
+          dependent.dirtyEpoch = currentEpoch;
+          pending.push(dependent);
+        }
+      }
+    }
+
+    List<Cell> level = new ArrayList<>();
+    for (Cell cell : dirty) {
+      cell.pendingDependencies = 0;
+      for (Cell dependency : cell.dependencies) {
+        if (dependency.dirtyEpoch == currentEpoch) cell.pendingDependencies++;
+      }
+      if (cell.pendingDependencies == 0) level.add(cell);
+    }
+
+    List<List<Cell>> levels = new ArrayList<>();
+    int sorted = 0;
+    while (!level.isEmpty()) {
+      levels.add(level);
+      sorted += level.size();
+      List<Cell> next = new ArrayList<>();
+      for (Cell cell : level) {
+        for (Cell dependent : cell.dependents) {
+          if (--dependent.pendingDependencies == 0) next.add(dependent);
+        }
+      }
+      level = next;
+    }
+    if (sorted < dirty.size()) {
+      throw new IllegalArgumentException("Circular reference: " + describeCycle(dirty));
+    }
+    return levels;
+  }
+
+  /*
+   * Walks the unsorted dependencies from an unsorted cell until a cell is met twice (ex: "a -> b -> a").
+   * */
+  private static String describeCycle(List<Cell> dirty) {
+    Cell cell = null;
+    for (Cell candidate : dirty) {
+      if (candidate.pendingDependencies > 0) {
+        cell = candidate;
+        break;
+      }
+    }
+    Map<Cell, Integer> visited = new LinkedHashMap<>();
+    List<String> path = new ArrayList<>();
+    while (!visited.containsKey(cell)) {
+      visited.put(cell, path.size());
+      path.add(cell.name);
+      for (Cell dependency : cell.dependencies) {
+        if (dependency.dirtyEpoch == cell.dirtyEpoch && dependency.pendingDependencies > 0) {
+          cell = dependency;
+          break;
+        }
+      }
+    }
+    List<String> cycle = new ArrayList<>(path.subList(visited.get(cell), path.size()));
+    cycle.add(cell.name);
+    return String.join(" -> ", cycle);
+  }
+
+  private int recompute(List<List<Cell>> levels) {
+    int count = 0;
+    for (List<Cell> level : levels) {
+      if (level.size() < PARALLEL_THRESHOLD) {
+        level.forEach(Sheet::evaluate);
+      } else {
+        pool.submit(() -> level.parallelStream().forEach(Sheet::evaluate)).join();
+      }
+      count += level.size();
+    }
+    return count;
+  }
+
+  /*
+   * A cell depending on a failed cell fails with the same error, without being evaluated.
+   * */
+  private static void evaluate(Cell cell) {
+    if (cell.formula == null) {
+      cell.error = undefinedCell(cell.name);
+      return;
+    }
+    int[] values = new int[cell.dependencies.length];
+    for (int i = 0; i < values.length; i++) {
+      Cell dependency = cell.dependencies[i];
+      if (dependency.error != null) {
+        cell.error = dependency.error;
+        return;
+      }
+      values[i] = dependency.value;
+    }
+    try {
+      cell.value = cell.formula.expression().evaluate(values);
+      cell.error = null;
+    } catch (RuntimeException e) {
+      cell.error = e;
+    }
+  }
+
+  private static String validateName(String name) {
+    if (name == null || name.isEmpty() || !CalculatorUtils.isIdentifierStart(name.charAt(0))) {
+      throw new IllegalArgumentException("Invalid cell name: " + name);
+    }
+    for (int i = 1; i < name.length(); i++) {
+      if (!CalculatorUtils.isIdentifierPart(name.charAt(i))) {
+        throw new IllegalArgumentException("Invalid cell name: " + name);
+      }
+    }
+    return name;
+  }
+
+  private static IllegalArgumentException undefinedCell(String name) {
+    return new IllegalArgumentException("Undefined cell: " + name);
+  }
+}
@@ -0,0 +1,73 @@
+package org.code.exercise;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+public class BatchRunnerTest {
+
+  @Test
+  public void testOneResultPerLine() throws IOException {
+    StringWriter output = new StringWriter();
+    long errors = BatchRunner.run(reader("2 + 3\n(8 + 2) * 12\n  3 * -2 + 6  \n"), output);
+    assertEquals("5\n120\n0\n", output.toString());
+    assertEquals(0, errors);
+  }
+
+  @Test
+  public void testErrorsAreKeyedByLineNumber() throws IOException {
+    StringWriter output = new StringWriter();
+    long errors = BatchRunner.run(reader("5 / 0\n2 + a\n\n5 +\n1 + 1"), output);
+    assertEquals(
+        "Line 1: Arithmetic error: Division by zero\n"
+            + "Line 2: Syntax error: Invalid token: a (at position 4)\n"
+            + "Line 3: Invalid input: Expression must not be null or empty\n"
+            + "Line 4: Evaluation error: Operation cannot be solved due to missing operands on the"
+            + " stack\n"
+            + "2\n",
+        output.toString());
+    assertEquals(4, errors);
+  }
+
+  @Test
+  public void testParallelRunKeepsInputOrder() throws IOException {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      input.append(i % 7 == 0 ? i + " / 0" : i + " * 2 - 1").append('\n');
+    }
+    StringWriter sequential = new StringWriter();
+    long sequentialErrors = BatchRunner.run(reader(input.toString()), sequential);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      StringWriter parallel = new StringWriter();
+      long parallelErrors = BatchRunner.run(reader(input.toString()), parallel, executor, 3, 16);
+      assertEquals(sequential.toString(), parallel.toString());
+      assertEquals(sequentialErrors, parallelErrors);
+      assertEquals(143, parallelErrors);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testParallelRunOnForkJoinPool() throws IOException {
+    StringWriter output = new StringWriter();
+    long errors = BatchRunner.run(reader("1 + 1\n2 +\n3 * 3\n"), output, 2);
+    assertEquals(
+        "2\nLine 2: Evaluation error: Operation cannot be solved due to missing operands on the"
+            + " stack\n9\n",
+        output.toString());
+    assertEquals(1, errors);
+  }
+
+  private static BufferedReader reader(String input) {
+    return new BufferedReader(new StringReader(input));
+  }
+}
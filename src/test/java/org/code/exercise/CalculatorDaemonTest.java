@@ -0,0 +1,160 @@
+package org.code.exercise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.code.exercise.CalculatorClient.Response;
+import org.code.exercise.service.ProgramStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CalculatorDaemonTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path socketPath;
+  private CalculatorDaemon daemon;
+
+  @Before
+  public void setUp() throws IOException {
+    socketPath = folder.getRoot().toPath().resolve("calculate.sock");
+    daemon = CalculatorDaemon.start(socketPath);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    daemon.close();
+  }
+
+  @Test
+  public void testCalculate() throws IOException {
+    try (CalculatorClient client = CalculatorClient.connect(socketPath)) {
+      assertEquals(Response.success(20), client.calculate(" (2 + 3) * 4 "));
+      assertEquals(
+          Response.failure("Syntax error: Invalid token: a (at position 4)"),
+          client.calculate("2 + a"));
+      assertEquals(
+          Response.failure("Arithmetic error: Division by zero"), client.calculate("5 / 0"));
+      assertEquals(
+          Response.failure("Syntax error: Invalid token: é (at position 4)"),
+          client.calculate("2 + é"));
+    }
+  }
+
+  @Test
+  public void testPipelinedRequestsKeepTheirOrder() throws IOException {
+    List<String> expressions = new ArrayList<>();
+    List<Response> expected = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      String expression = i % 7 == 0 ? i + " / 0" : i + " * 2 - 1";
+      expressions.add(expression);
+      expected.add(CalculatorClient.calculateInProcess(expression));
+    }
+    try (CalculatorClient client = CalculatorClient.connect(socketPath)) {
+      assertEquals(expected, client.calculateAll(expressions));
+    }
+  }
+
+  @Test
+  public void testRequestLargerThanTheBuffer() throws IOException {
+    StringBuilder expression = new StringBuilder("0");
+    for (int i = 0; i < 100000; i++) {
+      expression.append(" + 1");
+    }
+    try (CalculatorClient client = CalculatorClient.connect(socketPath)) {
+      assertEquals(Response.success(100000), client.calculate(expression.toString()));
+      assertEquals(Response.success(2), client.calculate("1 + 1"));
+    }
+  }
+
+  @Test
+  public void testInvalidRequestSizeClosesTheConnection() throws IOException {
+    try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+      channel.connect(UnixDomainSocketAddress.of(socketPath));
+      channel.write(ByteBuffer.allocate(4).putInt(-1).flip());
+      ByteBuffer response = ByteBuffer.allocate(256);
+      while (channel.read(response) >= 0) {
+        // Read until the daemon closes the connection
+      }
+      response.flip();
+      assertEquals(DaemonProtocol.STATUS_ERROR, response.get());
+      byte[] message = new byte[response.getInt()];
+      response.get(message);
+      assertEquals("Invalid input: request size -1", new String(message, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testFallbackWithoutDaemon() throws IOException {
+    daemon.close();
+    assertFalse(Files.exists(socketPath));
+    assertThrows(IOException.class, () -> CalculatorClient.connect(socketPath));
+    assertEquals(
+        Response.success(0), CalculatorClient.calculateOrFallback(socketPath, "3 * -2 + 6"));
+    assertEquals(
+        Response.failure("Arithmetic error: Division by zero"),
+        CalculatorClient.calculateOrFallback(socketPath, "5 / 0"));
+  }
+
+  @Test
+  public void testNoFallbackOnceConnected() throws IOException {
+    Path otherPath = folder.getRoot().toPath().resolve("closing.sock");
+    try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      server.bind(UnixDomainSocketAddress.of(otherPath));
+      Thread closer =
+          new Thread(
+              () -> {
+                try (SocketChannel channel = server.accept()) {
+                  channel.read(ByteBuffer.allocate(64));
+                } catch (IOException e) {
+                  // The client reports the closed connection
+                }
+              });
+      closer.start();
+      assertThrows(
+          EOFException.class, () -> CalculatorClient.calculateOrFallback(otherPath, "1 + 1"));
+    }
+  }
+
+  @Test
+  public void testStaleSocketFileIsReplaced() throws IOException {
+    assertThrows(IOException.class, () -> CalculatorDaemon.start(socketPath));
+    daemon.close();
+    Files.createFile(socketPath);
+    daemon = CalculatorDaemon.start(socketPath);
+    assertTrue(CalculatorClient.calculateOrFallback(socketPath, "1 + 1").isSuccess());
+  }
+
+  @Test
+  public void testProgramStore() throws IOException {
+    daemon.close();
+    try (ProgramStore store = ProgramStore.open(folder.getRoot().toPath().resolve("programs"))) {
+      daemon = CalculatorDaemon.start(socketPath, store);
+      try (CalculatorClient client = CalculatorClient.connect(socketPath)) {
+        assertEquals(Response.success(20), client.calculate("(2 + 3) * 4"));
+        assertEquals(Response.success(20), client.calculate(" (2 + 3)  * 4 "));
+        assertEquals(
+            Response.failure("Arithmetic error: Division by zero"), client.calculate("5 / 0"));
+      }
+      assertEquals(1, store.getHitCount());
+      assertEquals(2, store.size());
+    }
+  }
+}
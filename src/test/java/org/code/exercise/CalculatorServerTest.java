@@ -0,0 +1,183 @@
+package org.code.exercise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CalculatorServerTest {
+
+  private static final int MAX_CONCURRENT_REQUESTS = 1;
+
+  private CalculatorServer server;
+  private HttpClient client;
+
+  @Before
+  public void setUp() throws IOException {
+    server =
+        CalculatorServer.start(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), MAX_CONCURRENT_REQUESTS);
+    client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(Duration.ZERO);
+  }
+
+  @Test
+  public void testCalculate() throws Exception {
+    HttpResponse<String> response = post("/calculate", "(2 + 3) * 4");
+    assertEquals(200, response.statusCode());
+    assertEquals("{\"result\":20}", response.body());
+    assertTrue(response.headers().firstValue("Content-Type").orElse("").contains("json"));
+  }
+
+  @Test
+  public void testCalculateErrors() throws Exception {
+    HttpResponse<String> response = post("/calculate", "2 + a");
+    assertEquals(400, response.statusCode());
+    assertEquals(
+        "{\"error\":{\"type\":\"Syntax error\",\"message\":\"Invalid token: a\",\"position\":4}}",
+        response.body());
+
+    response = post("/calculate", "5 / 0");
+    assertEquals(400, response.statusCode());
+    assertEquals(
+        "{\"error\":{\"type\":\"Arithmetic error\",\"message\":\"Division by zero\"}}",
+        response.body());
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+    HttpResponse<String> response = post("/calculate/batch", "2 + 3\n5 / 0\n\n 3 * -2 + 6 \n");
+    assertEquals(200, response.statusCode());
+    assertEquals(
+        "{\"results\":[{\"line\":1,\"result\":5},"
+            + "{\"line\":2,\"error\":{\"type\":\"Arithmetic error\",\"message\":\"Division by"
+            + " zero\"}},"
+            + "{\"line\":3,\"error\":{\"type\":\"Invalid input\",\"message\":\"Expression must not"
+            + " be null or empty\"}},"
+            + "{\"line\":4,\"result\":0}],\"errorCount\":2}",
+        response.body());
+  }
+
+  @Test
+  public void testUnknownPathAndMethod() throws Exception {
+    assertEquals(404, post("/calculate/other", "1").statusCode());
+
+    HttpResponse<String> response =
+        client.send(
+            HttpRequest.newBuilder(uri("/calculate")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+    assertEquals(405, response.statusCode());
+    assertEquals("POST", response.headers().firstValue("Allow").orElse(""));
+  }
+
+  @Test
+  public void testConcurrencyLimit() throws Exception {
+    // Platform threads, as the slow request would pin the carrier of a virtual thread on JDK 21
+    restartWithThreadPool();
+    try (Socket pending = startChunkedBatch("1 + 1\n")) {
+      waitForPermitTaken();
+
+      HttpResponse<String> rejected = post("/calculate", "1 + 1");
+      assertEquals(503, rejected.statusCode());
+      assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(""));
+
+      String response = finishChunkedBatch(pending);
+      assertTrue(response, response.startsWith("HTTP/1.1 200"));
+    }
+    assertEquals(200, post("/calculate", "1 + 1").statusCode());
+  }
+
+  @Test
+  public void testGracefulShutdownCompletesRequestsInProgress() throws Exception {
+    restartWithThreadPool();
+    try (Socket pending = startChunkedBatch("6 * 7\n")) {
+      waitForPermitTaken();
+
+      Thread stopping = new Thread(() -> server.stop(Duration.ofSeconds(30)));
+      stopping.start();
+      Thread.sleep(200);
+      String response = finishChunkedBatch(pending);
+      stopping.join();
+
+      assertTrue(response, response.startsWith("HTTP/1.1 200"));
+      assertTrue(
+          response,
+          response.contains("{\"results\":[{\"line\":1,\"result\":42}],\"errorCount\":0}"));
+    }
+  }
+
+  private void restartWithThreadPool() throws IOException {
+    server.stop(Duration.ZERO);
+    server =
+        CalculatorServer.start(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+            MAX_CONCURRENT_REQUESTS,
+            Executors.newCachedThreadPool());
+  }
+
+  /*
+   * A batch request whose body is sent in chunks keeps its permit until its last chunk is sent.
+   * */
+  private Socket startChunkedBatch(String firstLine) throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    OutputStream output = socket.getOutputStream();
+    output.write(
+        ("POST /calculate/batch HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Transfer-Encoding: chunked\r\n"
+                + "Connection: close\r\n\r\n"
+                + Integer.toHexString(firstLine.length())
+                + "\r\n"
+                + firstLine
+                + "\r\n")
+            .getBytes(StandardCharsets.US_ASCII));
+    output.flush();
+    return socket;
+  }
+
+  private static String finishChunkedBatch(Socket socket) throws IOException {
+    socket.getOutputStream().write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+    socket.getOutputStream().flush();
+    return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+  }
+
+  // The batch request holds its permit until its body is complete
+  private void waitForPermitTaken() throws Exception {
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (System.nanoTime() < deadline) {
+      if (post("/calculate", "0").statusCode() == 503) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("The streaming request did not start");
+  }
+
+  private HttpResponse<String> post(String path, String body) throws Exception {
+    return client.send(
+        HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+        HttpResponse.BodyHandlers.ofString());
+  }
+
+  private URI uri(String path) {
+    return URI.create("http://localhost:" + server.getPort() + path);
+  }
+}
@@ -0,0 +1,67 @@
+package org.code.exercise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.code.exercise.service.ExpressionDag;
+import org.junit.Test;
+
+public class DagBatchRunnerTest {
+
+  @Test
+  public void testSameOutputAsLineBasedBatch() throws IOException {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      input.append(i % 9 == 0 ? "(" + i + " + 1" : "(1200 * 37 - 5) * " + (i % 7) + " - 3");
+      input.append('\n');
+    }
+    input.append("\n   \n2 + é\n7 / (3 - 3)\n(3 - 3) + 1\n1 2");
+    // Malformed programs the converter accepts, dividing by zero before the stack goes wrong
+    input.append("\n12 / -(4 - - / 0) - 17\n1050533116 % 0 * -(-(0/2 147483647))");
+    assertSameOutput(input.toString(), 64, 1 << 20);
+    // The graph is cleared between every window
+    assertSameOutput(input.toString(), 16, 8);
+  }
+
+  @Test
+  public void testSharingIsReported() throws IOException {
+    ExpressionDag dag = new ExpressionDag();
+    String input = "(1200 * 37 - 5) + 1\n(1200 * 37 - 5) + 1\n2 * (1200 * 37 - 5)\n";
+    StringWriter output = new StringWriter();
+    long errorCount = DagBatchRunner.run(new BufferedReader(new StringReader(input)), output, dag);
+
+    assertEquals(0, errorCount);
+    assertEquals("44396\n44396\n88790\n", output.toString());
+    // 7 + 7 + 7 nodes as trees, the second line is entirely shared, the third one shares 5 nodes
+    assertEquals(21, dag.getAddedNodeCount());
+    assertEquals(12, dag.getSharedNodeCount());
+    assertEquals(9, dag.size());
+  }
+
+  @Test
+  public void testEmptyInput() throws IOException {
+    assertSameOutput("", 16, 16);
+  }
+
+  private void assertSameOutput(String input, int windowSize, int maxNodes) throws IOException {
+    StringWriter expected = new StringWriter();
+    long expectedErrors = BatchRunner.run(new BufferedReader(new StringReader(input)), expected);
+
+    StringWriter actual = new StringWriter();
+    long errors =
+        DagBatchRunner.run(
+            new BufferedReader(new StringReader(input)),
+            actual,
+            new ExpressionDag(),
+            windowSize,
+            maxNodes);
+
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(expectedErrors, errors);
+    assertTrue(errors > 0 || input.isEmpty());
+  }
+}
@@ -0,0 +1,71 @@
+package org.code.exercise;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedBatchRunnerTest {
+
+  private Path file;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("expressions", ".txt");
+    executor = Executors.newFixedThreadPool(3);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    executor.shutdownNow();
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void testSameOutputAsLineBasedBatch() throws IOException {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      input.append(i % 9 == 0 ? "(" + i + " + 1" : " " + i + "*(2-1) ");
+      input.append(i % 2 == 0 ? "\n" : "\r\n");
+    }
+    input.append("\n   \n2 + é\n7 / 0");
+    assertSameOutput(input.toString(), 64);
+  }
+
+  @Test
+  public void testLineLongerThanRegion() throws IOException {
+    String longLine = "1 + ".repeat(100) + "1";
+    assertSameOutput("1 + 2\n" + longLine + "\n3 / 0\n", 16);
+  }
+
+  @Test
+  public void testEmptyFile() throws IOException {
+    assertSameOutput("", 16);
+  }
+
+  private void assertSameOutput(String input, int regionSize) throws IOException {
+    Files.writeString(file, input, StandardCharsets.UTF_8);
+    StringWriter expected = new StringWriter();
+    long expectedErrors = BatchRunner.run(new BufferedReader(new StringReader(input)), expected);
+
+    StringWriter actual = new StringWriter();
+    long actualErrors;
+    try (FileChannel channel = FileChannel.open(file)) {
+      actualErrors = MappedBatchRunner.run(channel, actual, executor, 2, regionSize);
+    }
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(expectedErrors, actualErrors);
+  }
+}
@@ -0,0 +1,101 @@
+package org.code.exercise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import org.code.exercise.service.CalculatorPipeline;
+import org.code.exercise.service.monitoring.Stage;
+import org.junit.Test;
+
+public class PipelineBatchRunnerTest {
+
+  @Test
+  public void testSameOutputAsLineBasedBatch() throws IOException {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      input.append(i % 9 == 0 ? "(" + i + " + 1" : "max(" + i + ", 7) * 3 - " + (i % 5));
+      input.append('\n');
+    }
+    input.append("\n   \n2 + é\n7 / (3 - 3)\n(3 - 3) + 1\n1 2");
+    // Queues smaller than the batches, and full most of the time
+    assertSameOutput(input.toString(), 4, 64);
+    assertSameOutput(input.toString(), 1024, 1);
+  }
+
+  @Test
+  public void testStageStats() throws IOException {
+    List<CalculatorPipeline.StageStats> stats = new ArrayList<>();
+    PipelineBatchRunner.run(
+        new BufferedReader(new StringReader("1 + 1\n2 * 3\n\n")), new StringWriter(), 16, 4, stats);
+    assertEquals(3, stats.size());
+    assertEquals(Stage.TOKENIZE, stats.get(0).stage());
+    assertEquals(Stage.EVALUATION, stats.get(2).stage());
+    for (CalculatorPipeline.StageStats stage : stats) {
+      assertEquals(3, stage.processed());
+      assertEquals(0, stage.queued());
+      assertEquals(16, stage.capacity());
+    }
+  }
+
+  @Test
+  public void testEmptyInput() throws IOException {
+    assertSameOutput("", 16, 16);
+  }
+
+  @Test
+  public void testInputErrorIsNotMaskedByOutputError() {
+    BufferedReader reader =
+        new BufferedReader(new StringReader("")) {
+          private boolean read;
+
+          @Override
+          public String readLine() throws IOException {
+            if (read) {
+              throw new IOException("Read failed");
+            }
+            read = true;
+            return "1 + 1";
+          }
+        };
+    Writer writer =
+        new Writer() {
+          @Override
+          public void write(char[] buffer, int offset, int length) throws IOException {
+            throw new IOException("Write failed");
+          }
+
+          @Override
+          public void flush() {}
+
+          @Override
+          public void close() {}
+        };
+    IOException ex =
+        assertThrows(IOException.class, () -> PipelineBatchRunner.run(reader, writer, 16, 4, null));
+    assertEquals("Read failed", ex.getMessage());
+    assertEquals(1, ex.getSuppressed().length);
+    assertEquals("Write failed", ex.getSuppressed()[0].getMessage());
+  }
+
+  private void assertSameOutput(String input, int capacity, int batchSize) throws IOException {
+    StringWriter expected = new StringWriter();
+    long expectedErrors = BatchRunner.run(new BufferedReader(new StringReader(input)), expected);
+
+    StringWriter actual = new StringWriter();
+    long errors =
+        PipelineBatchRunner.run(
+            new BufferedReader(new StringReader(input)), actual, capacity, batchSize, null);
+
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(expectedErrors, errors);
+    assertTrue(errors > 0 || input.isEmpty());
+  }
+}
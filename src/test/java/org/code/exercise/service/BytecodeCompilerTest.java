@@ -0,0 +1,104 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.junit.Test;
+
+public class BytecodeCompilerTest {
+
+  private static final int[] NO_VALUES = {};
+
+  @Test
+  public void testConstantExpression() {
+    ExpressionFunction function =
+        BytecodeCompiler.compile(CalculatorService.compile("7 + 12 / 2 * -5 - 19"));
+    assertEquals(-42, function.applyAsInt(NO_VALUES));
+  }
+
+  @Test
+  public void testEveryConstantSize() {
+    // iconst, bipush, sipush and ldc constants
+    ExpressionFunction function =
+        BytecodeCompiler.compile(
+            CalculatorService.compile("-1 + 5 + 100 + -30000 + 2000000 + 2000000 + 2147483647"));
+    assertEquals(
+        -1 + 5 + 100 - 30000 + 2000000 + 2000000 + 2147483647, function.applyAsInt(NO_VALUES));
+  }
+
+  @Test
+  public void testManyDistinctConstants() {
+    // More than 256 constant pool entries, loaded with ldc_w
+    StringBuilder expression = new StringBuilder("0");
+    int expected = 0;
+    for (int i = 0; i < 1000; i++) {
+      expression.append(" + ").append(1000000 + i);
+      expected += 1000000 + i;
+    }
+    ExpressionFunction function =
+        BytecodeCompiler.compile(CalculatorService.compile(expression.toString()));
+    assertEquals(expected, function.applyAsInt(NO_VALUES));
+  }
+
+  @Test
+  public void testVariables() {
+    CompiledExpression compiled = CalculatorService.compile("(a * x + b) / 3 - x", "a", "x", "b");
+    ExpressionFunction function = BytecodeCompiler.compile(compiled);
+    for (int x = -50; x <= 50; x++) {
+      int[] values = {7, x, x * x};
+      assertEquals(compiled.evaluate(values), function.applyAsInt(values));
+    }
+  }
+
+  @Test
+  public void testDivisionByZero() {
+    ExpressionFunction function =
+        BytecodeCompiler.compile(CalculatorService.compile("10 / x", "x"));
+    ArithmeticException ex =
+        assertThrows(ArithmeticException.class, () -> function.applyAsInt(new int[] {0}));
+    assertEquals("Division by zero", ex.getMessage());
+  }
+
+  @Test
+  public void testWrongValueCount() {
+    ExpressionFunction function =
+        BytecodeCompiler.compile(CalculatorService.compile("x + y", "x", "y"));
+    IllegalArgumentException ex =
+        assertThrows(IllegalArgumentException.class, () -> function.applyAsInt(new int[] {1}));
+    assertEquals("Expected 2 variable values, got 1", ex.getMessage());
+  }
+
+  @Test
+  public void testInvalidProgramFallsBackToInterpreter() {
+    CompiledExpression compiled = ExpressionConverterService.infixToPostfix(ParserService.lex("+"));
+    ExpressionFunction function = BytecodeCompiler.compile(compiled);
+    EvaluatorStackException ex =
+        assertThrows(EvaluatorStackException.class, () -> function.applyAsInt(NO_VALUES));
+    assertEquals(
+        "Operation cannot be solved due to missing operands on the stack", ex.getMessage());
+  }
+
+  @Test
+  public void testProgramTooLargeForAMethod() {
+    StringBuilder expression = new StringBuilder("1");
+    for (int i = 0; i < 20000; i++) {
+      expression.append(" + 1");
+    }
+    ExpressionFunction function =
+        BytecodeCompiler.compile(CalculatorService.compile(expression.toString()));
+    assertEquals(20001, function.applyAsInt(NO_VALUES));
+  }
+
+  @Test
+  public void testNewOperators() {
+    CompiledExpression compiled =
+        CalculatorService.compile("-(x % 7) ^ 2 + max(x, 3) * min(-x, 2)", "x");
+    ExpressionFunction function = BytecodeCompiler.compile(compiled);
+    for (int x = -20; x <= 20; x++) {
+      assertEquals(compiled.evaluate(new int[] {x}), function.applyAsInt(new int[] {x}));
+    }
+    ExpressionFunction zeroPower = BytecodeCompiler.compile(CalculatorService.compile("0 ^ -1"));
+    assertThrows(ArithmeticException.class, () -> zeroPower.applyAsInt(NO_VALUES));
+  }
+}
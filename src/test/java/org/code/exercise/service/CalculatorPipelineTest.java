@@ -0,0 +1,113 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.code.exercise.service.model.CalculationResult;
+import org.junit.Test;
+
+public class CalculatorPipelineTest {
+
+  @Test
+  public void testResultsInSubmissionOrder() throws IOException {
+    List<String> results = new ArrayList<>();
+    List<Long> sequences = new ArrayList<>();
+    String[] expressions = {"1 + 2", "", "3 * (4 - 1)", "x + 1", "1 / 0", "(1", "2 ^ 10"};
+    try (CalculatorPipeline pipeline =
+        CalculatorPipeline.start(
+            (sequence, result) -> {
+              sequences.add(sequence);
+              results.add(result.toString());
+            },
+            2,
+            3)) {
+      for (int i = 0; i < 1000; i++) {
+        pipeline.submit(expressions[i % expressions.length]);
+      }
+    }
+    assertEquals(1000, results.size());
+    for (int i = 0; i < 1000; i++) {
+      String expression = expressions[i % expressions.length];
+      assertEquals((long) i, (long) sequences.get(i));
+      assertEquals(
+          expression, CalculatorService.tryCalculate(expression).toString(), results.get(i));
+    }
+  }
+
+  @Test
+  public void testFlushDeliversPartialBatches() throws Exception {
+    List<CalculationResult> results = new ArrayList<>();
+    try (CalculatorPipeline pipeline =
+        CalculatorPipeline.start(
+            (sequence, result) -> {
+              synchronized (results) {
+                results.add(result);
+                results.notifyAll();
+              }
+            })) {
+      pipeline.submit("6 * 7");
+      pipeline.flush();
+      synchronized (results) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (results.isEmpty() && System.currentTimeMillis() < deadline) {
+          results.wait(100);
+        }
+        assertEquals(1, results.size());
+        assertEquals(42, results.get(0).getValue());
+      }
+    }
+  }
+
+  @Test
+  public void testHandlerFailureStopsThePipeline() throws IOException {
+    IOException failure = new IOException("Disk full");
+    CalculatorPipeline pipeline =
+        CalculatorPipeline.start(
+            (sequence, result) -> {
+              if (sequence == 10) {
+                throw failure;
+              }
+            },
+            4,
+            2);
+    // The submitter is stopped as soon as the queues are full behind the failed handler
+    IOException thrown =
+        assertThrows(
+            IOException.class,
+            () -> {
+              for (int i = 0; i < 1_000_000; i++) {
+                pipeline.submit("1 + 1");
+              }
+            });
+    assertSame(failure, thrown);
+    assertSame(failure, assertThrows(IOException.class, pipeline::close));
+  }
+
+  @Test
+  public void testStageStats() throws IOException {
+    CalculatorPipeline pipeline = CalculatorPipeline.start((sequence, result) -> {}, 8, 2);
+    for (int i = 0; i < 100; i++) {
+      pipeline.submit("(1 + 2) * " + i);
+    }
+    pipeline.close();
+    for (CalculatorPipeline.StageStats stats : pipeline.getStageStats()) {
+      assertEquals(100, stats.processed());
+      assertEquals(0, stats.queued());
+      assertEquals(8, stats.capacity());
+      assertTrue(stats.idleNanos() >= 0 && stats.backpressureNanos() >= 0);
+    }
+    assertThrows(IllegalStateException.class, () -> pipeline.submit("1"));
+  }
+
+  @Test
+  public void testInvalidSizes() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> CalculatorPipeline.start((sequence, result) -> {}, 0, 1));
+  }
+}
@@ -0,0 +1,226 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.service.helper.enums.CalculationError;
+import org.code.exercise.service.model.CalculationResult;
+import org.junit.Test;
+
+public class CalculatorProcessorTest {
+
+  private static final String[] EXPRESSIONS = {
+    "1 + 2", "", "3 * (4 - 1)", "x + 1", "1 / 0", "(1", "2 ^ 10", "max(-3, 2 * 2)"
+  };
+
+  @Test
+  public void testResultsInOrder() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (SubmissionPublisher<String> publisher = new SubmissionPublisher<>(executor, 8)) {
+      CalculatorProcessor processor = new CalculatorProcessor(executor, 4, 16);
+      RecordingSubscriber subscriber = new RecordingSubscriber(3);
+      publisher.subscribe(processor);
+      processor.subscribe(subscriber);
+      for (int i = 0; i < 10000; i++) {
+        publisher.submit(EXPRESSIONS[i % EXPRESSIONS.length]);
+      }
+      publisher.close();
+
+      assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+      assertNull(subscriber.error);
+      assertEquals(10000, subscriber.results.size());
+      for (int i = 0; i < 10000; i++) {
+        String expression = EXPRESSIONS[i % EXPRESSIONS.length];
+        assertEquals(
+            expression,
+            CalculatorService.tryCalculate(expression).toString(),
+            subscriber.results.get(i).toString());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDemandBoundsTheExpressionsRequested() {
+    CalculatorProcessor processor = new CalculatorProcessor(Runnable::run, 1, 8);
+    TestSubscription upstream = new TestSubscription();
+    RecordingSubscriber subscriber = new RecordingSubscriber(0);
+    processor.onSubscribe(upstream);
+    processor.subscribe(subscriber);
+    assertEquals(8, upstream.requested);
+
+    for (int i = 0; i < 8; i++) {
+      processor.onNext(i + " * 2");
+    }
+    assertTrue(subscriber.results.isEmpty());
+    assertEquals(8, upstream.requested);
+
+    // Half of the buffer must be free before more is requested
+    subscriber.subscription.request(3);
+    assertEquals(3, subscriber.results.size());
+    assertEquals(8, upstream.requested);
+    subscriber.subscription.request(1);
+    assertEquals(12, upstream.requested);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(8, subscriber.results.size());
+    assertEquals(14, subscriber.results.get(7).getValue());
+    processor.onComplete();
+    assertEquals(0, subscriber.terminated.getCount());
+    assertNull(subscriber.error);
+  }
+
+  @Test
+  public void testCompletionWaitsForTheResults() {
+    CalculatorProcessor processor = new CalculatorProcessor(Runnable::run, 1, 4);
+    RecordingSubscriber subscriber = new RecordingSubscriber(0);
+    processor.subscribe(subscriber);
+    processor.onSubscribe(new TestSubscription());
+    processor.onNext("2 + 2");
+    processor.onNext("2 / 0");
+    processor.onComplete();
+    assertEquals(1, subscriber.terminated.getCount());
+
+    subscriber.subscription.request(2);
+    assertEquals(0, subscriber.terminated.getCount());
+    assertEquals(4, subscriber.results.get(0).getValue());
+    assertEquals(CalculationError.DIVISION_BY_ZERO, subscriber.results.get(1).getError());
+  }
+
+  @Test
+  public void testPublisherErrorIsPassedOn() {
+    CalculatorProcessor processor = new CalculatorProcessor(Runnable::run, 1, 4);
+    RecordingSubscriber subscriber = new RecordingSubscriber(0);
+    processor.subscribe(subscriber);
+    processor.onSubscribe(new TestSubscription());
+    processor.onNext("1 + 1");
+    IllegalStateException error = new IllegalStateException("Publisher failed");
+    processor.onError(error);
+    assertEquals(error, subscriber.error);
+    assertTrue(subscriber.results.isEmpty());
+  }
+
+  @Test
+  public void testInvalidRequestCancelsTheStream() {
+    CalculatorProcessor processor = new CalculatorProcessor(Runnable::run, 1, 4);
+    TestSubscription upstream = new TestSubscription();
+    RecordingSubscriber subscriber = new RecordingSubscriber(0);
+    processor.onSubscribe(upstream);
+    processor.subscribe(subscriber);
+    subscriber.subscription.request(0);
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    assertTrue(upstream.cancelled);
+  }
+
+  @Test
+  public void testCancel() {
+    CalculatorProcessor processor = new CalculatorProcessor(Runnable::run, 1, 4);
+    TestSubscription upstream = new TestSubscription();
+    RecordingSubscriber subscriber = new RecordingSubscriber(1);
+    processor.onSubscribe(upstream);
+    processor.subscribe(subscriber);
+    processor.onNext("1 + 1");
+    subscriber.subscription.cancel();
+    processor.onNext("2 + 2");
+    processor.onComplete();
+    assertTrue(upstream.cancelled);
+    assertEquals(1, subscriber.results.size());
+    assertEquals(1, subscriber.terminated.getCount());
+  }
+
+  @Test
+  public void testSingleSubscriber() {
+    CalculatorProcessor processor = new CalculatorProcessor();
+    processor.subscribe(new RecordingSubscriber(0));
+    RecordingSubscriber second = new RecordingSubscriber(0);
+    processor.subscribe(second);
+    assertTrue(second.error instanceof IllegalStateException);
+
+    TestSubscription other = new TestSubscription();
+    processor.onSubscribe(new TestSubscription());
+    processor.onSubscribe(other);
+    assertTrue(other.cancelled);
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new CalculatorProcessor(Runnable::run, 0, 4));
+    assertThrows(
+        IllegalArgumentException.class, () -> new CalculatorProcessor(Runnable::run, 1, 0));
+    CalculatorProcessor processor = new CalculatorProcessor();
+    assertThrows(NullPointerException.class, () -> processor.onNext(null));
+  }
+
+  /*
+   * Requests the given number of results at a time, or none if 0, leaving it to the test.
+   * */
+  private static final class RecordingSubscriber implements Flow.Subscriber<CalculationResult> {
+    final List<CalculationResult> results = new ArrayList<>();
+    final CountDownLatch terminated = new CountDownLatch(1);
+    final int batchSize;
+    Flow.Subscription subscription;
+    volatile Throwable error;
+    int pending;
+
+    RecordingSubscriber(int batchSize) {
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (batchSize > 0) {
+        pending = batchSize;
+        subscription.request(batchSize);
+      }
+    }
+
+    @Override
+    public void onNext(CalculationResult result) {
+      results.add(result);
+      if (batchSize > 0 && --pending == 0) {
+        pending = batchSize;
+        subscription.request(batchSize);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      terminated.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      terminated.countDown();
+    }
+  }
+
+  private static final class TestSubscription implements Flow.Subscription {
+    long requested;
+    boolean cancelled;
+
+    @Override
+    public void request(long n) {
+      requested += n;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+}
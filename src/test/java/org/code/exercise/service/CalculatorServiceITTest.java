@@ -2,7 +2,13 @@ package org.code.exercise.service;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.IntSupplier;
 import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.enums.CalculationError;
+import org.code.exercise.service.model.CalculationResult;
 import org.junit.Test;
 
 public class CalculatorServiceITTest {
@@ -87,4 +93,251 @@ public class CalculatorServiceITTest {
             () -> CalculatorService.calculate("((6 + 2 * 3)"));
     assertEquals("Mismatched parentheses: right parenthesis missing", ex3.getMessage());
   }
+
+  // Compile-once API
+
+  @Test
+  public void testUnspacedExpression() {
+    assertEquals(9, CalculatorService.calculate("3*(2+1)"));
+    assertEquals(2, CalculatorService.calculate("5-3"));
+  }
+
+  @Test
+  public void testCompiledExpressionIsReusable() {
+    CompiledExpression compiled = CalculatorService.compile("7 + 12 / 2 * -5 - 19");
+    assertEquals("7 12 2 / -5 * + 19 -", compiled.toString());
+    assertEquals(-42, compiled.evaluate());
+    assertEquals(-42, compiled.evaluate());
+  }
+
+  @Test
+  public void testCompileReportsErrorPosition() {
+    ExpressionConverterInvalidTokenException ex1 =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> CalculatorService.compile("2 + abc"));
+    assertEquals("Invalid token: abc", ex1.getMessage());
+    assertEquals(4, ex1.getPosition());
+    ExpressionConverterInvalidTokenException ex2 =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> CalculatorService.compile("1 + (6 / 3"));
+    assertEquals(4, ex2.getPosition());
+  }
+
+  @Test
+  public void testCompiledDivisionByZeroFailsOnEvaluation() {
+    CompiledExpression compiled = CalculatorService.compile("5 / (2 - 2)");
+    ArithmeticException ex = assertThrows(ArithmeticException.class, compiled::evaluate);
+    assertEquals("Division by zero", ex.getMessage());
+  }
+
+  // Variables
+
+  @Test
+  public void testVariables() {
+    CompiledExpression compiled = CalculatorService.compile("a * x + b", "a", "x", "b");
+    assertEquals("a x * b +", compiled.toString());
+    assertEquals(List.of("a", "x", "b"), compiled.getVariables());
+    assertEquals(7, compiled.evaluate(new int[] {2, 3, 1}));
+    assertEquals(-5, compiled.evaluate(new int[] {-2, 3, 1}));
+  }
+
+  @Test
+  public void testMinusAfterVariableIsAnOperator() {
+    assertEquals(4, CalculatorService.compile("x -1", "x").evaluate(new int[] {5}));
+  }
+
+  @Test
+  public void testUnknownVariable() {
+    ExpressionConverterInvalidTokenException ex =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> CalculatorService.compile("x + y", "x"));
+    assertEquals("Invalid token: y", ex.getMessage());
+    assertEquals(4, ex.getPosition());
+  }
+
+  @Test
+  public void testInvalidVariableDeclarations() {
+    assertThrows(IllegalArgumentException.class, () -> CalculatorService.compile("x", "x", "x"));
+    assertThrows(IllegalArgumentException.class, () -> CalculatorService.compile("x", "1x"));
+  }
+
+  @Test
+  public void testMissingVariableValues() {
+    CompiledExpression compiled = CalculatorService.compile("x + 1", "x");
+    IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, compiled::evaluate);
+    assertEquals("Expected 1 variable values, got 0", ex.getMessage());
+  }
+
+  @Test
+  public void testPrecedenceAndAssociativity() {
+    assertEquals(2, CalculatorService.calculate("7 % 3 * 2"));
+    assertEquals(-1, CalculatorService.calculate("-7 % 3"));
+    assertEquals(512, CalculatorService.calculate("2 ^ 3 ^ 2"));
+    assertEquals(18, CalculatorService.calculate("2 * 3 ^ 2"));
+    assertEquals(2, CalculatorService.calculate("12 / 3 / 2"));
+    assertEquals(0, CalculatorService.calculate("2 ^ -1"));
+    assertEquals(0, CalculatorService.calculate("65536 ^ 2"));
+  }
+
+  @Test
+  public void testUnaryMinus() {
+    assertEquals(-5, CalculatorService.calculate("-(2 + 3)"));
+    assertEquals(-10, CalculatorService.calculate("-(2 + 3) * 2"));
+    assertEquals(5, CalculatorService.calculate("- -5"));
+    assertEquals(-9, CalculatorService.calculate("- 3 ^ 2"));
+    assertEquals(9, CalculatorService.calculate("-3 ^ 2"));
+    assertEquals(-4, CalculatorService.compile("1 - -x", "x").evaluate(new int[] {-5}));
+  }
+
+  @Test
+  public void testFunctions() {
+    assertEquals(4, CalculatorService.calculate("max(1, min(5, 3)) + 1"));
+    assertEquals(-2, CalculatorService.calculate("min (2 * -1, 7)"));
+    // Only a call when followed by a parenthesis, so a variable can have the same name
+    assertEquals(6, CalculatorService.compile("max(max, 2) * 2", "max").evaluate(new int[] {3}));
+  }
+
+  @Test
+  public void testFunctionErrors() {
+    ExpressionConverterInvalidTokenException ex =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> CalculatorService.calculate("1 + max(1)"));
+    assertEquals("Wrong number of arguments: max", ex.getMessage());
+    assertEquals(4, ex.getPosition());
+    ex =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> CalculatorService.calculate("(1, 2)"));
+    assertEquals("Invalid token: ,", ex.getMessage());
+    assertEquals(2, ex.getPosition());
+    assertThrows(
+        ExpressionConverterInvalidTokenException.class, () -> CalculatorService.calculate("min()"));
+    ArithmeticException divisionByZero =
+        assertThrows(ArithmeticException.class, () -> CalculatorService.calculate("0 ^ -1"));
+    assertEquals("Division by zero", divisionByZero.getMessage());
+    assertThrows(ArithmeticException.class, () -> CalculatorService.calculate("1 % 0"));
+  }
+
+  @Test
+  public void testTryCalculateReportsTheErrorsCalculateThrows() {
+    String[] expressions = {
+      "7 + 12 / 2 * -5 - 19",
+      "-2147483648",
+      "2147483648",
+      "3a * 4",
+      "x + 1",
+      "(1 + 2",
+      "1 + 2)",
+      "1 / 0",
+      "1 +",
+      "1 2",
+      "   ",
+      "1 / 0 + (2",
+      "-(2 ^ 3) % max(5, 4)",
+      "max(1, 2, 3)",
+      "min(1 2)",
+      "1, 2",
+      "0 ^ -2",
+      "",
+      null
+    };
+    for (String expression : expressions) {
+      CalculationResult result = CalculatorService.tryCalculate(expression);
+      try {
+        int value = CalculatorService.calculate(expression);
+        assertTrue(expression, result.isSuccess());
+        assertEquals(expression, value, result.getValue());
+      } catch (RuntimeException e) {
+        assertFalse(expression, result.isSuccess());
+        RuntimeException reported = result.toException();
+        assertEquals(expression, e.getClass(), reported.getClass());
+        assertEquals(expression, e.getMessage(), result.getMessage());
+        assertEquals(expression, e.getMessage(), reported.getMessage());
+        if (e instanceof ExpressionConverterInvalidTokenException syntaxError) {
+          assertEquals(expression, syntaxError.getPosition(), result.getPosition());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTryCalculateFailure() {
+    CalculationResult result = CalculatorService.tryCalculate("1 + $x");
+    assertEquals(CalculationError.INVALID_TOKEN, result.getError());
+    assertEquals("Invalid token: $x", result.getMessage());
+    assertEquals(4, result.getPosition());
+    ExpressionConverterInvalidTokenException ex =
+        assertThrows(ExpressionConverterInvalidTokenException.class, result::getValue);
+    assertEquals(4, ex.getPosition());
+  }
+
+  @Test
+  public void testByteInputMatchesStringInput() {
+    List<String> expressions =
+        List.of(
+            "7 + 12 / 2 * -5 - 19",
+            "-2147483648 + 1",
+            "2147483648",
+            "max(3, 2 ^ 3) % 5",
+            "1 / 0",
+            "(1 + 2",
+            "1 + $x",
+            "2 + é * 3",
+            "",
+            " ");
+    for (String expression : expressions) {
+      byte[] bytes = expression.getBytes(StandardCharsets.UTF_8);
+      byte[] padded = new byte[bytes.length + 4];
+      System.arraycopy(bytes, 0, padded, 2, bytes.length);
+      ByteBuffer direct = ByteBuffer.allocateDirect(padded.length).put(padded);
+      direct.position(2).limit(2 + bytes.length);
+
+      String expected = describe(() -> CalculatorService.calculate(expression));
+      assertEquals(
+          expression,
+          expected,
+          describe(() -> CalculatorService.calculate(padded, 2, bytes.length)));
+      assertEquals(expression, expected, describe(() -> CalculatorService.calculate(direct)));
+      assertEquals(
+          expression,
+          expected,
+          describe(() -> CalculatorService.calculate(ByteBuffer.wrap(bytes))));
+      assertEquals(2, direct.position());
+
+      CalculationResult result = CalculatorService.tryCalculate(expression);
+      assertResultEquals(
+          expression, result, CalculatorService.tryCalculate(padded, 2, bytes.length));
+      assertResultEquals(expression, result, CalculatorService.tryCalculate(direct));
+    }
+    assertEquals(
+        CalculationError.EMPTY_EXPRESSION,
+        CalculatorService.tryCalculate((ByteBuffer) null).getError());
+    assertThrows(
+        IndexOutOfBoundsException.class, () -> CalculatorService.calculate(new byte[4], 2, 3));
+  }
+
+  /*
+   * Result of a calculation, or class, message and position of its exception.
+   * */
+  private static String describe(IntSupplier calculation) {
+    try {
+      return Integer.toString(calculation.getAsInt());
+    } catch (RuntimeException e) {
+      String description = e.getClass().getName() + ": " + e.getMessage();
+      if (e instanceof ExpressionConverterInvalidTokenException syntaxError) {
+        description += " at " + syntaxError.getPosition();
+      }
+      return description;
+    }
+  }
+
+  private static void assertResultEquals(
+      String expression, CalculationResult expected, CalculationResult actual) {
+    assertEquals(expression, expected.toString(), actual.toString());
+    assertEquals(expression, expected.getPosition(), actual.getPosition());
+  }
 }
@@ -1,8 +1,12 @@
 package org.code.exercise.service;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
+import java.util.BitSet;
 import java.util.List;
 import org.code.exercise.service.exception.EvaluatorStackException;
 import org.junit.Test;
@@ -104,12 +108,12 @@ public class EvaluatorServiceTest {
 
   @Test
   public void testInvalidOperator() {
-    List<String> postfix = List.of("5", "2", "%");
+    List<String> postfix = List.of("5", "2", "&");
     EvaluatorStackException ex =
         assertThrows(
             EvaluatorStackException.class,
             () -> EvaluatorService.evaluatePostfixExpression(postfix));
-    assertEquals("Invalid token in postfix expression: %", ex.getMessage());
+    assertEquals("Invalid token in postfix expression: &", ex.getMessage());
   }
 
   @Test
@@ -121,4 +125,109 @@ public class EvaluatorServiceTest {
             () -> EvaluatorService.evaluatePostfixExpression(postfix));
     assertEquals("Stack is empty", ex.getMessage());
   }
+
+  // Compiled programs
+
+  @Test
+  public void testCompiledProgramMaxStackDepth() {
+    CompiledExpression compiled = CalculatorService.compile("2 + 3 * (4 - 1)");
+    assertEquals(4, compiled.getMaxStackDepth());
+    assertEquals(11, EvaluatorService.evaluate(compiled));
+  }
+
+  @Test
+  public void testCompiledProgramWithCallerStack() {
+    CompiledExpression compiled = CalculatorService.compile("(1 + 2) * (3 + 4)");
+    int[] stack = new int[compiled.getMaxStackDepth()];
+    assertEquals(21, EvaluatorService.evaluate(compiled, stack));
+    assertEquals(21, EvaluatorService.evaluate(compiled, stack));
+  }
+
+  @Test
+  public void testCompiledProgramDeeperThanDefaultStack() {
+    String expression = "1 - (".repeat(40) + "1" + ")".repeat(40);
+    assertEquals(1, CalculatorService.calculate(expression));
+  }
+
+  @Test
+  public void testCompiledProgramTooFewOperands() {
+    CompiledExpression compiled = CalculatorService.compile("5 +");
+    EvaluatorStackException ex =
+        assertThrows(EvaluatorStackException.class, () -> EvaluatorService.evaluate(compiled));
+    assertEquals(
+        "Operation cannot be solved due to missing operands on the stack", ex.getMessage());
+  }
+
+  // Columnar evaluation
+
+  @Test
+  public void testColumnsMatchRowByRowEvaluation() {
+    CompiledExpression compiled =
+        CalculatorService.compile("a * x + b - (x / 3) * 2", "a", "x", "b");
+    int rows = 2500;
+    int[] a = new int[rows];
+    int[] x = new int[rows];
+    int[] b = new int[rows];
+    for (int i = 0; i < rows; i++) {
+      a[i] = i % 17 - 8;
+      x[i] = i * 31;
+      b[i] = -i;
+    }
+    int[] results = new int[rows];
+    EvaluatorService.evaluateColumns(compiled, new int[][] {a, x, b}, results);
+    for (int i = 0; i < rows; i++) {
+      assertEquals(compiled.evaluate(new int[] {a[i], x[i], b[i]}), results[i]);
+    }
+  }
+
+  @Test
+  public void testColumnsWithoutVariables() {
+    int[] results = new int[3];
+    CalculatorService.compile("(2 + 3) * 4").evaluate(new int[0][], results);
+    assertArrayEquals(new int[] {20, 20, 20}, results);
+  }
+
+  @Test
+  public void testColumnsDivisionByZero() {
+    CompiledExpression compiled = CalculatorService.compile("10 / x", "x");
+    ArithmeticException ex =
+        assertThrows(
+            ArithmeticException.class,
+            () -> compiled.evaluate(new int[][] {{1, 2, 0, 4}}, new int[4]));
+    assertEquals("Division by zero at row 2", ex.getMessage());
+  }
+
+  @Test
+  public void testColumnsTooFewOperands() {
+    CompiledExpression compiled = CalculatorService.compile("x +", "x");
+    EvaluatorStackException ex =
+        assertThrows(
+            EvaluatorStackException.class, () -> compiled.evaluate(new int[][] {{1}}, new int[1]));
+    assertEquals(
+        "Operation cannot be solved due to missing operands on the stack", ex.getMessage());
+  }
+
+  @Test
+  public void testColumnsMaskDivisionByZero() {
+    // Enough rows to span several blocks, full vectors and a scalar tail
+    int rows = 2051;
+    int[] x = new int[rows];
+    for (int i = 0; i < rows; i++) {
+      x[i] = i % 7 == 0 ? 0 : i - 1000;
+    }
+    CompiledExpression compiled = CalculatorService.compile("100000 / x + 5", "x");
+    int[] results = new int[rows];
+    BitSet failedRows = new BitSet();
+    compiled.evaluate(new int[][] {x}, results, failedRows);
+
+    for (int i = 0; i < rows; i++) {
+      if (x[i] == 0) {
+        assertTrue(failedRows.get(i));
+        assertEquals(0, results[i]);
+      } else {
+        assertFalse(failedRows.get(i));
+        assertEquals(compiled.evaluate(new int[] {x[i]}), results[i]);
+      }
+    }
+  }
 }
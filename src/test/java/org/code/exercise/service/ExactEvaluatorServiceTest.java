@@ -0,0 +1,174 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.enums.OverflowMode;
+import org.junit.Test;
+
+public class ExactEvaluatorServiceTest {
+
+  private static final String LONG_MAX = Long.toString(Long.MAX_VALUE);
+  private static final String LONG_MIN = Long.toString(Long.MIN_VALUE);
+
+  @Test
+  public void testSmallNumbersInEveryMode() {
+    for (OverflowMode mode : OverflowMode.values()) {
+      assertEquals(-42L, CalculatorService.calculate("7 + 12 / 2 * -5 - 19", mode));
+    }
+  }
+
+  @Test
+  public void testLiteralsBeyondInt() {
+    assertEquals(
+        4294967296L, CalculatorService.calculate("2147483648 + 2147483648", OverflowMode.FAIL));
+    assertEquals(-2147483649L, CalculatorService.calculate("-2147483649", OverflowMode.FAIL));
+    assertEquals(Long.MIN_VALUE, CalculatorService.calculate(LONG_MIN, OverflowMode.FAIL));
+  }
+
+  @Test
+  public void testWrap() {
+    assertEquals(Long.MIN_VALUE, CalculatorService.calculate(LONG_MAX + " + 1", OverflowMode.WRAP));
+    assertEquals(
+        Long.MIN_VALUE, CalculatorService.calculate(LONG_MIN + " / -1", OverflowMode.WRAP));
+    // Literals out of the long range keep their low 64 bits
+    assertEquals(0L, CalculatorService.calculate("18446744073709551616", OverflowMode.WRAP));
+  }
+
+  @Test
+  public void testFail() {
+    for (String expression :
+        new String[] {
+          LONG_MAX + " + 1",
+          LONG_MIN + " - 1",
+          "4294967296 * 4294967296",
+          LONG_MIN + " / -1",
+          "18446744073709551616 - 1"
+        }) {
+      ArithmeticException exception =
+          assertThrows(
+              ArithmeticException.class,
+              () -> CalculatorService.calculate(expression, OverflowMode.FAIL));
+      assertEquals("Integer overflow", exception.getMessage());
+    }
+  }
+
+  @Test
+  public void testPromote() {
+    assertEquals(
+        BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE),
+        CalculatorService.calculate(LONG_MAX + " + 1", OverflowMode.PROMOTE));
+    assertEquals(
+        BigInteger.ONE.shiftLeft(64),
+        CalculatorService.calculate("4294967296 * 4294967296", OverflowMode.PROMOTE));
+    assertEquals(
+        BigInteger.ONE.shiftLeft(63),
+        CalculatorService.calculate(LONG_MIN + " / -1", OverflowMode.PROMOTE));
+    assertEquals(
+        new BigInteger("100000000000000000000000000000"),
+        CalculatorService.calculate("99999999999999999999999999999 + 1", OverflowMode.PROMOTE));
+  }
+
+  @Test
+  public void testPromotedSubexpressionIsDemoted() {
+    // The product overflows, but the division brings the result back in the long range
+    Number result =
+        CalculatorService.calculate(
+            "(" + LONG_MAX + " * 4) / 8 + (3 - 1) * 2", OverflowMode.PROMOTE);
+    assertEquals(Long.MAX_VALUE / 2 + 4, result);
+    assertEquals(Long.class, result.getClass());
+  }
+
+  @Test
+  public void testPromoteMatchesBigIntegerArithmetic() {
+    Random random = new Random(42);
+    for (int i = 0; i < 200; i++) {
+      long a = random.nextLong();
+      long b = random.nextLong();
+      long c = random.nextLong() | 1;
+      BigInteger expected =
+          BigInteger.valueOf(a)
+              .multiply(BigInteger.valueOf(b))
+              .subtract(BigInteger.valueOf(c))
+              .divide(BigInteger.valueOf(c));
+      Number result =
+          CalculatorService.calculate(
+              "(" + a + " * " + b + " - " + c + ") / " + c, OverflowMode.PROMOTE);
+      assertEquals(expected, new BigInteger(result.toString()));
+    }
+  }
+
+  @Test
+  public void testWideExpressionIsReusable() {
+    WideExpression expression = CalculatorService.compileWide("9223372036854775807 * 2 - 1");
+    assertEquals("9223372036854775807 2 * 1 -", expression.toString());
+    assertEquals(-3L, expression.evaluate(OverflowMode.WRAP));
+    assertEquals(new BigInteger("18446744073709551613"), expression.evaluate(OverflowMode.PROMOTE));
+    assertThrows(ArithmeticException.class, () -> expression.evaluate(OverflowMode.FAIL));
+  }
+
+  @Test
+  public void testErrors() {
+    for (OverflowMode mode : OverflowMode.values()) {
+      assertThrows(ArithmeticException.class, () -> CalculatorService.calculate("1 / 0", mode));
+      assertThrows(
+          ArithmeticException.class,
+          () -> CalculatorService.calculate("99999999999999999999 / (2 - 2)", mode));
+      assertThrows(EvaluatorStackException.class, () -> CalculatorService.calculate("1 +", mode));
+      assertThrows(
+          ExpressionConverterInvalidTokenException.class,
+          () -> CalculatorService.calculate("2147483648a", mode));
+    }
+  }
+
+  @Test
+  public void testIntEngineStillRejectsLiteralsBeyondInt() {
+    ExpressionConverterInvalidTokenException exception =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> CalculatorService.calculate("1 + 2147483648"));
+    assertEquals("Invalid token: 2147483648", exception.getMessage());
+    assertEquals(4, exception.getPosition());
+  }
+
+  @Test
+  public void testNewOperators() {
+    assertEquals(
+        1023L,
+        CalculatorService.calculate("-(2 ^ 10) % 3 + max(1024, min(3, 4))", OverflowMode.FAIL));
+    assertEquals(
+        BigInteger.TWO.pow(64), CalculatorService.calculate("2 ^ 64", OverflowMode.PROMOTE));
+    assertEquals(0L, CalculatorService.calculate("2 ^ 64", OverflowMode.WRAP));
+    assertEquals(
+        BigInteger.valueOf(Long.MIN_VALUE).negate(),
+        CalculatorService.calculate("-(" + LONG_MIN + ")", OverflowMode.PROMOTE));
+    assertEquals(
+        Long.MIN_VALUE, CalculatorService.calculate("-(" + LONG_MIN + ")", OverflowMode.WRAP));
+    assertThrows(
+        ArithmeticException.class, () -> CalculatorService.calculate("2 ^ 63", OverflowMode.FAIL));
+  }
+
+  @Test
+  public void testPromotedPowerIsBounded() {
+    assertEquals(
+        BigInteger.TWO.pow(ExactEvaluatorService.MAX_POWER_BITS / 2 - 1),
+        CalculatorService.calculate(
+            "2 ^ " + (ExactEvaluatorService.MAX_POWER_BITS / 2 - 1), OverflowMode.PROMOTE));
+    ArithmeticException exception =
+        assertThrows(
+            ArithmeticException.class,
+            () -> CalculatorService.calculate("2 ^ 1000000000", OverflowMode.PROMOTE));
+    assertEquals("Integer overflow", exception.getMessage());
+    assertThrows(
+        ArithmeticException.class,
+        () -> CalculatorService.calculate("(2 ^ 64) ^ 100000", OverflowMode.PROMOTE));
+    // Bases whose powers stay small are not bounded
+    assertEquals(-1L, CalculatorService.calculate("-1 ^ 1000000001", OverflowMode.PROMOTE));
+    assertEquals(1L, CalculatorService.calculate("0 ^ 0", OverflowMode.PROMOTE));
+    assertEquals(0L, CalculatorService.calculate("(2 ^ 64) ^ -1", OverflowMode.PROMOTE));
+  }
+}
@@ -2,12 +2,21 @@ package org.code.exercise.service;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class ExpressionConverterServiceTest {
 
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void testAddition() {
     List<String> infix = List.of("2", "+", "3");
@@ -97,4 +106,48 @@ public class ExpressionConverterServiceTest {
             () -> ExpressionConverterService.infixToPostfix(infix3));
     assertEquals("Mismatched parentheses: right parenthesis missing", ex3.getMessage());
   }
+
+  // Typed token stream
+
+  @Test
+  public void testTokenStreamToProgram() {
+    CompiledExpression program =
+        ExpressionConverterService.infixToPostfix(ParserService.lex("((8 + 2) / 2) * 3"));
+    assertEquals("8 2 + 2 / 3 *", program.toString());
+    assertEquals(7, program.size());
+  }
+
+  @Test
+  public void testTokenStreamMismatchedParentheses() {
+    ExpressionConverterInvalidTokenException ex =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> ExpressionConverterService.infixToPostfix(ParserService.lex("6 / 3)")));
+    assertEquals("Mismatched parentheses: left parenthesis missing", ex.getMessage());
+    assertEquals(5, ex.getPosition());
+  }
+
+  @Test
+  public void testFailedConversionIsRecorded() throws IOException {
+    List<String> infix = List.of("(", "(", "1", "+", "2", ")");
+    Path file = folder.getRoot().toPath().resolve("conversion.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("org.code.exercise.Conversion");
+      recording.start();
+      assertThrows(
+          ExpressionConverterInvalidTokenException.class,
+          () -> ExpressionConverterService.infixToPostfix(infix));
+      recording.stop();
+      recording.dump(file);
+    }
+
+    long threadId = Thread.currentThread().threadId();
+    List<RecordedEvent> events =
+        RecordingFile.readAllEvents(file).stream()
+            .filter(event -> event.getThread().getJavaThreadId() == threadId)
+            .toList();
+    assertEquals(1, events.size());
+    assertEquals(6, events.get(0).getInt("tokenCount"));
+    assertEquals(2, events.get(0).getInt("nestingDepth"));
+  }
 }
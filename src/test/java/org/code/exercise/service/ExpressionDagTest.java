@@ -0,0 +1,109 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Random;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.code.exercise.service.helper.OperatorRegistry;
+import org.junit.Test;
+
+public class ExpressionDagTest {
+
+  // The registry is global, so the function is registered once for all the tests
+  private static final int CHECKED =
+      OperatorRegistry.registerFunction(
+          "checked",
+          a -> {
+            if (a < 0) {
+              throw new IllegalStateException("Negative operand");
+            }
+            return a;
+          });
+
+  @Test
+  public void testIdenticalExpressionsShareTheirRoot() {
+    ExpressionDag dag = new ExpressionDag();
+    int first = dag.add(CalculatorService.compile("(2 + 3) * (2 + 3)"));
+    int second = dag.add(CalculatorService.compile("(2+3)*(2+3)"));
+    assertEquals(first, second);
+    // 2, 3, + and *, the second (2 + 3) being the same node as the first one
+    assertEquals(4, dag.size());
+    assertEquals(25, dag.evaluate(first));
+  }
+
+  @Test
+  public void testSameResultAsCompiledExpression() {
+    Random random = new Random(42);
+    ExpressionDag dag = new ExpressionDag();
+    String[] expressions = new String[2000];
+    int[] roots = new int[expressions.length];
+    for (int i = 0; i < expressions.length; i++) {
+      expressions[i] =
+          "("
+              + random.nextInt(10)
+              + " * 7 - "
+              + random.nextInt(5)
+              + ") / "
+              + (1 + random.nextInt(3))
+              + " + (12 - 5) * "
+              + random.nextInt(4);
+      roots[i] = dag.add(CalculatorService.compile(expressions[i]));
+    }
+    for (int i = 0; i < expressions.length; i++) {
+      assertEquals(CalculatorService.calculate(expressions[i]), dag.evaluate(roots[i]));
+    }
+    assertEquals(dag.getAddedNodeCount() - dag.size(), dag.getSharedNodeCount());
+  }
+
+  @Test
+  public void testDivisionByZeroOnlyFailsItsAncestors() {
+    ExpressionDag dag = new ExpressionDag();
+    int failed = dag.add(CalculatorService.compile("1 + 6 / (2 - 2)"));
+    int valid = dag.add(CalculatorService.compile("6 / (2 - 1)"));
+    ArithmeticException exception =
+        assertThrows(ArithmeticException.class, () -> dag.evaluate(failed));
+    assertEquals("Division by zero", exception.getMessage());
+    assertEquals(6, dag.evaluate(valid));
+  }
+
+  @Test
+  public void testFailingOperatorOnlyFailsItsAncestors() {
+    ExpressionDag dag = new ExpressionDag();
+    int failed = dag.add(CalculatorService.compile("1 + checked(0 - 1)"));
+    int leftFirst = dag.add(CalculatorService.compile("checked(0 - 1) + 1 / 0"));
+    int divisionFirst = dag.add(CalculatorService.compile("1 / 0 + checked(0 - 1)"));
+    int valid = dag.add(CalculatorService.compile("checked(2) * 3"));
+
+    IllegalStateException exception =
+        assertThrows(IllegalStateException.class, () -> dag.evaluate(failed));
+    assertEquals("Negative operand", exception.getMessage());
+    assertThrows(IllegalStateException.class, () -> dag.evaluate(leftFirst));
+    assertThrows(ArithmeticException.class, () -> dag.evaluate(divisionFirst));
+    assertEquals(6, dag.evaluate(valid));
+    assertEquals(CHECKED, OperatorRegistry.getFunctionOpcode("checked", 0, 7));
+  }
+
+  @Test
+  public void testNodesAddedAfterEvaluation() {
+    ExpressionDag dag = new ExpressionDag();
+    int first = dag.add(CalculatorService.compile("4 * 5"));
+    assertEquals(20, dag.evaluate(first));
+    int second = dag.add(CalculatorService.compile("4 * 5 - 1"));
+    assertEquals(19, dag.evaluate(second));
+    assertEquals(20, dag.evaluate(first));
+
+    dag.clear();
+    assertEquals(0, dag.size());
+    assertEquals(7, dag.evaluate(dag.add(CalculatorService.compile("3 + 4"))));
+  }
+
+  @Test
+  public void testInvalidPrograms() {
+    ExpressionDag dag = new ExpressionDag();
+    assertThrows(EvaluatorStackException.class, () -> dag.add(CalculatorService.compile("1 2")));
+    assertThrows(
+        IllegalArgumentException.class, () -> dag.add(CalculatorService.compile("x + 1", "x")));
+    assertEquals(0, dag.size());
+  }
+}
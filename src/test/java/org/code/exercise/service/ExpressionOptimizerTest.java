@@ -0,0 +1,126 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.junit.Test;
+
+public class ExpressionOptimizerTest {
+
+  private static OptimizedExpression optimize(String expression, String... variables) {
+    return ExpressionOptimizer.optimize(CalculatorService.compile(expression, variables));
+  }
+
+  @Test
+  public void testConstantExpressionIsFolded() {
+    OptimizedExpression optimized = optimize("7 + 12 / 2 * -5 - 19");
+    assertEquals("-42", optimized.expression().toString());
+    assertEquals(4, optimized.foldedConstants());
+    assertEquals(8, optimized.eliminatedNodes());
+  }
+
+  @Test
+  public void testConstantSubtreesAreFolded() {
+    assertEquals("x 20 *", optimize("x * (2 + 3) * 4", "x").expression().toString());
+    assertEquals("x 5 +", optimize("2 + x + 3", "x").expression().toString());
+    assertEquals("x -1 +", optimize("x - 3 + 2", "x").expression().toString());
+    assertEquals("x 5 -", optimize("x - 2 - 3", "x").expression().toString());
+  }
+
+  @Test
+  public void testIdentitiesAreRemoved() {
+    assertEquals("x", optimize("x * 1 + 0", "x").expression().toString());
+    assertEquals("x", optimize("(x - 0) / 1", "x").expression().toString());
+    assertEquals("0", optimize("x * 0", "x").expression().toString());
+    assertEquals("y", optimize("(a * x - a * x) + y", "a", "x", "y").expression().toString());
+    assertEquals("a b +", optimize("a - (0 - b)", "a", "b").expression().toString());
+    assertEquals("a b -", optimize("(0 - b) + a", "a", "b").expression().toString());
+    assertEquals("0 x -", optimize("x / -1", "x").expression().toString());
+  }
+
+  @Test
+  public void testStatistics() {
+    OptimizedExpression optimized = optimize("x * 1 + 2 * 3", "x");
+    assertEquals("x 6 +", optimized.expression().toString());
+    assertEquals(7, optimized.originalSize());
+    assertEquals(1, optimized.foldedConstants());
+    assertEquals(1, optimized.simplifiedIdentities());
+    assertEquals(4, optimized.eliminatedNodes());
+  }
+
+  @Test
+  public void testOverflowWrapsLikeEvaluation() {
+    String expression = "2147483647 + 1 + x * 65536 * 65536 - 2147483647 * 2";
+    CompiledExpression compiled = CalculatorService.compile(expression, "x");
+    CompiledExpression optimized = ExpressionOptimizer.optimize(compiled).expression();
+    for (int x : new int[] {0, 1, -1, 7, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      assertEquals(compiled.evaluate(new int[] {x}), optimized.evaluate(new int[] {x}));
+    }
+    assertEquals(
+        Integer.MIN_VALUE / -1,
+        ExpressionOptimizer.optimize(CalculatorService.compile("x / -1", "x"))
+            .expression()
+            .evaluate(new int[] {Integer.MIN_VALUE}));
+  }
+
+  @Test
+  public void testDivisionByZeroIsKept() {
+    assertEquals("1 0 /", optimize("1 / 0").expression().toString());
+    assertEquals("1 x / 0 *", optimize("1 / x * 0", "x").expression().toString());
+    assertEquals("1 x / 1 x / -", optimize("1 / x - 1 / x", "x").expression().toString());
+
+    CompiledExpression optimized = optimize("(10 / x - 10 / x) * 0", "x").expression();
+    ArithmeticException ex =
+        assertThrows(ArithmeticException.class, () -> optimized.evaluate(new int[] {0}));
+    assertEquals("Division by zero", ex.getMessage());
+  }
+
+  @Test
+  public void testSameResultsAsOriginalProgram() {
+    String expression = "(a * 1 + 0) * (3 - 3 + b) / (2 * 2) - (a - a) + (0 - b) * -1 + 6 / 3";
+    CompiledExpression compiled = CalculatorService.compile(expression, "a", "b");
+    OptimizedExpression optimized = ExpressionOptimizer.optimize(compiled);
+    assertEquals(true, optimized.eliminatedNodes() > 0);
+    for (int a = -20; a <= 20; a++) {
+      for (int b = -20; b <= 20; b++) {
+        int[] values = {a, b};
+        assertEquals(compiled.evaluate(values), optimized.expression().evaluate(values));
+      }
+    }
+  }
+
+  @Test
+  public void testDeeplyNestedExpression() {
+    int depth = 20000;
+    String expression = "(".repeat(depth) + "x" + " - 0)".repeat(depth);
+    OptimizedExpression optimized = optimize(expression, "x");
+    assertEquals("x", optimized.expression().toString());
+    assertEquals(2 * depth, optimized.eliminatedNodes());
+  }
+
+  @Test
+  public void testInvalidProgramIsUnchanged() {
+    CompiledExpression compiled = ExpressionConverterService.infixToPostfix(ParserService.lex("+"));
+    OptimizedExpression optimized = ExpressionOptimizer.optimize(compiled);
+    assertEquals(compiled, optimized.expression());
+    assertThrows(EvaluatorStackException.class, () -> optimized.expression().evaluate());
+  }
+
+  @Test
+  public void testCompileOptimized() {
+    CompiledExpression compiled = CalculatorService.compileOptimized("a * x * 1 + 2 * 3", "a", "x");
+    assertEquals("a x * 6 +", compiled.toString());
+    assertEquals(34, compiled.evaluate(new int[] {4, 7}));
+  }
+
+  @Test
+  public void testNewOperators() {
+    assertEquals("4", optimize("max(2 ^ 2, -(7 % 4))").expression().toString());
+    assertEquals("x", optimize("- -x", "x").expression().toString());
+    assertEquals("x y -", optimize("x + -y", "x", "y").expression().toString());
+    // Kept to raise the division by zero
+    assertEquals("0 -1 ^", optimize("0 ^ -1").expression().toString());
+    assertEquals("x 0 % 0 *", optimize("x % 0 * 0", "x").expression().toString());
+  }
+}
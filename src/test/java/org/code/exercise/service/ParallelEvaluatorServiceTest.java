@@ -0,0 +1,140 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.code.exercise.service.exception.EvaluatorStackException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelEvaluatorServiceTest {
+
+  private static final int[] NO_VALUES = {};
+
+  private ForkJoinPool pool;
+
+  @Before
+  public void setUp() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void testLongChainsOfEveryOperator() {
+    Random random = new Random(42);
+    for (String operators : new String[] {"+-", "*", "*/", "+-*/", "-"}) {
+      StringBuilder expression = new StringBuilder(Integer.toString(random.nextInt(1000)));
+      for (int i = 0; i < 20_000; i++) {
+        char operator = operators.charAt(random.nextInt(operators.length()));
+        int operand = operator == '/' ? 1 + random.nextInt(3) : random.nextInt(1000) - 500;
+        expression.append(' ').append(operator).append(' ').append(operand);
+      }
+      assertSameResult(CalculatorService.compile(expression.toString()), NO_VALUES);
+    }
+  }
+
+  @Test
+  public void testNestedExpressions() {
+    Random random = new Random(7);
+    for (int i = 0; i < 20; i++) {
+      String expression = randomExpression(random, 12);
+      assertSameResult(CalculatorService.compile(expression), NO_VALUES);
+    }
+  }
+
+  @Test
+  public void testRightNestedExpression() {
+    // Operators at the end of the program whose subtrees start many chunks earlier
+    StringBuilder expression = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      expression.append(i).append(i % 2 == 0 ? " - (" : " * (");
+    }
+    expression.append('1').append(")".repeat(10_000));
+    assertSameResult(CalculatorService.compile(expression.toString()), NO_VALUES);
+  }
+
+  @Test
+  public void testVariables() {
+    StringBuilder expression = new StringBuilder("x");
+    for (int i = 0; i < 5000; i++) {
+      expression.append(i % 3 == 0 ? " - y * " : " + x / ").append(1 + i % 5);
+    }
+    CompiledExpression compiled = CalculatorService.compile(expression.toString(), "x", "y");
+    assertSameResult(compiled, new int[] {123456, -789});
+  }
+
+  @Test
+  public void testDivisionByZeroInAnySubtree() {
+    String expression =
+        "1 + 2 * 3 - ".repeat(3000) + "(5 / (2 - 2)) + " + "4 - 1 * 7 + ".repeat(3000) + "0";
+    CompiledExpression compiled = CalculatorService.compile(expression);
+    ArithmeticException exception =
+        assertThrows(
+            ArithmeticException.class,
+            () -> ParallelEvaluatorService.evaluate(compiled, NO_VALUES, pool, 16));
+    assertEquals("Division by zero", exception.getMessage());
+    // A division chain divides from left to right
+    CompiledExpression chain =
+        CalculatorService.compile("1000000 / 10 / 10" + " * 1 / 1".repeat(50));
+    assertEquals(10000, ParallelEvaluatorService.evaluate(chain, NO_VALUES, pool, 4));
+  }
+
+  @Test
+  public void testSameErrorAsSequentialEvaluation() {
+    // Malformed programs accepted by the converter, dividing by zero before the stack goes wrong
+    for (String expression :
+        new String[] {"12 / -(4 - - / 0) - 17", "1050533116 % 0 * -(-(0/2 147483647))"}) {
+      CompiledExpression compiled = CalculatorService.compile(expression);
+      ArithmeticException sequential = assertThrows(ArithmeticException.class, compiled::evaluate);
+      ArithmeticException exception =
+          assertThrows(
+              ArithmeticException.class,
+              () -> ParallelEvaluatorService.evaluate(compiled, NO_VALUES, pool, 1));
+      assertEquals(sequential.getMessage(), exception.getMessage());
+    }
+  }
+
+  @Test
+  public void testInvalidProgram() {
+    assertThrows(
+        EvaluatorStackException.class,
+        () -> ParallelEvaluatorService.evaluate(CalculatorService.compile("1 + 2 3")));
+    assertThrows(
+        EvaluatorStackException.class,
+        () ->
+            ParallelEvaluatorService.evaluate(
+                CalculatorService.compile("1 + 2 * 3 - ".repeat(20_000) + "4 +")));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ParallelEvaluatorService.evaluate(CalculatorService.compile("x", "x")));
+  }
+
+  private void assertSameResult(CompiledExpression compiled, int[] values) {
+    int expected = compiled.evaluate(values);
+    for (int threshold : new int[] {1, 7, 100, 1 << 20}) {
+      assertEquals(
+          compiled.toString().length() > 50 ? "threshold " + threshold : compiled.toString(),
+          expected,
+          ParallelEvaluatorService.evaluate(compiled, values, pool, threshold));
+    }
+  }
+
+  private static String randomExpression(Random random, int depth) {
+    if (depth == 0 || random.nextInt(8) == 0) {
+      return Integer.toString(random.nextInt(100) - 50);
+    }
+    String operator = "+-*+-*/".substring(random.nextInt(7)).substring(0, 1);
+    String right =
+        operator.equals("/")
+            ? Integer.toString(1 + random.nextInt(9))
+            : randomExpression(random, depth - 1);
+    return "(" + randomExpression(random, depth - 1) + " " + operator + " " + right + ")";
+  }
+}
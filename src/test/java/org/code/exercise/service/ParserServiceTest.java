@@ -4,6 +4,9 @@ import static org.junit.Assert.assertEquals;
 
 import java.util.Collections;
 import java.util.List;
+import org.code.exercise.service.helper.CalculatorUtils;
+import org.code.exercise.service.helper.enums.TokenType;
+import org.code.exercise.service.model.TokenStream;
 import org.junit.Test;
 
 public class ParserServiceTest {
@@ -64,4 +67,59 @@ public class ParserServiceTest {
     List<String> tokens = ParserService.tokenize(expr2);
     assertEquals(expectedResult, tokens);
   }
+
+  // Single-pass lexer
+
+  @Test
+  public void testUnspacedExpression() {
+    List<String> tokens = ParserService.tokenize("3*(2+1)-4");
+    assertEquals(List.of("3", "*", "(", "2", "+", "1", ")", "-", "4"), tokens);
+  }
+
+  @Test
+  public void testMinusAfterOperandIsAnOperator() {
+    assertEquals(List.of("5", "-", "3"), ParserService.tokenize("5-3"));
+    assertEquals(List.of("5", "-", "-3"), ParserService.tokenize("5--3"));
+    assertEquals(List.of("(", "-2", ")", "-", "1"), ParserService.tokenize("(-2)-1"));
+  }
+
+  @Test
+  public void testLexTypedTokens() {
+    TokenStream tokens = ParserService.lex("12 * -3");
+    assertEquals(3, tokens.size());
+    assertEquals(TokenType.NUMBER, tokens.type(0));
+    assertEquals(12, tokens.value(0));
+    assertEquals(TokenType.OPERATOR, tokens.type(1));
+    assertEquals(CalculatorUtils.OPCODE_MUL, tokens.value(1));
+    assertEquals(TokenType.NUMBER, tokens.type(2));
+    assertEquals(-3, tokens.value(2));
+    assertEquals(5, tokens.position(2));
+  }
+
+  @Test
+  public void testLexIntegerBounds() {
+    assertEquals(Integer.MAX_VALUE, ParserService.lex("2147483647").value(0));
+    assertEquals(Integer.MIN_VALUE, ParserService.lex("-2147483648").value(0));
+    assertEquals(TokenType.BIG_NUMBER, ParserService.lex("2147483648").type(0));
+    assertEquals(TokenType.BIG_NUMBER, ParserService.lex("-2147483649").type(0));
+    assertEquals(TokenType.INVALID, ParserService.lex("2147483648a").type(0));
+  }
+
+  @Test
+  public void testLexInvalidTokenPosition() {
+    TokenStream tokens = ParserService.lex("2 + 3a * 4");
+    assertEquals(TokenType.INVALID, tokens.type(2));
+    assertEquals(4, tokens.position(2));
+    assertEquals("3a", tokens.text(2));
+  }
+
+  @Test
+  public void testLexIdentifiers() {
+    TokenStream tokens = ParserService.lex("rate_2*x-1");
+    assertEquals(TokenType.IDENTIFIER, tokens.type(0));
+    assertEquals("rate_2", tokens.text(0));
+    assertEquals(TokenType.IDENTIFIER, tokens.type(2));
+    assertEquals(TokenType.OPERATOR, tokens.type(3));
+    assertEquals(TokenType.INVALID, ParserService.lex("a$b").type(0));
+  }
 }
@@ -0,0 +1,262 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.OperatorRegistry;
+import org.code.exercise.service.helper.enums.CalculationError;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProgramStoreTest {
+
+  // The registry is global, so the function is registered once for all the tests
+  private static final int CUBE = OperatorRegistry.registerFunction("cube", a -> a * a * a);
+
+  private static final List<String> EXPRESSIONS =
+      List.of("(2 + 3) * 4", "2 ^ 3 ^ 2", "-(7 % 4) + max(1, 2)", "cube(3) - 1", "10 / 3");
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path file;
+
+  @Before
+  public void setUp() {
+    file = folder.getRoot().toPath().resolve("programs.bin");
+  }
+
+  @Test
+  public void testProgramsAreFoundAfterReopening() throws IOException {
+    try (ProgramStore store = ProgramStore.open(file)) {
+      for (String expression : EXPRESSIONS) {
+        assertEquals(CalculatorService.compile(expression), store.compile(expression));
+      }
+      assertEquals(0, store.getHitCount());
+      assertEquals(EXPRESSIONS.size(), store.getMissCount());
+    }
+
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(EXPRESSIONS.size(), store.size());
+      assertEquals(0, store.getDiscardedCount());
+      for (String expression : EXPRESSIONS) {
+        CompiledExpression program = store.compile(expression);
+        assertEquals(CalculatorService.compile(expression), program);
+        assertEquals(CalculatorService.calculate(expression), program.evaluate());
+      }
+      assertEquals(EXPRESSIONS.size(), store.getHitCount());
+      assertEquals(0, store.getMissCount());
+    }
+    assertEquals(26, CalculatorService.compile("cube(3) - 1").evaluate());
+    assertEquals(CUBE, OperatorRegistry.getFunctionOpcode("cube", 0, 4));
+  }
+
+  @Test
+  public void testWhitespaceIsNormalized() throws IOException {
+    try (ProgramStore store = ProgramStore.open(file)) {
+      store.compile("1 + 2");
+      store.compile("  1\t+   2 ");
+      store.compile("1+2");
+      assertEquals(1, store.getHitCount());
+      assertEquals(2, store.size());
+    }
+    assertEquals("1 + 2", ProgramStore.normalize(" 1 \t +\n2  "));
+    assertEquals("1 2", ProgramStore.normalize("1   2"));
+  }
+
+  @Test
+  public void testVariablesArePartOfTheKey() throws IOException {
+    try (ProgramStore store = ProgramStore.open(file)) {
+      store.compile("a * x + b", "a", "x", "b");
+    }
+    try (ProgramStore store = ProgramStore.open(file)) {
+      CompiledExpression program = store.compile("a * x + b", "x", "a", "b");
+      assertEquals(7, program.evaluate(new int[] {2, 3, 1}));
+      program = store.compile("a * x + b", "a", "x", "b");
+      assertEquals(List.of("a", "x", "b"), program.getVariables());
+      assertEquals(7, program.evaluate(new int[] {3, 2, 1}));
+      assertEquals(1, store.getHitCount());
+    }
+  }
+
+  @Test
+  public void testErrorsAreNotStored() throws IOException {
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertThrows(ExpressionConverterInvalidTokenException.class, () -> store.compile("(1 + 2"));
+      assertThrows(IllegalArgumentException.class, () -> store.compile(""));
+      assertEquals(
+          CalculatorService.tryCalculate("2 + a").getMessage(),
+          store.tryCalculate("2 + a").getMessage());
+      assertEquals(CalculationError.EMPTY_EXPRESSION, store.tryCalculate("").getError());
+      assertEquals(CalculationError.DIVISION_BY_ZERO, store.tryCalculate("1 / 0").getError());
+      assertEquals(1, store.size());
+    }
+  }
+
+  @Test
+  public void testTryCalculate() throws IOException {
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(20, store.tryCalculate("(2 + 3) * 4").getValue());
+    }
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(20, store.tryCalculate(" (2 + 3)  * 4").getValue());
+      assertEquals(1, store.getHitCount());
+    }
+  }
+
+  @Test
+  public void testCorruptEntryIsCompiledAgain() throws IOException {
+    writePrograms();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), channel.size() - 1);
+    }
+
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(1, store.getDiscardedCount());
+      assertEquals(EXPRESSIONS.size() - 1, store.size());
+      assertEquals(3, store.compile("10 / 3").evaluate());
+      assertEquals(1, store.getMissCount());
+    }
+    // The corrupt entry is still skipped, and the one appended after it is found
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(1, store.getDiscardedCount());
+      assertEquals(EXPRESSIONS.size(), store.size());
+      assertEquals(3, store.compile("10 / 3").evaluate());
+      assertEquals(1, store.getHitCount());
+    }
+  }
+
+  @Test
+  public void testTruncatedEntryIsDropped() throws IOException {
+    writePrograms();
+    long size = Files.size(file);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 3);
+    }
+
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(1, store.getDiscardedCount());
+      assertEquals(EXPRESSIONS.size() - 1, store.size());
+      store.compile("10 / 3");
+    }
+    assertEquals(size, Files.size(file));
+  }
+
+  @Test
+  public void testOtherFormatVersionIsCleared() throws IOException {
+    writePrograms();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4).putInt(0).flip(), 4);
+    }
+
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(0, store.size());
+      store.compile("(2 + 3) * 4");
+    }
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(1, store.size());
+      store.compile("(2 + 3) * 4");
+      assertEquals(1, store.getHitCount());
+    }
+  }
+
+  @Test
+  public void testProgramsLargerThanTheWriteBuffer() throws IOException {
+    StringBuilder expression = new StringBuilder("0");
+    for (int i = 0; i < 20000; i++) {
+      expression.append(" + ").append(i);
+    }
+    try (ProgramStore store = ProgramStore.open(file)) {
+      store.compile("1 + 1");
+      store.compile(expression);
+      store.compile("2 + 2");
+    }
+    try (ProgramStore store = ProgramStore.open(file)) {
+      assertEquals(3, store.size());
+      assertEquals(199990000, store.compile(expression).evaluate());
+      assertEquals(4, store.compile("2 + 2").evaluate());
+      assertEquals(2, store.getHitCount());
+    }
+  }
+
+  @Test
+  public void testProgramsAfterCloseAreNotStored() throws IOException {
+    ProgramStore store = ProgramStore.open(file);
+    store.close();
+    assertEquals(3, store.compile("1 + 2").evaluate());
+    store.close();
+    try (ProgramStore reopened = ProgramStore.open(file)) {
+      assertEquals(0, reopened.size());
+    }
+    assertFalse(Files.size(file) > 8);
+  }
+
+  @Test
+  public void testFullStoreStopsGrowing() throws IOException {
+    int stored;
+    try (ProgramStore store = ProgramStore.open(file, 256)) {
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i + 1, store.compile(i + " + 1").evaluate());
+      }
+      assertTrue(store.isFull());
+      stored = store.size();
+      assertTrue(stored > 0 && stored < 100);
+      // Programs that did not fit are compiled again on each use
+      store.compile("99 + 1");
+      assertEquals(stored, store.size());
+    }
+    assertTrue(Files.size(file) <= 256);
+
+    try (ProgramStore store = ProgramStore.open(file, 256)) {
+      assertEquals(stored, store.size());
+      assertEquals(1, store.compile("0 + 1").evaluate());
+      assertEquals(1, store.getHitCount());
+    }
+  }
+
+  @Test
+  public void testFileLargerThanTheMaximumSizeIsCleared() throws IOException {
+    writePrograms();
+    try (ProgramStore store = ProgramStore.open(file, 64)) {
+      assertEquals(0, store.size());
+    }
+    assertEquals(8, Files.size(file));
+    assertThrows(IllegalArgumentException.class, () -> ProgramStore.open(file, 4));
+    assertThrows(IllegalArgumentException.class, () -> ProgramStore.open(file, 1L << 31));
+  }
+
+  @Test
+  public void testProgramsAreWrittenWithoutClosing() throws IOException, InterruptedException {
+    try (ProgramStore store = ProgramStore.open(file)) {
+      store.compile("(2 + 3) * 4");
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (Files.size(file) == 8 && System.nanoTime() < deadline) {
+        Thread.sleep(50);
+      }
+      // As a crashed process leaves it
+      try (ProgramStore reopened = ProgramStore.open(file)) {
+        assertEquals(1, reopened.size());
+      }
+    }
+  }
+
+  private void writePrograms() throws IOException {
+    try (ProgramStore store = ProgramStore.open(file)) {
+      for (String expression : EXPRESSIONS) {
+        store.compile(expression);
+      }
+    }
+  }
+}
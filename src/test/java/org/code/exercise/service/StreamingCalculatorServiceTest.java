@@ -0,0 +1,140 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.junit.Test;
+
+public class StreamingCalculatorServiceTest {
+
+  private static final String[] EXPRESSIONS = {
+    "7 + 12 / 2 * -5 - 19",
+    "3*(2+1)",
+    "5-3",
+    "5 - -3",
+    "-(2 + 3)",
+    "((1 + 2) * (3 - 4)) / -1",
+    "-2147483648",
+    "2147483647 + 1",
+    "2 ^ 3 ^ 2 % 7",
+    "- -(1) * -(2 - 5)",
+    "max(1, min(5 - 1, 3)) + min (2,max(-1, -2))",
+    "2 ^ -1",
+    // Syntax errors
+    "2147483648",
+    "1 + 2147483648a",
+    "3a * 4",
+    "x + 1",
+    "1 $ 2",
+    "(1 + 2",
+    "1 + 2)",
+    "((1) + (2)",
+    "max(1)",
+    "min(1, 2, 3)",
+    "max()",
+    "max(1,)",
+    "(1, 2)",
+    "1, 2",
+    "max 1",
+    "max$(1, 2)",
+    "foo(1)",
+    // Evaluation errors
+    "1 / 0",
+    "1 +",
+    "+",
+    "1 2",
+    "   ",
+    "-",
+    "1 - - 2",
+    "1 % 0",
+    "0 ^ -1",
+    "max(1 / 0, 2",
+    // Syntax errors win over evaluation errors, wherever they are
+    "1 / 0 + (2",
+    "1 / 0 + 3)",
+    "1 + + 2 $",
+    ""
+  };
+
+  @Test
+  public void testSameResultsAndErrorsAsCalculatorService() throws IOException {
+    for (String expression : EXPRESSIONS) {
+      Object expected = outcome(() -> CalculatorService.calculate(expression));
+      Object fromReader =
+          outcome(() -> StreamingCalculatorService.calculate(new StringReader(expression)));
+      Object fromChannel =
+          outcome(
+              () ->
+                  StreamingCalculatorService.calculate(
+                      Channels.newChannel(
+                          new ByteArrayInputStream(expression.getBytes(StandardCharsets.UTF_8)))));
+      assertEquals(expression, expected, fromReader);
+      assertEquals(expression, expected, fromChannel);
+    }
+  }
+
+  @Test
+  public void testErrorPosition() throws IOException {
+    ExpressionConverterInvalidTokenException exception =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> StreamingCalculatorService.calculate(new StringReader("(1 + (2 * 3)")));
+    assertEquals(0, exception.getPosition());
+  }
+
+  @Test
+  public void testEnormousExpressionInConstantMemory() throws IOException {
+    // 2 million terms, generated on the fly and never held in memory
+    int terms = 2_000_000;
+    Reader reader =
+        new Reader() {
+          private int term;
+          private String pending = "";
+
+          @Override
+          public int read(char[] buffer, int offset, int length) {
+            int count = 0;
+            while (count < length) {
+              if (pending.isEmpty()) {
+                if (term == terms) break;
+                pending = (term == 0 ? "" : term % 2 == 0 ? " + " : " - ") + "(3 * 2)";
+                term++;
+              }
+              int chunk = Math.min(pending.length(), length - count);
+              pending.getChars(0, chunk, buffer, offset + count);
+              pending = pending.substring(chunk);
+              count += chunk;
+            }
+            return count == 0 ? -1 : count;
+          }
+
+          @Override
+          public void close() {}
+        };
+    assertEquals(0, StreamingCalculatorService.calculate(reader));
+  }
+
+  private interface Calculation {
+    int calculate() throws IOException;
+  }
+
+  // The result, or the class, message and position of the error
+  private static Object outcome(Calculation calculation) throws IOException {
+    try {
+      return calculation.calculate();
+    } catch (RuntimeException e) {
+      String outcome = e.getClass().getSimpleName() + ": " + e.getMessage();
+      if (e instanceof ExpressionConverterInvalidTokenException syntaxError) {
+        outcome += " at " + syntaxError.getPosition();
+      }
+      return outcome;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package org.code.exercise.service.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.code.exercise.service.BytecodeCompiler;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.CompiledExpression;
+import org.code.exercise.service.ExpressionOptimizer;
+import org.code.exercise.service.ParallelEvaluatorService;
+import org.code.exercise.service.StreamingCalculatorService;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.enums.Associativity;
+import org.junit.Test;
+
+public class OperatorRegistryTest {
+
+  // The registry is global and registrations are final, so they are made once for all the tests
+  private static final int GCD =
+      OperatorRegistry.registerFunction("gcd", OperatorRegistryTest::gcd);
+  private static final int ABS = OperatorRegistry.registerFunction("abs", Math::abs);
+  private static final int AVERAGE =
+      OperatorRegistry.registerOperator(
+          '#', OperatorRegistry.PRIORITY_HIGH, Associativity.LEFT, (a, b) -> (a + b) / 2);
+  private static final int COMPLEMENT =
+      OperatorRegistry.registerPrefixOperator('~', OperatorRegistry.PRIORITY_PREFIX, a -> ~a);
+  private static final int NESTED =
+      OperatorRegistry.registerFunction(
+          "nested", x -> CalculatorService.calculate("100 + 200 * (300 + 400)") + x);
+
+  @Test
+  public void testRegisteredOpcodes() {
+    assertEquals(AVERAGE, OperatorRegistry.getBinaryOpcode('#'));
+    assertEquals(COMPLEMENT, OperatorRegistry.getPrefixOpcode('~'));
+    assertEquals(GCD, OperatorRegistry.getFunctionOpcode("x gcd", 2, 3));
+    assertEquals(1, CalculatorUtils.getOperatorArity(ABS));
+    assertEquals(-1, OperatorRegistry.getBinaryOpcode('~'));
+    assertEquals(CalculatorUtils.OPCODE_NEG, OperatorRegistry.getPrefixOpcode('-'));
+  }
+
+  @Test
+  public void testRegisteredOperatorsAreCalculated() {
+    assertEquals(12, CalculatorService.calculate("2 + 4 # 6 * 2"));
+    assertEquals(4, CalculatorService.calculate("1 # 3 # 7"));
+    assertEquals(-4, CalculatorService.calculate("~3"));
+    assertEquals(6, CalculatorService.calculate("gcd(12, abs(-18)) + ~-1"));
+    assertEquals(6, CalculatorService.tryCalculate("gcd(12, 18)").getValue());
+  }
+
+  @Test
+  public void testRegisteredOperatorsInEveryEngine() throws IOException {
+    String expression = "gcd(x * 4, 18) # abs(~x) - x";
+    CompiledExpression compiled = CalculatorService.compile(expression, "x");
+    CompiledExpression optimized = ExpressionOptimizer.optimize(compiled).expression();
+    for (int x = -10; x <= 10; x++) {
+      int[] values = {x};
+      int expected = compiled.evaluate(values);
+      assertEquals(expected, optimized.evaluate(values));
+      assertEquals(expected, BytecodeCompiler.compile(compiled).applyAsInt(values));
+      assertEquals(
+          expected,
+          StreamingCalculatorService.calculate(
+              new StringReader(expression.replace("x", "(" + x + ")"))));
+    }
+  }
+
+  @Test
+  public void testFunctionCallingTheCalculator() {
+    assertEquals(1, CalculatorUtils.getOperatorArity(NESTED));
+    String expression = "1 + 2 * (3 + nested(4))";
+    assertEquals(280215, CalculatorService.calculate(expression));
+    assertEquals(280215, CalculatorService.tryCalculate(expression).getValue());
+    CompiledExpression compiled = CalculatorService.compile(expression);
+    assertEquals(280215, ParallelEvaluatorService.evaluate(compiled));
+    assertEquals(
+        280215, CalculatorService.compile("1 + 2 * (3 + nested(x))", "x").evaluate(new int[] {4}));
+  }
+
+  @Test
+  public void testRegistrationErrors() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            OperatorRegistry.registerOperator(
+                '+', OperatorRegistry.PRIORITY_LOW, Associativity.LEFT, Integer::sum));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            OperatorRegistry.registerOperator(
+                'a', OperatorRegistry.PRIORITY_LOW, Associativity.LEFT, Integer::sum));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> OperatorRegistry.registerPrefixOperator('!', 0, a -> a));
+    assertThrows(
+        IllegalArgumentException.class, () -> OperatorRegistry.registerFunction("max", Math::max));
+    assertThrows(
+        IllegalArgumentException.class, () -> OperatorRegistry.registerFunction("2x", Math::abs));
+  }
+
+  @Test
+  public void testWrongArgumentCount() {
+    ExpressionConverterInvalidTokenException ex =
+        assertThrows(
+            ExpressionConverterInvalidTokenException.class,
+            () -> CalculatorService.calculate("abs(1, 2)"));
+    assertEquals("Wrong number of arguments: abs", ex.getMessage());
+    assertEquals(0, ex.getPosition());
+  }
+
+  private static int gcd(int a, int b) {
+    return b == 0 ? Math.abs(a) : gcd(b, a % b);
+  }
+}
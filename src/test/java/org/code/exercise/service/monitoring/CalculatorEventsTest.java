@@ -0,0 +1,65 @@
+package org.code.exercise.service.monitoring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.code.exercise.service.CalculatorService;
+import org.code.exercise.service.EvaluatorService;
+import org.code.exercise.service.ExpressionConverterService;
+import org.code.exercise.service.ParserService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CalculatorEventsTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testEventsOfEveryStage() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("calculator.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(TokenizeEvent.class).withoutThreshold();
+      recording.enable(ConversionEvent.class).withoutThreshold();
+      recording.enable(EvaluationEvent.class).withoutThreshold();
+      recording.start();
+      CalculatorService.calculate("((2 + 3) * (4 - 1)) / 5");
+      List<String> postfix =
+          ExpressionConverterService.infixToPostfix(ParserService.tokenize("(1 + 2) * 3"));
+      EvaluatorService.evaluatePostfixExpression(postfix);
+      recording.stop();
+      recording.dump(file);
+    }
+
+    Map<String, List<RecordedEvent>> events =
+        RecordingFile.readAllEvents(file).stream()
+            .collect(Collectors.groupingBy(event -> event.getEventType().getName()));
+    List<RecordedEvent> tokenize = events.get("org.code.exercise.Tokenize");
+    List<RecordedEvent> conversion = events.get("org.code.exercise.Conversion");
+    List<RecordedEvent> evaluation = events.get("org.code.exercise.Evaluation");
+
+    assertEquals(2, tokenize.size());
+    assertEquals(15, tokenize.get(0).getInt("tokenCount"));
+    assertEquals(2, tokenize.get(0).getInt("nestingDepth"));
+    assertEquals(2, conversion.size());
+    assertEquals(
+        Map.of(15, 2, 7, 1),
+        conversion.stream()
+            .collect(
+                Collectors.toMap(
+                    event -> event.getInt("tokenCount"), event -> event.getInt("nestingDepth"))));
+    assertEquals(2, evaluation.size());
+    assertEquals(
+        Map.of(9, 3, 5, 2),
+        evaluation.stream()
+            .collect(
+                Collectors.toMap(
+                    event -> event.getInt("tokenCount"), event -> event.getInt("stackDepth"))));
+  }
+}
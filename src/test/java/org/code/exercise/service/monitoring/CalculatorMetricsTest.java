@@ -0,0 +1,85 @@
+package org.code.exercise.service.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.code.exercise.service.helper.enums.CalculationError;
+import org.code.exercise.service.model.CalculationResult;
+import org.junit.Test;
+
+public class CalculatorMetricsTest {
+
+  @Test
+  public void testErrorsAreKeyedByExceptionType() {
+    CalculatorMetrics metrics = new CalculatorMetrics();
+    metrics.recordOutcome(null);
+    metrics.recordOutcome(new ArithmeticException("Division by zero"));
+    metrics.recordOutcome(new ArithmeticException("Division by zero"));
+    metrics.recordOutcome(new ExpressionConverterInvalidTokenException("Invalid token: a"));
+
+    assertEquals(4, metrics.getCalculationCount());
+    assertEquals(3, metrics.getErrorCount());
+    assertEquals(
+        Map.of("ArithmeticException", 2L, "ExpressionConverterInvalidTokenException", 1L),
+        metrics.getErrorCounts());
+  }
+
+  @Test
+  public void testResultErrorsAreKeyedByExceptionType() {
+    CalculatorMetrics metrics = new CalculatorMetrics();
+    metrics.recordOutcomeOf(CalculationResult.success(1));
+    metrics.recordOutcomeOf(CalculationResult.failure(CalculationError.DIVISION_BY_ZERO));
+    metrics.recordOutcome(new ArithmeticException("Division by zero"));
+
+    assertEquals(3, metrics.getCalculationCount());
+    assertEquals(Map.of("ArithmeticException", 2L), metrics.getErrorCounts());
+  }
+
+  @Test
+  public void testStageLatencies() {
+    CalculatorMetrics metrics = new CalculatorMetrics();
+    for (int i = 1; i <= 100; i++) {
+      metrics.recordLatency(Stage.EVALUATION, i * 1000L);
+    }
+    metrics.recordLatency(Stage.TOKENIZE, 500);
+
+    assertEquals(100, metrics.getEvaluationCount());
+    assertEquals(1, metrics.getTokenizeCount());
+    assertEquals(0, metrics.getConversionCount());
+    Map<String, Long> latencies = metrics.getEvaluationLatencyNanos();
+    assertEquals(4, latencies.size());
+    assertTrue(latencies.get("p50") >= 50_000 && latencies.get("p50") < 57_000);
+    assertTrue(latencies.get("p99") >= 99_000);
+
+    metrics.reset();
+    assertEquals(0, metrics.getEvaluationCount());
+    assertEquals(0, metrics.getCalculationCount());
+  }
+
+  @Test
+  public void testMBeanAttributes() throws Exception {
+    CalculatorMetrics metrics = new CalculatorMetrics();
+    metrics.recordOutcome(new IllegalArgumentException("Expression must not be null or empty"));
+    metrics.recordLatency(Stage.CONVERSION, 2000);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(CalculatorMetrics.OBJECT_NAME);
+    metrics.register();
+    try {
+      assertEquals(1L, server.getAttribute(name, "CalculationCount"));
+      assertEquals(1L, server.getAttribute(name, "ConversionCount"));
+      TabularData errors = (TabularData) server.getAttribute(name, "ErrorCounts");
+      CompositeData row = errors.get(new Object[] {"IllegalArgumentException"});
+      assertEquals(1L, row.get("value"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package org.code.exercise.service.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.percentile(99));
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 4; i++) {
+      histogram.record(i);
+    }
+    assertEquals(4, histogram.count());
+    assertEquals(2, histogram.percentile(50));
+    assertEquals(4, histogram.percentile(100));
+  }
+
+  @Test
+  public void testPercentilesWithinRelativeError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100_000; i++) {
+      histogram.record(i * 10L);
+    }
+    assertWithinError(500_000, histogram.percentile(50));
+    assertWithinError(990_000, histogram.percentile(99));
+    assertWithinError(999_000, histogram.percentile(99.9));
+  }
+
+  @Test
+  public void testBucketsCoverEveryValue() {
+    for (long value : new long[] {0, 7, 8, 15, 16, 1000, 123_456_789, Long.MAX_VALUE}) {
+      int index = LatencyHistogram.bucketIndex(value);
+      assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+      assertTrue(index == 0 || value > LatencyHistogram.bucketUpperBound(index - 1));
+    }
+  }
+
+  @Test
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(100);
+    histogram.reset();
+    assertEquals(0, histogram.count());
+  }
+
+  private static void assertWithinError(long expected, long actual) {
+    assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected / 8);
+  }
+}
@@ -0,0 +1,146 @@
+package org.code.exercise.service.sheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.code.exercise.service.exception.ExpressionConverterInvalidTokenException;
+import org.junit.Test;
+
+public class SheetTest {
+
+  @Test
+  public void testDependentsAreRecomputed() {
+    Sheet sheet = new Sheet();
+    sheet.set("price", "12");
+    sheet.set("quantity", "3");
+    sheet.set("shipping", "5");
+    sheet.set("total", "price * quantity + shipping");
+    assertEquals(41, sheet.getValue("total"));
+
+    assertEquals(2, sheet.set("quantity", "10"));
+    assertEquals(125, sheet.getValue("total"));
+    assertEquals(List.of("price", "quantity", "shipping"), sheet.getReferences("total"));
+  }
+
+  @Test
+  public void testOnlyDirtyCellsAreRecomputed() {
+    Sheet sheet = new Sheet();
+    Map<String, String> formulas = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      formulas.put("input" + i, Integer.toString(i));
+      formulas.put("double" + i, "input" + i + " * 2");
+    }
+    formulas.put("diamond", "double1 + double2");
+    assertEquals(2001, sheet.setAll(formulas));
+
+    // The input, its dependent, and the diamond above it
+    assertEquals(3, sheet.set("input1", "100"));
+    assertEquals(200, sheet.getValue("double1"));
+    assertEquals(204, sheet.getValue("diamond"));
+    assertEquals(2001, sheet.size());
+  }
+
+  @Test
+  public void testForwardReferences() {
+    Sheet sheet = new Sheet();
+    sheet.set("b", "a + 1");
+    IllegalArgumentException exception =
+        assertThrows(IllegalArgumentException.class, () -> sheet.getValue("b"));
+    assertEquals("Undefined cell: a", exception.getMessage());
+
+    sheet.set("a", "41");
+    assertEquals(42, sheet.getValue("b"));
+
+    sheet.remove("a");
+    assertThrows(IllegalArgumentException.class, () -> sheet.getValue("b"));
+    assertNull(sheet.getFormula("a"));
+  }
+
+  @Test
+  public void testLoadingInAnyOrder() {
+    Map<String, String> formulas = new LinkedHashMap<>();
+    for (int i = 0; i < 100; i++) {
+      formulas.put("c" + i, "c" + (i + 1) + " + 1");
+    }
+    formulas.put("c100", "0");
+    Sheet sheet = new Sheet();
+    assertEquals(101, sheet.setAll(formulas));
+    assertEquals(100, sheet.getValue("c0"));
+  }
+
+  @Test
+  public void testErrorsPropagate() {
+    Sheet sheet = new Sheet();
+    sheet.set("zero", "0");
+    sheet.set("ratio", "10 / zero");
+    sheet.set("scaled", "ratio * 3");
+    ArithmeticException exception =
+        assertThrows(ArithmeticException.class, () -> sheet.getValue("scaled"));
+    assertEquals("Division by zero", exception.getMessage());
+
+    sheet.set("zero", "5");
+    assertEquals(6, sheet.getValue("scaled"));
+  }
+
+  @Test
+  public void testCircularReferenceIsRejected() {
+    Sheet sheet = new Sheet();
+    sheet.set("a", "1");
+    sheet.set("b", "a + 1");
+    sheet.set("c", "b * 2");
+
+    IllegalArgumentException exception =
+        assertThrows(IllegalArgumentException.class, () -> sheet.set("a", "c - 1"));
+    assertEquals("Circular reference: a -> c -> b -> a", exception.getMessage());
+    assertThrows(IllegalArgumentException.class, () -> sheet.set("d", "d"));
+
+    // The sheet is left unchanged
+    assertEquals("1", sheet.getFormula("a"));
+    assertNull(sheet.getFormula("d"));
+    assertEquals(3, sheet.set("a", "2"));
+    assertEquals(3, sheet.getValue("b"));
+    assertEquals(6, sheet.getValue("c"));
+  }
+
+  @Test
+  public void testInvalidFormulaLeavesSheetUnchanged() {
+    Sheet sheet = new Sheet();
+    sheet.set("a", "1");
+    assertThrows(
+        ExpressionConverterInvalidTokenException.class,
+        () -> sheet.setAll(Map.of("a", "2", "b", "(a")));
+    assertThrows(IllegalArgumentException.class, () -> sheet.set("1a", "2"));
+    assertThrows(IllegalArgumentException.class, () -> sheet.set(null, "2"));
+    assertThrows(IllegalArgumentException.class, () -> sheet.set("b", null));
+    assertEquals(1, sheet.getValue("a"));
+    assertEquals(1, sheet.size());
+  }
+
+  @Test
+  public void testLargeLevelsAreRecomputedInParallel() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Sheet sheet = new Sheet(pool);
+      Map<String, String> formulas = new HashMap<>();
+      formulas.put("x", "1");
+      for (int i = 0; i < 5000; i++) {
+        formulas.put("y" + i, "x * " + i);
+        formulas.put("z" + i, "y" + i + " + x");
+      }
+      sheet.setAll(formulas);
+
+      assertEquals(10001, sheet.set("x", "3"));
+      for (int i = 0; i < 5000; i++) {
+        assertEquals(3 * i + 3, sheet.getValue("z" + i));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
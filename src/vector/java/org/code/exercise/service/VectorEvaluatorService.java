@@ -0,0 +1,74 @@
+package org.code.exercise.service;
+
+import java.util.BitSet;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+import org.code.exercise.service.helper.CalculatorUtils;
+
+/**
+ * Columnar operators running on the Vector API, across full vector lanes.
+ *
+ * <p>Only compiled with the {@code vector} Maven profile, and only loaded by {@link
+ * EvaluatorService} when the {@code jdk.incubator.vector} module is part of the JVM. Rows that do
+ * not fill a whole vector, and the operators without a lane-wise equivalent (divisions, powers,
+ * registered operators), are computed by the scalar loops of EvaluatorService.
+ */
+final class VectorEvaluatorService implements ColumnOperators {
+
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+  /*
+   * A single lane means that the CPU has no vector unit usable for ints, the scalar loops are faster then.
+   * */
+  @Override
+  public boolean isSupported() {
+    return SPECIES.length() > 1;
+  }
+
+  /*
+   * Applies the operator to the rows [0, length) of the block.
+   * CPUs have no vector integer division, the Vector API emulates it lane by lane and is several times slower
+   * than the scalar loop, which also handles the division by zero, so divisions are left to the scalar loop.
+   * */
+  @Override
+  public void applyOperatorToColumns(
+      int opcode,
+      int[] a,
+      int aOffset,
+      int[] b,
+      int bOffset,
+      int[] out,
+      int length,
+      int firstRow,
+      BitSet failedRows) {
+    int vectorEnd = isLaneWise(opcode) ? SPECIES.loopBound(length) : 0;
+    for (int i = 0; i < vectorEnd; i += SPECIES.length()) {
+      IntVector va = IntVector.fromArray(SPECIES, a, aOffset + i);
+      IntVector vb = IntVector.fromArray(SPECIES, b, bOffset + i);
+      IntVector result =
+          switch (opcode) {
+            case CalculatorUtils.OPCODE_ADD -> va.add(vb);
+            case CalculatorUtils.OPCODE_SUB -> va.sub(vb);
+            case CalculatorUtils.OPCODE_MUL -> va.mul(vb);
+            case CalculatorUtils.OPCODE_MIN -> va.min(vb);
+            case CalculatorUtils.OPCODE_MAX -> va.max(vb);
+            default -> throw new IllegalArgumentException("Unknown operator opcode: " + opcode);
+          };
+      result.intoArray(out, i);
+    }
+    EvaluatorService.applyOperatorToColumns(
+        opcode, a, aOffset, b, bOffset, out, vectorEnd, length, firstRow, failedRows);
+  }
+
+  private static boolean isLaneWise(int opcode) {
+    return switch (opcode) {
+      case CalculatorUtils.OPCODE_ADD,
+          CalculatorUtils.OPCODE_SUB,
+          CalculatorUtils.OPCODE_MUL,
+          CalculatorUtils.OPCODE_MIN,
+          CalculatorUtils.OPCODE_MAX ->
+          true;
+      default -> false;
+    };
+  }
+}
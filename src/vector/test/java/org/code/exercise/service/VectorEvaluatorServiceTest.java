@@ -0,0 +1,48 @@
+package org.code.exercise.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.BitSet;
+import org.code.exercise.service.helper.CalculatorUtils;
+import org.junit.Test;
+
+public class VectorEvaluatorServiceTest {
+
+  @Test
+  public void testVectorOperatorsMatchScalarOperators() {
+    VectorEvaluatorService engine = new VectorEvaluatorService();
+    assumeTrue(engine.isSupported());
+    int length = 1000;
+    int[] a = new int[length + 3];
+    int[] b = new int[length + 5];
+    for (int i = 0; i < a.length; i++) a[i] = i * 7919 - 40000;
+    for (int i = 0; i < b.length; i++) b[i] = i % 5 == 0 ? 0 : Integer.MAX_VALUE / (i + 1) - i;
+
+    int[] opcodes = {
+      CalculatorUtils.OPCODE_ADD,
+      CalculatorUtils.OPCODE_SUB,
+      CalculatorUtils.OPCODE_MUL,
+      CalculatorUtils.OPCODE_DIV
+    };
+    for (int opcode : opcodes) {
+      int[] vector = new int[length];
+      int[] scalar = new int[length];
+      BitSet vectorFailed = new BitSet();
+      BitSet scalarFailed = new BitSet();
+      engine.applyOperatorToColumns(opcode, a, 3, b, 5, vector, length, 0, vectorFailed);
+      EvaluatorService.applyOperatorToColumns(
+          opcode, a, 3, b, 5, scalar, 0, length, 0, scalarFailed);
+      assertArrayEquals(scalar, vector);
+      assertEquals(scalarFailed, vectorFailed);
+    }
+  }
+
+  @Test
+  public void testEngineIsLoaded() {
+    assumeTrue(new VectorEvaluatorService().isSupported());
+    assertNotNull(EvaluatorService.VECTOR_OPERATORS);
+  }
+}